@@ -16,9 +16,20 @@
  */
 package org.exoplatform.social.common.lifecycle;
 
-import java.util.HashSet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import javax.xml.bind.DatatypeConverter;
 
 import org.exoplatform.commons.chromattic.ChromatticLifeCycle;
 import org.exoplatform.commons.chromattic.ChromatticManager;
@@ -34,7 +45,13 @@ import org.exoplatform.services.log.Log;
  * Events are dispatched asynchronously but sequentially to their listeners
  * according to their type. <br/>
  * Listeners may fail, this is safe for the lifecycle, subsequent listeners will
- * still be called.
+ * still be called.<br/>
+ * In async mode, each listener has its own bounded queue of events, see
+ * {@link LifeCycleCompletionService}. In sync mode, the events are dispatched
+ * on the calling thread.
+ * The lifecycles which implement {@link #writeEvent(LifeCycleEvent)} and
+ * {@link #readEvent(String)} get their events dispatched again after a restart
+ * when the listeners did not get them.
  *
  * @author <a href="mailto:patrice.lamarque@exoplatform.com">Patrice
  *         Lamarque</a>
@@ -45,7 +62,9 @@ public abstract class AbstractLifeCycle<T extends LifeCycleListener<E>, E extend
   /** Logger */
   private static final Log LOG = ExoLogger.getLogger(AbstractLifeCycle.class);
 
-  protected Set<T> listeners = new HashSet<T>();
+  protected Set<T> listeners = new CopyOnWriteArraySet<T>();
+
+  private final Map<T, LifeCycleEventQueue<E>> queues = new ConcurrentHashMap<T, LifeCycleEventQueue<E>>();
 
   protected final PortalContainer container;
 
@@ -71,6 +90,10 @@ public abstract class AbstractLifeCycle<T extends LifeCycleListener<E>, E extend
    */
   public void addListener(T listener) {
     listeners.add(listener);
+    if (completionService != null && completionService.isAsync()) {
+      // dispatches the logged events of the listener
+      getQueue(listener);
+    }
   }
 
   /**
@@ -78,6 +101,10 @@ public abstract class AbstractLifeCycle<T extends LifeCycleListener<E>, E extend
    */
   public void removeListener(T listener) {
     listeners.remove(listener);
+    LifeCycleEventQueue<E> queue = queues.remove(listener);
+    if (queue != null) {
+      completionService.removeQueue(queue);
+    }
   }
 
   /**
@@ -92,6 +119,8 @@ public abstract class AbstractLifeCycle<T extends LifeCycleListener<E>, E extend
     //
     SessionContext ctx = lifeCycle.getContext();
     if (completionService.isAsync()) {
+      // the payload is written as it is now, the record is logged once the changes are saved
+      final String data = toLogData(event);
       ctx.addSynchronizationListener(new SynchronizationListener() {
 
         public void beforeSynchronization() {}
@@ -99,7 +128,7 @@ public abstract class AbstractLifeCycle<T extends LifeCycleListener<E>, E extend
         public void afterSynchronization(SynchronizationStatus status) {
           if (status == SynchronizationStatus.SAVED) {
 
-            addTasks(event);
+            addTasks(event, data);
 
           }
         }
@@ -107,36 +136,196 @@ public abstract class AbstractLifeCycle<T extends LifeCycleListener<E>, E extend
       });
     }
     else {
-      for (T listener : listeners) {
-        try {
-          dispatchEvent(listener, event);
-        }
-        catch (Exception e) {
-          LOG.debug(e);
-        }
-      }
+      dispatchInline(event);
     }
     
   }
 
+  /**
+   * Dispatches an event on the calling thread in sync mode, logs and queues it
+   * to each listener in async mode.
+   */
   protected void addTasks(final E event) {
+    if (!completionService.isAsync()) {
+      dispatchInline(event);
+      return;
+    }
+    addTasks(event, toLogData(event));
+  }
+
+  /**
+   * Logs and queues an event to each listener.
+   *
+   * @param data the event written by {@link #writeEvent(LifeCycleEvent)}, null
+   *          when it is not logged
+   */
+  private void addTasks(E event, String data) {
     for (final T listener : listeners) {
-      completionService.addTask(new Callable<E>() {
-        public E call() throws Exception {
+      LifeCycleEventQueue<E> queue = getQueue(listener);
+      queue.offer(event, completionService.log(queue.getName(), data));
+    }
+  }
+
+  private String toLogData(E event) {
+    if (!completionService.isLogged()) {
+      return null;
+    }
+    try {
+      return writeEvent(event);
+    }
+    catch (Exception e) {
+      LOG.warn("Failed to write a lifecycle event to the log", e);
+      return null;
+    }
+  }
+
+  private void dispatchInline(E event) {
+    for (T listener : listeners) {
+      try {
+        dispatchEvent(listener, event);
+      }
+      catch (Exception e) {
+        LOG.debug(e);
+      }
+    }
+  }
+
+  /**
+   * Gets the queue of a listener, created with the logged events of the
+   * listener the first time.
+   */
+  private LifeCycleEventQueue<E> getQueue(final T listener) {
+    LifeCycleEventQueue<E> queue = queues.get(listener);
+    if (queue != null) {
+      return queue;
+    }
+    synchronized (queues) {
+      queue = queues.get(listener);
+      if (queue != null) {
+        return queue;
+      }
+      String name = getClass().getName() + "/" + listener.getClass().getName();
+      queue = completionService.createQueue(name, new LifeCycleEventQueue.Dispatcher<E>() {
+        public int dispatch(List<E> events) {
+          int failures = 0;
           try {
             begin();
-            dispatchEvent(listener, event);
-          }
-          catch(Exception e) {
-            LOG.debug(e.getMessage(), e);
+            for (E event : events) {
+              try {
+                dispatchEvent(listener, event);
+              }
+              catch (Exception e) {
+                ++failures;
+                LOG.debug(e.getMessage(), e);
+              }
+            }
           }
           finally {
             end();
           }
-
-          return event;
+          return failures;
         }
       });
+      queues.put(listener, queue);
+    }
+    final List<LifeCycleLog.Record> records = completionService.recover(queue.getName());
+    if (!records.isEmpty()) {
+      final LifeCycleEventQueue<E> recoveredQueue = queue;
+      completionService.addTask(new Callable<Void>() {
+        public Void call() {
+          recover(recoveredQueue, records);
+          return null;
+        }
+      });
+    }
+    return queue;
+  }
+
+  /**
+   * Queues the logged events of a listener which were not dispatched before
+   * the last stop.
+   */
+  private void recover(LifeCycleEventQueue<E> queue, List<LifeCycleLog.Record> records) {
+    try {
+      begin();
+      for (LifeCycleLog.Record record : records) {
+        E event = null;
+        try {
+          event = readEvent(record.data);
+        }
+        catch (Exception e) {
+          LOG.warn("Failed to read the logged event " + record.sequence + " of " + queue.getName(), e);
+        }
+        if (event != null) {
+          queue.offer(event, record.sequence);
+        }
+        else {
+          LOG.info("Skipping the logged event " + record.sequence + " of " + queue.getName());
+          completionService.done(record.sequence);
+        }
+      }
+    }
+    finally {
+      end();
+    }
+  }
+
+  /**
+   * Writes an event to the log of the events dispatched asynchronously, so
+   * that it is dispatched again after a restart if its listeners did not get it.
+   * The event is written when it is broadcasted, with the payload needed to
+   * dispatch it again as it was, see {@link #writeObject(Serializable)}.
+   *
+   * @param event the event
+   * @return the event as a string read by {@link #readEvent(String)}, null when
+   *         the event is not logged
+   * @throws Exception if the event cannot be written
+   */
+  protected String writeEvent(E event) throws Exception {
+    return null;
+  }
+
+  /**
+   * Reads an event written to the log by {@link #writeEvent(LifeCycleEvent)}
+   * when it is recovered after a restart.
+   *
+   * @param data the event as a string
+   * @return the event, null when it cannot be dispatched anymore
+   * @throws Exception if the event cannot be read
+   */
+  protected E readEvent(String data) throws Exception {
+    return null;
+  }
+
+  /**
+   * Writes a payload of an event as a string without space nor line break.
+   *
+   * @param object the payload, serialized
+   * @return the payload read by {@link #readObject(String)}
+   * @throws IOException if the payload cannot be serialized
+   */
+  protected static String writeObject(Serializable object) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    try {
+      out.writeObject(object);
+    }
+    finally {
+      out.close();
+    }
+    return DatatypeConverter.printBase64Binary(bytes.toByteArray());
+  }
+
+  /**
+   * Reads a payload written by {@link #writeObject(Serializable)}.
+   */
+  protected static Object readObject(String data) throws IOException, ClassNotFoundException {
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(DatatypeConverter.parseBase64Binary(data)));
+    try {
+      return in.readObject();
+    }
+    finally {
+      in.close();
     }
   }
 
@@ -17,40 +17,90 @@
 
 package org.exoplatform.social.common.lifecycle;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.common.service.thread.SocialThreadFactory;
 
 /**
  * Process the callable request out of the http request.
+ * <p>
+ * In async mode, the events of the lifecycles are kept in one bounded queue by listener, dispatched in batches by
+ * the threads of the service. The events are written to a log in the log directory once their changes are saved,
+ * before they are queued, with the payload needed to dispatch them again: the events not dispatched when the server
+ * stopped are dispatched again at the next start. In sync mode, there is no
+ * queue: the lifecycles dispatch their events on the calling thread.
  *
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
  * @version $Revision$
  */
+@Managed
+@NameTemplate({@Property(key = "service", value = "social"), @Property(key = "view", value = "lifecycles")})
+@ManagedDescription("Social lifecycle events")
 public class LifeCycleCompletionService {
 
+  private static final Log LOG = ExoLogger.getLogger(LifeCycleCompletionService.class);
+
   private final String THREAD_NUMBER_KEY = "thread-number";
 
   private final String ASYNC_EXECUTION_KEY = "async-execution";
 
-  private Executor executor;
+  private final String QUEUE_SIZE_KEY = "queue-size";
+
+  private final String BATCH_SIZE_KEY = "batch-size";
 
-  private ExecutorCompletionService ecs;
+  private final String OFFER_TIMEOUT_KEY = "offer-timeout";
+
+  private final String LOG_DIRECTORY_KEY = "log-directory";
 
   private final int DEFAULT_THREAD_NUMBER = 1;
 
   private final boolean DEFAULT_ASYNC_EXECUTION = true;
 
+  private final int DEFAULT_QUEUE_SIZE = 10000;
+
+  private final int DEFAULT_BATCH_SIZE = 50;
+
+  private final long DEFAULT_OFFER_TIMEOUT = 1000;
+
+  /** The maximum time to wait for the end of the pending events, in ms. */
+  private final long COMPLETION_TIMEOUT = 10000;
+
+  private Executor executor;
+
   private int configThreadNumber;
 
   private boolean configAsyncExecution;
 
+  private int configQueueSize;
+
+  private int configBatchSize;
+
+  private long configOfferTimeout;
+
+  private LifeCycleLog log;
+
+  private final Map<String, LifeCycleEventQueue<?>> queues = new ConcurrentHashMap<String, LifeCycleEventQueue<?>>();
+
   public LifeCycleCompletionService(InitParams params) {
 
     //
@@ -73,28 +123,155 @@ public class LifeCycleCompletionService {
       this.configAsyncExecution = DEFAULT_ASYNC_EXECUTION;
     }
 
+    //
+    try {
+      this.configQueueSize = Integer.valueOf(params.getValueParam(QUEUE_SIZE_KEY).getValue());
+    }
+    catch (Exception e) {
+      this.configQueueSize = DEFAULT_QUEUE_SIZE;
+    }
+
+    //
+    try {
+      this.configBatchSize = Integer.valueOf(params.getValueParam(BATCH_SIZE_KEY).getValue());
+    }
+    catch (Exception e) {
+      this.configBatchSize = DEFAULT_BATCH_SIZE;
+    }
+
+    //
+    try {
+      this.configOfferTimeout = Long.valueOf(params.getValueParam(OFFER_TIMEOUT_KEY).getValue());
+    }
+    catch (Exception e) {
+      this.configOfferTimeout = DEFAULT_OFFER_TIMEOUT;
+    }
 
     //
     if (configAsyncExecution) {
-      this.executor = Executors.newFixedThreadPool(this.configThreadNumber);
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(configThreadNumber, configThreadNumber, 60L, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new SocialThreadFactory(null, "SocialLifeCycle", true, Thread.NORM_PRIORITY));
+      pool.allowCoreThreadTimeOut(true);
+      this.executor = pool;
+      this.log = openLog(params);
     }
     else {
       this.executor = new DirectExecutor();
     }
 
-    //
-    this.ecs = new ExecutorCompletionService(executor);
+  }
 
+  /**
+   * Opens the log of the events in the configured directory, or in social/lifecycle of the data directory.
+   *
+   * @return the log, null when there is no directory or the log cannot be opened
+   */
+  private LifeCycleLog openLog(InitParams params) {
+    ValueParam logDirectory = params.getValueParam(LOG_DIRECTORY_KEY);
+    String directory = logDirectory != null ? logDirectory.getValue() : null;
+    if (directory == null || directory.trim().length() == 0) {
+      String dataDirectory = System.getProperty("gatein.data.dir");
+      if (dataDirectory == null) {
+        return null;
+      }
+      directory = dataDirectory + File.separator + "social" + File.separator + "lifecycle";
+    }
+    try {
+      return new LifeCycleLog(new File(directory.trim()));
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to open the lifecycle log in " + directory + ", the events are not logged", e);
+      return null;
+    }
   }
 
   public void addTask(Callable callable) {
-    ecs.submit(callable);
+    executor.execute(new FutureTask(callable));
+  }
+
+  /**
+   * Creates the queue of a listener, in async mode only.
+   *
+   * @param name the name of the queue, the same across restarts so that the logged events are recovered
+   * @param dispatcher the dispatcher of the events to the listener
+   */
+  <E> LifeCycleEventQueue<E> createQueue(String name, LifeCycleEventQueue.Dispatcher<E> dispatcher) {
+    if (!configAsyncExecution) {
+      throw new IllegalStateException("The lifecycle queues are only used in async mode");
+    }
+    LifeCycleEventQueue<E> queue = new LifeCycleEventQueue<E>(name, dispatcher, executor, log, configQueueSize,
+                                                              configBatchSize, configOfferTimeout);
+    queues.put(name, queue);
+    return queue;
+  }
+
+  void removeQueue(LifeCycleEventQueue<?> queue) {
+    queues.remove(queue.getName());
+  }
+
+  /**
+   * @return true when the events are written to a log before they are queued
+   */
+  boolean isLogged() {
+    return log != null;
   }
 
+  /**
+   * Writes an event to the log.
+   *
+   * @param queue the name of the queue of the event
+   * @param data the event as a string
+   * @return the sequence of the event, -1 when it is not logged
+   */
+  long log(String queue, String data) {
+    if (log == null || data == null) {
+      return -1;
+    }
+    try {
+      return log.append(queue, data);
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to write the lifecycle log: " + e.getMessage());
+      return -1;
+    }
+  }
+
+  /**
+   * Marks a logged event as dispatched.
+   */
+  void done(long sequence) {
+    if (log == null) {
+      return;
+    }
+    try {
+      log.done(sequence);
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to write the lifecycle log: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Gets the logged events of a queue which were not dispatched before the last stop.
+   */
+  List<LifeCycleLog.Record> recover(String queue) {
+    if (log == null) {
+      return new ArrayList<LifeCycleLog.Record>();
+    }
+    return log.recover(queue);
+  }
+
+  /**
+   * Waits until the pending events of all the queues are dispatched, at most 10 seconds.
+   */
   public void waitCompletionFinished() {
+    long deadline = System.currentTimeMillis() + COMPLETION_TIMEOUT;
     try {
-      if (executor instanceof ExecutorService) {
-        ((ExecutorService) executor).awaitTermination(1, TimeUnit.SECONDS);
+      for (LifeCycleEventQueue<?> queue : queues.values()) {
+        if (!queue.awaitIdle(Math.max(1, deadline - System.currentTimeMillis()))) {
+          LOG.warn("The lifecycle queue " + queue.getName() + " is still busy");
+        }
       }
     }
     catch (InterruptedException e) {
@@ -106,6 +283,52 @@ public class LifeCycleCompletionService {
     return this.configAsyncExecution;
   }
 
+  /**
+   * @return the metrics of a listener queue, null when there is no such queue
+   */
+  public LifeCycleListenerMetrics getMetrics(String name) {
+    LifeCycleEventQueue<?> queue = queues.get(name);
+    return queue != null ? queue.getMetrics() : null;
+  }
+
+  @Managed
+  @ManagedDescription("The names of the listener queues, the lifecycle and listener classes")
+  public String getQueueNames() {
+    return queues.keySet().toString();
+  }
+
+  @Managed
+  @ManagedDescription("The pending, dispatched, failed and dropped events, the lag and throughput of the given queue")
+  public String getQueueMetrics(@ManagedDescription("The queue name")
+                                @ManagedName("name") String name) {
+    LifeCycleListenerMetrics metrics = getMetrics(name);
+    return metrics != null ? metrics.toString() : null;
+  }
+
+  @Managed
+  @ManagedDescription("The metrics of all the listener queues")
+  public String getAllMetrics() {
+    StringBuilder sb = new StringBuilder();
+    for (LifeCycleEventQueue<?> queue : queues.values()) {
+      sb.append(queue.getName()).append(": ").append(queue.getMetrics()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Managed
+  @ManagedDescription("The number of logged events not dispatched yet")
+  public int getLoggedCount() {
+    return log != null ? log.getPendingCount() : 0;
+  }
+
+  @Managed
+  @ManagedDescription("Resets the counters of all the listener queues")
+  public void resetMetrics() {
+    for (LifeCycleEventQueue<?> queue : queues.values()) {
+      queue.getMetrics().reset();
+    }
+  }
+
   private class DirectExecutor implements Executor {
 
     public void execute(final Runnable runnable) {
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.lifecycle;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * The bounded queue of the events of a lifecycle listener. The events are dispatched in batches and in order by
+ * one thread of the executor at a time, so that a slow listener neither delays the other listeners nor holds more
+ * than one thread.
+ * <p>
+ * When the queue is full, an event waits for room up to the offer timeout. After it, a logged event is deferred: it
+ * is queued again as soon as there is room, before the new events. The other events are dropped, as are the logged
+ * events when as many events as the capacity are already deferred: those stay in the log and are dispatched again
+ * at the next start.
+ * <p>
+ * A batch which could not be dispatched at all is dispatched again at once, up to {@link #MAX_DISPATCH_ATTEMPTS}
+ * times, its events stay in the log after the last attempt.
+ *
+ * @since 4.1.0
+ */
+final class LifeCycleEventQueue<E> implements Runnable {
+
+  private static final Log LOG = ExoLogger.getLogger(LifeCycleEventQueue.class);
+
+  static final int MAX_DISPATCH_ATTEMPTS = 3;
+
+  /**
+   * Dispatches a batch of events to the listener of the queue.
+   */
+  interface Dispatcher<E> {
+
+    /**
+     * @param events the events in the order they were offered
+     * @return the number of events the listener failed to process
+     * @throws RuntimeException when the events could not be dispatched at all, they stay in the log
+     */
+    int dispatch(List<E> events);
+  }
+
+  private final String name;
+
+  private final Dispatcher<E> dispatcher;
+
+  private final Executor executor;
+
+  private final LifeCycleLog log;
+
+  private final int capacity;
+
+  private final int batchSize;
+
+  private final long offerTimeout;
+
+  private final LinkedList<Entry<E>> entries = new LinkedList<Entry<E>>();
+
+  private final LinkedList<Entry<E>> deferred = new LinkedList<Entry<E>>();
+
+  private final LifeCycleListenerMetrics metrics = new LifeCycleListenerMetrics(this);
+
+  private boolean scheduled;
+
+  /**
+   * @param name the name of the queue, the lifecycle and listener classes
+   * @param dispatcher the dispatcher of the events to the listener
+   * @param executor the executor running the queue
+   * @param log the log of the events, null when the events are not logged
+   * @param capacity the maximum number of pending events
+   * @param batchSize the maximum number of events dispatched at once
+   * @param offerTimeout the maximum time to wait for room in ms
+   */
+  LifeCycleEventQueue(String name, Dispatcher<E> dispatcher, Executor executor, LifeCycleLog log, int capacity,
+                      int batchSize, long offerTimeout) {
+    this.name = name;
+    this.dispatcher = dispatcher;
+    this.executor = executor;
+    this.log = log;
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.offerTimeout = offerTimeout;
+  }
+
+  /**
+   * Queues an event, waiting for room up to the offer timeout.
+   *
+   * @param event the event
+   * @param sequence the sequence of the event in the log, -1 when it is not logged
+   * @return false when the event was dropped
+   */
+  boolean offer(E event, long sequence) {
+    Entry<E> entry = new Entry<E>(event, sequence);
+    synchronized (this) {
+      long deadline = System.currentTimeMillis() + offerTimeout;
+      while (!hasRoom()) {
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+          return defer(entry);
+        }
+        try {
+          wait(wait);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return defer(entry);
+        }
+      }
+      entries.add(entry);
+      if (scheduled) {
+        return true;
+      }
+      scheduled = true;
+    }
+    try {
+      executor.execute(this);
+    } catch (RejectedExecutionException e) {
+      // the executor is stopped, the events stay in the log
+      synchronized (this) {
+        scheduled = false;
+      }
+      LOG.warn("The lifecycle queue " + name + " cannot be run: " + e.getMessage());
+    }
+    return true;
+  }
+
+  public void run() {
+    while (true) {
+      List<Entry<E>> batch;
+      synchronized (this) {
+        hasRoom();
+        if (entries.isEmpty()) {
+          scheduled = false;
+          notifyAll();
+          return;
+        }
+        batch = new ArrayList<Entry<E>>(Math.min(batchSize, entries.size()));
+        while (batch.size() < batchSize && !entries.isEmpty()) {
+          batch.add(entries.removeFirst());
+        }
+        notifyAll();
+      }
+      List<E> events = new ArrayList<E>(batch.size());
+      for (Entry<E> entry : batch) {
+        events.add(entry.event);
+      }
+      long start = System.nanoTime();
+      try {
+        int failures = dispatcher.dispatch(events);
+        metrics.dispatched(events.size(), failures, System.nanoTime() - start);
+      } catch (RuntimeException e) {
+        if (++batch.get(0).attempts < MAX_DISPATCH_ATTEMPTS) {
+          LOG.debug("Failed to dispatch " + events.size() + " events of the lifecycle queue " + name + ", retrying", e);
+          synchronized (this) {
+            entries.addAll(0, batch);
+          }
+          continue;
+        }
+        metrics.dispatched(events.size(), events.size(), System.nanoTime() - start);
+        LOG.warn("Failed to dispatch " + events.size() + " events of the lifecycle queue " + name, e);
+        continue;
+      }
+      if (log != null) {
+        for (Entry<E> entry : batch) {
+          if (entry.sequence >= 0) {
+            try {
+              log.done(entry.sequence);
+            } catch (IOException e) {
+              LOG.warn("Failed to write the lifecycle log: " + e.getMessage());
+            }
+          }
+        }
+      }
+    }
+  }
+
+  String getName() {
+    return name;
+  }
+
+  LifeCycleListenerMetrics getMetrics() {
+    return metrics;
+  }
+
+  synchronized int getPendingCount() {
+    return entries.size() + deferred.size();
+  }
+
+  synchronized long getLag() {
+    return entries.isEmpty() ? 0 : System.currentTimeMillis() - entries.getFirst().time;
+  }
+
+  /**
+   * @return true when no event is pending or being dispatched
+   */
+  synchronized boolean isIdle() {
+    return !scheduled && entries.isEmpty() && deferred.isEmpty();
+  }
+
+  /**
+   * Queues the deferred events while there is room.
+   *
+   * @return true when there is room for a new event
+   */
+  private boolean hasRoom() {
+    while (!deferred.isEmpty() && entries.size() < capacity) {
+      entries.add(deferred.removeFirst());
+    }
+    return deferred.isEmpty() && entries.size() < capacity;
+  }
+
+  private boolean defer(Entry<E> entry) {
+    if (entry.sequence >= 0 && deferred.size() < capacity) {
+      deferred.add(entry);
+      LOG.warn("The lifecycle queue " + name + " is full, an event is deferred");
+      return true;
+    }
+    metrics.dropped();
+    LOG.warn("The lifecycle queue " + name + " is full, an event is dropped");
+    return false;
+  }
+
+  /**
+   * Waits until no event is pending or being dispatched.
+   *
+   * @param timeout the maximum time to wait in ms
+   * @return false when the queue is still busy after the timeout
+   */
+  synchronized boolean awaitIdle(long timeout) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeout;
+    while (!isIdle()) {
+      long wait = deadline - System.currentTimeMillis();
+      if (wait <= 0) {
+        return false;
+      }
+      wait(wait);
+    }
+    return true;
+  }
+
+  private static final class Entry<E> {
+
+    private final E event;
+
+    private final long sequence;
+
+    private final long time = System.currentTimeMillis();
+
+    private int attempts;
+
+    private Entry(E event, long sequence) {
+      this.event = event;
+      this.sequence = sequence;
+    }
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.lifecycle;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters of the queue of a lifecycle listener: the pending events and the age of the oldest one, the
+ * dispatched, failed and dropped events, and the throughput of the listener.
+ *
+ * @since 4.1.0
+ */
+public class LifeCycleListenerMetrics {
+
+  private final LifeCycleEventQueue<?> queue;
+
+  private final AtomicLong dispatched = new AtomicLong();
+
+  private final AtomicLong failed = new AtomicLong();
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  private final AtomicLong batches = new AtomicLong();
+
+  private final AtomicLong dispatchTime = new AtomicLong();
+
+  LifeCycleListenerMetrics(LifeCycleEventQueue<?> queue) {
+    this.queue = queue;
+  }
+
+  /**
+   * @param time the dispatch time of the events in ns
+   */
+  void dispatched(int count, int failures, long time) {
+    dispatched.addAndGet(count);
+    failed.addAndGet(failures);
+    batches.incrementAndGet();
+    dispatchTime.addAndGet(time);
+  }
+
+  void dropped() {
+    dropped.incrementAndGet();
+  }
+
+  public String getName() {
+    return queue.getName();
+  }
+
+  public int getPendingCount() {
+    return queue.getPendingCount();
+  }
+
+  /**
+   * @return the time the oldest pending event has been waiting in ms, 0 when no event is pending
+   */
+  public long getLag() {
+    return queue.getLag();
+  }
+
+  public long getDispatched() {
+    return dispatched.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  public long getBatches() {
+    return batches.get();
+  }
+
+  /**
+   * @return the number of events dispatched by second of dispatch, 0 when no event was dispatched
+   */
+  public long getThroughput() {
+    long time = dispatchTime.get();
+    return time == 0 ? 0 : dispatched.get() * 1000000000L / time;
+  }
+
+  public void reset() {
+    dispatched.set(0);
+    failed.set(0);
+    dropped.set(0);
+    batches.set(0);
+    dispatchTime.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return "pending=" + getPendingCount() + ", lag=" + getLag() + "ms, dispatched=" + dispatched.get()
+        + ", failed=" + failed.get() + ", dropped=" + dropped.get() + ", batches=" + batches.get()
+        + ", throughput=" + getThroughput() + "/s";
+  }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.lifecycle;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The log of the lifecycle events dispatched asynchronously: an event is appended before it is queued and marked
+ * as done once its listener got it, so that the events queued but not dispatched when the server stopped are
+ * dispatched again at the next start.
+ * <p>
+ * The log is a text file of the lines "E &lt;sequence&gt; &lt;queue&gt; &lt;data&gt;" and "D &lt;sequence&gt;". It
+ * is emptied each time no event is pending, and rewritten with the pending events only when it is opened and when
+ * it has many more lines than pending events: an event which never reaches its listener keeps the log from being
+ * emptied, not from being compacted.
+ *
+ * @since 4.1.0
+ */
+final class LifeCycleLog {
+
+  static final String FILE_NAME = "lifecycle-events.log";
+
+  private static final String ENCODING = "UTF-8";
+
+  /**
+   * The number of lines written since the last rewrite from which the log is compacted
+   */
+  static final int COMPACT_LINES = 10000;
+
+  private final File file;
+
+  private final Map<String, List<Record>> recovered = new HashMap<String, List<Record>>();
+
+  private Writer writer;
+
+  private long nextSequence = 1;
+
+  private final Set<Long> pending = new HashSet<Long>();
+
+  private int lines;
+
+  /**
+   * Opens the log of a directory, reading the events still pending in it.
+   *
+   * @param directory the directory of the log, created when it does not exist
+   * @throws IOException if the log cannot be read or written
+   */
+  LifeCycleLog(File directory) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create the directory " + directory);
+    }
+    this.file = new File(directory, FILE_NAME);
+    Map<Long, String[]> records = new LinkedHashMap<Long, String[]>();
+    if (file.exists()) {
+      read(records);
+    }
+    rewrite(records);
+    for (Map.Entry<Long, String[]> entry : records.entrySet()) {
+      String queue = entry.getValue()[0];
+      List<Record> queueRecords = recovered.get(queue);
+      if (queueRecords == null) {
+        queueRecords = new ArrayList<Record>();
+        recovered.put(queue, queueRecords);
+      }
+      queueRecords.add(new Record(entry.getKey(), entry.getValue()[1]));
+    }
+  }
+
+  /**
+   * Appends an event.
+   *
+   * @param queue the name of the queue of the event
+   * @param data the event as a string
+   * @return the sequence of the event
+   * @throws IOException if the log cannot be written
+   */
+  synchronized long append(String queue, String data) throws IOException {
+    long sequence = nextSequence++;
+    writeEvent(sequence, queue, data);
+    writer.flush();
+    pending.add(sequence);
+    ++lines;
+    return sequence;
+  }
+
+  /**
+   * Marks an event as dispatched, the log is emptied when no event is pending anymore, and compacted when it has
+   * many more lines than pending events.
+   *
+   * @param sequence the sequence of the event
+   * @throws IOException if the log cannot be written
+   */
+  synchronized void done(long sequence) throws IOException {
+    if (!pending.remove(sequence)) {
+      return;
+    }
+    if (pending.isEmpty()) {
+      writer.close();
+      writer = open(file);
+      lines = 0;
+      return;
+    }
+    writer.write("D " + sequence + "\n");
+    writer.flush();
+    if (++lines >= COMPACT_LINES && lines > 2 * pending.size()) {
+      compact();
+    }
+  }
+
+  /**
+   * Gets the events of a queue which were pending when the log was opened, they are returned once.
+   *
+   * @param queue the name of the queue
+   * @return the events in the order they were appended
+   */
+  synchronized List<Record> recover(String queue) {
+    List<Record> records = recovered.remove(queue);
+    return records != null ? records : Collections.<Record>emptyList();
+  }
+
+  synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  synchronized void close() throws IOException {
+    writer.close();
+  }
+
+  private void read(Map<Long, String[]> records) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // a line truncated by a crash is ignored
+        String[] fields = line.split(" ", 4);
+        try {
+          long sequence = Long.parseLong(fields[1]);
+          if ("E".equals(fields[0]) && fields.length == 4) {
+            records.put(sequence, new String[] {fields[2], unescape(fields[3])});
+          } else if ("D".equals(fields[0])) {
+            records.remove(sequence);
+          }
+          nextSequence = Math.max(nextSequence, sequence + 1);
+        } catch (RuntimeException e) {
+          continue;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Rewrites the log with the pending events only.
+   */
+  private void compact() throws IOException {
+    writer.close();
+    Map<Long, String[]> records = new LinkedHashMap<Long, String[]>();
+    read(records);
+    records.keySet().retainAll(pending);
+    rewrite(records);
+  }
+
+  /**
+   * Writes the given events to a new file which replaces the log, so that a crash while writing keeps the old one.
+   */
+  private void rewrite(Map<Long, String[]> records) throws IOException {
+    File rewritten = new File(file.getParentFile(), FILE_NAME + ".tmp");
+    writer = open(rewritten);
+    for (Map.Entry<Long, String[]> entry : records.entrySet()) {
+      writeEvent(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+    }
+    writer.close();
+    if (!rewritten.renameTo(file) && !(file.delete() && rewritten.renameTo(file))) {
+      throw new IOException("Cannot replace the log " + file);
+    }
+    writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), ENCODING));
+    pending.clear();
+    pending.addAll(records.keySet());
+    lines = records.size();
+  }
+
+  private Writer open(File target) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target, false), ENCODING));
+  }
+
+  private void writeEvent(long sequence, String queue, String data) throws IOException {
+    writer.write("E " + sequence + " " + queue + " " + escape(data) + "\n");
+  }
+
+  static String escape(String data) {
+    StringBuilder sb = new StringBuilder(data.length());
+    for (int i = 0; i < data.length(); ++i) {
+      char c = data.charAt(i);
+      if (c == '\\') {
+        sb.append("\\\\");
+      } else if (c == '\n') {
+        sb.append("\\n");
+      } else if (c == '\r') {
+        sb.append("\\r");
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  static String unescape(String data) {
+    StringBuilder sb = new StringBuilder(data.length());
+    for (int i = 0; i < data.length(); ++i) {
+      char c = data.charAt(i);
+      if (c == '\\' && i + 1 < data.length()) {
+        c = data.charAt(++i);
+        sb.append(c == 'n' ? '\n' : c == 'r' ? '\r' : c);
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * An event read from the log.
+   */
+  static final class Record {
+
+    final long sequence;
+
+    final String data;
+
+    Record(long sequence, String data) {
+      this.sequence = sequence;
+      this.data = data;
+    }
+  }
+
+}
@@ -19,10 +19,11 @@ package org.exoplatform.social.common.router;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import org.exoplatform.services.log.ExoLogger;
@@ -41,14 +42,23 @@ public class ExoRouter implements Startable {
   static ExoPattern defaultRoutePattern = ExoPattern.compile("^({path}.*/[^\\s]*)\\s+({action}[^\\s(]+)({params}.+)?(\\s*)$");
 
   /**
-   * All the loaded routes.
+   * All the loaded routes with their compiled table, replaced as a whole when a route is added.
    */
-  public static List<Route> routes = new CopyOnWriteArrayList<Route>();
+  private static final AtomicReference<Routes> routes = new AtomicReference<Routes>(new Routes(new ArrayList<Route>()));
 
   private ExoRouterConfig routerConfig;
   
   public static void reset() {
-    routes.clear();
+    routes.set(new Routes(new ArrayList<Route>()));
+  }
+
+  /**
+   * Gets the loaded routes.
+   *
+   * @return the routes, in their lookup order, not modifiable
+   */
+  public static List<Route> getRoutes() {
+    return routes.get().list;
   }
   
   public ExoRouter() {}
@@ -86,8 +96,7 @@ public class ExoRouter implements Startable {
   }
 
   public static void appendRoute(String path, String action, String params) {
-    int position = routes.size();
-    routes.add(position, getRoute(path, action, params));
+    addRoute(getRoute(path, action, params), false);
   }
 
   public static Route getRoute(String path, String action, String params) {
@@ -113,26 +122,63 @@ public class ExoRouter implements Startable {
    * Add a new route at the beginning of the route list
    */
   public static void prependRoute(String path, String action, String params) {
-    routes.add(0, getRoute(path, action, params));
+    addRoute(getRoute(path, action, params), true);
   }
 
   /**
    * Add a new route at the beginning of the route list
    */
   public static void prependRoute(String path, String action) {
-    routes.add(0, getRoute(path, action));
+    addRoute(getRoute(path, action), true);
+  }
+
+  /**
+   * Replaces the routes by a copy with the given route, again when another route was added meanwhile.
+   */
+  private static void addRoute(Route route, boolean first) {
+    Routes current;
+    Routes updated;
+    do {
+      current = routes.get();
+      List<Route> list = new ArrayList<Route>(current.list);
+      list.add(first ? 0 : list.size(), route);
+      updated = new Routes(list);
+    } while (!routes.compareAndSet(current, updated));
   }
 
   public static Route route(String path) {
-    for (Route route : routes) {
-      Map<String, String> args = route.matches(path);
-      if (args != null) {
-        route.localArgs = args;
-        return route;
-      }
+    return getRouteTable().route(path);
+  }
+
+  /**
+   * Gets the routes compiled for the lookups, the table always matches the routes read with it.
+   */
+  private static RouteTable getRouteTable() {
+    return routes.get().getTable();
+  }
+
+  /**
+   * The routes at a given time. The table is compiled on the first lookup, two threads may compile it
+   * both, they get equal tables.
+   */
+  private static final class Routes {
+
+    private final List<Route> list;
+
+    private volatile RouteTable table;
+
+    Routes(List<Route> list) {
+      this.list = Collections.unmodifiableList(list);
     }
 
-    return null;
+    RouteTable getTable() {
+      RouteTable got = table;
+      if (got == null) {
+        got = new RouteTable(list);
+        table = got;
+      }
+      return got;
+    }
   }
 
   /**
@@ -146,68 +192,57 @@ public class ExoRouter implements Startable {
   public static ActionBuilder reverse(String action, Map<String, Object> args) {
     Map<String, Object> argsbackup = new HashMap<String, Object>(args);
     // Add routeArgs
-    for (Route route : routes) {
-      if (route.actionPattern != null) {
-        ExoMatcher matcher = route.actionPattern.matcher(action);
-        if (matcher.matches()) {
-          for (String group : route.actionArgs) {
-            String v = matcher.group(group);
-            if (v == null) {
-              continue;
-            }
-            args.put(group, v.toLowerCase());
+    for (RouteTable.ReverseRoute reverseRoute : getRouteTable().getReverseRoutes(action)) {
+      Route route = reverseRoute.route;
+      args.putAll(reverseRoute.actionArgs);
+      boolean allRequiredArgsAreHere = true;
+
+      for (Route.ParamArg arg : route.args) {
+        Object value = args.get(arg.name);
+        if (value != null) {
+          if (!value.toString().startsWith(":") && !arg.constraint.matches(value.toString())) {
+            allRequiredArgsAreHere = false;
+            break;
           }
-          List<String> inPathArgs = new ArrayList<String>(16);
-          boolean allRequiredArgsAreHere = true;
-
-          for (Route.ParamArg arg : route.args) {
-            inPathArgs.add(arg.name);
-            Object value = args.get(arg.name);
-            if (value != null) {
-              if (!value.toString().startsWith(":") && !arg.constraint.matches(value.toString())) {
-                allRequiredArgsAreHere = false;
-                break;
+        }
+      }
+      if (allRequiredArgsAreHere) {
+        StringBuilder queryString = new StringBuilder();
+        String path = route.path;
+        if (path.endsWith("/?")) {
+          path = path.substring(0, path.length() - 2);
+        }
+        for (Map.Entry<String, Object> entry : args.entrySet()) {
+          String key = entry.getKey();
+          Object value = entry.getValue();
+          Pattern argPattern = route.pathArgPatterns.get(key);
+          if (argPattern != null && value != null) {
+            path = argPattern.matcher(path).replaceAll(value.toString().replace("$", "\\$").replace("%3A", ":").replace("%40", "@"));
+          } else if (value != null) {
+            try {
+              queryString.append(URLEncoder.encode(key, "UTF-8"));
+              queryString.append("=");
+              if (value.toString().startsWith(":")) {
+                queryString.append(value.toString());
+              } else {
+                queryString.append(URLEncoder.encode(value.toString() + "", "UTF-8"));
               }
+              queryString.append("&");
+            } catch (UnsupportedEncodingException ex) {
+              LOG.debug("Unsupported encoding error: " + ex);
             }
-          }
-          if (allRequiredArgsAreHere) {
-            StringBuilder queryString = new StringBuilder();
-            String path = route.path;
-            if (path.endsWith("/?")) {
-              path = path.substring(0, path.length() - 2);
-            }
-            for (Map.Entry<String, Object> entry : args.entrySet()) {
-              String key = entry.getKey();
-              Object value = entry.getValue();
-              if (inPathArgs.contains(key) && value != null) {
-                path = path.replaceAll("\\{(<[^>]+>)?" + key + "\\}", value.toString().replace("$", "\\$").replace("%3A", ":").replace("%40", "@"));
-              } else if (value != null) {
-                try {
-                  queryString.append(URLEncoder.encode(key, "UTF-8"));
-                  queryString.append("=");
-                  if (value.toString().startsWith(":")) {
-                    queryString.append(value.toString());
-                  } else {
-                    queryString.append(URLEncoder.encode(value.toString() + "", "UTF-8"));
-                  }
-                  queryString.append("&");
-                } catch (UnsupportedEncodingException ex) {
-                  LOG.debug("Unsupported encoding error: " + ex);
-                }
 
-              }
-            }
-            String qs = queryString.toString();
-            if (qs.endsWith("&")) {
-              qs = qs.substring(0, qs.length() - 1);
-            }
-            ActionBuilder actionDefinition = new ActionBuilder();
-            actionDefinition.url = qs.length() == 0 ? path : path + "?" + qs;
-            actionDefinition.action = action;
-            actionDefinition.args = argsbackup;
-            return actionDefinition;
           }
         }
+        String qs = queryString.toString();
+        if (qs.endsWith("&")) {
+          qs = qs.substring(0, qs.length() - 1);
+        }
+        ActionBuilder actionDefinition = new ActionBuilder();
+        actionDefinition.url = qs.length() == 0 ? path : path + "?" + qs;
+        actionDefinition.action = action;
+        actionDefinition.args = argsbackup;
+        return actionDefinition;
       }
     }
     return null;
@@ -273,6 +308,11 @@ public class ExoRouter implements Startable {
 
     Map<String, String> staticArgs = new HashMap<String, String>(3);
 
+    /**
+     * The patterns of the arguments in the path, to replace them by their values.
+     */
+    Map<String, Pattern> pathArgPatterns = new HashMap<String, Pattern>(3);
+
     public Map<String, String> localArgs = null;
 
     public int routesFileLine;
@@ -292,6 +332,7 @@ public class ExoRouter implements Startable {
         arg.name = matcher.group(2);
         arg.constraint = ExoPattern.compile(matcher.group(1));
         args.add(arg);
+        pathArgPatterns.put(arg.name, Pattern.compile("\\{(<[^>]+>)?" + arg.name + "\\}"));
       }
 
       patternString = argsPattern.matcher(patternString).replaceAll("({$2}$1)");
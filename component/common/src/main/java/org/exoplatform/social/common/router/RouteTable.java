@@ -0,0 +1,462 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.exoplatform.social.common.router.ExoRouter.Route;
+import org.exoplatform.social.common.router.regex.ExoMatcher;
+
+/**
+ * The routes compiled into a trie of path segments: a segment is either a literal, or a parameter captured when it
+ * matches its constraint. The last parameter of a route may capture the rest of the path when its constraint
+ * matches slashes, as {@code {<.*>path}}. A path is looked up segment by segment whatever the number of routes,
+ * the first route of the list matching the path wins as when the patterns are tried in turn.
+ *
+ * The routes whose pattern does not split into such segments (a regex in a literal, a parameter inside a segment,
+ * a constraint which may match a slash in the middle of the path...) are matched by their pattern.
+ *
+ * The routes of an action, used to build its URL, are kept by action.
+ *
+ * @since 4.1.0
+ */
+final class RouteTable {
+
+  /** The number of actions whose routes are kept. */
+  private static final int MAX_ACTIONS = 1000;
+
+  private static final String DEFAULT_CONSTRAINT = "[^/]+";
+
+  private final Route[] routes;
+
+  /** For each route, the names of its parameters in the path, null when the route is matched by its pattern. */
+  private final String[][] parameterNames;
+
+  /** The indexes of the routes matched by their pattern. */
+  private final List<Integer> patternRoutes = new ArrayList<Integer>();
+
+  private final Node root = new Node();
+
+  private int maxParameters;
+
+  private final Map<String, List<ReverseRoute>> reverseRoutes = new ConcurrentHashMap<String, List<ReverseRoute>>();
+
+  /**
+   * @param routes the routes, the first ones having the priority
+   */
+  RouteTable(List<Route> routes) {
+    this.routes = routes.toArray(new Route[routes.size()]);
+    this.parameterNames = new String[this.routes.length][];
+    for (int i = 0; i < this.routes.length; i++) {
+      if (!add(i)) {
+        patternRoutes.add(i);
+      }
+    }
+  }
+
+  /**
+   * Finds the first route matching a path, its arguments being set.
+   *
+   * @param path the path
+   * @return the route, null when none matches
+   */
+  Route route(String path) {
+    Search search = new Search(path, maxParameters);
+    search.visit(root, 0, 0);
+    for (int index : patternRoutes) {
+      if (index > search.best) {
+        break;
+      }
+      Map<String, String> args = routes[index].matches(path);
+      if (args != null) {
+        routes[index].localArgs = args;
+        return routes[index];
+      }
+    }
+    if (search.bestCaptures == null) {
+      return null;
+    }
+    Route route = routes[search.best];
+    String[] names = parameterNames[search.best];
+    Map<String, String> args = new HashMap<String, String>();
+    for (int i = 0; i < names.length; i++) {
+      args.put(names[i], search.bestCaptures[i]);
+    }
+    route.localArgs = args;
+    return route;
+  }
+
+  /**
+   * Gets the routes whose action pattern matches an action, with the arguments read from the action.
+   *
+   * @param action the action
+   * @return the routes in the order of the list
+   */
+  List<ReverseRoute> getReverseRoutes(String action) {
+    List<ReverseRoute> result = reverseRoutes.get(action);
+    if (result == null) {
+      result = new ArrayList<ReverseRoute>(1);
+      for (Route route : routes) {
+        if (route.actionPattern != null) {
+          ExoMatcher matcher = route.actionPattern.matcher(action);
+          if (matcher.matches()) {
+            Map<String, String> actionArgs = new HashMap<String, String>();
+            for (String group : route.actionArgs) {
+              String v = matcher.group(group);
+              if (v != null) {
+                actionArgs.put(group, v.toLowerCase());
+              }
+            }
+            result.add(new ReverseRoute(route, actionArgs));
+          }
+        }
+      }
+      result = Collections.unmodifiableList(result);
+      if (reverseRoutes.size() < MAX_ACTIONS) {
+        reverseRoutes.put(action, result);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds a route to the trie.
+   *
+   * @return false when the route is matched by its pattern
+   */
+  private boolean add(int index) {
+    List<String> segments = split(routes[index].path);
+    List<String> names = new ArrayList<String>(3);
+    List<Node> nodes = new ArrayList<Node>(segments.size() + 1);
+    Node node = root;
+    nodes.add(node);
+    for (int i = 0; i < segments.size(); i++) {
+      String segment = segments.get(i);
+      boolean last = i == segments.size() - 1;
+      if (segment.indexOf('{') < 0) {
+        if (!isLiteral(segment)) {
+          return false;
+        }
+        Node next = node.literals.get(segment);
+        if (next == null) {
+          next = new Node();
+          node.literals.put(segment, next);
+        }
+        node = next;
+      } else {
+        String[] parameter = parseParameter(segment);
+        if (parameter == null || names.contains(parameter[1])) {
+          return false;
+        }
+        String constraint = parameter[0];
+        boolean rest = last && !isSegmentConstraint(constraint);
+        if (rest ? !isRestConstraint(constraint) : !isSegmentConstraint(constraint)) {
+          return false;
+        }
+        try {
+          node = node.getParameter(constraint, rest);
+        } catch (PatternSyntaxException e) {
+          return false;
+        }
+        names.add(parameter[1]);
+      }
+      nodes.add(node);
+    }
+    if (node.route > index) {
+      node.route = index;
+    }
+    for (Node visited : nodes) {
+      visited.first = Math.min(visited.first, index);
+    }
+    parameterNames[index] = names.toArray(new String[names.size()]);
+    maxParameters = Math.max(maxParameters, names.size());
+    return true;
+  }
+
+  /**
+   * Splits a path pattern on the slashes out of the parameters.
+   */
+  private static List<String> split(String path) {
+    List<String> segments = new ArrayList<String>();
+    int start = 0;
+    boolean inParameter = false;
+    for (int i = 0; i < path.length(); i++) {
+      char c = path.charAt(i);
+      if (c == '{') {
+        inParameter = true;
+      } else if (c == '}') {
+        inParameter = false;
+      } else if (c == '/' && !inParameter) {
+        segments.add(path.substring(start, i));
+        start = i + 1;
+      }
+    }
+    segments.add(path.substring(start));
+    return segments;
+  }
+
+  /**
+   * Parses a segment made of a single parameter: {name} or {<constraint>name}.
+   *
+   * @return the constraint and the name, null when the segment is not a single parameter
+   */
+  private static String[] parseParameter(String segment) {
+    int length = segment.length();
+    if (length < 3 || segment.charAt(0) != '{' || segment.charAt(length - 1) != '}') {
+      return null;
+    }
+    String constraint = DEFAULT_CONSTRAINT;
+    int nameStart = 1;
+    if (segment.charAt(1) == '<') {
+      int constraintEnd = segment.indexOf('>');
+      if (constraintEnd < 3) {
+        return null;
+      }
+      constraint = segment.substring(2, constraintEnd);
+      nameStart = constraintEnd + 1;
+    } else if (Character.isDigit(segment.charAt(1))) {
+      return null;
+    }
+    String name = segment.substring(nameStart, length - 1);
+    if (name.length() == 0) {
+      return null;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9') && c != '_') {
+        return null;
+      }
+    }
+    return new String[] {constraint, name};
+  }
+
+  private static boolean isLiteral(String segment) {
+    for (int i = 0; i < segment.length(); i++) {
+      if ("\\.[]{}()*+?^$|<>".indexOf(segment.charAt(i)) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true when the constraint can only match a single segment: word characters, ranges of letters or digits,
+   *         repetitions and alternatives
+   */
+  private static boolean isSegmentConstraint(String constraint) {
+    if (DEFAULT_CONSTRAINT.equals(constraint)) {
+      return true;
+    }
+    boolean inClass = false;
+    for (int i = 0; i < constraint.length(); i++) {
+      char c = constraint.charAt(i);
+      if (Character.isLetterOrDigit(c) && c < 128 || c == '_') {
+        continue;
+      }
+      if (c == '\\') {
+        i++;
+        if (i == constraint.length() || "dw".indexOf(constraint.charAt(i)) < 0) {
+          return false;
+        }
+      } else if (c == '[' && !inClass) {
+        inClass = true;
+      } else if (c == ']' && inClass) {
+        inClass = false;
+      } else if (c == '-' && inClass) {
+        // a range between two letters or two digits
+        if (i == 0 || i + 1 == constraint.length()
+            || !isSameKind(constraint.charAt(i - 1), constraint.charAt(i + 1))) {
+          return false;
+        }
+      } else if (inClass) {
+        return false;
+      } else if (c == '(') {
+        // a capturing group only
+        if (i + 1 < constraint.length() && "?{".indexOf(constraint.charAt(i + 1)) >= 0) {
+          return false;
+        }
+      } else if ("+*?|{},)".indexOf(c) < 0) {
+        return false;
+      }
+    }
+    return !inClass;
+  }
+
+  private static boolean isSameKind(char a, char b) {
+    return (a >= 'a' && a <= 'z' && b >= 'a' && b <= 'z') || (a >= 'A' && a <= 'Z' && b >= 'A' && b <= 'Z')
+        || (a >= '0' && a <= '9' && b >= '0' && b <= '9');
+  }
+
+  /**
+   * @return true when the constraint matches the rest of the path the same way out of the pattern of the route
+   */
+  private static boolean isRestConstraint(String constraint) {
+    // the back references count the groups of the whole pattern, the anchors and the look behinds see its start
+    if (constraint.indexOf('^') >= 0 || constraint.contains("(?<") || constraint.contains("({")) {
+      return false;
+    }
+    for (int i = 0; i < constraint.length() - 1; i++) {
+      if (constraint.charAt(i) == '\\') {
+        if ("0123456789kAG".indexOf(constraint.charAt(i + 1)) >= 0) {
+          return false;
+        }
+        i++;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A node of the trie, reached by the segments of a path.
+   */
+  private static final class Node {
+
+    private final Map<String, Node> literals = new HashMap<String, Node>(4);
+
+    private final List<Parameter> parameters = new ArrayList<Parameter>(2);
+
+    /** The first route ending at this node. */
+    private int route = Integer.MAX_VALUE;
+
+    /** The first route of this node and the nodes below. */
+    private int first = Integer.MAX_VALUE;
+
+    private Node getParameter(String constraint, boolean rest) {
+      for (Parameter parameter : parameters) {
+        if (parameter.rest == rest && parameter.constraint.equals(constraint)) {
+          return parameter.next;
+        }
+      }
+      Parameter parameter = new Parameter(constraint, rest);
+      parameters.add(parameter);
+      return parameter.next;
+    }
+  }
+
+  /**
+   * A parameter capturing a segment, or the rest of the path.
+   */
+  private static final class Parameter {
+
+    private final String constraint;
+
+    /** Null for the default constraint, which only requires a non empty segment. */
+    private final Pattern pattern;
+
+    private final boolean rest;
+
+    private final Node next = new Node();
+
+    private Parameter(String constraint, boolean rest) {
+      this.constraint = constraint;
+      this.pattern = DEFAULT_CONSTRAINT.equals(constraint) ? null : Pattern.compile(constraint);
+      this.rest = rest;
+    }
+
+    private boolean matches(String value) {
+      return pattern == null ? value.length() > 0 : pattern.matcher(value).matches();
+    }
+  }
+
+  /**
+   * The lookup of a path, keeping the first route found.
+   */
+  private static final class Search {
+
+    private final String path;
+
+    private final String[] captures;
+
+    private int best = Integer.MAX_VALUE;
+
+    private String[] bestCaptures;
+
+    private Search(String path, int maxParameters) {
+      this.path = path;
+      this.captures = new String[maxParameters];
+    }
+
+    /**
+     * @param node the node reached
+     * @param start the start of the next segment, after the end of the path when all the segments are read
+     * @param depth the number of captured parameters
+     */
+    private void visit(Node node, int start, int depth) {
+      if (node.first >= best) {
+        return;
+      }
+      if (start > path.length()) {
+        found(node, depth);
+        return;
+      }
+      int end = path.indexOf('/', start);
+      if (end < 0) {
+        end = path.length();
+      }
+      String segment = path.substring(start, end);
+      Node literal = node.literals.get(segment);
+      if (literal != null) {
+        visit(literal, end + 1, depth);
+      }
+      for (Parameter parameter : node.parameters) {
+        if (parameter.next.first >= best) {
+          continue;
+        }
+        String value = parameter.rest ? path.substring(start) : segment;
+        if (parameter.matches(value)) {
+          captures[depth] = value;
+          if (parameter.rest) {
+            found(parameter.next, depth + 1);
+          } else {
+            visit(parameter.next, end + 1, depth + 1);
+          }
+        }
+      }
+    }
+
+    private void found(Node node, int depth) {
+      if (node.route < best) {
+        best = node.route;
+        bestCaptures = new String[depth];
+        System.arraycopy(captures, 0, bestCaptures, 0, depth);
+      }
+    }
+  }
+
+  /**
+   * A route of an action, with the arguments read from the action.
+   */
+  static final class ReverseRoute {
+
+    final Route route;
+
+    final Map<String, String> actionArgs;
+
+    private ReverseRoute(Route route, Map<String, String> actionArgs) {
+      this.route = route;
+      this.actionArgs = actionArgs;
+    }
+  }
+
+}
@@ -16,9 +16,11 @@
  */
 package org.exoplatform.social.common.service;
 
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 
 import org.exoplatform.social.common.service.thread.ThreadPoolConfig;
+import org.exoplatform.social.common.service.thread.ThreadPoolMetrics;
 
 public interface ExecutorServiceManager {
 
@@ -57,5 +59,20 @@ public interface ExecutorServiceManager {
   ThreadPoolConfig getThreadPoolConfig(String id);
   
   ExecutorService newThreadPool(String name, ThreadPoolConfig config);
+
+  /**
+   * Gets the names of the thread pools created by the manager
+   *
+   * @return the names
+   */
+  Set<String> getThreadPoolNames();
+
+  /**
+   * Gets the metrics of a thread pool created by the manager
+   *
+   * @param name the name of the thread pool
+   * @return the metrics, null if there is no such pool
+   */
+  ThreadPoolMetrics getThreadPoolMetrics(String name);
   
 }
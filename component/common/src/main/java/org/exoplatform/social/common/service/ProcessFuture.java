@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.service;
+
+import java.util.concurrent.Future;
+
+/**
+ * The completion handle of a process run asynchronously by the {@link SocialServiceExecutor}.
+ *
+ * When the process fails, the exception field of the process context holds the cause.
+ *
+ * @since 4.1.0
+ */
+public interface ProcessFuture extends Future<ProcessContext> {
+
+  /**
+   * @return the context of the process
+   */
+  ProcessContext getProcessContext();
+
+  /**
+   * Invokes the callback once the process is done or failed, without blocking. The callback is run
+   * by the thread which completes the process, or at once by the calling thread when the process is
+   * already completed. The callbacks are invoked in the order they were added.
+   *
+   * @param callback the callback
+   * @return this handle, to chain the callbacks
+   */
+  ProcessFuture addCallback(AsyncCallback callback);
+
+}
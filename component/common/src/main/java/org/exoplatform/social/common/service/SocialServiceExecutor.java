@@ -17,7 +17,6 @@
 package org.exoplatform.social.common.service;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 public interface SocialServiceExecutor {
 
@@ -29,12 +28,46 @@ public interface SocialServiceExecutor {
 
   void setExecutorService(ExecutorService executorService);
 
-  Future<ProcessContext> asyncProcess(AsyncProcessor asyncProcessor,
-                                        ProcessContext processContext);
-  
+  /**
+   * Runs the processor in the background.
+   *
+   * @param asyncProcessor the processor
+   * @param processContext the context of the process
+   * @return the completion handle of the process
+   */
+  ProcessFuture asyncProcess(AsyncProcessor asyncProcessor,
+                             ProcessContext processContext);
+
+  /**
+   * Runs the processor in the background and invokes the callback once it's done or failed.
+   *
+   * @param asyncProcessor the processor
+   * @param processContext the context of the process
+   * @param callback the callback
+   * @return the completion handle of the process
+   */
+  ProcessFuture asyncProcess(AsyncProcessor asyncProcessor,
+                             ProcessContext processContext, AsyncCallback callback);
+
+  /**
+   * Runs the processor in the background, the method returns without waiting for the process.
+   *
+   * @param asyncProcessor the processor
+   * @param processContext the context of the process
+   * @return the process context
+   */
   ProcessContext async(AsyncProcessor asyncProcessor,
                                       ProcessContext processContext);
-  
+
+  /**
+   * Runs the processor in the background, the method returns without waiting for the process and
+   * the callback is invoked once the process is done or failed.
+   *
+   * @param asyncProcessor the processor
+   * @param processContext the context of the process
+   * @param callback the callback
+   * @return the process context
+   */
   ProcessContext async(AsyncProcessor asyncProcessor,
                        ProcessContext processContext, AsyncCallback callback);
 }
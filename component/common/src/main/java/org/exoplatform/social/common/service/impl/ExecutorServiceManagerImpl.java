@@ -20,15 +20,19 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import org.exoplatform.social.common.service.ExecutorServiceManager;
+import org.exoplatform.social.common.service.thread.BoundedThreadPoolExecutor;
 import org.exoplatform.social.common.service.thread.DefaultThreadPoolFactory;
 import org.exoplatform.social.common.service.thread.SocialThreadFactory;
 import org.exoplatform.social.common.service.thread.ThreadPoolConfig;
 import org.exoplatform.social.common.service.thread.ThreadPoolFactory;
+import org.exoplatform.social.common.service.thread.ThreadPoolMetrics;
 
 public class ExecutorServiceManagerImpl implements ExecutorServiceManager {
   
@@ -36,6 +40,7 @@ public class ExecutorServiceManagerImpl implements ExecutorServiceManager {
   private final List<ExecutorService> executorServices = new ArrayList<ExecutorService>();
   private String threadNamePattern;
   private final Map<String, ThreadPoolConfig> threadPoolProfiles = new HashMap<String, ThreadPoolConfig>();
+  private final Map<String, BoundedThreadPoolExecutor> threadPools = new ConcurrentHashMap<String, BoundedThreadPoolExecutor>();
   
   private ThreadPoolConfig defaultConfig;
   
@@ -82,9 +87,23 @@ public class ExecutorServiceManagerImpl implements ExecutorServiceManager {
     ExecutorService executorService = threadPoolFactory.newThreadPool(config, threadFactory);
 
     //
+    if (executorService instanceof BoundedThreadPoolExecutor) {
+      threadPools.put(name, (BoundedThreadPoolExecutor) executorService);
+    }
     return executorService;
   }
 
+  @Override
+  public Set<String> getThreadPoolNames() {
+    return threadPools.keySet();
+  }
+
+  @Override
+  public ThreadPoolMetrics getThreadPoolMetrics(String name) {
+    BoundedThreadPoolExecutor executor = threadPools.get(name);
+    return executor != null ? executor.getMetrics() : null;
+  }
+
   private ThreadFactory createThreadFactory(String name, boolean isDaemon, int priority) {
     return new SocialThreadFactory(threadNamePattern, name, isDaemon, priority);
   }
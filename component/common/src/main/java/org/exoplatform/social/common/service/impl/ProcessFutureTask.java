@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.common.service.AsyncCallback;
+import org.exoplatform.social.common.service.ProcessContext;
+import org.exoplatform.social.common.service.ProcessFuture;
+
+/**
+ * A {@link ProcessFuture} which runs the callbacks when the task completes.
+ *
+ * @since 4.1.0
+ */
+public class ProcessFutureTask extends FutureTask<ProcessContext> implements ProcessFuture {
+
+  private static final Log LOG = ExoLogger.getLogger(ProcessFutureTask.class);
+
+  private final ProcessContext processContext;
+
+  private final List<AsyncCallback> callbacks = new ArrayList<AsyncCallback>();
+
+  private boolean completed;
+
+  public ProcessFutureTask(Callable<ProcessContext> task, ProcessContext processContext) {
+    super(task);
+    this.processContext = processContext;
+  }
+
+  @Override
+  public ProcessContext getProcessContext() {
+    return processContext;
+  }
+
+  @Override
+  public ProcessFuture addCallback(AsyncCallback callback) {
+    synchronized (callbacks) {
+      if (!completed) {
+        callbacks.add(callback);
+        return this;
+      }
+    }
+    invoke(callback);
+    return this;
+  }
+
+  /**
+   * Completes the task with a failure, when it couldn't be run.
+   *
+   * @param t the cause
+   */
+  public void fail(Throwable t) {
+    setException(t);
+  }
+
+  @Override
+  protected void done() {
+
+    // the failures are given to the callbacks through the process context
+    try {
+      get();
+    } catch (CancellationException e) {
+      processContext.setException(e);
+    } catch (ExecutionException e) {
+      processContext.setException(e.getCause() != null ? e.getCause() : e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (processContext.isFailed()) {
+      LOG.warn("Asynchronous process failed", processContext.getException());
+    }
+
+    List<AsyncCallback> toInvoke;
+    synchronized (callbacks) {
+      completed = true;
+      toInvoke = new ArrayList<AsyncCallback>(callbacks);
+      callbacks.clear();
+    }
+    for (AsyncCallback callback : toInvoke) {
+      invoke(callback);
+    }
+
+  }
+
+  private void invoke(AsyncCallback callback) {
+    try {
+      callback.done(processContext);
+    } catch (RuntimeException e) {
+      LOG.warn("Callback " + callback + " failed", e);
+    }
+  }
+
+}
@@ -17,16 +17,14 @@
 package org.exoplatform.social.common.service.impl;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.exoplatform.social.common.service.AsyncCallback;
 import org.exoplatform.social.common.service.AsyncProcessor;
 import org.exoplatform.social.common.service.LogWatchCallable;
 import org.exoplatform.social.common.service.ProcessContext;
+import org.exoplatform.social.common.service.ProcessFuture;
 import org.exoplatform.social.common.service.Processor;
 import org.exoplatform.social.common.service.ServiceContext;
 import org.exoplatform.social.common.service.SocialServiceExecutor;
@@ -71,7 +69,7 @@ public class SocialServiceExecutorImpl implements SocialServiceExecutor {
   }
   
   @Override
-  public Future<ProcessContext> asyncProcess(final AsyncProcessor asyncProcessor, final ProcessContext processorContext) {
+  public ProcessFuture asyncProcess(final AsyncProcessor asyncProcessor, final ProcessContext processorContext) {
     Callable<ProcessContext> task = new Callable<ProcessContext>() {
       public ProcessContext call() throws Exception {
           return process(asyncProcessor, processorContext);
@@ -82,8 +80,18 @@ public class SocialServiceExecutorImpl implements SocialServiceExecutor {
       task = new LogWatchCallable<ProcessContext>(task, processorContext.getTraceElement());
     }
     
-    
-    return getExecutorService().submit(task);
+    ProcessFutureTask future = new ProcessFutureTask(task, processorContext);
+    try {
+      getExecutorService().execute(future);
+    } catch (RejectedExecutionException e) {
+      future.fail(e);
+    }
+    return future;
+  }
+
+  @Override
+  public ProcessFuture asyncProcess(AsyncProcessor asyncProcessor, ProcessContext processContext, AsyncCallback callback) {
+    return asyncProcess(asyncProcessor, processContext).addCallback(callback);
   }
   
   /**
@@ -118,55 +126,16 @@ public class SocialServiceExecutorImpl implements SocialServiceExecutor {
 
   @Override
   public ProcessContext async(AsyncProcessor asyncProcessor, ProcessContext processContext) {
-    Future<ProcessContext> future = asyncProcess(asyncProcessor, processContext);
-    try {
-      future.get(10, TimeUnit.MILLISECONDS);
-      //
-      return future.get();
-    } catch (InterruptedException e) {
-      processContext.setException(e);
-    } catch (ExecutionException e) {
-      processContext.setException(e);
-    } catch (TimeoutException e) {
-      processContext.setException(e);
-    }
-    
+    asyncProcess(asyncProcessor, processContext);
     return processContext;
   }
 
   @Override
-  public ProcessContext async(final AsyncProcessor asyncProcessor,
-                              final ProcessContext processContext,
-                              final AsyncCallback callback) {
-    Callable<ProcessContext> task = new Callable<ProcessContext>() {
-      public ProcessContext call() throws Exception {
-          return asyncProcessor.process(processContext, callback);
-      }
-    };
-    
-    if (SocialServiceContextImpl.getInstance().isTraced()) {
-      task = new LogWatchCallable<ProcessContext>(task, processContext.getTraceElement());
-    }
-    
-    
-    Future<ProcessContext> future =  getExecutorService().submit(task);
-    
-    try {
-      //Change timeout for Future when run debug mode
-      future.get(10, TimeUnit.MILLISECONDS);
-      //
-      return future.get();
-    } catch (InterruptedException e) {
-      processContext.setException(e);
-    } catch (ExecutionException e) {
-      processContext.setException(e);
-    } catch (TimeoutException e) {
-      processContext.setException(e);
-    }
-    
+  public ProcessContext async(AsyncProcessor asyncProcessor,
+                              ProcessContext processContext,
+                              AsyncCallback callback) {
+    asyncProcess(asyncProcessor, processContext, callback);
     return processContext;
   }
 
-  
- 
 }
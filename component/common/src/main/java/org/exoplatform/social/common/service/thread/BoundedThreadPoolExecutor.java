@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.service.thread;
+
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread pool with a bounded queue, a {@link SaturationPolicy} and {@link ThreadPoolMetrics}.
+ *
+ * @since 4.1.0
+ */
+public class BoundedThreadPoolExecutor extends ThreadPoolExecutor {
+
+  private final SaturationPolicy policy;
+
+  private final long offerTimeout;
+
+  private final BlockingDeque<Runnable> spillQueue;
+
+  private final ThreadPoolMetrics metrics;
+
+  /** Guards the moves of the spilled tasks, so that they keep their order. */
+  private final Lock drainLock = new ReentrantLock();
+
+  /** Set while the current thread gives a spilled task back to the pool, the task must not be spilled again. */
+  private final ThreadLocal<Boolean> resubmitting = new ThreadLocal<Boolean>();
+
+  /** The start time of the task run by the current pool thread. */
+  private final ThreadLocal<Long> started = new ThreadLocal<Long>();
+
+  /**
+   * @param corePoolSize the threads kept in the pool
+   * @param maxPoolSize the maximum number of threads
+   * @param keepAliveTime the time an idle thread above the core size is kept
+   * @param timeUnit the unit of the keep alive time
+   * @param workQueue the bounded queue of the tasks
+   * @param threadFactory creates the threads
+   * @param policy what is done with a task when the pool is saturated
+   * @param offerTimeout the ms a task waits for room in the queue with the block policy
+   * @param spillQueueSize the capacity of the overflow queue with the spill policy
+   * @throws IllegalArgumentException if the spill policy is used with a hand-off queue
+   */
+  public BoundedThreadPoolExecutor(int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit timeUnit,
+                                   BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory,
+                                   SaturationPolicy policy, long offerTimeout, int spillQueueSize) {
+    super(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, workQueue, threadFactory);
+    if (policy == SaturationPolicy.SPILL && isHandOff(workQueue)) {
+      // a hand-off queue only takes a task when a thread is polling, the spilled tasks could never go back
+      throw new IllegalArgumentException("The spill policy needs a queue that stores the tasks");
+    }
+    this.policy = policy;
+    this.offerTimeout = offerTimeout;
+    this.spillQueue = policy == SaturationPolicy.SPILL ? new LinkedBlockingDeque<Runnable>(Math.max(1, spillQueueSize)) : null;
+    this.metrics = new ThreadPoolMetrics(this);
+    setRejectedExecutionHandler(new SaturationHandler());
+  }
+
+  public SaturationPolicy getSaturationPolicy() {
+    return policy;
+  }
+
+  public ThreadPoolMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return the number of tasks waiting in the overflow queue
+   */
+  public int getSpillDepth() {
+    return spillQueue != null ? spillQueue.size() : 0;
+  }
+
+  /**
+   * @param workQueue a queue of tasks
+   * @return true if the queue hands the tasks over to the threads without storing them
+   */
+  static boolean isHandOff(BlockingQueue<Runnable> workQueue) {
+    return workQueue instanceof SynchronousQueue || workQueue.remainingCapacity() == 0;
+  }
+
+  /**
+   * The spilled tasks are still run: they are moved to the queue as the threads complete their tasks.
+   */
+  @Override
+  public void shutdown() {
+    if (spillQueue == null) {
+      super.shutdown();
+      return;
+    }
+    drainLock.lock();
+    try {
+      super.shutdown();
+      drainSpillQueue();
+    } finally {
+      drainLock.unlock();
+    }
+    // the threads may all have ended before the tasks were queued
+    if (!getQueue().isEmpty()) {
+      prestartCoreThread();
+    }
+  }
+
+  /**
+   * @return the tasks that never ran, the spilled ones included
+   */
+  @Override
+  public List<Runnable> shutdownNow() {
+    if (spillQueue == null) {
+      return super.shutdownNow();
+    }
+    drainLock.lock();
+    try {
+      List<Runnable> tasks = super.shutdownNow();
+      spillQueue.drainTo(tasks);
+      return tasks;
+    } finally {
+      drainLock.unlock();
+    }
+  }
+
+  @Override
+  protected void beforeExecute(Thread t, Runnable r) {
+    super.beforeExecute(t, r);
+    started.set(System.nanoTime());
+  }
+
+  /**
+   * The tasks are measured here rather than wrapped, so that remove() and purge() still find the tasks
+   * given by the callers.
+   */
+  @Override
+  protected void afterExecute(Runnable r, Throwable t) {
+    super.afterExecute(r, t);
+
+    Long start = started.get();
+    if (start != null) {
+      started.remove();
+      metrics.completed(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // a thread is free, the spilled tasks go back to the queue
+    drainSpillQueue();
+  }
+
+  private void drainSpillQueue() {
+    if (spillQueue == null || spillQueue.isEmpty()) {
+      return;
+    }
+    drainLock.lock();
+    try {
+      Runnable spilled;
+      while ((spilled = spillQueue.peekFirst()) != null) {
+        if (!resubmit(spilled)) {
+          break;
+        }
+        spillQueue.pollFirst();
+      }
+    } finally {
+      drainLock.unlock();
+    }
+  }
+
+  /**
+   * Gives a spilled task back to the pool, through execute() while the pool runs so that a thread is started
+   * when needed, and straight to the queue once it is shut down, as its threads still empty the queue.
+   *
+   * @param spilled the spilled task
+   * @return false if the pool is still saturated
+   */
+  private boolean resubmit(Runnable spilled) {
+    if (isShutdown()) {
+      return getQueue().offer(spilled);
+    }
+    resubmitting.set(Boolean.TRUE);
+    try {
+      execute(spilled);
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    } finally {
+      resubmitting.remove();
+    }
+  }
+
+  private class SaturationHandler implements RejectedExecutionHandler {
+
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+
+      if (resubmitting.get() != null) {
+        // the spilled task stays where it is
+        throw new RejectedExecutionException("The thread pool is still saturated");
+      }
+
+      if (executor.isShutdown()) {
+        metrics.rejected();
+        throw new RejectedExecutionException("The thread pool is shut down");
+      }
+
+      switch (policy) {
+        case CALLER_RUNS:
+          metrics.callerRuns();
+          r.run();
+          return;
+        case BLOCK:
+          try {
+            if (executor.getQueue().offer(r, offerTimeout, TimeUnit.MILLISECONDS)) {
+              return;
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          break;
+        case SPILL:
+          if (spillQueue.offer(r)) {
+            metrics.spilled();
+            // the queue may have been emptied meanwhile
+            drainSpillQueue();
+            return;
+          }
+          break;
+        default:
+          break;
+      }
+
+      metrics.rejected();
+      throw new RejectedExecutionException("The thread pool is saturated, " + metrics);
+    }
+
+  }
+
+}
@@ -18,7 +18,6 @@ package org.exoplatform.social.common.service.thread;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -29,8 +28,14 @@ import java.util.concurrent.TimeUnit;
 
 public class DefaultThreadPoolFactory implements ThreadPoolFactory {
 
+  /** The maximum number of threads of a cached thread pool. */
+  public static final int MAX_CACHED_POOL_SIZE = 100;
+
   public ExecutorService newCachedThreadPool(ThreadFactory threadFactory) {
-      return Executors.newCachedThreadPool(threadFactory);
+      // hands the tasks over to the threads, waits for an idle thread once the pool is full
+      return new BoundedThreadPoolExecutor(0, MAX_CACHED_POOL_SIZE, 60L, TimeUnit.SECONDS,
+                                           new SynchronousQueue<Runnable>(), threadFactory,
+                                           SaturationPolicy.BLOCK, ThreadPoolConfig.DEFAULT_OFFER_TIMEOUT, 0);
   }
   
   @Override
@@ -40,11 +45,23 @@ public class DefaultThreadPoolFactory implements ThreadPoolFactory {
                            config.getKeepAliveTime(),
                            config.getTimeUnit(),
                            config.getMaxQueueSize(), 
-                           factory);
+                           factory,
+                           config.getSaturationPolicy(),
+                           config.getOfferTimeout(),
+                           config.getSpillQueueSize());
   }
 
   public ExecutorService newThreadPool(int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit timeUnit,
                                        int maxQueueSize, ThreadFactory threadFactory) throws IllegalArgumentException {
+      return newThreadPool(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, maxQueueSize, threadFactory,
+                           ThreadPoolConfig.DEFAULT_SATURATION_POLICY,
+                           ThreadPoolConfig.DEFAULT_OFFER_TIMEOUT,
+                           ThreadPoolConfig.DEFAULT_SPILL_QUEUE_SIZE);
+  }
+
+  public ExecutorService newThreadPool(int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit timeUnit,
+                                       int maxQueueSize, ThreadFactory threadFactory, SaturationPolicy policy,
+                                       long offerTimeout, int spillQueueSize) throws IllegalArgumentException {
 
       // the core pool size must be higher than 0
       if (corePoolSize < 1) {
@@ -71,10 +88,13 @@ public class DefaultThreadPoolFactory implements ThreadPoolFactory {
           workQueue = new LinkedBlockingQueue<Runnable>(maxQueueSize);
       }
 
-      ThreadPoolExecutor answer = new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, workQueue);
-      answer.setThreadFactory(threadFactory);
-      answer.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
-      return answer;
+      if (policy == SaturationPolicy.SPILL && BoundedThreadPoolExecutor.isHandOff(workQueue)) {
+          // nothing can be spilled back to a direct-handover queue, the submitters wait for a thread instead
+          policy = SaturationPolicy.BLOCK;
+      }
+
+      return new BoundedThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, timeUnit, workQueue, threadFactory,
+                                           policy, offerTimeout, spillQueueSize);
   }
   
   @Override
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.service.thread;
+
+/**
+ * What a thread pool does with a task when its threads are busy and its queue is full.
+ *
+ * @since 4.1.0
+ */
+public enum SaturationPolicy {
+
+  /** The submitting thread runs the task. */
+  CALLER_RUNS("caller-runs"),
+
+  /** The task is rejected at once. */
+  SHED("shed"),
+
+  /** The submitting thread waits for room in the queue, the task is rejected after the offer timeout. */
+  BLOCK("block"),
+
+  /** The task waits in a bounded overflow queue, fed back to the pool as tasks complete. Needs a queue that stores the tasks. */
+  SPILL("spill");
+
+  private final String name;
+
+  private SaturationPolicy(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @param name the name of a policy, caller-runs for instance
+   * @param defaultPolicy the policy to use when the name is unknown
+   * @return the policy
+   */
+  public static SaturationPolicy of(String name, SaturationPolicy defaultPolicy) {
+    for (SaturationPolicy policy : values()) {
+      if (policy.name.equalsIgnoreCase(name)) {
+        return policy;
+      }
+    }
+    return defaultPolicy;
+  }
+
+}
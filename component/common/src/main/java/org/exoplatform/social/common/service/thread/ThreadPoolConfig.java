@@ -30,6 +30,14 @@ public class ThreadPoolConfig implements Serializable {
   private final String MAX_POOL_SIZE = "max-pool-size";
   private final String ASYNC_MODE = "async-mode";
   private final String THREAD_PRIORITY = "thread-priority";
+  private final String MAX_QUEUE_SIZE = "max-queue-size";
+  private final String SATURATION_POLICY = "saturation-policy";
+  private final String OFFER_TIMEOUT = "offer-timeout";
+  private final String SPILL_QUEUE_SIZE = "spill-queue-size";
+
+  public static final SaturationPolicy DEFAULT_SATURATION_POLICY = SaturationPolicy.SPILL;
+  public static final long DEFAULT_OFFER_TIMEOUT = 1000L;
+  public static final int DEFAULT_SPILL_QUEUE_SIZE = 10000;
   
   private String id;
   private Boolean defaultProfile;
@@ -40,6 +48,9 @@ public class ThreadPoolConfig implements Serializable {
   private Integer maxQueueSize;
   private int priority = Thread.NORM_PRIORITY;
   private boolean asyncMode;
+  private SaturationPolicy saturationPolicy = DEFAULT_SATURATION_POLICY;
+  private long offerTimeout = DEFAULT_OFFER_TIMEOUT;
+  private int spillQueueSize = DEFAULT_SPILL_QUEUE_SIZE;
   
   public ThreadPoolConfig(InitParams params) {
     
@@ -52,6 +63,10 @@ public class ThreadPoolConfig implements Serializable {
     ValueParam maxPoolSize = params.getValueParam(MAX_POOL_SIZE);
     ValueParam asyncMode = params.getValueParam(ASYNC_MODE);
     ValueParam threadPriority = params.getValueParam(THREAD_PRIORITY);
+    ValueParam maxQueueSize = params.getValueParam(MAX_QUEUE_SIZE);
+    ValueParam saturationPolicy = params.getValueParam(SATURATION_POLICY);
+    ValueParam offerTimeout = params.getValueParam(OFFER_TIMEOUT);
+    ValueParam spillQueueSize = params.getValueParam(SPILL_QUEUE_SIZE);
     
     //
     try {
@@ -84,6 +99,35 @@ public class ThreadPoolConfig implements Serializable {
     catch (Exception e) {
       this.asyncMode = false;
     }
+
+    //
+    try {
+      this.maxQueueSize = Integer.valueOf(maxQueueSize.getValue());
+    }
+    catch (Exception e) {
+      this.maxQueueSize = 1000;
+    }
+
+    //
+    if (saturationPolicy != null) {
+      this.saturationPolicy = SaturationPolicy.of(saturationPolicy.getValue(), DEFAULT_SATURATION_POLICY);
+    }
+
+    //
+    try {
+      this.offerTimeout = Long.valueOf(offerTimeout.getValue());
+    }
+    catch (Exception e) {
+      this.offerTimeout = DEFAULT_OFFER_TIMEOUT;
+    }
+
+    //
+    try {
+      this.spillQueueSize = Integer.valueOf(spillQueueSize.getValue());
+    }
+    catch (Exception e) {
+      this.spillQueueSize = DEFAULT_SPILL_QUEUE_SIZE;
+    }
   }
   
   public ThreadPoolConfig() {
@@ -235,4 +279,43 @@ public class ThreadPoolConfig implements Serializable {
   public void setAsyncMode(boolean asyncMode) {
     this.asyncMode = asyncMode;
   }
+
+  /**
+   * Gets what the pool does with a task when its threads are busy and its queue is full
+   *
+   * @return the saturation policy
+   */
+  public SaturationPolicy getSaturationPolicy() {
+    return saturationPolicy;
+  }
+
+  public void setSaturationPolicy(SaturationPolicy saturationPolicy) {
+    this.saturationPolicy = saturationPolicy;
+  }
+
+  /**
+   * Gets the ms a task waits for room in the queue with the {@link SaturationPolicy#BLOCK} policy
+   *
+   * @return the offer timeout
+   */
+  public long getOfferTimeout() {
+    return offerTimeout;
+  }
+
+  public void setOfferTimeout(long offerTimeout) {
+    this.offerTimeout = offerTimeout;
+  }
+
+  /**
+   * Gets the capacity of the overflow queue with the {@link SaturationPolicy#SPILL} policy
+   *
+   * @return the spill queue size
+   */
+  public int getSpillQueueSize() {
+    return spillQueueSize;
+  }
+
+  public void setSpillQueueSize(int spillQueueSize) {
+    this.spillQueueSize = spillQueueSize;
+  }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.service.thread;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The counters of a {@link BoundedThreadPoolExecutor}: the active threads, the queue depth, the
+ * rejected, spilled and completed tasks and a histogram of the task latencies, from the start
+ * of a task on a pool thread to its end.
+ *
+ * @since 4.1.0
+ */
+public class ThreadPoolMetrics {
+
+  /** The upper bounds of the latency buckets, in ms, the last bucket counts the longer tasks. */
+  private static final long[] BOUNDS = {1, 5, 10, 50, 100, 500, 1000, 5000, 10000};
+
+  private final ThreadPoolExecutor executor;
+
+  private final AtomicLong rejected = new AtomicLong();
+
+  private final AtomicLong spilled = new AtomicLong();
+
+  private final AtomicLong callerRuns = new AtomicLong();
+
+  private final AtomicLong completed = new AtomicLong();
+
+  private final AtomicLong totalLatency = new AtomicLong();
+
+  private final AtomicLongArray latencies = new AtomicLongArray(BOUNDS.length + 1);
+
+  public ThreadPoolMetrics(ThreadPoolExecutor executor) {
+    this.executor = executor;
+  }
+
+  void rejected() {
+    rejected.incrementAndGet();
+  }
+
+  void spilled() {
+    spilled.incrementAndGet();
+  }
+
+  void callerRuns() {
+    callerRuns.incrementAndGet();
+  }
+
+  void completed(long latency) {
+    completed.incrementAndGet();
+    totalLatency.addAndGet(latency);
+    int bucket = 0;
+    while (bucket < BOUNDS.length && latency > BOUNDS[bucket]) {
+      ++bucket;
+    }
+    latencies.incrementAndGet(bucket);
+  }
+
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  public int getPoolSize() {
+    return executor.getPoolSize();
+  }
+
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  public long getSpilled() {
+    return spilled.get();
+  }
+
+  public long getCallerRuns() {
+    return callerRuns.get();
+  }
+
+  public long getCompleted() {
+    return completed.get();
+  }
+
+  /**
+   * @return the mean latency of the completed tasks in ms, 0 when no task completed
+   */
+  public long getMeanLatency() {
+    long count = completed.get();
+    return count == 0 ? 0 : totalLatency.get() / count;
+  }
+
+  /**
+   * @return the number of completed tasks by latency bucket, "<=10ms" for instance, in the order of the buckets
+   */
+  public Map<String, Long> getLatencyHistogram() {
+    Map<String, Long> histogram = new LinkedHashMap<String, Long>();
+    for (int i = 0; i < BOUNDS.length; ++i) {
+      histogram.put("<=" + BOUNDS[i] + "ms", latencies.get(i));
+    }
+    histogram.put(">" + BOUNDS[BOUNDS.length - 1] + "ms", latencies.get(BOUNDS.length));
+    return histogram;
+  }
+
+  public void reset() {
+    rejected.set(0);
+    spilled.set(0);
+    callerRuns.set(0);
+    completed.set(0);
+    totalLatency.set(0);
+    for (int i = 0; i < latencies.length(); ++i) {
+      latencies.set(i, 0);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "active=" + getActiveCount() + ", poolSize=" + getPoolSize() + ", queueDepth=" + getQueueDepth()
+        + ", rejected=" + rejected.get() + ", spilled=" + spilled.get() + ", callerRuns=" + callerRuns.get()
+        + ", completed=" + completed.get() + ", meanLatency=" + getMeanLatency() + "ms, latencies=" + getLatencyHistogram();
+  }
+
+}
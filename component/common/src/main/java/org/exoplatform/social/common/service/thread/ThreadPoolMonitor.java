@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.service.thread;
+
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.social.common.service.ExecutorServiceManager;
+import org.exoplatform.social.common.service.impl.SocialServiceContextImpl;
+
+/**
+ * Exposes the metrics of the social thread pools.
+ *
+ * @since 4.1.0
+ */
+@Managed
+@NameTemplate({@Property(key = "service", value = "social"), @Property(key = "view", value = "threadpools")})
+@ManagedDescription("Social thread pools")
+public class ThreadPoolMonitor {
+
+  private ExecutorServiceManager getManager() {
+    return SocialServiceContextImpl.getInstance().getExecutorServiceManager();
+  }
+
+  @Managed
+  @ManagedDescription("The names of the thread pools")
+  public String getThreadPoolNames() {
+    return getManager().getThreadPoolNames().toString();
+  }
+
+  @Managed
+  @ManagedDescription("The active threads, queue depth, rejected tasks and latencies of the given thread pool")
+  public String getMetrics(@ManagedDescription("The thread pool name, Social for instance")
+                           @ManagedName("name") String name) {
+    ThreadPoolMetrics metrics = getManager().getThreadPoolMetrics(name);
+    return metrics != null ? metrics.toString() : null;
+  }
+
+  @Managed
+  @ManagedDescription("The metrics of all the thread pools")
+  public String getAllMetrics() {
+    StringBuilder sb = new StringBuilder();
+    for (String name : getManager().getThreadPoolNames()) {
+      sb.append(name).append(": ").append(getManager().getThreadPoolMetrics(name)).append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Managed
+  @ManagedDescription("Resets the counters of all the thread pools")
+  public void resetMetrics() {
+    for (String name : getManager().getThreadPoolNames()) {
+      ThreadPoolMetrics metrics = getManager().getThreadPoolMetrics(name);
+      if (metrics != null) {
+        metrics.reset();
+      }
+    }
+  }
+
+}
@@ -35,22 +35,22 @@ public class AsyncProcessorTool {
   public static void process(final AsyncProcessor processor, final ProcessContext processContext) throws Exception {
       final CountDownLatch latch = new CountDownLatch(1);
       processor.start(processContext);
-      ProcessContext got = processor.process(processContext, new AsyncCallback() {
-          public void done(ProcessContext processContext) {
-              if (processContext.isFailed() == false) {
-                  latch.countDown();
-              }
-          }
+      try {
+        ProcessContext got = processor.process(processContext, new AsyncCallback() {
+            public void done(ProcessContext processContext) {
+                latch.countDown();
+            }
 
-          @Override
-          public String toString() {
-              return "Done " + processor;
-          }
-      });
-      if (got.isInProgress()) {
-          latch.await();
+            @Override
+            public String toString() {
+                return "Done " + processor;
+            }
+        });
+        if (got.isInProgress() && got.isFailed() == false) {
+            latch.await();
+        }
+      } finally {
+        processor.end(processContext);
       }
-      
-      processor.end(processContext);
   }
 }
@@ -0,0 +1,499 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.xmlprocessor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.exoplatform.social.common.xmlprocessor.filters.DOMContentEscapeFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.DOMLineBreakerFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.DOMXMLTagFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.LineBreakerFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.URLConverterFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.XMLBalancerFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.XMLTagFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.model.Attributes;
+
+/**
+ * Applies a chain of String filters in a single pass over the input: {@link XMLBalancerFilterPlugin}, then
+ * optionally {@link XMLTagFilterPlugin}, {@link LineBreakerFilterPlugin} and {@link URLConverterFilterPlugin}.
+ * The DOM filters of the chain leave the Strings untouched and are ignored.
+ *
+ * The input is read once by a state machine which balances the tags, filters them, breaks the lines and
+ * converts the links into a buffer reused by each thread, giving the output of the chain. The input the
+ * state machine does not read the way the chain does (comments, unquoted attributes, tags spread over several
+ * lines...) is given to the filters of the chain.
+ *
+ * @since 4.1.0
+ */
+public class StreamingXMLFilter implements Filter {
+
+  /** The buffers larger than this are not kept for the next input. */
+  private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+  private final List<Filter> filters;
+
+  private final XMLTagFilterPlugin tagFilter;
+
+  private final boolean breakLines;
+
+  private final URLConverterFilterPlugin urlConverter;
+
+  private final ThreadLocal<State> states = new ThreadLocal<State>() {
+    @Override
+    protected State initialValue() {
+      return new State();
+    }
+  };
+
+  private StreamingXMLFilter(List<Filter> filters, XMLTagFilterPlugin tagFilter, boolean breakLines,
+                             URLConverterFilterPlugin urlConverter) {
+    this.filters = filters;
+    this.tagFilter = tagFilter;
+    this.breakLines = breakLines;
+    this.urlConverter = urlConverter;
+  }
+
+  /**
+   * Builds the single pass filter of a chain of filters.
+   *
+   * @param filters the chain of filters
+   * @return the filter applying the chain in one pass, null when the chain has other filters or another order
+   */
+  public static StreamingXMLFilter compile(List<Filter> filters) {
+    XMLBalancerFilterPlugin balancer = null;
+    XMLTagFilterPlugin tagFilter = null;
+    LineBreakerFilterPlugin lineBreaker = null;
+    URLConverterFilterPlugin urlConverter = null;
+    for (Filter filter : filters) {
+      // the subclasses may filter differently
+      Class<?> type = filter.getClass();
+      if (type == DOMContentEscapeFilterPlugin.class || type == DOMLineBreakerFilterPlugin.class
+          || type == DOMXMLTagFilterPlugin.class) {
+        continue;
+      }
+      if (type == XMLBalancerFilterPlugin.class && balancer == null) {
+        balancer = (XMLBalancerFilterPlugin) filter;
+      } else if (type == XMLTagFilterPlugin.class && balancer != null && tagFilter == null
+          && lineBreaker == null && urlConverter == null) {
+        tagFilter = (XMLTagFilterPlugin) filter;
+      } else if (type == LineBreakerFilterPlugin.class && balancer != null && lineBreaker == null
+          && urlConverter == null) {
+        lineBreaker = (LineBreakerFilterPlugin) filter;
+      } else if (type == URLConverterFilterPlugin.class && balancer != null && urlConverter == null) {
+        urlConverter = (URLConverterFilterPlugin) filter;
+      } else {
+        return null;
+      }
+    }
+    if (balancer == null) {
+      return null;
+    }
+    return new StreamingXMLFilter(new ArrayList<Filter>(filters), tagFilter, lineBreaker != null, urlConverter);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object doFilter(Object input) {
+    if (!(input instanceof String)) {
+      return input;
+    }
+    State state = states.get();
+    state.reset(tagFilter == null ? null : tagFilter.getAllowedTags());
+    try {
+      if (state.read((String) input)) {
+        return state.output.toString();
+      }
+    } finally {
+      if (state.output.capacity() > MAX_BUFFER_SIZE || state.text.capacity() > MAX_BUFFER_SIZE) {
+        states.remove();
+      }
+    }
+    for (Filter filter : filters) {
+      input = filter.doFilter(input);
+    }
+    return input;
+  }
+
+  /**
+   * An element opened by the balancer.
+   */
+  private static class Element {
+
+    private final String name;
+
+    private final Map<String, String> attributes;
+
+    /** An empty br or img is closed by its start tag, which is written once its content is known. */
+    private boolean pending;
+
+    private Element(String name, Map<String, String> attributes, boolean pending) {
+      this.name = name;
+      this.attributes = attributes;
+      this.pending = pending;
+    }
+  }
+
+  /**
+   * The state of the pass over an input, reused by the next inputs of the thread.
+   */
+  private class State {
+
+    private final StringBuilder output = new StringBuilder();
+
+    /** The escaped text written since the last tag, in which the links are converted. */
+    private final StringBuilder text = new StringBuilder();
+
+    private final List<Element> elements = new ArrayList<Element>();
+
+    /** For each written element, whether the links of its text are converted. */
+    private boolean[] converted = new boolean[16];
+
+    /** For each written element, whether its next child is skipped by the link conversion. */
+    private boolean[] skipped = new boolean[16];
+
+    private int depth;
+
+    private Map<String, Attributes> allowedTags;
+
+    private void reset(Map<String, Attributes> allowedTags) {
+      this.allowedTags = allowedTags;
+      output.setLength(0);
+      text.setLength(0);
+      elements.clear();
+      depth = 0;
+      converted[0] = true;
+      skipped[0] = false;
+    }
+
+    /**
+     * Reads the input like the tokenizer: a tag runs from a '<' to the next '>', the text runs up to the next '<'.
+     *
+     * @return false when the input is not read the way the filters do
+     */
+    private boolean read(String input) {
+      int length = input.length();
+      int position = 0;
+      while (position < length) {
+        int tagStart = input.indexOf('<', position);
+        int textEnd = tagStart < 0 ? length : tagStart;
+        if (textEnd > position) {
+          openPendingElement();
+          writeText(StringEscapeUtils.escapeHtml(input.substring(position, textEnd)));
+        }
+        if (tagStart < 0) {
+          break;
+        }
+        int tagEnd = input.indexOf('>', tagStart);
+        if (tagEnd < 0 || !readTag(input, tagStart, tagEnd)) {
+          return false;
+        }
+        position = tagEnd + 1;
+      }
+      while (!elements.isEmpty()) {
+        closeElement(elements.remove(elements.size() - 1));
+      }
+      flushText();
+      return true;
+    }
+
+    /**
+     * Reads the start and end tags the patterns of {@link DOMParser} read the same way: a name, then the
+     * quoted attributes separated by spaces and an optional '/', on a single line.
+     */
+    private boolean readTag(String input, int tagStart, int tagEnd) {
+      for (int i = tagStart + 1; i < tagEnd; i++) {
+        char c = input.charAt(i);
+        if (c == '<' || c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+          return false;
+        }
+      }
+      boolean endTag = input.charAt(tagStart + 1) == '/';
+      int nameStart = endTag ? tagStart + 2 : tagStart + 1;
+      int position = skipWord(input, nameStart, tagEnd);
+      String name = toName(input, nameStart, position);
+      if (name == null) {
+        return false;
+      }
+
+      if (endTag) {
+        if (skipSpaces(input, position, tagEnd) != tagEnd) {
+          return false;
+        }
+        readEndTag(name, input.substring(tagStart, tagEnd + 1));
+        return true;
+      }
+
+      Map<String, String> attributes = null;
+      boolean selfClosed = false;
+      while (true) {
+        int spaces = position;
+        position = skipSpaces(input, position, tagEnd);
+        if (position == tagEnd) {
+          break;
+        }
+        if (input.charAt(position) == '/') {
+          if (skipSpaces(input, position + 1, tagEnd) != tagEnd) {
+            return false;
+          }
+          selfClosed = true;
+          break;
+        }
+        if (position == spaces) {
+          return false;
+        }
+        int keyStart = position;
+        position = skipWord(input, keyStart, tagEnd);
+        String key = toName(input, keyStart, position);
+        if (key == null) {
+          return false;
+        }
+        position = skipSpaces(input, position, tagEnd);
+        if (position == tagEnd || input.charAt(position) != '=') {
+          return false;
+        }
+        position = skipSpaces(input, position + 1, tagEnd);
+        if (position == tagEnd) {
+          return false;
+        }
+        char quote = input.charAt(position);
+        int valueEnd = quote == '"' || quote == '\'' ? input.indexOf(quote, position + 1) : -1;
+        if (valueEnd < 0 || valueEnd >= tagEnd) {
+          return false;
+        }
+        String value = input.substring(position + 1, valueEnd);
+        // the attributes are written between double quotes
+        if (quote == '\'' && value.indexOf('"') >= 0) {
+          return false;
+        }
+        if (attributes == null) {
+          attributes = new LinkedHashMap<String, String>(4);
+        }
+        attributes.put(key, value);
+        position = valueEnd + 1;
+      }
+      readStartTag(name, attributes, selfClosed);
+      return true;
+    }
+
+    private void readStartTag(String name, Map<String, String> attributes, boolean selfClosed) {
+      openPendingElement();
+      boolean empty = "br".equals(name) || "img".equals(name);
+      if (selfClosed) {
+        writeStartTag(name, attributes, empty);
+        if (!empty) {
+          writeEndTag(name);
+        }
+      } else {
+        elements.add(new Element(name, attributes, empty));
+        if (!empty) {
+          writeStartTag(name, attributes, false);
+        }
+      }
+    }
+
+    /**
+     * Closes the elements up to the last one of the same name, or writes the end tag as text when none is open.
+     */
+    private void readEndTag(String name, String tag) {
+      int index = elements.size() - 1;
+      while (index >= 0 && !elements.get(index).name.equals(name)) {
+        index--;
+      }
+      if (index < 0) {
+        openPendingElement();
+        writeText(StringEscapeUtils.escapeHtml(tag));
+        return;
+      }
+      while (elements.size() > index) {
+        closeElement(elements.remove(elements.size() - 1));
+      }
+    }
+
+    private void openPendingElement() {
+      if (!elements.isEmpty()) {
+        Element element = elements.get(elements.size() - 1);
+        if (element.pending) {
+          element.pending = false;
+          writeStartTag(element.name, element.attributes, false);
+        }
+      }
+    }
+
+    private void closeElement(Element element) {
+      if (element.pending) {
+        writeStartTag(element.name, element.attributes, true);
+      } else {
+        writeEndTag(element.name);
+      }
+    }
+
+    /**
+     * Writes a start tag as balanced, then filtered by the allowed tags and attributes.
+     */
+    private void writeStartTag(String name, Map<String, String> attributes, boolean empty) {
+      Attributes allowedAttributes = null;
+      if (allowedTags != null) {
+        if (!allowedTags.containsKey(name)) {
+          writeText(StringEscapeUtils.escapeHtml(toTag(name, attributes, null, empty)));
+          return;
+        }
+        allowedAttributes = allowedTags.get(name);
+      }
+      String tag = toTag(name, attributes, allowedAttributes, empty);
+      flushText();
+      if (urlConverter != null) {
+        if (empty) {
+          skipped[depth] = false;
+        } else {
+          push(converted[depth] && !skipped[depth] && !"a".equals(name));
+        }
+      }
+      output.append(tag);
+    }
+
+    private void writeEndTag(String name) {
+      if (allowedTags != null && !allowedTags.containsKey(name)) {
+        writeText("&lt;/" + name + "&gt;");
+        return;
+      }
+      flushText();
+      if (urlConverter != null) {
+        depth--;
+      }
+      output.append("</").append(name).append('>');
+    }
+
+    /**
+     * Writes an escaped text, its line breaks replaced by br tags.
+     */
+    private void writeText(String escaped) {
+      int start = 0;
+      if (breakLines) {
+        int lineEnd;
+        while ((lineEnd = escaped.indexOf('\n', start)) >= 0) {
+          int end = lineEnd > start && escaped.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+          appendText(escaped, start, end);
+          flushText();
+          if (urlConverter != null) {
+            skipped[depth] = false;
+          }
+          output.append("<br />");
+          start = lineEnd + 1;
+        }
+      }
+      appendText(escaped, start, escaped.length());
+    }
+
+    private void appendText(String escaped, int start, int end) {
+      if (urlConverter == null) {
+        output.append(escaped, start, end);
+      } else {
+        text.append(escaped, start, end);
+      }
+    }
+
+    /**
+     * Writes the text since the last tag, its links converted unless it is in a link. As done by
+     * {@link URLConverterFilterPlugin}, the element following a converted text is not converted.
+     */
+    private void flushText() {
+      if (text.length() == 0) {
+        return;
+      }
+      if (converted[depth]) {
+        skipped[depth] = urlConverter.convertText(text.toString(), output) > 0;
+      } else {
+        output.append(text);
+      }
+      text.setLength(0);
+    }
+
+    private void push(boolean convert) {
+      skipped[depth] = false;
+      depth++;
+      if (depth == converted.length) {
+        converted = copyOf(converted);
+        skipped = copyOf(skipped);
+      }
+      converted[depth] = convert;
+      skipped[depth] = false;
+    }
+  }
+
+  private static boolean[] copyOf(boolean[] values) {
+    boolean[] copy = new boolean[values.length * 2];
+    System.arraycopy(values, 0, copy, 0, values.length);
+    return copy;
+  }
+
+  private static String toTag(String name, Map<String, String> attributes, Attributes allowedAttributes,
+                              boolean empty) {
+    StringBuilder tag = new StringBuilder().append('<').append(name);
+    if (attributes != null) {
+      for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+        if (allowedAttributes == null || allowedAttributes.hasKey(attribute.getKey())) {
+          tag.append(' ').append(attribute.getKey()).append("=\"").append(attribute.getValue()).append('"');
+        }
+      }
+    }
+    return tag.append(empty ? " />" : ">").toString();
+  }
+
+  private static int skipWord(String input, int position, int end) {
+    while (position < end && isWordChar(input.charAt(position))) {
+      position++;
+    }
+    return position;
+  }
+
+  private static int skipSpaces(String input, int position, int end) {
+    while (position < end) {
+      char c = input.charAt(position);
+      if (c != ' ' && c != '\t' && c != '\u000B' && c != '\f') {
+        break;
+      }
+      position++;
+    }
+    return position;
+  }
+
+  /**
+   * @return the lower cased name, null when it is empty or not lower cased to word characters
+   */
+  private static String toName(String input, int start, int end) {
+    if (start == end) {
+      return null;
+    }
+    String name = input.substring(start, end).toLowerCase();
+    for (int i = 0; i < name.length(); i++) {
+      if (!isWordChar(name.charAt(i))) {
+        return null;
+      }
+    }
+    return name;
+  }
+
+  private static boolean isWordChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+  }
+
+}
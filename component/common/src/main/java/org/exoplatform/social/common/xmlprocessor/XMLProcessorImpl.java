@@ -35,6 +35,16 @@ public class XMLProcessorImpl implements XMLProcessor {
    */
   private LinkedList<Filter> filters;
 
+  /**
+   * The filters applied to the Strings in one pass, null when they can not be.
+   */
+  private volatile StreamingXMLFilter streamingFilter;
+
+  /**
+   * Whether {@link #streamingFilter} is built from the current filters.
+   */
+  private volatile boolean streamingFilterBuilt;
+
   /**
    * Constructor
    */
@@ -48,6 +58,7 @@ public class XMLProcessorImpl implements XMLProcessor {
   @Override
   public void addFilter(Filter filter) {
     filters.add(filter);
+    streamingFilterBuilt = false;
   }
 
   /**
@@ -56,6 +67,7 @@ public class XMLProcessorImpl implements XMLProcessor {
   @Override
   public void removeFilter(Filter addedFilter) {
     filters.remove(addedFilter);
+    streamingFilterBuilt = false;
   }
 
   /**
@@ -88,6 +100,7 @@ public class XMLProcessorImpl implements XMLProcessor {
         filters.remove(filter);
       }
     }
+    streamingFilterBuilt = false;
   }
 
 
@@ -96,6 +109,12 @@ public class XMLProcessorImpl implements XMLProcessor {
    */
   public Object process(Object input) {
     if (input == null) return input;
+    if (input instanceof String) {
+      StreamingXMLFilter filter = getStreamingFilter();
+      if (filter != null) {
+        return filter.doFilter(input);
+      }
+    }
     for (Iterator<Filter> filterIterator = filters.iterator();
          filterIterator.hasNext();
          ) {
@@ -104,4 +123,12 @@ public class XMLProcessorImpl implements XMLProcessor {
     }
     return input;
   }
+
+  private StreamingXMLFilter getStreamingFilter() {
+    if (!streamingFilterBuilt) {
+      streamingFilter = StreamingXMLFilter.compile(filters);
+      streamingFilterBuilt = true;
+    }
+    return streamingFilter;
+  }
 }
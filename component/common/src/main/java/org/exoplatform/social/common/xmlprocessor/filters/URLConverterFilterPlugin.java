@@ -137,39 +137,25 @@ public class URLConverterFilterPlugin extends BaseXMLFilterPlugin {
     return 0;
   }
   
-  private int convertNode(Node currentNode){
-    String content = StringEscapeUtils.unescapeHtml(currentNode.getContent());
+  private int convertNode(final Node currentNode){
     int insertedCount = 0; // if found for delete the original after parsing
 
     if(!currentNode.isRootNode()){
-      Node currentProccessNode = currentNode;
-      Node parrentNode = currentNode.getParentNode();
-      
-      int lastMatch = 0;
-      
-      Matcher m = URL_PATTERN.matcher(content);
-      
-      while (m.find()) {
-        String textLink = content.substring(m.start(), m.end());
-        String url = textLink;
-        int start = m.start();
-        int end = m.end();
-        
-        if((start == 0 || content.charAt(start-1) == ' ') &&
-            (end == content.length() || content.charAt(end) == ' ')){
-          if(!HAVE_PROTOCOL_PREFIX.matcher(url).matches()){
-            url = DEFAULT_PROTOCOL + url;
-          }
+      final Node parrentNode = currentNode.getParentNode();
+
+      insertedCount = convertLinks(StringEscapeUtils.unescapeHtml(currentNode.getContent()), new LinkHandler() {
+        private Node currentProccessNode = currentNode;
+
+        public void text(String text) {
           // case when string like this: "abc http://xyz" so we must create text node abc
-          if(m.start() > lastMatch){
-            Node textNode = new Node();
-            textNode.setContent(StringEscapeUtils.escapeHtml(content.substring(lastMatch, m.start())));
-            
-            parrentNode.insertAfter(currentProccessNode, textNode);
-            currentProccessNode = textNode;
-            insertedCount++;
-          }
-          
+          Node textNode = new Node();
+          textNode.setContent(StringEscapeUtils.escapeHtml(text));
+
+          parrentNode.insertAfter(currentProccessNode, textNode);
+          currentProccessNode = textNode;
+        }
+
+        public void link(String url, String textLink) {
           // create <a> node
           Node aHrefNode = new Node();
           aHrefNode.setTitle("a");
@@ -190,26 +176,94 @@ public class URLConverterFilterPlugin extends BaseXMLFilterPlugin {
           // insert <a> to the child list of parrentNode
           parrentNode.insertAfter(currentProccessNode, aHrefNode);
           currentProccessNode = aHrefNode;
-          
-          lastMatch = m.end(); // update the lastMatch of 
-          insertedCount++;
         }
-      }
-      if((lastMatch + 1) < content.length()){
-        Node textNode = new Node();
-        textNode.setContent(StringEscapeUtils.escapeHtml(content.substring(lastMatch, content.length())));
-        
-        parrentNode.insertAfter(currentProccessNode, textNode);
-        currentProccessNode = textNode;
-        insertedCount++;        
-      }
+      });
       if(insertedCount > 0){
         parrentNode.getChildNodes().remove(currentNode);
       }
     }
     return insertedCount;
   }
-  
+
+  /**
+   * Appends the content of a text node with its links converted, as done for the nodes by {@link #doFilter(Object)}.
+   *
+   * @param text the escaped content of the text node
+   * @param output the buffer to append to
+   * @return the number of nodes the text node is replaced with. The text node is kept as it is, and 0 returned,
+   *         only when it has no link and at most one character, otherwise its text is escaped again.
+   * @since 4.1.0
+   */
+  public int convertText(String text, final StringBuilder output) {
+    int insertedCount = convertLinks(StringEscapeUtils.unescapeHtml(text), new LinkHandler() {
+      public void text(String part) {
+        output.append(StringEscapeUtils.escapeHtml(part));
+      }
+
+      public void link(String url, String textLink) {
+        output.append("<a href=\"").append(url).append("\" target=\"_blank\">")
+              .append(StringEscapeUtils.escapeHtml(shortenURL(textLink))).append("</a>");
+      }
+    });
+    if (insertedCount == 0) {
+      output.append(text);
+    }
+    return insertedCount;
+  }
+
+  /**
+   * Splits a text around its links, a link being separated by spaces.
+   *
+   * @param content the unescaped text
+   * @param handler receives the parts of the text in order
+   * @return the number of parts, 0 when the text has no link and at most one character
+   */
+  private int convertLinks(String content, LinkHandler handler) {
+    int count = 0;
+    int lastMatch = 0;
+
+    // a link has either a dotted host or a protocol
+    if (content.indexOf('.') >= 0 || content.indexOf(':') >= 0) {
+      Matcher m = URL_PATTERN.matcher(content);
+      while (m.find()) {
+        String textLink = content.substring(m.start(), m.end());
+        String url = textLink;
+        int start = m.start();
+        int end = m.end();
+
+        if((start == 0 || content.charAt(start-1) == ' ') &&
+            (end == content.length() || content.charAt(end) == ' ')){
+          if(!HAVE_PROTOCOL_PREFIX.matcher(url).matches()){
+            url = DEFAULT_PROTOCOL + url;
+          }
+          if(start > lastMatch){
+            handler.text(content.substring(lastMatch, start));
+            count++;
+          }
+          handler.link(url, textLink);
+          lastMatch = end; // update the lastMatch of
+          count++;
+        }
+      }
+    }
+    if((lastMatch + 1) < content.length()){
+      handler.text(content.substring(lastMatch));
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Receives the parts of a text split by {@link URLConverterFilterPlugin#convertLinks(String, LinkHandler)}.
+   */
+  private interface LinkHandler {
+
+    void text(String text);
+
+    void link(String url, String textLink);
+
+  }
+
   private String shortenURL(String url) {
     if (urlMaxLength < 3 || url.length() < urlMaxLength)
       return url;
@@ -17,7 +17,11 @@
 package org.exoplatform.social.common;
 
 import org.exoplatform.social.common.jcr.filter.FilterLiteralTest;
+import org.exoplatform.social.common.lifecycle.LifeCycleEventQueueTest;
+import org.exoplatform.social.common.router.RouteTableTest;
+import org.exoplatform.social.common.service.thread.BoundedThreadPoolExecutorTest;
 import org.exoplatform.social.common.xmlprocessor.DOMParserTest;
+import org.exoplatform.social.common.xmlprocessor.StreamingXMLFilterTest;
 import org.exoplatform.social.common.xmlprocessor.TokenizerTest;
 import org.exoplatform.social.common.xmlprocessor.filters.DOMContentEscapeFilterPluginTest;
 import org.exoplatform.social.common.xmlprocessor.filters.DOMLineBreakerFilterPluginTest;
@@ -45,7 +49,11 @@ import org.junit.runners.Suite.SuiteClasses;
   URLConverterFilterPluginTest.class,
   XMLBalancerFilterPluginTest.class,
   XMLTagFilterPluginTest.class,
-  FilterLiteralTest.class
+  StreamingXMLFilterTest.class,
+  FilterLiteralTest.class,
+  RouteTableTest.class,
+  BoundedThreadPoolExecutorTest.class,
+  LifeCycleEventQueueTest.class
   })
 public class NoContainerTestSuite {
   
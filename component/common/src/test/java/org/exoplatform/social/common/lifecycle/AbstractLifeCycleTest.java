@@ -18,8 +18,12 @@
  */
 package org.exoplatform.social.common.lifecycle;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
@@ -157,6 +161,53 @@ public class AbstractLifeCycleTest extends TestCase {
 
   }
 
+  public void testSyncBroadcastOnCallingThread() {
+
+    AwaitingLifeCycle lifecycle = new AwaitingLifeCycle(syncCompletionService);
+    MockThreadListener capture = new MockThreadListener();
+    lifecycle.addListener(capture);
+
+    lifecycle.event1(null, "foo");
+
+    assertTrue(capture.hasEvent("foo"));
+    assertEquals(1, capture.threads.size());
+    assertSame(Thread.currentThread(), capture.threads.get(0));
+    assertEquals("[]", syncCompletionService.getQueueNames());
+
+  }
+
+  public void testAsyncRecoveryOfLoggedEvent() throws Exception {
+
+    File directory = File.createTempFile("lifecycle", "");
+    directory.delete();
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      InitParams params = new InitParams();
+      params.addParameter(createParam("async-execution", "true"));
+      params.addParameter(createParam("log-directory", directory.getPath()));
+
+      // the listener does not get the event before the stop
+      LoggingLifeCycle lifecycle = new LoggingLifeCycle(new LifeCycleCompletionService(params));
+      BlockingListener blocking = new BlockingListener(release);
+      lifecycle.addListener(blocking);
+      lifecycle.event1("john", "foo");
+      assertTrue(blocking.started.await(5, TimeUnit.SECONDS));
+
+      // the event is dispatched again after the restart, with its logged payload
+      LoggingLifeCycle restarted = new LoggingLifeCycle(new LifeCycleCompletionService(params));
+      BlockingListener capture = new BlockingListener(new CountDownLatch(0));
+      restarted.addListener(capture);
+      assertTrue(capture.started.await(5, TimeUnit.SECONDS));
+      assertTrue(capture.hasEvent("foo"));
+      assertEquals("john", capture.sources.get(0));
+    }
+    finally {
+      release.countDown();
+      new File(directory, LifeCycleLog.FILE_NAME).delete();
+      directory.delete();
+    }
+
+  }
 
   class MockEvent extends LifeCycleEvent<String,String> {
 
@@ -184,6 +235,39 @@ public class AbstractLifeCycleTest extends TestCase {
 
   }
 
+  class MockThreadListener extends MockListener {
+    public List<Thread> threads = new ArrayList<Thread>();
+
+    protected void recordEvent(MockEvent event) {
+      super.recordEvent(event);
+      threads.add(Thread.currentThread());
+    }
+  }
+
+  class BlockingListener extends MockListener {
+    public List<String> sources = new ArrayList<String>();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch release;
+
+    BlockingListener(CountDownLatch release) {
+      this.release = release;
+    }
+
+    protected void recordEvent(MockEvent event) {
+      super.recordEvent(event);
+      sources.add(event.getSource());
+      started.countDown();
+      try {
+        release.await();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   class MockFailingListener extends MockListener {
     protected void recordEvent(MockEvent event) {
       throw new RuntimeException("fake runtime exception thrown on purpose");
@@ -227,6 +311,27 @@ public class AbstractLifeCycleTest extends TestCase {
     }
   }
 
+  /**
+   * Lifecycle writing the source and payload of its events to the log.
+   */
+  class LoggingLifeCycle extends AwaitingLifeCycle {
+
+    LoggingLifeCycle(LifeCycleCompletionService service) {
+      super(service);
+    }
+
+    @Override
+    protected String writeEvent(MockEvent event) throws Exception {
+      return writeObject(new String[] {event.getSource(), event.getPayload()});
+    }
+
+    @Override
+    protected MockEvent readEvent(String data) throws Exception {
+      String[] fields = (String[]) readObject(data);
+      return new MockEvent(fields[0], fields[1]);
+    }
+  }
+
 
 
 }
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.lifecycle;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class LifeCycleEventQueueTest extends TestCase {
+
+  private ExecutorService executor;
+
+  private CountDownLatch release;
+
+  private File directory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    executor = Executors.newFixedThreadPool(2);
+    release = new CountDownLatch(1);
+    directory = File.createTempFile("lifecycle", "");
+    directory.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    release.countDown();
+    executor.shutdownNow();
+    new File(directory, LifeCycleLog.FILE_NAME).delete();
+    directory.delete();
+    super.tearDown();
+  }
+
+  public void testBatches() throws Exception {
+    RecordingDispatcher dispatcher = new RecordingDispatcher();
+    LifeCycleEventQueue<String> queue = newQueue(dispatcher, null, 1000);
+
+    //the first event is dispatched alone, the next ones wait for it
+    assertTrue(queue.offer("event0", -1));
+    dispatcher.started.await(5, TimeUnit.SECONDS);
+    for (int i = 1; i < 121; ++i) {
+      assertTrue(queue.offer("event" + i, -1));
+    }
+    assertEquals(120, queue.getPendingCount());
+    assertTrue(queue.getLag() >= 0);
+    release.countDown();
+    assertTrue(queue.awaitIdle(5000));
+
+    assertEquals(121, dispatcher.events.size());
+    for (int i = 0; i < 121; ++i) {
+      assertEquals("event" + i, dispatcher.events.get(i));
+    }
+    assertEquals(4, dispatcher.batches.size());
+    assertEquals(1, (int) dispatcher.batches.get(0));
+    assertEquals(50, (int) dispatcher.batches.get(1));
+    assertEquals(50, (int) dispatcher.batches.get(2));
+    assertEquals(20, (int) dispatcher.batches.get(3));
+
+    LifeCycleListenerMetrics metrics = queue.getMetrics();
+    assertEquals(121, metrics.getDispatched());
+    assertEquals(4, metrics.getBatches());
+    assertEquals(0, metrics.getFailed());
+    assertEquals(0, metrics.getPendingCount());
+    assertEquals(0, metrics.getLag());
+  }
+
+  public void testFullQueue() throws Exception {
+    RecordingDispatcher dispatcher = new RecordingDispatcher();
+    LifeCycleEventQueue<String> queue = new LifeCycleEventQueue<String>("test", dispatcher, executor, null, 2, 50,
+                                                                        100);
+    assertTrue(queue.offer("event0", -1));
+    dispatcher.started.await(5, TimeUnit.SECONDS);
+    assertTrue(queue.offer("event1", -1));
+    assertTrue(queue.offer("event2", -1));
+    long start = System.currentTimeMillis();
+    assertFalse(queue.offer("event3", -1));
+    assertTrue(System.currentTimeMillis() - start >= 90);
+    assertEquals(1, queue.getMetrics().getDropped());
+
+    release.countDown();
+    assertTrue(queue.awaitIdle(5000));
+    assertEquals(3, dispatcher.events.size());
+    assertFalse(dispatcher.events.contains("event3"));
+  }
+
+  public void testDeferredEvents() throws Exception {
+    LifeCycleLog log = new LifeCycleLog(directory);
+    RecordingDispatcher dispatcher = new RecordingDispatcher();
+    LifeCycleEventQueue<String> queue = new LifeCycleEventQueue<String>("test", dispatcher, executor, log, 2, 50,
+                                                                        100);
+    assertTrue(queue.offer("event0", log.append("test", "event0")));
+    dispatcher.started.await(5, TimeUnit.SECONDS);
+    assertTrue(queue.offer("event1", log.append("test", "event1")));
+    assertTrue(queue.offer("event2", log.append("test", "event2")));
+
+    //the logged events are deferred when the queue is full, the other ones are dropped
+    assertTrue(queue.offer("event3", log.append("test", "event3")));
+    assertFalse(queue.offer("event4", -1));
+    assertEquals(3, queue.getPendingCount());
+    assertEquals(1, queue.getMetrics().getDropped());
+
+    release.countDown();
+    assertTrue(queue.awaitIdle(5000));
+    assertEquals(4, dispatcher.events.size());
+    assertEquals("event3", dispatcher.events.get(3));
+    assertEquals(0, log.getPendingCount());
+    log.close();
+  }
+
+  public void testRetriedBatch() throws Exception {
+    release.countDown();
+    LifeCycleLog log = new LifeCycleLog(directory);
+    final List<String> dispatched = new ArrayList<String>();
+    LifeCycleEventQueue<String> queue = newQueue(new LifeCycleEventQueue.Dispatcher<String>() {
+      private int calls;
+
+      public int dispatch(List<String> events) {
+        if (++calls == 1) {
+          throw new IllegalStateException("no session");
+        }
+        dispatched.addAll(events);
+        return 0;
+      }
+    }, log, 1000);
+    queue.offer("event0", log.append("test", "event0"));
+    assertTrue(queue.awaitIdle(5000));
+    assertEquals(1, dispatched.size());
+    assertEquals(0, queue.getMetrics().getFailed());
+    assertEquals(0, log.getPendingCount());
+    log.close();
+  }
+
+  public void testLogCompaction() throws Exception {
+    LifeCycleLog log = new LifeCycleLog(directory);
+    long stuck = log.append("space", "never dispatched");
+    for (int i = 0; i < LifeCycleLog.COMPACT_LINES; ++i) {
+      log.done(log.append("space", "event " + i));
+    }
+    assertEquals(1, log.getPendingCount());
+    assertTrue(new File(directory, LifeCycleLog.FILE_NAME).length() < 1000);
+
+    //an unknown or already done event is ignored
+    log.done(stuck + 1);
+    assertEquals(1, log.getPendingCount());
+    log.close();
+
+    log = new LifeCycleLog(directory);
+    List<LifeCycleLog.Record> records = log.recover("space");
+    assertEquals(1, records.size());
+    assertEquals(stuck, records.get(0).sequence);
+    log.close();
+  }
+
+  public void testFailures() throws Exception {
+    release.countDown();
+    LifeCycleEventQueue<String> queue = newQueue(new LifeCycleEventQueue.Dispatcher<String>() {
+      public int dispatch(List<String> events) {
+        return events.size();
+      }
+    }, null, 1000);
+    queue.offer("event0", -1);
+    queue.offer("event1", -1);
+    assertTrue(queue.awaitIdle(5000));
+    assertEquals(2, queue.getMetrics().getDispatched());
+    assertEquals(2, queue.getMetrics().getFailed());
+  }
+
+  public void testLoggedEvents() throws Exception {
+    release.countDown();
+    LifeCycleLog log = new LifeCycleLog(directory);
+    LifeCycleEventQueue<String> queue = newQueue(new RecordingDispatcher(), log, 1000);
+    queue.offer("event0", log.append("test", "event0"));
+    queue.offer("event1", log.append("test", "event1"));
+    assertTrue(queue.awaitIdle(5000));
+    assertEquals(0, log.getPendingCount());
+
+    //the events of a batch which could not be dispatched stay in the log
+    LifeCycleEventQueue<String> failing = newQueue(new LifeCycleEventQueue.Dispatcher<String>() {
+      public int dispatch(List<String> events) {
+        throw new IllegalStateException("no session");
+      }
+    }, log, 1000);
+    failing.offer("event2", log.append("failing", "event2"));
+    assertTrue(failing.awaitIdle(5000));
+    assertEquals(1, log.getPendingCount());
+    assertEquals(1, failing.getMetrics().getFailed());
+    log.close();
+
+    log = new LifeCycleLog(directory);
+    List<LifeCycleLog.Record> records = log.recover("failing");
+    assertEquals(1, records.size());
+    assertEquals("event2", records.get(0).data);
+    assertTrue(log.recover("test").isEmpty());
+    log.close();
+  }
+
+  public void testLogRecovery() throws Exception {
+    LifeCycleLog log = new LifeCycleLog(directory);
+    long first = log.append("space", "created 1");
+    long second = log.append("space", "renamed 1\nwith a \\ and\r\nlines");
+    long third = log.append("profile", "john");
+    log.append("space", "removed 1");
+    log.done(first);
+    log.close();
+
+    //the dispatched events are removed when the log is read
+    log = new LifeCycleLog(directory);
+    assertEquals(3, log.getPendingCount());
+    List<LifeCycleLog.Record> records = log.recover("space");
+    assertEquals(2, records.size());
+    assertEquals(second, records.get(0).sequence);
+    assertEquals("renamed 1\nwith a \\ and\r\nlines", records.get(0).data);
+    assertEquals("removed 1", records.get(1).data);
+    assertEquals(third, log.recover("profile").get(0).sequence);
+    assertTrue(log.append("space", "created 2") > third + 1);
+    log.close();
+
+    //the log is emptied when no event is pending
+    log = new LifeCycleLog(directory);
+    log.recover("space");
+    for (long sequence = second; sequence <= third + 2; ++sequence) {
+      if (sequence != first) {
+        log.done(sequence);
+      }
+    }
+    assertEquals(0, log.getPendingCount());
+    assertEquals(0, new File(directory, LifeCycleLog.FILE_NAME).length());
+    log.close();
+  }
+
+  public void testEscape() throws Exception {
+    String data = "a\\b\ncd\r\n\\";
+    assertEquals(-1, LifeCycleLog.escape(data).indexOf('\n'));
+    assertEquals(data, LifeCycleLog.unescape(LifeCycleLog.escape(data)));
+  }
+
+  private LifeCycleEventQueue<String> newQueue(LifeCycleEventQueue.Dispatcher<String> dispatcher, LifeCycleLog log,
+                                               int capacity) {
+    return new LifeCycleEventQueue<String>("test", dispatcher, executor, log, capacity, 50, 1000);
+  }
+
+  private class RecordingDispatcher implements LifeCycleEventQueue.Dispatcher<String> {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final List<String> events = new ArrayList<String>();
+
+    private final List<Integer> batches = new ArrayList<Integer>();
+
+    public int dispatch(List<String> batch) {
+      started.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      synchronized (this) {
+        events.addAll(batch);
+        batches.add(batch.size());
+      }
+      return 0;
+    }
+  }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.common.router.ExoRouter.Route;
+
+/**
+ * Unit Test for {@link RouteTable}: the route found is the first one of the list whose pattern matches.
+ */
+public class RouteTableTest extends TestCase {
+
+  private static final String[][] ROUTES = {
+      {"/activity/{activityID}", "activity.show"},
+      {"/activities/{streamOwnerId}", "activity.stream.owner.show"},
+      {"/profile/{streamOwnerId}", "profile.owner.show"},
+      {"/connections/{relationshipStatus}/{streamOwnerId}", "connections.network.show"},
+      {"{spacePrettyName}", "space.access"},
+      {"{spacePrettyName}/{appName}", "space.app.access"},
+      {"{spacePrettyName}/{appName}/{<.*>path}", "space.app.page.access"},
+      {"/{pageID}/ForumService", "forum.home"},
+      {"/{pageID}/SearchForum", "forum.search"},
+      {"/{pageID}/topic/{topicID}", "forum.topic.show"},
+      {"/{pageID}/topic/{topicID}/post/{postID}", "forum.topic.post.show"},
+      {"/{pageID}/topic/{topicID}/page/{<[0-9]+>pageNo}", "forum.topic.page"},
+      {"/{pageID}/forum/{forumID}/page/{pageNo}", "forum.show.page"},
+      {"/wiki/{<[a-z]{2}|home>lang}/{page}/?", "wiki.show"},
+      {"/doc/page-{id}", "doc.show"},
+      {"/files/{<[^/]+/.*>file}", "files.show"},
+      {"/{<\\d+>year}/{<\\d+>month}", "archive.show"},
+      {"/{<[0-9]*>day}/", "day.show"},
+  };
+
+  private static final String[] SEGMENTS = {
+      "", "activity", "activities", "profile", "connections", "network", "ForumService", "SearchForum", "topic",
+      "post", "page", "forum", "wiki", "en", "home", "fr1", "doc", "page-1", "page-", "files", "2014", "07", "mary",
+      "a.b", "x y", "%40"
+  };
+
+  public void testRoute() {
+    RouteTable table = new RouteTable(routes());
+    assertRoute(table.route("/activity/4437hg2121"), "activity.show", "activityID", "4437hg2121");
+    assertRoute(table.route("/connections/network/mary"), "connections.network.show",
+                "relationshipStatus", "network", "streamOwnerId", "mary");
+    assertRoute(table.route("space"), "space.access", "spacePrettyName", "space");
+    assertRoute(table.route("space/wiki/a/b/"), "space.app.page.access",
+                "spacePrettyName", "space", "appName", "wiki", "path", "a/b/");
+    assertRoute(table.route("space/wiki/"), "space.app.page.access",
+                "spacePrettyName", "space", "appName", "wiki", "path", "");
+    // the route listed first wins over the one with more literals
+    assertRoute(table.route("/activity/ForumService"), "activity.show", "activityID", "ForumService");
+    assertRoute(table.route("/page1/topic/t1/page/2"), "forum.topic.page",
+                "pageID", "page1", "topicID", "t1", "pageNo", "2");
+    assertNull(table.route("/page1/topic/t1/page/last"));
+    assertRoute(table.route("/wiki/en/home"), "wiki.show", "lang", "en", "page", "home");
+    assertRoute(table.route("/doc/page-1"), "doc.show", "id", "1");
+    assertNull(table.route("/"));
+    assertNull(table.route("/activity"));
+  }
+
+  public void testRandomPaths() {
+    List<Route> routes = routes();
+    Random random = new Random(42);
+    for (int round = 0; round < 20; round++) {
+      RouteTable table = new RouteTable(routes);
+      for (int i = 0; i < 500; i++) {
+        StringBuilder path = new StringBuilder(random.nextBoolean() ? "/" : "");
+        for (int j = random.nextInt(6); j >= 0; j--) {
+          path.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+          if (j > 0 || random.nextInt(4) == 0) {
+            path.append('/');
+          }
+        }
+        String expected = routeOneByOne(routes, path.toString());
+        Route route = table.route(path.toString());
+        assertEquals(path.toString(), expected, route == null ? null : route.action + new TreeMap<String, String>(route.localArgs));
+      }
+      Collections.shuffle(routes, random);
+    }
+  }
+
+  public void testReverseRoutes() {
+    RouteTable table = new RouteTable(routes());
+    List<RouteTable.ReverseRoute> reverseRoutes = table.getReverseRoutes("forum.topic.show");
+    assertEquals(1, reverseRoutes.size());
+    assertEquals("/{pageID}/topic/{topicID}", reverseRoutes.get(0).route.path);
+    assertSame(reverseRoutes, table.getReverseRoutes("forum.topic.show"));
+    assertTrue(table.getReverseRoutes("unknown.action").isEmpty());
+
+    List<Route> routes = new ArrayList<Route>();
+    routes.add(ExoRouter.getRoute("/{pageID}/{action}", "forum.{action}"));
+    routes.add(ExoRouter.getRoute("/{pageID}/home", "forum.home"));
+    table = new RouteTable(routes);
+    reverseRoutes = table.getReverseRoutes("forum.Home");
+    assertEquals(2, reverseRoutes.size());
+    assertEquals(Collections.singletonMap("action", "home"), reverseRoutes.get(0).actionArgs);
+    assertEquals(Collections.emptyMap(), reverseRoutes.get(1).actionArgs);
+  }
+
+  public void testConcurrentAddRoute() throws Exception {
+    final int threads = 4;
+    final int perThread = 50;
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+    int before = ExoRouter.getRoutes().size();
+    for (int t = 0; t < threads; t++) {
+      final int thread = t;
+      new Thread() {
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < perThread; i++) {
+              ExoRouter.appendRoute("/concurrent" + thread + "-" + i + "/{id}", "concurrent." + thread + "." + i, null);
+              //the lookups compile the tables while the routes are added
+              ExoRouter.route("/concurrent" + thread + "-" + i + "/1");
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            done.countDown();
+          }
+        }
+      }.start();
+    }
+    start.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+
+    // no route is lost, and the table read last knows them all
+    assertEquals(before + threads * perThread, ExoRouter.getRoutes().size());
+    for (int t = 0; t < threads; t++) {
+      for (int i = 0; i < perThread; i++) {
+        assertRoute(ExoRouter.route("/concurrent" + t + "-" + i + "/1"), "concurrent." + t + "." + i, "id", "1");
+      }
+    }
+    try {
+      ExoRouter.getRoutes().clear();
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  private static List<Route> routes() {
+    List<Route> routes = new ArrayList<Route>();
+    for (String[] route : ROUTES) {
+      routes.add(ExoRouter.getRoute(route[0], route[1]));
+    }
+    return routes;
+  }
+
+  private static String routeOneByOne(List<Route> routes, String path) {
+    for (Route route : routes) {
+      Map<String, String> args = route.matches(path);
+      if (args != null) {
+        return route.action + new TreeMap<String, String>(args);
+      }
+    }
+    return null;
+  }
+
+  private static void assertRoute(Route route, String action, String... args) {
+    assertNotNull(route);
+    assertEquals(action, route.action);
+    Map<String, String> expected = new HashMap<String, String>();
+    for (int i = 0; i < args.length; i += 2) {
+      expected.put(args[i], args[i + 1]);
+    }
+    assertEquals(expected, route.localArgs);
+  }
+
+}
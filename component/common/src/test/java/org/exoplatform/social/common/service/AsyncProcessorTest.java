@@ -16,7 +16,10 @@
  */
 package org.exoplatform.social.common.service;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.exoplatform.social.common.TestSocialServiceContext;
 import org.exoplatform.social.common.service.impl.ProcessorContextImpl;
@@ -115,13 +118,90 @@ public class AsyncProcessorTest extends TestSocialServiceContext {
     params.setProperty("test1", "test1");
     params.totalProcesses(80);
     
+    ProcessFuture[] futures = new ProcessFuture[80];
     for(int i = 0; i < 80; i++) {
-      ProcessContext got = serviceExecute(params, createAsyncCallback());
-      Thread.sleep(50);
+      futures[i] = getExecutor().asyncProcess(createAsyncProcessor(), params, createAsyncCallback());
+    }
+    
+    for (ProcessFuture future : futures) {
+      ProcessContext got = future.get(30, TimeUnit.SECONDS);
       assertEquals("done", got.getProperty("result", String.class));
     }
+  }
+
+  public void testAsyncDoesNotWait() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch called = new CountDownLatch(1);
+    ProcessContext params = new ProcessorContextImpl(getContext());
+
+    ProcessFuture future = getExecutor().asyncProcess(new AsyncProcessor() {
+      public ProcessContext process(ProcessContext processContext) {
+        return processContext;
+      }
+      public ProcessContext process(ProcessContext processContext, AsyncCallback callback) {
+        try {
+          release.await();
+          processContext.setProperty("result", "done");
+        } catch (InterruptedException e) {
+          processContext.setException(e);
+        }
+        callback.done(processContext);
+        return processContext;
+      }
+      public String getName() {
+        return "BlockedProcessor";
+      }
+      public void start(ProcessContext processContext) {
+      }
+      public void end(ProcessContext processContext) {
+      }
+    }, params);
+
+    future.addCallback(new AsyncCallback() {
+      public void done(ProcessContext processContext) {
+        called.countDown();
+      }
+    });
     
-    Thread.sleep(1000);
+    //the process is still running when the call returns
+    assertFalse(future.isDone());
+    assertNull(params.getProperty("result"));
+
+    release.countDown();
+    assertTrue(called.await(10, TimeUnit.SECONDS));
+    assertEquals("done", future.get().getProperty("result", String.class));
+  }
+
+  public void testAsyncFailure() throws Exception {
+    final AtomicReference<ProcessContext> failed = new AtomicReference<ProcessContext>();
+    final CountDownLatch called = new CountDownLatch(1);
+    ProcessContext params = new ProcessorContextImpl(getContext());
+
+    ProcessFuture future = getExecutor().asyncProcess(new AsyncProcessor() {
+      public ProcessContext process(ProcessContext processContext) {
+        return processContext;
+      }
+      public ProcessContext process(ProcessContext processContext, AsyncCallback callback) {
+        throw new IllegalStateException("failure");
+      }
+      public String getName() {
+        return "FailingProcessor";
+      }
+      public void start(ProcessContext processContext) {
+      }
+      public void end(ProcessContext processContext) {
+      }
+    }, params, new AsyncCallback() {
+      public void done(ProcessContext processContext) {
+        failed.set(processContext);
+        called.countDown();
+      }
+    });
+
+    assertTrue(called.await(10, TimeUnit.SECONDS));
+    assertTrue(future.isDone());
+    assertTrue(failed.get().isFailed());
+    assertTrue(failed.get().getException() instanceof IllegalStateException);
   }
 
   private AsyncCallback createAsyncCallback() {
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.service.thread;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class BoundedThreadPoolExecutorTest extends TestCase {
+
+  private CountDownLatch release;
+
+  private AtomicInteger ran;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    release = new CountDownLatch(1);
+    ran = new AtomicInteger();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    release.countDown();
+    super.tearDown();
+  }
+
+  public void testShed() throws Exception {
+    BoundedThreadPoolExecutor executor = newExecutor(SaturationPolicy.SHED);
+
+    //1 running, 2 queued, the others are rejected
+    int rejected = submit(executor, 5);
+    assertEquals(2, rejected);
+    assertEquals(2, executor.getMetrics().getRejected());
+    assertEquals(2, executor.getMetrics().getQueueDepth());
+
+    release.countDown();
+    shutdown(executor);
+    assertEquals(3, ran.get());
+    assertEquals(3, executor.getMetrics().getCompleted());
+  }
+
+  public void testBlock() throws Exception {
+    BoundedThreadPoolExecutor executor = newExecutor(SaturationPolicy.BLOCK);
+    submit(executor, 3);
+
+    //the queue stays full, the task is rejected after the offer timeout
+    long start = System.currentTimeMillis();
+    assertEquals(1, submit(executor, 1));
+    assertTrue(System.currentTimeMillis() - start >= 50);
+
+    release.countDown();
+    shutdown(executor);
+    assertEquals(3, ran.get());
+  }
+
+  public void testSpill() throws Exception {
+    BoundedThreadPoolExecutor executor = newExecutor(SaturationPolicy.SPILL);
+
+    //1 running, 2 queued, 2 spilled, the last one is rejected
+    assertEquals(1, submit(executor, 6));
+    assertEquals(2, executor.getMetrics().getSpilled());
+    assertEquals(2, executor.getSpillDepth());
+
+    release.countDown();
+    shutdown(executor);
+    assertEquals(5, ran.get());
+    assertEquals(0, executor.getSpillDepth());
+  }
+
+  public void testSpillAfterSaturation() throws Exception {
+    BoundedThreadPoolExecutor executor = newExecutor(SaturationPolicy.SPILL);
+    assertEquals(0, submit(executor, 5));
+
+    //the spilled tasks are run once the others are done, the pool takes new tasks again
+    release.countDown();
+    for (int i = 0; i < 100 && ran.get() < 5; ++i) {
+      Thread.sleep(10);
+    }
+    assertEquals(5, ran.get());
+    assertEquals(0, executor.getSpillDepth());
+    assertEquals(0, submit(executor, 1));
+
+    shutdown(executor);
+    assertEquals(6, ran.get());
+  }
+
+  public void testSpillAtShutdown() throws Exception {
+    BoundedThreadPoolExecutor executor = newExecutor(SaturationPolicy.SPILL);
+    submit(executor, 5);
+
+    //the spilled tasks still run after the shutdown
+    executor.shutdown();
+    assertEquals(2, executor.getSpillDepth());
+    release.countDown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(5, ran.get());
+    assertEquals(0, executor.getSpillDepth());
+  }
+
+  public void testSpillAtShutdownNow() throws Exception {
+    BoundedThreadPoolExecutor executor = newExecutor(SaturationPolicy.SPILL);
+    submit(executor, 5);
+
+    //the queued and the spilled tasks are given back
+    List<Runnable> tasks = executor.shutdownNow();
+    assertEquals(4, tasks.size());
+    assertEquals(0, executor.getSpillDepth());
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  public void testSpillNeedsQueue() throws Exception {
+    try {
+      new BoundedThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                                    Executors.defaultThreadFactory(), SaturationPolicy.SPILL, 50L, 2);
+      fail();
+    } catch (IllegalArgumentException e) {
+      //the spilled tasks could not go back to a hand-off queue
+    }
+    ExecutorService executor = new DefaultThreadPoolFactory().newThreadPool(1, 1, 60L, TimeUnit.SECONDS, 0,
+                                                                            Executors.defaultThreadFactory());
+    assertEquals(SaturationPolicy.BLOCK, ((BoundedThreadPoolExecutor) executor).getSaturationPolicy());
+    executor.shutdown();
+  }
+
+  public void testCallerRuns() throws Exception {
+    BoundedThreadPoolExecutor executor = newExecutor(SaturationPolicy.CALLER_RUNS);
+    submit(executor, 3);
+
+    executor.execute(new Runnable() {
+      public void run() {
+        ran.incrementAndGet();
+      }
+    });
+    assertEquals(1, ran.get());
+    assertEquals(1, executor.getMetrics().getCallerRuns());
+
+    release.countDown();
+    shutdown(executor);
+  }
+
+  public void testLatencyHistogram() throws Exception {
+    BoundedThreadPoolExecutor executor = newExecutor(SaturationPolicy.SHED);
+    release.countDown();
+    submit(executor, 2);
+    shutdown(executor);
+
+    long total = 0;
+    for (Long count : executor.getMetrics().getLatencyHistogram().values()) {
+      total += count;
+    }
+    assertEquals(2, total);
+  }
+
+  public void testRemove() throws Exception {
+    BoundedThreadPoolExecutor executor = newExecutor(SaturationPolicy.SHED);
+    submit(executor, 1);
+
+    //the queued task is the one given by the caller
+    Runnable task = new Runnable() {
+      public void run() {
+        ran.incrementAndGet();
+      }
+    };
+    executor.execute(task);
+    assertTrue(executor.getQueue().contains(task));
+    assertTrue(executor.remove(task));
+
+    release.countDown();
+    shutdown(executor);
+    assertEquals(1, ran.get());
+    assertEquals(1, executor.getMetrics().getCompleted());
+  }
+
+  private BoundedThreadPoolExecutor newExecutor(SaturationPolicy policy) {
+    return new BoundedThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(2),
+                                         Executors.defaultThreadFactory(), policy, 50L, 2);
+  }
+
+  private int submit(BoundedThreadPoolExecutor executor, int count) {
+    int rejected = 0;
+    for (int i = 0; i < count; ++i) {
+      try {
+        executor.execute(new Runnable() {
+          public void run() {
+            try {
+              release.await();
+              ran.incrementAndGet();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        ++rejected;
+      }
+    }
+    return rejected;
+  }
+
+  private void shutdown(BoundedThreadPoolExecutor executor) throws InterruptedException {
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+}
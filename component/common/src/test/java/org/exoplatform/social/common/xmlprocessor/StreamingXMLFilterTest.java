@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.common.xmlprocessor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.common.xmlprocessor.filters.DOMContentEscapeFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.LineBreakerFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.URLConverterFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.XMLBalancerFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.filters.XMLTagFilterPlugin;
+import org.exoplatform.social.common.xmlprocessor.model.XMLTagFilterPolicy;
+
+/**
+ * Unit Test for {@link StreamingXMLFilter}: the output is the one of the filters applied one by one.
+ */
+public class StreamingXMLFilterTest extends TestCase {
+
+  private static final String[] FRAGMENTS = {
+      "hello", " ", "\t", "world", "\n", "\r\n", "\r", "&", "&amp;", "\"", "'", ">", "café", "中文",
+      "http://exoplatform.com", " www.exoplatform.com/a?b=1&c=2 ", "mary:gtn@abc.com:8080", "a.b", "x", ":",
+      "<b>", "</b>", "<i>", "</I>", "<a href=\"http://exoplatform.com\">", "<a href='x' title=\"t\">", "</a>",
+      "<br>", "<br/>", "<BR />", "</br>", "<img src=\"/rest/a.png\">", "<img src='b.png' alt='b' />", "</img>",
+      "<p class=\"c\" style='color:red'>", "</p>", "<div>", "</div>", "<span id=\"s\" ID=\"t\">", "</span>",
+      "<script>", "</script>", "<ul>", "<li>", "</li>", "</ul>", "<u/>", "<q >", "</q >", "<h3>", "</h3>",
+      // read by the filters of the chain
+      "<!-- comment -->", "<", "<>", "< b>", "<a href=x>", "<a\nhref=\"x\">", "<b <i>", "<!DOCTYPE html>",
+      "<a title='say \"hi\"'>", "<a b=\"1\"c=\"2\">", "<a / >", "</b c>", "<bé>"
+  };
+
+  public void testProductionChain() {
+    List<Filter> filters = productionFilters();
+    StreamingXMLFilter filter = StreamingXMLFilter.compile(filters);
+    assertNotNull(filter);
+
+    assertEquals("hello <b>world</b><br />&lt;script&gt;alert(1)&lt;/script&gt;",
+                 filter.doFilter("hello <B>world</b>\n<script>alert(1)</script>"));
+    assertEquals("see <a href=\"http://exoplatform.com\" target=\"_blank\">http://exoplatform.com</a> now",
+                 filter.doFilter("see http://exoplatform.com now"));
+    assertEquals("<a href=\"http://exoplatform.com\">www.exoplatform.com</a>",
+                 filter.doFilter("<a href=\"http://exoplatform.com\" onclick=\"x()\">www.exoplatform.com</a>"));
+    assertEquals("<b>a<br>b</br></b>", filter.doFilter("<b>a<br>b"));
+
+    String[] inputs = {
+        "", "hello", "<p>Hello <b>world</b></p>", "<img src=\"a.png\">text", "a<br>b</br>c", "<b><i>x</b>y</i>",
+        "http://a.com <b>http://b.com</b> http://c.com", "x<b>http://b.com</b>", "café & crème", "a\r\nb\rc\n",
+        "<!-- comment -->text", "<a href=x>link</a>", "<p\nclass=\"c\">p</p>"
+    };
+    for (String input : inputs) {
+      assertEquals(input, filterOneByOne(filters, input), filter.doFilter(input));
+    }
+  }
+
+  public void testRandomInputs() {
+    Random random = new Random(42);
+    List<List<Filter>> chains = new ArrayList<List<Filter>>();
+    chains.add(productionFilters());
+    chains.add(Arrays.<Filter>asList(new XMLBalancerFilterPlugin()));
+    chains.add(Arrays.<Filter>asList(new XMLBalancerFilterPlugin(), new LineBreakerFilterPlugin()));
+    chains.add(Arrays.<Filter>asList(new XMLBalancerFilterPlugin(), new URLConverterFilterPlugin(10)));
+    chains.add(Arrays.<Filter>asList(new DOMContentEscapeFilterPlugin(), new XMLBalancerFilterPlugin(),
+                                     new XMLTagFilterPlugin(productionPolicy())));
+    for (List<Filter> filters : chains) {
+      StreamingXMLFilter filter = StreamingXMLFilter.compile(filters);
+      for (int i = 0; i < 3000; i++) {
+        StringBuilder input = new StringBuilder();
+        int count = random.nextInt(12);
+        for (int j = 0; j < count; j++) {
+          input.append(FRAGMENTS[random.nextInt(i % 2 == 0 ? FRAGMENTS.length - 13 : FRAGMENTS.length)]);
+        }
+        assertEquals(input.toString(), filterOneByOne(filters, input.toString()), filter.doFilter(input.toString()));
+      }
+    }
+  }
+
+  public void testCompile() {
+    assertNull(StreamingXMLFilter.compile(Collections.<Filter>emptyList()));
+    assertNull(StreamingXMLFilter.compile(Arrays.<Filter>asList(new LineBreakerFilterPlugin(),
+                                                                 new XMLBalancerFilterPlugin())));
+    assertNull(StreamingXMLFilter.compile(Arrays.<Filter>asList(new XMLBalancerFilterPlugin(), new Filter() {
+      public Object doFilter(Object input) {
+        return input;
+      }
+    })));
+    assertNotNull(StreamingXMLFilter.compile(Arrays.<Filter>asList(new XMLBalancerFilterPlugin(),
+                                                                    new DOMContentEscapeFilterPlugin())));
+    assertEquals(1, StreamingXMLFilter.compile(productionFilters()).doFilter(1));
+  }
+
+  public void testXMLProcessor() {
+    XMLProcessorImpl xmlProcessor = new XMLProcessorImpl();
+    for (Filter filter : productionFilters()) {
+      xmlProcessor.addFilter(filter);
+    }
+    assertEquals("<b>a</b> <a href=\"http://a.com\" target=\"_blank\">http://a.com</a>",
+                 xmlProcessor.process("<b>a</b> http://a.com"));
+
+    // the filters changed later are applied
+    xmlProcessor.addFilter(new XMLBalancerFilterPlugin());
+    assertEquals("<b>a</b>", xmlProcessor.process("<b>a"));
+    xmlProcessor.removeFilter(XMLBalancerFilterPlugin.class);
+    assertEquals("&lt;b&gt;a", xmlProcessor.process("<b>a"));
+  }
+
+  static List<Filter> productionFilters() {
+    return Arrays.<Filter>asList(new XMLBalancerFilterPlugin(), new XMLTagFilterPlugin(productionPolicy()),
+                                 new LineBreakerFilterPlugin(), new URLConverterFilterPlugin(-1));
+  }
+
+  private static XMLTagFilterPolicy productionPolicy() {
+    XMLTagFilterPolicy policy = new XMLTagFilterPolicy();
+    policy.addAllowedTags("b", "i", "span", "em", "strong", "u", "p", "ol", "ul", "li", "br", "blockquote", "q");
+    policy.addAllowedTag("a", Collections.singleton("href"));
+    policy.addAllowedTag("img", Collections.singleton("src"));
+    return policy;
+  }
+
+  static Object filterOneByOne(List<Filter> filters, Object input) {
+    for (Filter filter : filters) {
+      input = filter.doFilter(input);
+    }
+    return input;
+  }
+
+}
@@ -127,4 +127,23 @@ public class URLConverterFilterPluginTest extends TestCase {
         urlConverterFilter.doFilter("http://abc.com:80/abc.jsp?a=1&b=2"));
   }
 
+  /**
+   * Unit test for {@link URLConverterFilterPlugin#convertText(String, StringBuilder)}.
+   */
+  public void testConvertText() {
+    URLConverterFilterPlugin urlConverterFilter = new URLConverterFilterPlugin(-1);
+
+    StringBuilder output = new StringBuilder();
+    assertEquals(0, urlConverterFilter.convertText("a", output));
+    assertEquals("a", output.toString());
+
+    output.setLength(0);
+    assertEquals(1, urlConverterFilter.convertText("hello", output));
+    assertEquals("hello", output.toString());
+
+    output.setLength(0);
+    assertEquals(3, urlConverterFilter.convertText("see http://google.com now", output));
+    assertEquals("see <a href=\"http://google.com\" target=\"_blank\">http://google.com</a> now", output.toString());
+  }
+
 }
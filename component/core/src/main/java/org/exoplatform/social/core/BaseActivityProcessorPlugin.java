@@ -43,6 +43,24 @@ public abstract class BaseActivityProcessorPlugin extends BaseComponentPlugin im
   public static final String TEMPLATE_PARAM_TO_PROCESS = "registeredKeysForProcessor";
   public static final String TEMPLATE_PARAM_LIST_DELIM = "\\|";
   
+  /**
+   * The phases in which the processors are applied to the activities.
+   *
+   * @since 4.1.0
+   */
+  public enum Phase {
+    /**
+     * The processor only changes the title, the body and the template params of the activity from their values: the
+     * result is kept with the activity until they change.
+     */
+    WRITE,
+
+    /**
+     * The processor is applied each time the activity is loaded.
+     */
+    RENDER
+  }
+
   public BaseActivityProcessorPlugin(InitParams params) {
 
     try {
@@ -68,6 +86,16 @@ public abstract class BaseActivityProcessorPlugin extends BaseComponentPlugin im
   public void setPriority(int priority) {
     this.priority = priority;
   }
+
+  /**
+   * Gets the phase in which this processor is applied, {@link Phase#RENDER} unless it is overridden.
+   *
+   * @return the phase
+   * @since 4.1.0
+   */
+  public Phase getPhase() {
+    return Phase.RENDER;
+  }
   
   /**
    * This method is helper for ActivityProcessor incase we want to get list of template params to be filter.
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.activity.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of an activity stream read with a cursor.
+ *
+ * @since 4.1.0
+ */
+public class ActivityStreamPage {
+
+  private final List<ExoSocialActivity> activities;
+
+  private final String nextCursor;
+
+  public ActivityStreamPage(final List<ExoSocialActivity> activities, final String nextCursor) {
+    this.activities = activities != null ? activities : Collections.<ExoSocialActivity>emptyList();
+    this.nextCursor = nextCursor;
+  }
+
+  /**
+   * @return the activities of the page, newest first
+   */
+  public List<ExoSocialActivity> getActivities() {
+    return activities;
+  }
+
+  /**
+   * @return the cursor of the next page, null when the stream has no more activity
+   */
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  public boolean hasNext() {
+    return nextCursor != null;
+  }
+
+}
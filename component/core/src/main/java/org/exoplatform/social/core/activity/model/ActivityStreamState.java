@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.activity.model;
+
+/**
+ * The state of an activity stream read from its references only: the last updated time of its newest reference and
+ * its number of references. It changes when an activity is posted, commented, moved or removed on the stream. Its
+ * version changes when an activity of the stream is liked, edited or commented, without moving its references.
+ *
+ * @since 4.1.0
+ */
+public class ActivityStreamState {
+
+  private final long lastUpdated;
+
+  private final int size;
+
+  private final long version;
+
+  public ActivityStreamState(final long lastUpdated, final int size) {
+    this(lastUpdated, size, 0);
+  }
+
+  public ActivityStreamState(final long lastUpdated, final int size, final long version) {
+    this.lastUpdated = lastUpdated;
+    this.size = size;
+    this.version = version;
+  }
+
+  /**
+   * @return the last updated time of the newest activity of the stream, 0 when the stream is empty
+   */
+  public long getLastUpdated() {
+    return lastUpdated;
+  }
+
+  /**
+   * @return the number of activities of the stream
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * @return the version of the activities of the stream
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ActivityStreamState)) {
+      return false;
+    }
+    ActivityStreamState that = (ActivityStreamState) o;
+    return lastUpdated == that.lastUpdated && size == that.size && version == that.version;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 31 * (int) (lastUpdated ^ (lastUpdated >>> 32)) + size;
+    return 31 * result + (int) (version ^ (version >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return "ActivityStreamState{lastUpdated=" + lastUpdated + ", size=" + size + ", version=" + version + "}";
+  }
+
+}
@@ -207,6 +207,14 @@ public abstract class ActivityEntity implements NamedEntity {
   public abstract void setCommenters(String[] commenterId);
   public static final PropertyLiteralExpression<String> commenters =
     new PropertyLiteralExpression<String>(String.class, "soc:commenters");
+
+  /**
+   * The list of comment Ids, in the order of the comments. It is null for the activities commented before it was
+   * kept, their comment Ids are read from the comments.
+   */
+  @Property(name = "soc:commentIds")
+  public abstract String[] getCommentIds();
+  public abstract void setCommentIds(String[] commentIds);
   
   /**
    * The activity parameters.
@@ -308,6 +308,65 @@ public abstract class ActivityRefListEntity {
     return ref;
   }
   
+  /**
+   * Counts the refs which are newer than the given time with the numbers maintained on the years,
+   * the months and the days, only the refs of the day of the given time are read.
+   * 
+   * @param sinceTime the last updated time
+   * @return the number of refs updated after the given time
+   * @since 4.1.0
+   */
+  public int getNumberOfNewer(long sinceTime) {
+    Calendar calendar = Calendar.getInstance(Locale.ENGLISH);
+    calendar.setTimeInMillis(sinceTime);
+
+    int sinceYear = calendar.get(Calendar.YEAR);
+    int sinceMonth = calendar.get(Calendar.MONTH);
+    int sinceDay = calendar.get(Calendar.DAY_OF_MONTH);
+
+    int number = 0;
+    for (ActivityRefYearEntity yearEntity : getYears().values()) {
+      int year = Integer.parseInt(yearEntity.getName());
+      if (year > sinceYear) {
+        number += yearEntity.getNumber();
+      }
+      else if (year == sinceYear) {
+        for (ActivityRefMonthEntity monthEntity : yearEntity.getMonths().values()) {
+          int month = indexOfMonth(monthEntity.getName());
+          if (month > sinceMonth) {
+            number += monthEntity.getNumber();
+          }
+          else if (month == sinceMonth) {
+            for (ActivityRefDayEntity dayEntity : monthEntity.getDays().values()) {
+              int day = Integer.parseInt(dayEntity.getName());
+              if (day > sinceDay) {
+                number += dayEntity.getNumber();
+              }
+              else if (day == sinceDay) {
+                for (String name : dayEntity.getActivityRefs().keySet()) {
+                  if (Long.parseLong(name) > sinceTime) {
+                    ++number;
+                  }
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+
+    return Math.max(number, 0);
+  }
+
+  private int indexOfMonth(String month) {
+    for (int i = 0; i < MONTH_NAME.length; ++i) {
+      if (MONTH_NAME[i].equals(month)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+  
   public boolean create(long newUpdated, ActivityEntity entity) {
     ActivityRef newRef = getOrCreated(newUpdated);
     newRef.setName("" + newUpdated);
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.chromattic.utils;
+
+import org.exoplatform.social.core.chromattic.entity.ActivityRef;
+
+/**
+ * The position of a ref in an activity ref list: the last updated time the ref is ordered by and its name.
+ * The token form is opaque for the clients.
+ *
+ * @since 4.1.0
+ */
+public class ActivityRefCursor {
+
+  private static final char SEPARATOR = '.';
+
+  private final long lastUpdated;
+
+  private final String name;
+
+  public ActivityRefCursor(final long lastUpdated, final String name) {
+    this.lastUpdated = lastUpdated;
+    this.name = name;
+  }
+
+  /**
+   * @param ref the last read ref
+   * @return the position of the ref
+   */
+  public static ActivityRefCursor of(ActivityRef ref) {
+    return new ActivityRefCursor(Long.parseLong(ref.getName()), ref.getName());
+  }
+
+  /**
+   * @param token a token given by {@link #toString()}
+   * @return the position
+   * @throws IllegalArgumentException if the token is malformed
+   */
+  public static ActivityRefCursor parse(String token) {
+    int index = token != null ? token.indexOf(SEPARATOR) : -1;
+    if (index <= 0 || index == token.length() - 1) {
+      throw new IllegalArgumentException("Malformed cursor: " + token);
+    }
+    try {
+      return new ActivityRefCursor(Long.parseLong(token.substring(0, index), Character.MAX_RADIX), token.substring(index + 1));
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Malformed cursor: " + token, e);
+    }
+  }
+
+  public long getLastUpdated() {
+    return lastUpdated;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return Long.toString(lastUpdated, Character.MAX_RADIX) + SEPARATOR + name;
+  }
+
+}
@@ -16,13 +16,17 @@
  */
 package org.exoplatform.social.core.chromattic.utils;
 
+import java.text.DateFormatSymbols;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import org.exoplatform.social.core.chromattic.entity.ActivityRef;
@@ -36,6 +40,8 @@ import org.exoplatform.social.core.chromattic.entity.SpaceRef;
 
 public class ActivityRefIterator implements Iterator<ActivityRef> {
 
+  private static final List<String> MONTH_NAME = Arrays.asList(new DateFormatSymbols(Locale.ENGLISH).getMonths());
+
   private final ActivityRefListEntity listEntity;
 
   //
@@ -63,15 +69,99 @@ public class ActivityRefIterator implements Iterator<ActivityRef> {
   
   
   
+  /**
+   * Creates an iterator starting right after the given position, the years, months and days newer than the
+   * position are skipped without reading their refs.
+   *
+   * @param listEntity the list
+   * @param lastUpdated the last updated time of the position
+   * @param name the name of the ref at the position
+   */
+  ActivityRefIterator(final ActivityRefListEntity listEntity, final long lastUpdated, final String name) {
+
+    this.listEntity = listEntity;
+    this.yearIterator = listEntity.getYears().values().iterator();
+
+    Calendar calendar = Calendar.getInstance(Locale.ENGLISH);
+    calendar.setTimeInMillis(lastUpdated);
+    long year = calendar.get(Calendar.YEAR);
+    int month = calendar.get(Calendar.MONTH);
+    long day = calendar.get(Calendar.DAY_OF_MONTH);
+
+    //
+    while (yearIterator.hasNext()) {
+      ActivityRefYearEntity yearEntity = yearIterator.next();
+      long current = Long.parseLong(yearEntity.getName());
+      if (current > year) {
+        continue;
+      }
+      monthIterator = yearEntity.getMonths().values().iterator();
+      if (current < year) {
+        return;
+      }
+      break;
+    }
+    if (monthIterator == null) {
+      return;
+    }
+
+    //
+    while (monthIterator.hasNext()) {
+      ActivityRefMonthEntity monthEntity = monthIterator.next();
+      int current = MONTH_NAME.indexOf(monthEntity.getName());
+      if (current > month) {
+        continue;
+      }
+      dayIterator = monthEntity.getDays().values().iterator();
+      if (current < month) {
+        return;
+      }
+      break;
+    }
+    if (dayIterator == null) {
+      return;
+    }
+
+    //
+    while (dayIterator.hasNext()) {
+      ActivityRefDayEntity dayEntity = dayIterator.next();
+      long current = Long.parseLong(dayEntity.getName());
+      if (current > day) {
+        continue;
+      }
+      List<ActivityRef> refs = sortRefs(dayEntity);
+      if (current == day) {
+        Iterator<ActivityRef> it = refs.iterator();
+        while (it.hasNext()) {
+          if (!isAfter(it.next(), lastUpdated, name)) {
+            it.remove();
+          }
+        }
+      }
+      entityIterator = refs.iterator();
+      return;
+    }
+
+  }
+  
   private Iterator<ActivityRef> orderRefs() {
-    List<ActivityRef> got = new ArrayList<ActivityRef>(dayIterator.next().getActivityRefList());
+    return sortRefs(dayIterator.next()).iterator();
+  }
+
+  private List<ActivityRef> sortRefs(ActivityRefDayEntity dayEntity) {
+    List<ActivityRef> got = new ArrayList<ActivityRef>(dayEntity.getActivityRefList());
     
     Collections.sort(got, new Comparator<ActivityRef>() {
       public int compare(ActivityRef o1, ActivityRef o2) {
         return (int) (Long.parseLong(o2.getName()) - Long.parseLong(o1.getName()));
       }
     });
-    return got.iterator();
+    return got;
+  }
+
+  private boolean isAfter(ActivityRef ref, long lastUpdated, String name) {
+    long current = Long.parseLong(ref.getName());
+    return current < lastUpdated || (current == lastUpdated && ref.getName().compareTo(name) < 0);
   }
 
   public boolean hasNext() {
@@ -92,7 +182,7 @@ public class ActivityRefIterator implements Iterator<ActivityRef> {
       dayIterator = monthIterator.next().getDays().values().iterator();
       nothing = false;
       if (dayIterator.hasNext()) {
-        entityIterator = dayIterator.next().getActivityRefs().values().iterator();
+        entityIterator = orderRefs();
         if (entityIterator.hasNext()) {
           return true;
         }
@@ -51,6 +51,16 @@ public class ActivityRefList implements Collection<ActivityRef> {
     return new ActivityRefIterator(listEntity);
   }
 
+  /**
+   * Iterates the refs following the given position.
+   *
+   * @param cursor the position of the last read ref
+   * @return the iterator
+   */
+  public ActivityRefIterator iterator(final ActivityRefCursor cursor) {
+    return new ActivityRefIterator(listEntity, cursor.getLastUpdated(), cursor.getName());
+  }
+
   public Object[] toArray() {
     throw new RuntimeException();
   }
@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.identity;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory prefix index of the user names used to answer the mention lookups.
+ *
+ * The words of the full name, first name, last name and user name are normalized: lower cased
+ * and without accents. They are kept in a sorted array with the index of their identity, the
+ * identities having a word starting with a word of the query are found by binary search. The
+ * identities are numbered by full name, the ones having the least common word of the query are
+ * marked by number then checked in this order until the page is full: they don't need to be sorted.
+ * The changed identities are checked one by one until the next compaction, which rebuilds the
+ * arrays once enough identities were changed.
+ *
+ * The index is empty until it is loaded. The changes made while it is being loaded are replayed
+ * on the loaded names.
+ *
+ * @since 4.1.0
+ */
+public class MentionIndex {
+
+  private static final int MIN_COMPACTION_THRESHOLD = 512;
+
+  private static final Pattern SEPARATORS = Pattern.compile("[\\s\\p{Punct}]+");
+
+  private static final Pattern MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+  private String[] ids = new String[16];
+
+  private String[] names = new String[16];
+
+  private String[][] words = new String[16][];
+
+  private int size;
+
+  private String[] tokens = new String[0];
+
+  private int[] postings = new int[0];
+
+  private final BitSet changed = new BitSet();
+
+  private List<String[]> pending;
+
+  private boolean loaded;
+
+  /**
+   * @return true when the names were loaded
+   */
+  public boolean isLoaded() {
+    lock.readLock().lock();
+    try {
+      return loaded;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Starts to record the changes, they will be replayed by {@link #load(Collection)}.
+   * Must be called before reading the names to load.
+   */
+  public void startLoading() {
+    lock.writeLock().lock();
+    try {
+      if (!loaded) {
+        pending = new ArrayList<String[]>();
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Replaces the names by the given ones then replays the changes made since {@link #startLoading()}.
+   *
+   * @param entries the identity id, user name, full name, first name and last name of each identity
+   */
+  public void load(Collection<String[]> entries) {
+    lock.writeLock().lock();
+    try {
+      reset();
+      for (String[] entry : entries) {
+        update(entry);
+      }
+      compact();
+
+      List<String[]> replayed = pending;
+      pending = null;
+      loaded = true;
+      if (replayed != null) {
+        for (String[] change : replayed) {
+          update(change);
+        }
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Forgets the loaded names, the index must be loaded again.
+   */
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      reset();
+      pending = null;
+      loaded = false;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Adds or updates the names of an identity.
+   */
+  public void put(String identityId, String remoteId, String fullName, String firstName, String lastName) {
+    change(new String[] {identityId, remoteId, fullName, firstName, lastName});
+  }
+
+  /**
+   * Removes an identity, nothing is done when it is not indexed.
+   */
+  public void remove(String identityId) {
+    change(new String[] {identityId});
+  }
+
+  private void change(String[] entry) {
+    if (entry[0] == null) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (loaded) {
+        update(entry);
+        if (changed.cardinality() > Math.max(MIN_COMPACTION_THRESHOLD, size / 64)) {
+          compact();
+        }
+      }
+      else if (pending != null) {
+        pending.add(entry);
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of indexed identities
+   */
+  public int getNumberOfIdentities() {
+    lock.readLock().lock();
+    try {
+      int count = 0;
+      for (int i = 0; i < size; ++i) {
+        if (words[i] != null) {
+          ++count;
+        }
+      }
+      return count;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Finds the identities having a name starting with each word of the query. The connections come
+   * first, then the identities are sorted by full name.
+   *
+   * @param query the words typed by the user
+   * @param connectionIds the identities to rank first, may be null
+   * @param excludedIds the identities which must not be found, may be null
+   * @param offset the number of identities to skip
+   * @param limit the maximum number of identities to return
+   * @return the identity ids
+   */
+  public List<String> search(String query, Collection<String> connectionIds, Collection<String> excludedIds,
+                             int offset, int limit) {
+    String[] terms = tokenize(query).toArray(new String[0]);
+    if (terms.length == 0 || limit <= 0 || offset < 0) {
+      return Collections.emptyList();
+    }
+    int needed = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+    Set<String> excluded = excludedIds == null ? Collections.<String>emptySet() : new HashSet<String>(excludedIds);
+
+    lock.readLock().lock();
+    try {
+      BitSet seen = new BitSet(size);
+
+      // the connections are few, they are checked one by one
+      List<Integer> first = new ArrayList<Integer>();
+      if (connectionIds != null) {
+        for (String connectionId : connectionIds) {
+          Integer index = indexes.get(connectionId);
+          if (index != null && !seen.get(index)) {
+            seen.set(index);
+            if (matches(index, terms, excluded)) {
+              first.add(index);
+            }
+          }
+        }
+      }
+
+      //
+      List<Integer> others = new ArrayList<Integer>();
+      if (first.size() < needed) {
+        int wanted = needed - first.size();
+
+        // the words of the changed identities may be outdated in the arrays
+        for (int index = changed.nextSetBit(0); index >= 0; index = changed.nextSetBit(index + 1)) {
+          if (!seen.get(index)) {
+            seen.set(index);
+            if (matches(index, terms, excluded)) {
+              others.add(index);
+            }
+          }
+        }
+
+        // the least common word selects the fewest identities
+        int low = 0;
+        int high = tokens.length;
+        for (String term : terms) {
+          int termLow = lowerBound(term);
+          int termHigh = lowerBound(term + Character.MAX_VALUE);
+          if (termHigh - termLow < high - low) {
+            low = termLow;
+            high = termHigh;
+          }
+        }
+
+        // the identities are numbered by full name, the first marked ones come first
+        BitSet candidates = new BitSet(size);
+        for (int i = low; i < high; ++i) {
+          candidates.set(postings[i]);
+        }
+        candidates.andNot(seen);
+        int found = 0;
+        for (int index = candidates.nextSetBit(0); index >= 0 && found < wanted; index = candidates.nextSetBit(index + 1)) {
+          if (matches(index, terms, excluded)) {
+            others.add(index);
+            ++found;
+          }
+        }
+      }
+
+      //
+      Comparator<Integer> byFullName = new Comparator<Integer>() {
+        public int compare(Integer o1, Integer o2) {
+          return names[o1].compareTo(names[o2]);
+        }
+      };
+      Collections.sort(first, byFullName);
+      Collections.sort(others, byFullName);
+      first.addAll(others);
+
+      //
+      List<String> got = new ArrayList<String>();
+      for (int i = offset; i < first.size() && i < needed; ++i) {
+        got.add(ids[first.get(i)]);
+      }
+      return got;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Splits a name in normalized words: lower cased and without accents.
+   *
+   * @param value the name
+   * @return the distinct words
+   */
+  static Set<String> tokenize(String value) {
+    Set<String> got = new LinkedHashSet<String>();
+    if (value == null) {
+      return got;
+    }
+    for (String word : SEPARATORS.split(normalize(value))) {
+      if (word.length() > 0) {
+        got.add(word);
+      }
+    }
+    return got;
+  }
+
+  private static String normalize(String value) {
+    for (int i = 0; i < value.length(); ++i) {
+      if (value.charAt(i) > 127) {
+        value = MARKS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+        break;
+      }
+    }
+    return value.toLowerCase(Locale.ENGLISH);
+  }
+
+  private boolean matches(int index, String[] terms, Set<String> excluded) {
+    String[] words = this.words[index];
+    if (words == null) {
+      return false;
+    }
+    for (String term : terms) {
+      boolean found = false;
+      for (String word : words) {
+        if (word.startsWith(term)) {
+          found = true;
+          break;
+        }
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    return !excluded.contains(ids[index]);
+  }
+
+  private void update(String[] entry) {
+    String identityId = entry[0];
+    if (entry.length == 1) {
+      Integer index = indexes.get(identityId);
+      if (index != null) {
+        words[index] = null;
+        changed.set(index);
+      }
+      return;
+    }
+
+    //
+    Set<String> entryWords = new LinkedHashSet<String>();
+    if (entry[1] != null) {
+      entryWords.add(entry[1].toLowerCase(Locale.ENGLISH));
+    }
+    for (int i = 1; i < entry.length; ++i) {
+      entryWords.addAll(tokenize(entry[i]));
+    }
+    String fullName = entry[2] != null ? entry[2] : (entry[1] != null ? entry[1] : "");
+
+    //
+    int index = indexOf(identityId);
+    words[index] = entryWords.toArray(new String[entryWords.size()]);
+    names[index] = normalize(fullName);
+    changed.set(index);
+  }
+
+  private int indexOf(String identityId) {
+    Integer index = indexes.get(identityId);
+    if (index == null) {
+      index = size++;
+      if (index == ids.length) {
+        ids = Arrays.copyOf(ids, index * 2);
+        names = Arrays.copyOf(names, index * 2);
+        words = Arrays.copyOf(words, index * 2);
+      }
+      ids[index] = identityId;
+      indexes.put(identityId, index);
+    }
+    return index;
+  }
+
+  private int lowerBound(String prefix) {
+    int low = 0;
+    int high = tokens.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (tokens[middle].compareTo(prefix) < 0) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Numbers the identities by full name and rebuilds the sorted words, the removed identities are dropped.
+   */
+  private void compact() {
+    final String[] oldNames = names;
+    String[] oldIds = ids;
+    String[][] oldWords = words;
+    List<Integer> live = new ArrayList<Integer>();
+    for (int i = 0; i < size; ++i) {
+      if (oldWords[i] != null) {
+        live.add(i);
+      }
+    }
+    Collections.sort(live, new Comparator<Integer>() {
+      public int compare(Integer o1, Integer o2) {
+        return oldNames[o1].compareTo(oldNames[o2]);
+      }
+    });
+
+    //
+    indexes.clear();
+    ids = new String[Math.max(16, live.size())];
+    names = new String[ids.length];
+    words = new String[ids.length][];
+    size = 0;
+    Map<String, int[]> indexesOfWords = new HashMap<String, int[]>();
+    int count = 0;
+    for (int i : live) {
+      int index = indexOf(oldIds[i]);
+      names[index] = oldNames[i];
+      words[index] = oldWords[i];
+      for (String word : oldWords[i]) {
+        // the first int is the number of indexes
+        int[] indexesOfWord = indexesOfWords.get(word);
+        if (indexesOfWord == null) {
+          indexesOfWord = new int[2];
+          indexesOfWords.put(word, indexesOfWord);
+        }
+        else if (indexesOfWord[0] + 1 == indexesOfWord.length) {
+          indexesOfWord = Arrays.copyOf(indexesOfWord, indexesOfWord.length * 2);
+          indexesOfWords.put(word, indexesOfWord);
+        }
+        indexesOfWord[++indexesOfWord[0]] = index;
+        ++count;
+      }
+    }
+
+    //
+    String[] sortedWords = indexesOfWords.keySet().toArray(new String[indexesOfWords.size()]);
+    Arrays.sort(sortedWords);
+    tokens = new String[count];
+    postings = new int[count];
+    int position = 0;
+    for (String word : sortedWords) {
+      int[] indexesOfWord = indexesOfWords.get(word);
+      for (int i = 1; i <= indexesOfWord[0]; ++i) {
+        tokens[position] = word;
+        postings[position] = indexesOfWord[i];
+        ++position;
+      }
+    }
+    changed.clear();
+  }
+
+  private void reset() {
+    indexes.clear();
+    ids = new String[16];
+    names = new String[16];
+    words = new String[16][];
+    size = 0;
+    tokens = new String[0];
+    postings = new int[0];
+    changed.clear();
+  }
+
+}
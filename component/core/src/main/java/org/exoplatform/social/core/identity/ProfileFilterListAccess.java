@@ -119,7 +119,9 @@ public class ProfileFilterListAccess implements ListAccess<Identity> {
    * {@inheritDoc}
    */
   public Identity[] load(int offset, int limit) throws Exception, IllegalArgumentException {
-    ListAccessValidator.validateIndex(offset, limit, getSize());
+    //a mention lookup is not counted, an offset past the end just gives no identity
+    boolean mention = type == null && profileFilter.getViewerIdentity() != null;
+    ListAccessValidator.validateIndex(offset, limit, mention ? Integer.MAX_VALUE : getSize());
     List<Identity> identities = new ArrayList<Identity>();
     //
     if(type != null) {
@@ -25,6 +25,8 @@ import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
+import org.exoplatform.social.core.storage.api.RelationshipStorage;
+import org.exoplatform.social.core.storage.cache.CachedRelationshipStorage;
 import org.exoplatform.social.core.storage.streams.StreamInvocationHelper;
 
 /**
@@ -51,6 +53,12 @@ public class AsynchronousLoadActivitiesListener extends Listener<ConversationReg
     IdentityStorage storage = (IdentityStorage) container.getComponentInstanceOfType(IdentityStorage.class);
     Identity owner = storage.findIdentity(OrganizationIdentityProvider.NAME, remoteId);
     StreamInvocationHelper.loadFeed(owner);
+
+    // the suggestions are ready when the user displays them
+    RelationshipStorage relationshipStorage = (RelationshipStorage) container.getComponentInstanceOfType(RelationshipStorage.class);
+    if (owner != null && relationshipStorage instanceof CachedRelationshipStorage) {
+      ((CachedRelationshipStorage) relationshipStorage).precomputeSuggestions(owner);
+    }
     
   }
 }
@@ -21,6 +21,8 @@ import java.util.List;
 import org.exoplatform.social.common.RealtimeListAccess;
 import org.exoplatform.social.core.ActivityProcessor;
 import org.exoplatform.social.core.BaseActivityProcessorPlugin;
+import org.exoplatform.social.core.activity.model.ActivityStreamPage;
+import org.exoplatform.social.core.activity.model.ActivityStreamState;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.storage.ActivityStorageException;
@@ -268,6 +270,142 @@ public interface ActivityManager {
    * @since 4.0.2-GA, 4.1.x
    */
   RealtimeListAccess<ExoSocialActivity> getActivitiesByPoster(Identity posterIdentity, String ... activityTypes);
+
+  /**
+   * Gets a page of the activities posted on the activity stream of a given identity, following a cursor.
+   * Unlike an offset, the cursor is reached without reading the newer activities, so the deep pages cost the
+   * same as the first one.
+   *
+   * @param identity The identity.
+   * @param cursor The next cursor of the previous page, or <code>null</code> for the first page.
+   * @param limit The maximum number of activities of the page.
+   * @return The page, with the cursor of the next page.
+   * @throws IllegalArgumentException If the cursor is malformed.
+   * @LevelAPI Platform
+   * @since 4.1.0
+   */
+  ActivityStreamPage getActivitiesWithCursor(Identity identity, String cursor, int limit);
+
+  /**
+   * Gets a page of the activities accessible by a given identity, following a cursor.
+   * Unlike an offset, the cursor is reached without reading the newer activities, so the deep pages cost the
+   * same as the first one.
+   *
+   * @param identity The identity.
+   * @param cursor The next cursor of the previous page, or <code>null</code> for the first page.
+   * @param limit The maximum number of activities of the page.
+   * @return The page, with the cursor of the next page.
+   * @throws IllegalArgumentException If the cursor is malformed.
+   * @LevelAPI Platform
+   * @since 4.1.0
+   */
+  ActivityStreamPage getActivityFeedWithCursor(Identity identity, String cursor, int limit);
+
+  /**
+   * Gets a page of the activities posted by all connections with a given identity, following a cursor.
+   * Unlike an offset, the cursor is reached without reading the newer activities, so the deep pages cost the
+   * same as the first one.
+   *
+   * @param identity The identity.
+   * @param cursor The next cursor of the previous page, or <code>null</code> for the first page.
+   * @param limit The maximum number of activities of the page.
+   * @return The page, with the cursor of the next page.
+   * @throws IllegalArgumentException If the cursor is malformed.
+   * @LevelAPI Platform
+   * @since 4.1.0
+   */
+  ActivityStreamPage getActivitiesOfConnectionsWithCursor(Identity identity, String cursor, int limit);
+
+  /**
+   * Gets a page of the activities posted on all space activity streams in which an identity joins, following a cursor.
+   * Unlike an offset, the cursor is reached without reading the newer activities, so the deep pages cost the
+   * same as the first one.
+   *
+   * @param identity The identity.
+   * @param cursor The next cursor of the previous page, or <code>null</code> for the first page.
+   * @param limit The maximum number of activities of the page.
+   * @return The page, with the cursor of the next page.
+   * @throws IllegalArgumentException If the cursor is malformed.
+   * @LevelAPI Platform
+   * @since 4.1.0
+   */
+  ActivityStreamPage getActivitiesOfUserSpacesWithCursor(Identity identity, String cursor, int limit);
+
+  /**
+   * Gets a page of the activities posted on a space, following a cursor.
+   * Unlike an offset, the cursor is reached without reading the newer activities, so the deep pages cost the
+   * same as the first one.
+   *
+   * @param spaceIdentity The space identity.
+   * @param cursor The next cursor of the previous page, or <code>null</code> for the first page.
+   * @param limit The maximum number of activities of the page.
+   * @return The page, with the cursor of the next page.
+   * @throws IllegalArgumentException If the cursor is malformed.
+   * @LevelAPI Platform
+   * @since 4.1.0
+   */
+  ActivityStreamPage getActivitiesOfSpaceWithCursor(Identity spaceIdentity, String cursor, int limit);
+
+  /**
+   * Gets the state of the activity stream of a given identity: the last updated time of its newest
+   * activity and its number of activities.
+   * It is read from the references of the stream without loading any activity, so it is cheap enough to tell
+   * whether the stream changed since it was last read.
+   *
+   * @param identity The identity.
+   * @return The state of the stream.
+   * @LevelAPI Platform
+   * @since 4.1.0
+   */
+  ActivityStreamState getActivitiesState(Identity identity);
+
+  /**
+   * Gets the state of the activity feed of a given identity: the last updated time of its newest
+   * activity and its number of activities.
+   * It is read from the references of the stream without loading any activity.
+   *
+   * @param identity The identity.
+   * @return The state of the stream.
+   * @LevelAPI Platform
+   * @since 4.1.0
+   */
+  ActivityStreamState getActivityFeedState(Identity identity);
+
+  /**
+   * Gets the state of the activities of the connections of a given identity: the last updated time of its newest
+   * activity and its number of activities.
+   * It is read from the references of the stream without loading any activity.
+   *
+   * @param identity The identity.
+   * @return The state of the stream.
+   * @LevelAPI Platform
+   * @since 4.1.0
+   */
+  ActivityStreamState getActivitiesOfConnectionsState(Identity identity);
+
+  /**
+   * Gets the state of the activities of the spaces of a given identity: the last updated time of its newest
+   * activity and its number of activities.
+   * It is read from the references of the stream without loading any activity.
+   *
+   * @param identity The identity.
+   * @return The state of the stream.
+   * @LevelAPI Platform
+   * @since 4.1.0
+   */
+  ActivityStreamState getActivitiesOfUserSpacesState(Identity identity);
+
+  /**
+   * Gets the state of the activity stream of a space: the last updated time of its newest
+   * activity and its number of activities.
+   * It is read from the references of the stream without loading any activity.
+   *
+   * @param spaceIdentity The space identity.
+   * @return The state of the stream.
+   * @LevelAPI Platform
+   * @since 4.1.0
+   */
+  ActivityStreamState getActivitiesOfSpaceState(Identity spaceIdentity);
   
   /**
    * Adds a new activity processor.
@@ -23,6 +23,7 @@ import java.util.List;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.Validate;
 import org.exoplatform.commons.utils.ListAccess;
+import org.exoplatform.container.PortalContainer;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.common.RealtimeListAccess;
@@ -31,12 +32,16 @@ import org.exoplatform.social.core.BaseActivityProcessorPlugin;
 import org.exoplatform.social.core.activity.ActivitiesRealtimeListAccess;
 import org.exoplatform.social.core.activity.ActivitiesRealtimeListAccess.ActivityType;
 import org.exoplatform.social.core.activity.CommentsRealtimeListAccess;
+import org.exoplatform.social.core.activity.model.ActivityStreamPage;
+import org.exoplatform.social.core.activity.model.ActivityStreamState;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.space.spi.SpaceService;
 import org.exoplatform.social.core.storage.ActivityStorageException;
 import org.exoplatform.social.core.storage.api.ActivityStorage;
+import org.exoplatform.social.core.storage.api.ActivityStreamStorage;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
 
 /**
  * Class ActivityManagerImpl implements ActivityManager without caching.
@@ -53,6 +58,9 @@ public class ActivityManagerImpl implements ActivityManager {
   /** The activityStorage. */
   protected ActivityStorage activityStorage;
 
+  /** The stream storage, reads the streams with a cursor. */
+  private ActivityStreamStorage streamStorage;
+
   /** identityManager to get identity for saving and getting activities */
   protected IdentityManager              identityManager;
 
@@ -119,6 +127,8 @@ public class ActivityManagerImpl implements ActivityManager {
    */
   public void updateActivity(ExoSocialActivity existingActivity) {
     activityStorage.updateActivity(existingActivity);
+    //the likes and the edits don't move the references, the version of their streams is changed once they are saved
+    getStreamStorage().touch(existingActivity.getId());
   }
 
   /**
@@ -142,6 +152,7 @@ public class ActivityManagerImpl implements ActivityManager {
   public void saveComment(ExoSocialActivity existingActivity, ExoSocialActivity newComment) throws
           ActivityStorageException {
     activityStorage.saveComment(existingActivity, newComment);
+    getStreamStorage().touch(existingActivity.getId());
   }
 
   /**
@@ -156,6 +167,7 @@ public class ActivityManagerImpl implements ActivityManager {
    */
   public void deleteComment(String activityId, String commentId) {
     activityStorage.deleteComment(activityId, commentId);
+    getStreamStorage().touch(activityId);
   }
 
   /**
@@ -257,6 +269,83 @@ public class ActivityManagerImpl implements ActivityManager {
   public RealtimeListAccess<ExoSocialActivity> getActivitiesByPoster(Identity posterIdentity, String ... activityTypes) {
     return new ActivitiesRealtimeListAccess(activityStorage, ActivityType.POSTER_AND_TYPES_ACTIVITIES, posterIdentity, activityTypes);
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  public ActivityStreamPage getActivitiesWithCursor(Identity identity, String cursor, int limit) {
+    return getStreamStorage().getMyActivities(identity, cursor, limit);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public ActivityStreamPage getActivityFeedWithCursor(Identity identity, String cursor, int limit) {
+    return getStreamStorage().getFeed(identity, cursor, limit);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public ActivityStreamPage getActivitiesOfConnectionsWithCursor(Identity identity, String cursor, int limit) {
+    return getStreamStorage().getConnections(identity, cursor, limit);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public ActivityStreamPage getActivitiesOfUserSpacesWithCursor(Identity identity, String cursor, int limit) {
+    return getStreamStorage().getMySpaces(identity, cursor, limit);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public ActivityStreamPage getActivitiesOfSpaceWithCursor(Identity spaceIdentity, String cursor, int limit) {
+    return getStreamStorage().getSpaceStream(spaceIdentity, cursor, limit);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public ActivityStreamState getActivitiesState(Identity identity) {
+    return getStreamStorage().getState(identity, ActivityRefType.MY_ACTIVITIES);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public ActivityStreamState getActivityFeedState(Identity identity) {
+    return getStreamStorage().getState(identity, ActivityRefType.FEED);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public ActivityStreamState getActivitiesOfConnectionsState(Identity identity) {
+    return getStreamStorage().getState(identity, ActivityRefType.CONNECTION);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public ActivityStreamState getActivitiesOfUserSpacesState(Identity identity) {
+    return getStreamStorage().getState(identity, ActivityRefType.MY_SPACES);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public ActivityStreamState getActivitiesOfSpaceState(Identity spaceIdentity) {
+    return getStreamStorage().getState(spaceIdentity, ActivityRefType.SPACE_STREAM);
+  }
+
+  private ActivityStreamStorage getStreamStorage() {
+    if (streamStorage == null) {
+      streamStorage = (ActivityStreamStorage) PortalContainer.getInstance().getComponentInstanceOfType(ActivityStreamStorage.class);
+    }
+    return streamStorage;
+  }
   
   /**
    * {@inheritDoc}
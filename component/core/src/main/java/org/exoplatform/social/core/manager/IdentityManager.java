@@ -63,6 +63,16 @@ public interface IdentityManager {
    */
   Identity getIdentity(String identityId, boolean isProfileLoaded);
 
+  /**
+   * Gets the identities of the given Ids with their profiles, loaded together.
+   *
+   * @param identityIds Ids of the identities.
+   * @return The identities in the order of the Ids, without the ones which do not exist.
+   * @LevelAPI Platform
+   * @since 4.1.0
+   */
+  List<Identity> getIdentities(List<String> identityIds);
+
   /**
    * Updates specific properties of an identity.
    *
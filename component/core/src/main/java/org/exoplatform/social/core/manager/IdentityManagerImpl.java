@@ -306,6 +306,13 @@ public class IdentityManagerImpl implements IdentityManager {
     return returnIdentity;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<Identity> getIdentities(List<String> identityIds) {
+    return this.getIdentityStorage().findIdentitiesById(identityIds);
+  }
+
   /**
    * {@inheritDoc}
    */
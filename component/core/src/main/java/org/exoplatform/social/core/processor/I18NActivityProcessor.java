@@ -18,7 +18,9 @@ package org.exoplatform.social.core.processor;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -70,6 +72,23 @@ public final class I18NActivityProcessor {
    */
   private static final Log LOG = ExoLogger.getLogger(I18NActivityProcessor.class);
 
+  /**
+   * The maximum number of localized titles kept.
+   */
+  private static final int LOCALIZED_TITLES_SIZE = 5000;
+
+  /**
+   * The localized titles by locale, resource bundle, activity type, titleId and template params: an activity shown in
+   * many streams is localized once per locale. The least recently used titles are removed beyond the maximum size.
+   */
+  private final Map<List<Object>, String> localizedTitles = Collections.synchronizedMap(
+      new LinkedHashMap<List<Object>, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, String> eldest) {
+          return size() > LOCALIZED_TITLES_SIZE;
+        }
+      });
+
   /**
    * The map of registered resource bundle plugins. The key is activityType.
    */
@@ -106,6 +125,7 @@ public final class I18NActivityProcessor {
     }
     resourceBundlePluginMap.put(activityResourceBundlePlugin.getActivityType(),
             activityResourceBundlePlugin);
+    localizedTitles.clear();
   }
 
   /**
@@ -123,6 +143,7 @@ public final class I18NActivityProcessor {
       return;
     }
     resourceBundlePluginMap.remove(activityResourceBundlePlugin.getActivityType());
+    localizedTitles.clear();
   }
 
   /**
@@ -148,7 +169,7 @@ public final class I18NActivityProcessor {
         if (getMessageBundleKey(i18nActivity) == null) {
           return i18nActivity;
         }
-        String newTitle = appRes(resourceBundle, getMessageBundleKey(i18nActivity), i18nActivity.getTemplateParams());
+        String newTitle = getLocalizedTitle(i18nActivity, resourceBundle, selectedLocale, false);
         if (newTitle != null) {
           i18nActivity.setTitle(newTitle);
         }
@@ -180,7 +201,10 @@ public final class I18NActivityProcessor {
           return i18nActivity;
         }
         
-        transformKeys(i18nActivity, resourceBundle);
+        String newTitle = getLocalizedTitle(i18nActivity, resourceBundle, selectedLocale, true);
+        if (newTitle.length() > 0) {
+          i18nActivity.setTitle(newTitle);
+        }
       }
     }
     return i18nActivity;
@@ -196,7 +220,36 @@ public final class I18NActivityProcessor {
     this.resourceBundleService = resourceBundleService;
   }
 
-  private ExoSocialActivity transformKeys(ExoSocialActivity i18nActivity, ResourceBundle resourceBundle) {
+  /**
+   * Gets the localized title of an i18n activity, kept for the next activities with the same titleId and template
+   * params.
+   *
+   * @param i18nActivity The i18n activity.
+   * @param resourceBundle The resource bundle of the selected locale.
+   * @param selectedLocale The selected locale.
+   * @param multiKeys true when the titleId holds several resource bundle keys.
+   * @return The localized title, null when the message bundle value is not found.
+   */
+  private String getLocalizedTitle(ExoSocialActivity i18nActivity, ResourceBundle resourceBundle,
+                                   Locale selectedLocale, boolean multiKeys) {
+    Map<String, String> templateParams = i18nActivity.getTemplateParams();
+    List<Object> key = Arrays.<Object>asList(multiKeys, selectedLocale, resourceBundle, i18nActivity.getType(),
+        i18nActivity.getTitleId(), templateParams == null ? null : new HashMap<String, String>(templateParams));
+    String title = localizedTitles.get(key);
+    if (title == null) {
+      if (multiKeys) {
+        title = transformKeys(i18nActivity, resourceBundle);
+      } else {
+        title = appRes(resourceBundle, getMessageBundleKey(i18nActivity), templateParams);
+      }
+      if (title != null) {
+        localizedTitles.put(key, title);
+      }
+    }
+    return title;
+  }
+
+  private String transformKeys(ExoSocialActivity i18nActivity, ResourceBundle resourceBundle) {
 
     String[] resourceKeys = I18NActivityUtils.getResourceKeys(i18nActivity);
     String[] resourceParamValues = I18NActivityUtils.getResourceValues(i18nActivity);
@@ -224,12 +277,7 @@ public final class I18NActivityProcessor {
     }
 
     //
-    String newTitle = sb.toString();
-    if (newTitle.length() > 0) {
-      i18nActivity.setTitle(newTitle);
-    }
-
-    return i18nActivity;
+    return sb.toString();
   }
   
   /**
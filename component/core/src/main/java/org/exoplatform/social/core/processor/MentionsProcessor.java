@@ -46,6 +46,11 @@ public class MentionsProcessor extends BaseActivityProcessorPlugin {
     super(params);
   }
 
+  @Override
+  public Phase getPhase() {
+    return Phase.WRITE;
+  }
+
 
   public void processActivity(ExoSocialActivity activity) {
     if (activity != null) {
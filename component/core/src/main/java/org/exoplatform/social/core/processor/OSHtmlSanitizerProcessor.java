@@ -32,6 +32,11 @@ public class OSHtmlSanitizerProcessor extends BaseActivityProcessorPlugin {
     super(params);
   }
 
+  @Override
+  public Phase getPhase() {
+    return Phase.WRITE;
+  }
+
   public void processActivity(ExoSocialActivity activity) {
     if (xmlProcessor == null) {
       xmlProcessor = (XMLProcessor) PortalContainer.getInstance().getComponentInstanceOfType(XMLProcessor.class);
@@ -30,6 +30,11 @@ public class TemplateParamsProcessor extends BaseActivityProcessorPlugin {
   public TemplateParamsProcessor(InitParams params) {
     super(params);
   }
+
+  @Override
+  public Phase getPhase() {
+    return Phase.WRITE;
+  }
   
   public void processActivity(ExoSocialActivity activity) {
     try {
@@ -55,6 +55,9 @@ public class ProfileFilter {
 
   private Sorting sorting;
   
+  /** The identity mentioning the found ones, its connections come first. */
+  private Identity viewerIdentity;
+
   private boolean isEmpty;
 
   public ProfileFilter() {
@@ -194,6 +197,27 @@ public class ProfileFilter {
     this.isEmpty = false;
   }
 
+  /**
+   * Gets the identity typing a mention.
+   *
+   * @return the viewer identity
+   * @since 4.1.0
+   */
+  public Identity getViewerIdentity() {
+    return viewerIdentity;
+  }
+
+  /**
+   * Sets the identity typing a mention: its connections come first and the name is matched
+   * by the start of its words.
+   *
+   * @param viewerIdentity the viewer identity
+   * @since 4.1.0
+   */
+  public void setViewerIdentity(Identity viewerIdentity) {
+    this.viewerIdentity = viewerIdentity;
+  }
+
   public String getAll() {
     return all;
   }
@@ -19,6 +19,7 @@ package org.exoplatform.social.core.profile;
 import org.exoplatform.social.common.lifecycle.AbstractLifeCycle;
 import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.profile.ProfileLifeCycleEvent.Type;
+import org.exoplatform.social.core.storage.cache.model.data.ProfileData;
 
 
 /**
@@ -51,6 +52,26 @@ public class ProfileLifeCycle extends AbstractLifeCycle<ProfileListener, Profile
     }
   }
 
+  /**
+   * Writes the type, the profile as it is when the event is broadcasted and
+   * the username.
+   */
+  @Override
+  protected String writeEvent(ProfileLifeCycleEvent event) throws Exception {
+    Profile profile = event.getProfile();
+    if (profile == null || profile.getIdentity() == null || profile.getIdentity().getId() == null) {
+      return null;
+    }
+    return event.getType() + " " + writeObject(new ProfileData(profile)) + " " + event.getUsername();
+  }
+
+  @Override
+  protected ProfileLifeCycleEvent readEvent(String data) throws Exception {
+    String[] fields = data.split(" ", 3);
+    Profile profile = ((ProfileData) readObject(fields[1])).build();
+    return new ProfileLifeCycleEvent(Type.valueOf(fields[0]), fields[2], profile);
+  }
+
   public void avatarUpdated(String username, Profile profile) {
     broadcast(new ProfileLifeCycleEvent(Type.AVATAR_UPDATED, username, profile));
   }
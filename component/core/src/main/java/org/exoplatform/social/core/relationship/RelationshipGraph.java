@@ -0,0 +1,607 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.relationship;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+
+/**
+ * An in-memory index of the relationships used to suggest the friends of friends, the pending
+ * relationships being counted as connections as well.
+ *
+ * The identity ids are mapped to ints and the connections are kept in compressed sparse rows:
+ * the sorted connections of the node i are the targets between offsets[i] and offsets[i + 1].
+ * A connected or disconnected node gets its own copy of its connections until the next compaction,
+ * which rebuilds the rows once enough nodes were changed.
+ *
+ * The graph is empty until it is loaded. The changes made while it is being loaded are replayed
+ * on the loaded rows, adding and removing a connection being idempotent.
+ *
+ * Only the changes made on this node are applied to the graph, so it is loaded again once the reload
+ * period is over to get the relationships changed on the other nodes of a cluster. The loaded graph
+ * is still read while it is reloaded.
+ *
+ * @since 4.1.0
+ */
+public class RelationshipGraph {
+
+  private static final int MIN_COMPACTION_THRESHOLD = 1024;
+
+  private static final String RELOAD_PERIOD = "reload-period";
+
+  private static final long DEFAULT_RELOAD_PERIOD = 10 * 60 * 1000L;
+
+  /** The ms after which the graph is loaded again, it is never reloaded when not positive. */
+  private final long reloadPeriod;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+  private String[] ids = new String[16];
+
+  private int size;
+
+  private int[] offsets = new int[1];
+
+  private int[] targets = new int[0];
+
+  private final Map<Integer, int[]> changed = new HashMap<Integer, int[]>();
+
+  private List<String[]> pending;
+
+  private boolean loaded;
+
+  private long loadedAt;
+
+  /** The scores of the candidates, reused by the suggestions of the same thread. */
+  private final ThreadLocal<Scores> scores = new ThreadLocal<Scores>() {
+    @Override
+    protected Scores initialValue() {
+      return new Scores();
+    }
+  };
+
+  public RelationshipGraph(InitParams params) {
+    this(longValue(params, RELOAD_PERIOD, DEFAULT_RELOAD_PERIOD));
+  }
+
+  public RelationshipGraph() {
+    this(DEFAULT_RELOAD_PERIOD);
+  }
+
+  /**
+   * @param reloadPeriod the ms after which the graph is loaded again, it is never reloaded when not positive
+   */
+  public RelationshipGraph(long reloadPeriod) {
+    this.reloadPeriod = reloadPeriod;
+  }
+
+  /**
+   * @return true when the relationships were loaded
+   */
+  public boolean isLoaded() {
+    lock.readLock().lock();
+    try {
+      return loaded;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Starts to record the changes, they will be replayed by {@link #load(Collection)}.
+   * Must be called before reading the relationships to load.
+   */
+  public void startLoading() {
+    lock.writeLock().lock();
+    try {
+      if (!loaded) {
+        pending = new ArrayList<String[]>();
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Starts to record the changes when the loaded graph is older than the reload period, the caller must then
+   * read the relationships again and give them to {@link #load(Collection)}, or call {@link #cancelLoading()}.
+   * A single caller is told to reload the graph at once.
+   *
+   * @return true if the graph must be reloaded by the caller
+   */
+  public boolean startReloading() {
+    lock.writeLock().lock();
+    try {
+      if (!loaded || pending != null || reloadPeriod <= 0 || System.currentTimeMillis() - loadedAt < reloadPeriod) {
+        return false;
+      }
+      pending = new ArrayList<String[]>();
+      return true;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Stops recording the changes when the relationships could not be read, the loaded graph is kept
+   * until the next reload period.
+   */
+  public void cancelLoading() {
+    lock.writeLock().lock();
+    try {
+      pending = null;
+      loadedAt = System.currentTimeMillis();
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Replaces the connections by the given ones then replays the changes made since {@link #startLoading()}.
+   *
+   * @param connections the pairs of connected identity ids, a pair may be given in both directions
+   */
+  public void load(Collection<String[]> connections) {
+    lock.writeLock().lock();
+    try {
+      indexes.clear();
+      ids = new String[16];
+      size = 0;
+      changed.clear();
+
+      int[] from = new int[connections.size()];
+      int[] to = new int[connections.size()];
+      int count = 0;
+      for (String[] connection : connections) {
+        from[count] = indexOf(connection[0]);
+        to[count] = indexOf(connection[1]);
+        ++count;
+      }
+      build(from, to, count);
+
+      List<String[]> replayed = pending;
+      pending = null;
+      loaded = true;
+      loadedAt = System.currentTimeMillis();
+      if (replayed != null) {
+        for (String[] change : replayed) {
+          update(change[0], change[1], change[2] != null);
+        }
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Forgets the loaded connections, the graph must be loaded again.
+   */
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      indexes.clear();
+      ids = new String[16];
+      size = 0;
+      offsets = new int[1];
+      targets = new int[0];
+      changed.clear();
+      pending = null;
+      loaded = false;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Adds a relationship, pending or confirmed.
+   */
+  public void connect(String identityId1, String identityId2) {
+    change(identityId1, identityId2, true);
+  }
+
+  /**
+   * Removes a relationship, nothing is done when the identities aren't connected.
+   */
+  public void disconnect(String identityId1, String identityId2) {
+    change(identityId1, identityId2, false);
+  }
+
+  private void change(String identityId1, String identityId2, boolean connect) {
+    if (identityId1 == null || identityId2 == null || identityId1.equals(identityId2)) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (loaded) {
+        update(identityId1, identityId2, connect);
+      }
+      //the change is replayed on the reloaded rows as well
+      if (pending != null) {
+        pending.add(new String[] {identityId1, identityId2, connect ? "" : null});
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the ids of the connections of an identity.
+   */
+  public List<String> getConnections(String identityId) {
+    lock.readLock().lock();
+    try {
+      Integer index = indexes.get(identityId);
+      if (index == null) {
+        return new ArrayList<String>(0);
+      }
+      int[] connections = connectionsOf(index);
+      List<String> got = new ArrayList<String>(connections.length);
+      for (int connection : connections) {
+        got.add(ids[connection]);
+      }
+      return got;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the identities which are connected to the connections of the given identity, with the
+   * number of their common connections. The best scores come first, equal scores keep the order
+   * the identities were added to the graph. The identities without common connections aren't given.
+   *
+   * @param identityId the identity
+   * @param excludedIds the identities which must not be suggested, the identity and its connections are always excluded
+   * @param limit the number of suggestions
+   * @return the ids of the suggested identities mapped to their number of common connections
+   */
+  public Map<String, Integer> getSuggestions(String identityId, Collection<String> excludedIds, int limit) {
+    lock.readLock().lock();
+    try {
+      Integer index = indexes.get(identityId);
+      if (index == null || limit <= 0) {
+        return new LinkedHashMap<String, Integer>();
+      }
+
+      Scores scored = scores.get();
+      scored.reset(size);
+      try {
+        int[] connections = connectionsOf(index);
+        for (int connection : connections) {
+          int[] row = changed.get(connection);
+          if (row != null) {
+            for (int candidate : row) {
+              scored.increment(candidate);
+            }
+          }
+          else if (connection + 1 < offsets.length) {
+            for (int i = offsets[connection]; i < offsets[connection + 1]; ++i) {
+              scored.increment(targets[i]);
+            }
+          }
+        }
+
+        scored.exclude(index);
+        for (int connection : connections) {
+          scored.exclude(connection);
+        }
+        if (excludedIds != null) {
+          for (String excludedId : excludedIds) {
+            Integer excluded = indexes.get(excludedId);
+            if (excluded != null) {
+              scored.exclude(excluded);
+            }
+          }
+        }
+
+        //the score is in the high bits, the lower indexes win the ties
+        TopKeys top = new TopKeys(Math.min(limit, scored.count));
+        for (int i = 0; i < scored.count; ++i) {
+          int candidate = scored.candidates[i];
+          if (scored.values[candidate] > 0) {
+            top.offer(((long) scored.values[candidate] << 32) | (Integer.MAX_VALUE - candidate));
+          }
+        }
+
+        Map<String, Integer> got = new LinkedHashMap<String, Integer>();
+        for (long key : top.sorted()) {
+          got.put(ids[Integer.MAX_VALUE - (int) key], (int) (key >>> 32));
+        }
+        return got;
+      }
+      finally {
+        scored.clear();
+      }
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of identities having or having had a connection
+   */
+  public int getNumberOfIdentities() {
+    lock.readLock().lock();
+    try {
+      return size;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private static long longValue(InitParams params, String name, long defaultValue) {
+    try {
+      ValueParam param = params.getValueParam(name);
+      return Long.valueOf(param.getValue());
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+
+  private void update(String identityId1, String identityId2, boolean connect) {
+    int index1 = indexOf(identityId1);
+    int index2 = indexOf(identityId2);
+    boolean updated = connect ? add(index1, index2) & add(index2, index1) : remove(index1, index2) & remove(index2, index1);
+    if (updated && changed.size() > Math.max(MIN_COMPACTION_THRESHOLD, size / 8)) {
+      compact();
+    }
+  }
+
+  private int indexOf(String identityId) {
+    Integer index = indexes.get(identityId);
+    if (index == null) {
+      index = size++;
+      if (index == ids.length) {
+        ids = Arrays.copyOf(ids, ids.length * 2);
+      }
+      ids[index] = identityId;
+      indexes.put(identityId, index);
+    }
+    return index;
+  }
+
+  private int[] connectionsOf(int index) {
+    int[] connections = changed.get(index);
+    if (connections != null) {
+      return connections;
+    }
+    if (index + 1 >= offsets.length) {
+      return new int[0];
+    }
+    return Arrays.copyOfRange(targets, offsets[index], offsets[index + 1]);
+  }
+
+  private boolean add(int index, int connection) {
+    int[] connections = connectionsOf(index);
+    int position = Arrays.binarySearch(connections, connection);
+    if (position >= 0) {
+      return false;
+    }
+    position = -position - 1;
+    int[] updated = new int[connections.length + 1];
+    System.arraycopy(connections, 0, updated, 0, position);
+    updated[position] = connection;
+    System.arraycopy(connections, position, updated, position + 1, connections.length - position);
+    changed.put(index, updated);
+    return true;
+  }
+
+  private boolean remove(int index, int connection) {
+    int[] connections = connectionsOf(index);
+    int position = Arrays.binarySearch(connections, connection);
+    if (position < 0) {
+      return false;
+    }
+    int[] updated = new int[connections.length - 1];
+    System.arraycopy(connections, 0, updated, 0, position);
+    System.arraycopy(connections, position + 1, updated, position, updated.length - position);
+    changed.put(index, updated);
+    return true;
+  }
+
+  private void compact() {
+    int[] newOffsets = new int[size + 1];
+    int total = 0;
+    for (int i = 0; i < size; ++i) {
+      newOffsets[i] = total;
+      total += connectionsOf(i).length;
+    }
+    newOffsets[size] = total;
+
+    int[] newTargets = new int[total];
+    for (int i = 0; i < size; ++i) {
+      int[] connections = connectionsOf(i);
+      System.arraycopy(connections, 0, newTargets, newOffsets[i], connections.length);
+    }
+
+    offsets = newOffsets;
+    targets = newTargets;
+    changed.clear();
+  }
+
+  private void build(int[] from, int[] to, int count) {
+    int[] degrees = new int[size + 1];
+    for (int i = 0; i < count; ++i) {
+      ++degrees[from[i]];
+      ++degrees[to[i]];
+    }
+
+    int[] starts = new int[size + 1];
+    for (int i = 0; i < size; ++i) {
+      starts[i + 1] = starts[i] + degrees[i];
+    }
+
+    int[] filled = new int[starts[size]];
+    int[] positions = Arrays.copyOf(starts, size);
+    for (int i = 0; i < count; ++i) {
+      filled[positions[from[i]]++] = to[i];
+      filled[positions[to[i]]++] = from[i];
+    }
+
+    //the duplicated and the self connections are removed while the rows are compacted
+    offsets = new int[size + 1];
+    int total = 0;
+    for (int i = 0; i < size; ++i) {
+      offsets[i] = total;
+      Arrays.sort(filled, starts[i], starts[i + 1]);
+      int previous = -1;
+      for (int j = starts[i]; j < starts[i + 1]; ++j) {
+        if (filled[j] != previous && filled[j] != i) {
+          filled[total++] = filled[j];
+          previous = filled[j];
+        }
+      }
+    }
+    offsets[size] = total;
+    targets = Arrays.copyOf(filled, total);
+  }
+
+  /**
+   * The scores of the candidates indexed by node, only the scored candidates are cleared after use.
+   */
+  private static class Scores {
+
+    private int[] values = new int[0];
+
+    private int[] candidates = new int[16];
+
+    private int count;
+
+    void reset(int size) {
+      if (values.length < size) {
+        values = new int[Math.max(size, values.length * 2)];
+      }
+    }
+
+    void increment(int candidate) {
+      if (values[candidate]++ == 0) {
+        if (count == candidates.length) {
+          candidates = Arrays.copyOf(candidates, count * 2);
+        }
+        candidates[count++] = candidate;
+      }
+    }
+
+    void exclude(int candidate) {
+      values[candidate] = 0;
+    }
+
+    void clear() {
+      for (int i = 0; i < count; ++i) {
+        values[candidates[i]] = 0;
+      }
+      count = 0;
+    }
+
+  }
+
+  /**
+   * Keeps the greatest keys in a bounded min heap.
+   */
+  private static class TopKeys {
+
+    private final long[] heap;
+
+    private int count;
+
+    TopKeys(int limit) {
+      this.heap = new long[limit];
+    }
+
+    void offer(long key) {
+      if (count < heap.length) {
+        heap[count] = key;
+        up(count++);
+      }
+      else if (key > heap[0]) {
+        heap[0] = key;
+        down(0);
+      }
+    }
+
+    long[] sorted() {
+      long[] sorted = Arrays.copyOf(heap, count);
+      Arrays.sort(sorted);
+      for (int i = 0, j = sorted.length - 1; i < j; ++i, --j) {
+        long swapped = sorted[i];
+        sorted[i] = sorted[j];
+        sorted[j] = swapped;
+      }
+      return sorted;
+    }
+
+    private void up(int i) {
+      while (i > 0) {
+        int parent = (i - 1) / 2;
+        if (heap[parent] <= heap[i]) {
+          return;
+        }
+        swap(parent, i);
+        i = parent;
+      }
+    }
+
+    private void down(int i) {
+      while (true) {
+        int smallest = i;
+        int left = 2 * i + 1;
+        int right = left + 1;
+        if (left < count && heap[left] < heap[smallest]) {
+          smallest = left;
+        }
+        if (right < count && heap[right] < heap[smallest]) {
+          smallest = right;
+        }
+        if (smallest == i) {
+          return;
+        }
+        swap(smallest, i);
+        i = smallest;
+      }
+    }
+
+    private void swap(int i, int j) {
+      long swapped = heap[i];
+      heap[i] = heap[j];
+      heap[j] = swapped;
+    }
+
+  }
+
+}
@@ -16,10 +16,15 @@
  */
 package org.exoplatform.social.core.relationship;
 
+import java.io.Serializable;
+
 import org.exoplatform.social.common.lifecycle.AbstractLifeCycle;
+import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.manager.RelationshipManager;
 import org.exoplatform.social.core.relationship.RelationshipEvent.Type;
 import org.exoplatform.social.core.relationship.model.Relationship;
+import org.exoplatform.social.core.storage.cache.model.data.ProfileData;
+import org.exoplatform.social.core.storage.cache.model.data.RelationshipData;
 
 
 public class RelationshipLifeCycle extends AbstractLifeCycle<RelationshipListener,RelationshipEvent> {
@@ -49,6 +54,44 @@ public class RelationshipLifeCycle extends AbstractLifeCycle<RelationshipListene
 
   }
 
+  /**
+   * Writes the type and the relationship as it is when the event is
+   * broadcasted, with the profiles of its identities, so that the events of
+   * the removed relationships are recovered too.
+   */
+  @Override
+  protected String writeEvent(RelationshipEvent event) throws Exception {
+    Relationship relationship = event.getPayload();
+    if (relationship == null || relationship.getId() == null) {
+      return null;
+    }
+    return event.getType() + " " + writeObject(new Serializable[] {new RelationshipData(relationship),
+        profileData(relationship.getSender()), profileData(relationship.getReceiver())});
+  }
+
+  @Override
+  protected RelationshipEvent readEvent(String data) throws Exception {
+    String[] fields = data.split(" ", 2);
+    Object[] payload = (Object[]) readObject(fields[1]);
+    Relationship relationship = ((RelationshipData) payload[0]).build();
+    if (payload[1] != null) {
+      relationship.getSender().setProfile(((ProfileData) payload[1]).build());
+    }
+    if (payload[2] != null) {
+      relationship.getReceiver().setProfile(((ProfileData) payload[2]).build());
+    }
+    RelationshipManager relationshipManager =
+        (RelationshipManager) container.getComponentInstanceOfType(RelationshipManager.class);
+    return new RelationshipEvent(Type.valueOf(fields[0]), relationshipManager, relationship);
+  }
+
+  private static ProfileData profileData(Identity identity) {
+    if (identity == null || identity.getProfile() == null || identity.getProfile().getIdentity() == null) {
+      return null;
+    }
+    return new ProfileData(identity.getProfile());
+  }
+
   public void relationshipConfirmed(RelationshipManager relationshipManager, Relationship relationship) {
     broadcast(new RelationshipEvent(Type.CONFIRM, relationshipManager, relationship));
   }
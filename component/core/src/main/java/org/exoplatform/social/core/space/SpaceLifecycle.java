@@ -16,11 +16,15 @@
  */
 package org.exoplatform.social.core.space;
 
+import java.io.Serializable;
+
 import org.exoplatform.social.common.lifecycle.AbstractLifeCycle;
 import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.core.space.model.Space.UpdatedField;
 import org.exoplatform.social.core.space.spi.SpaceLifeCycleEvent;
 import org.exoplatform.social.core.space.spi.SpaceLifeCycleListener;
 import org.exoplatform.social.core.space.spi.SpaceLifeCycleEvent.Type;
+import org.exoplatform.social.core.storage.cache.model.data.SpaceData;
 
 
 /**
@@ -86,6 +90,32 @@ public class SpaceLifecycle extends AbstractLifeCycle<SpaceLifeCycleListener, Sp
     }
   }
 
+  /**
+   * Writes the type, the space as it is when the event is broadcasted and the
+   * target, so that the events of the removed spaces are recovered too.
+   */
+  @Override
+  protected String writeEvent(SpaceLifeCycleEvent event) throws Exception {
+    Space space = event.getSpace();
+    if (space == null || space.getId() == null) {
+      return null;
+    }
+    String data = event.getType() + " " + writeObject(new Serializable[] {
+        new SpaceData(space), space.getField(), space.getCreator(), space.getEditor()});
+    return event.getTarget() != null ? data + " " + event.getTarget() : data;
+  }
+
+  @Override
+  protected SpaceLifeCycleEvent readEvent(String data) throws Exception {
+    String[] fields = data.split(" ", 3);
+    Object[] payload = (Object[]) readObject(fields[1]);
+    Space space = ((SpaceData) payload[0]).build();
+    space.setField((UpdatedField) payload[1]);
+    space.setCreator((String) payload[2]);
+    space.setEditor((String) payload[3]);
+    return new SpaceLifeCycleEvent(space, fields.length > 2 ? fields[2] : null, Type.valueOf(fields[0]));
+  }
+
   public void spaceCreated(Space space, String creator) {
     broadcast(new SpaceLifeCycleEvent(space, creator, Type.SPACE_CREATED));
   }
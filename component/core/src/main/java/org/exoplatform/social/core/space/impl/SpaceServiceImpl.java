@@ -21,8 +21,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.exoplatform.commons.utils.ListAccess;
@@ -395,22 +397,25 @@ public class SpaceServiceImpl implements SpaceService {
         PageList<User> groupMembersAccess = org.getUserHandler().findUsersByGroup(invitedGroupId);
         List<User> users = groupMembersAccess.getAll();
 
+        // the lists are set once, a whole group is not added user by user
+        Set<String> memberSet = toSet(space.getMembers());
+        Set<String> invitedSet = toSet(space.getInvitedUsers());
         for (User user : users) {
           String userId = user.getUserName();
           if (!userId.equals(creator)) {
-            String[] invitedUsers = space.getInvitedUsers();
             if (userId.equals(getUserACL().getSuperUser())) {
-              members = space.getMembers();
-              if (!ArrayUtils.contains(members, userId)) {
-                members = (String[]) ArrayUtils.add(members, userId);
-                space.setMembers(members);
-              }
-            } else if (!ArrayUtils.contains(invitedUsers, userId)) {
-              invitedUsers = (String[]) ArrayUtils.add(invitedUsers, userId);
-              space.setInvitedUsers(invitedUsers);
+              memberSet.add(userId);
+            } else {
+              invitedSet.add(userId);
             }
           }
         }
+        if (space.getMembers() == null || memberSet.size() > space.getMembers().length) {
+          space.setMembers(memberSet.toArray(new String[memberSet.size()]));
+        }
+        if (space.getInvitedUsers() == null || invitedSet.size() > space.getInvitedUsers().length) {
+          space.setInvitedUsers(invitedSet.toArray(new String[invitedSet.size()]));
+        }
       } catch (Exception e) {
         LOG.error("Failed to invite users from group " + invitedGroupId, e);
       }
@@ -558,7 +563,7 @@ public class SpaceServiceImpl implements SpaceService {
     String[] members = space.getMembers();
     space = this.removeInvited(space, userId);
     space = this.removePending(space, userId);
-    if (!ArrayUtils.contains(members, userId)) {
+    if (!space.getMembership().isMember(userId)) {
       members = (String[]) ArrayUtils.add(members, userId);
       space.setMembers(members);
       this.updateSpace(space);
@@ -579,7 +584,7 @@ public class SpaceServiceImpl implements SpaceService {
    */
   public void removeMember(Space space, String userId) {
     String[] members = space.getMembers();
-    if (ArrayUtils.contains(members, userId)) {
+    if (space.getMembership().isMember(userId)) {
       members = (String[]) ArrayUtils.removeElement(members, userId);
       space.setMembers(members);
       this.updateSpace(space);
@@ -600,7 +605,7 @@ public class SpaceServiceImpl implements SpaceService {
    */
   private Space addPending(Space space, String userId) {
     String[] pendingUsers = space.getPendingUsers();
-    if (!ArrayUtils.contains(pendingUsers, userId)) {
+    if (!space.getMembership().isPendingUser(userId)) {
       pendingUsers = (String[]) ArrayUtils.add(pendingUsers, userId);
       space.setPendingUsers(pendingUsers);
     }
@@ -612,7 +617,7 @@ public class SpaceServiceImpl implements SpaceService {
    */
   private Space removePending(Space space, String userId) {
     String[] pendingUsers = space.getPendingUsers();
-    if (ArrayUtils.contains(pendingUsers, userId)) {
+    if (space.getMembership().isPendingUser(userId)) {
       pendingUsers = (String[]) ArrayUtils.removeElement(pendingUsers, userId);
       space.setPendingUsers(pendingUsers);
     }
@@ -624,7 +629,7 @@ public class SpaceServiceImpl implements SpaceService {
    */
   private Space addInvited(Space space, String userId) {
     String[] invitedUsers = space.getInvitedUsers();
-    if (!ArrayUtils.contains(invitedUsers, userId)) {
+    if (!space.getMembership().isInvitedUser(userId)) {
       invitedUsers = (String[]) ArrayUtils.add(invitedUsers, userId);
       space.setInvitedUsers(invitedUsers);
     }
@@ -636,13 +641,21 @@ public class SpaceServiceImpl implements SpaceService {
    */
   private Space removeInvited(Space space, String userId) {
     String[] invitedUsers = space.getInvitedUsers();
-    if (ArrayUtils.contains(invitedUsers, userId)) {
+    if (space.getMembership().isInvitedUser(userId)) {
       invitedUsers = (String[]) ArrayUtils.removeElement(invitedUsers, userId);
       space.setInvitedUsers(invitedUsers);
     }
     return space;
   }
 
+  private static Set<String> toSet(String[] users) {
+    Set<String> set = new LinkedHashSet<String>();
+    if (users != null) {
+      set.addAll(Arrays.asList(users));
+    }
+    return set;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -712,7 +725,7 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public boolean isMember(Space space, String userId) {
-    return ArrayUtils.contains(space.getMembers(), userId);
+    return space.getMembership().isMember(userId);
   }
 
   /**
@@ -727,8 +740,8 @@ public class SpaceServiceImpl implements SpaceService {
    */
   public boolean hasAccessPermission(Space space, String userId) {
     if (userId.equals(getUserACL().getSuperUser()) 
-        || (ArrayUtils.contains(space.getMembers(), userId)) 
-        || (ArrayUtils.contains(space.getManagers(), userId))) {
+        || (space.getMembership().isMember(userId)) 
+        || (space.getMembership().isManager(userId))) {
       return true;
     }
     return false;
@@ -1197,10 +1210,10 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public void addInvitedUser(Space space, String userId) {
-    if (ArrayUtils.contains(space.getInvitedUsers(), userId)) {
+    if (space.getMembership().isInvitedUser(userId)) {
       LOG.warn("User already invited");
       return;
-    } else if (ArrayUtils.contains(space.getMembers(), userId) && !userId.equals(getUserACL().getSuperUser())) {
+    } else if (space.getMembership().isMember(userId) && !userId.equals(getUserACL().getSuperUser())) {
       LOG.warn("User already member");
       return;
     }
@@ -1217,7 +1230,7 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public void addPendingUser(Space space, String userId) {
-    if (ArrayUtils.contains(space.getPendingUsers(), userId)) {
+    if (space.getMembership().isPendingUser(userId)) {
       this.addMember(space, userId);
       space = removeInvited(space, userId);
       this.updateSpace(space);
@@ -1324,7 +1337,7 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public boolean hasSettingPermission(Space space, String userId) {
-    if (userId.equals(getUserACL().getSuperUser()) || (ArrayUtils.contains(space.getManagers(), userId))) {
+    if (userId.equals(getUserACL().getSuperUser()) || (space.getMembership().isManager(userId))) {
       return true;
     }
     return false;
@@ -1334,21 +1347,21 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public boolean isInvitedUser(Space space, String userId) {
-    return ArrayUtils.contains(space.getInvitedUsers(), userId);
+    return space.getMembership().isInvitedUser(userId);
   }
 
   /**
    * {@inheritDoc}
    */
   public boolean isManager(Space space, String userId) {
-    return ArrayUtils.contains(space.getManagers(), userId);
+    return space.getMembership().isManager(userId);
   }
 
   /**
    * {@inheritDoc}
    */
   public boolean isOnlyManager(Space space, String userId) {
-    if (space.getManagers() != null && space.getManagers().length == 1 && ArrayUtils.contains(space.getManagers(), userId)) {
+    if (space.getManagers() != null && space.getManagers().length == 1 && space.getMembership().isManager(userId)) {
       return true;
     }
     return false;
@@ -1358,7 +1371,7 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public boolean isPendingUser(Space space, String userId) {
-    return ArrayUtils.contains(space.getPendingUsers(), userId);
+    return space.getMembership().isPendingUser(userId);
   }
 
   /**
@@ -1372,7 +1385,7 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public void removeInvitedUser(Space space, String userId) {
-    if (ArrayUtils.contains(space.getInvitedUsers(), userId)) {
+    if (space.getMembership().isInvitedUser(userId)) {
       space = this.removeInvited(space, userId);
       this.updateSpace(space);
     }
@@ -1382,7 +1395,7 @@ public class SpaceServiceImpl implements SpaceService {
    * {@inheritDoc}
    */
   public void removePendingUser(Space space, String userId) {
-    if (ArrayUtils.contains(space.getPendingUsers(), userId)) {
+    if (space.getMembership().isPendingUser(userId)) {
       space = this.removePending(space, userId);
       this.updateSpace(space);
     }
@@ -1394,7 +1407,7 @@ public class SpaceServiceImpl implements SpaceService {
   public void setManager(Space space, String userId, boolean isManager) {
     String[] managers = space.getManagers();
     if (isManager) {
-      if (!ArrayUtils.contains(managers, userId)) {
+      if (!space.getMembership().isManager(userId)) {
         managers = (String[]) ArrayUtils.add(managers, userId);
         space.setManagers(managers);
         this.updateSpace(space);
@@ -1402,7 +1415,7 @@ public class SpaceServiceImpl implements SpaceService {
         spaceLifeCycle.grantedLead(space, userId);
       }
     } else {
-      if (ArrayUtils.contains(managers, userId)) {
+      if (space.getMembership().isManager(userId)) {
         managers = (String[]) ArrayUtils.removeElement(managers, userId);
         space.setManagers(managers);
         this.updateSpace(space);
@@ -125,6 +125,13 @@ public class Space {
    * @since 1.2.0-GA
    */
   private String[] members;
+
+  /**
+   * The hashed view of the user lists, built again once a list is replaced.
+   * 
+   * @since 4.1.0
+   */
+  private SpaceMembership membership;
   
   /** The Constant ACTIVE_STATUS. */
   public final static String ACTIVE_STATUS = "active";
@@ -610,6 +617,32 @@ public class Space {
   public void setMembers(String[] members) {
     this.members = members;
   }
+
+  /**
+   * Gets the hashed view of the managers, members, pending and invited users. The lists must be
+   * replaced by their setters, not changed in place, for the view to be updated.
+   * 
+   * @return the membership
+   * @since 4.1.0
+   */
+  public SpaceMembership getMembership() {
+    SpaceMembership got = membership;
+    if (got == null || !got.isOf(managers, members, pendingUsers, invitedUsers)) {
+      got = new SpaceMembership(managers, members, pendingUsers, invitedUsers);
+      membership = got;
+    }
+    return got;
+  }
+
+  /**
+   * Shares a membership view already built from the lists of this space, it is ignored otherwise.
+   * 
+   * @param membership the membership
+   * @since 4.1.0
+   */
+  public void setMembership(SpaceMembership membership) {
+    this.membership = membership;
+  }
   
   /**
    * Gets the last updated time in milliseconds of avatar in a space
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.space.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The hashed view of the user lists of a space: managers, members, pending and invited users.
+ *
+ * The view is immutable, it is bound to the arrays it was built from. A set is built on its first
+ * check then shared by the spaces having the same arrays, as the ones built from the cache.
+ *
+ * @since 4.1.0
+ */
+public final class SpaceMembership {
+
+  private final String[] managers;
+
+  private final String[] members;
+
+  private final String[] pendingUsers;
+
+  private final String[] invitedUsers;
+
+  private volatile Set<String> managerSet;
+
+  private volatile Set<String> memberSet;
+
+  private volatile Set<String> pendingSet;
+
+  private volatile Set<String> invitedSet;
+
+  /**
+   * @param managers the managers, may be null
+   * @param members the members, may be null
+   * @param pendingUsers the users who requested to join, may be null
+   * @param invitedUsers the invited users, may be null
+   */
+  public SpaceMembership(String[] managers, String[] members, String[] pendingUsers, String[] invitedUsers) {
+    this.managers = managers;
+    this.members = members;
+    this.pendingUsers = pendingUsers;
+    this.invitedUsers = invitedUsers;
+  }
+
+  /**
+   * @param userId the user
+   * @return true when the user is a manager
+   */
+  public boolean isManager(String userId) {
+    Set<String> set = managerSet;
+    if (set == null) {
+      managerSet = set = toSet(managers);
+    }
+    return set.contains(userId);
+  }
+
+  /**
+   * @param userId the user
+   * @return true when the user is a member
+   */
+  public boolean isMember(String userId) {
+    Set<String> set = memberSet;
+    if (set == null) {
+      memberSet = set = toSet(members);
+    }
+    return set.contains(userId);
+  }
+
+  /**
+   * @param userId the user
+   * @return true when the user requested to join
+   */
+  public boolean isPendingUser(String userId) {
+    Set<String> set = pendingSet;
+    if (set == null) {
+      pendingSet = set = toSet(pendingUsers);
+    }
+    return set.contains(userId);
+  }
+
+  /**
+   * @param userId the user
+   * @return true when the user is invited
+   */
+  public boolean isInvitedUser(String userId) {
+    Set<String> set = invitedSet;
+    if (set == null) {
+      invitedSet = set = toSet(invitedUsers);
+    }
+    return set.contains(userId);
+  }
+
+  /**
+   * @return the managers and the members, the users who can access the space
+   */
+  public Set<String> getManagersAndMembers() {
+    Set<String> users = new HashSet<String>();
+    if (managers != null) {
+      users.addAll(Arrays.asList(managers));
+    }
+    if (members != null) {
+      users.addAll(Arrays.asList(members));
+    }
+    return users;
+  }
+
+  /**
+   * The arrays are compared by reference: a list changed in place is not seen.
+   *
+   * @return true when the view was built from the given arrays
+   */
+  boolean isOf(String[] managers, String[] members, String[] pendingUsers, String[] invitedUsers) {
+    return this.managers == managers && this.members == members
+        && this.pendingUsers == pendingUsers && this.invitedUsers == invitedUsers;
+  }
+
+  private static Set<String> toSet(String[] users) {
+    if (users == null || users.length == 0) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(users)));
+  }
+
+}
@@ -65,6 +65,16 @@ public interface ActivityStorage {
    */
   public ExoSocialActivity getActivity(String activityId) throws ActivityStorageException;
 
+  /**
+   * Loads the activities of the given ids in one call.
+   *
+   * @param activityIds the ids of the activities
+   * @return the activities, in the order of the ids, without the ones which don't exist anymore
+   * @throws ActivityStorageException
+   * @since 4.1.0
+   */
+  public List<ExoSocialActivity> getActivities(List<String> activityIds) throws ActivityStorageException;
+
   /**
    * Gets all the activities by identity.
    *
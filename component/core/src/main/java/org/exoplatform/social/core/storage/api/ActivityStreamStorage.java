@@ -18,9 +18,12 @@ package org.exoplatform.social.core.storage.api;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.exoplatform.social.common.service.ProcessContext;
+import org.exoplatform.social.core.activity.model.ActivityStreamPage;
+import org.exoplatform.social.core.activity.model.ActivityStreamState;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
@@ -206,6 +209,19 @@ public interface ActivityStreamStorage {
    * @since 4.0.2, 4.1.0
    */
   public List<ExoSocialActivity> getFeed(Identity owner, int offset, int limit);
+
+  /**
+   * Gets a page of the Feed stream following the given cursor, the position of the cursor
+   * is reached without reading the newer activities.
+   * 
+   * @param owner the owner's stream
+   * @param cursor the next cursor of the previous page, null for the first page
+   * @param limit
+   * @return the page
+   * @throws IllegalArgumentException if the cursor is malformed
+   * @since 4.1.0
+   */
+  public ActivityStreamPage getFeed(Identity owner, String cursor, int limit);
   /**
    * Gets the number of owner's feed stream
    * @param owner
@@ -215,6 +231,51 @@ public interface ActivityStreamStorage {
    */
   public int getNumberOfFeed(Identity owner);
   
+  /**
+   * Gets the number of activities updated after the given time on the owner's stream,
+   * the number is given by the counters of the stream without loading the activities.
+   * 
+   * @param owner the owner's stream
+   * @param type the stream
+   * @param sinceTime the last updated time
+   * @return the number of updated activities
+   * @since 4.1.0
+   */
+  public int getNumberOfUpdated(Identity owner, ActivityRefType type, long sinceTime);
+  
+  /**
+   * Gets the number of activities updated on several owner's streams, each stream after its own time.
+   * An activity updated on several streams is counted once.
+   * 
+   * @param owner the owner's streams
+   * @param sinceTimes the last updated time of each stream
+   * @param limit the maximum number of activities counted on each stream
+   * @return the number of updated activities
+   * @since 4.1.0
+   */
+  public int getNumberOfUpdated(Identity owner, Map<ActivityRefType, Long> sinceTimes, int limit);
+  
+  /**
+   * Gets the state of the owner's stream from its references and counters, without loading the activities.
+   * The state changes when an activity is added, updated or removed on the stream, its version when an activity
+   * of the stream is touched.
+   * 
+   * @param owner the owner's stream
+   * @param type the stream
+   * @return the state, with a last updated time of 0 when the stream is empty
+   * @since 4.1.0
+   */
+  public ActivityStreamState getState(Identity owner, ActivityRefType type);
+  
+  /**
+   * Changes the version of the streams holding the activity, when the activity is changed without moving its
+   * references: liked, edited or commented.
+   * 
+   * @param activityId the id of the changed activity
+   * @since 4.1.0
+   */
+  public void touch(String activityId);
+  
   /**
    * Determines whether Feed Stream's size or not 
    * @param owner
@@ -234,6 +295,19 @@ public interface ActivityStreamStorage {
    * @since 4.0.2, 4.1.0
    */
   public List<ExoSocialActivity> getConnections(Identity owner, int offset, int limit);
+
+  /**
+   * Gets a page of the Connections stream following the given cursor, the position of the cursor
+   * is reached without reading the newer activities.
+   * 
+   * @param owner the owner's stream
+   * @param cursor the next cursor of the previous page, null for the first page
+   * @param limit
+   * @return the page
+   * @throws IllegalArgumentException if the cursor is malformed
+   * @since 4.1.0
+   */
+  public ActivityStreamPage getConnections(Identity owner, String cursor, int limit);
   
   /**
    * The number of the activities on the owner's connection stream
@@ -260,6 +334,19 @@ public interface ActivityStreamStorage {
    * @since 4.0.2, 4.1.0
    */
   public List<ExoSocialActivity> getMySpaces(Identity owner, int offset, int limit);
+
+  /**
+   * Gets a page of the My Spaces stream following the given cursor, the position of the cursor
+   * is reached without reading the newer activities.
+   * 
+   * @param owner the owner's stream
+   * @param cursor the next cursor of the previous page, null for the first page
+   * @param limit
+   * @return the page
+   * @throws IllegalArgumentException if the cursor is malformed
+   * @since 4.1.0
+   */
+  public ActivityStreamPage getMySpaces(Identity owner, String cursor, int limit);
   
   /**
    * The number of the activity on the owner's my space stream
@@ -287,6 +374,19 @@ public interface ActivityStreamStorage {
    * @since 4.0.2, 4.1.0
    */
   public List<ExoSocialActivity> getSpaceStream(Identity owner, int offset, int limit);
+
+  /**
+   * Gets a page of the Space stream following the given cursor, the position of the cursor
+   * is reached without reading the newer activities.
+   * 
+   * @param owner the owner's stream
+   * @param cursor the next cursor of the previous page, null for the first page
+   * @param limit
+   * @return the page
+   * @throws IllegalArgumentException if the cursor is malformed
+   * @since 4.1.0
+   */
+  public ActivityStreamPage getSpaceStream(Identity owner, String cursor, int limit);
   
   /**
    * 
@@ -315,6 +415,19 @@ public interface ActivityStreamStorage {
    * @since 4.0.2, 4.1.0
    */
   public List<ExoSocialActivity> getMyActivities(Identity owner, int offset, int limit);
+
+  /**
+   * Gets a page of the My Activities stream following the given cursor, the position of the cursor
+   * is reached without reading the newer activities.
+   * 
+   * @param owner the owner's stream
+   * @param cursor the next cursor of the previous page, null for the first page
+   * @param limit
+   * @return the page
+   * @throws IllegalArgumentException if the cursor is malformed
+   * @since 4.1.0
+   */
+  public ActivityStreamPage getMyActivities(Identity owner, String cursor, int limit);
   
   /**
    * 
@@ -70,6 +70,16 @@ public interface IdentityStorage {
    */
   public Identity findIdentityById(final String nodeId) throws IdentityStorageException;
 
+  /**
+   * Gets the identities of the given ids with their profiles in one call.
+   *
+   * @param nodeIds the ids of the identities
+   * @return the identities, in the order of the ids, without the ones which don't exist
+   * @throws IdentityStorageException
+   * @since 4.1.0
+   */
+  public List<Identity> findIdentitiesById(final List<String> nodeIds) throws IdentityStorageException;
+
   /**
    * Deletes an identity from JCR
    *
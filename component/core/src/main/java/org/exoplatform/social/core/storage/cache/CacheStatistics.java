@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit, miss and eviction counters of a {@link CacheType}, with the loads which timed out, the lookups
+ * served by a negative entry and the entries refreshed ahead of their expiration.
+ *
+ * @since 4.1.0
+ */
+public class CacheStatistics {
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong negativeHits = new AtomicLong();
+  private final AtomicLong refreshes = new AtomicLong();
+
+  public void hit() {
+    hits.incrementAndGet();
+  }
+
+  public void miss() {
+    misses.incrementAndGet();
+  }
+
+  public void evicted() {
+    evictions.incrementAndGet();
+  }
+
+  public void timedOut() {
+    timeouts.incrementAndGet();
+  }
+
+  public void negativeHit() {
+    negativeHits.incrementAndGet();
+  }
+
+  public void refreshed() {
+    refreshes.incrementAndGet();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public long getTimeouts() {
+    return timeouts.get();
+  }
+
+  public long getNegativeHits() {
+    return negativeHits.get();
+  }
+
+  public long getRefreshes() {
+    return refreshes.get();
+  }
+
+  /**
+   * @return the ratio of the lookups served by the cache, 0 when there was no lookup
+   */
+  public double getHitRatio() {
+    long h = hits.get();
+    long total = h + misses.get();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  public void reset() {
+    hits.set(0);
+    misses.set(0);
+    evictions.set(0);
+    timeouts.set(0);
+    negativeHits.set(0);
+    refreshes.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return "hits=" + hits.get() + ", misses=" + misses.get() + ", evictions=" + evictions.get()
+        + ", timeouts=" + timeouts.get() + ", negativeHits=" + negativeHits.get() + ", refreshes=" + refreshes.get();
+  }
+
+}
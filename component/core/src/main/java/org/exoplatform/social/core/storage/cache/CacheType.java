@@ -68,10 +68,20 @@ public enum CacheType {
 
   private final String name;
 
+  private final CacheStatistics statistics = new CacheStatistics();
+
   private CacheType(final String name) {
     this.name = name;
   }
 
+  public String getName() {
+    return name;
+  }
+
+  public CacheStatistics getStatistics() {
+    return statistics;
+  }
+
   public <K extends CacheKey, V extends Serializable> ExoCache<K, V> getFromService(CacheService service) {
     return service.getCacheInstance(name);
   }
@@ -79,7 +89,7 @@ public enum CacheType {
   public <K extends CacheKey, V extends Serializable> FutureExoCache<K, V, ServiceContext<V>> createFutureCache(
       ExoCache<K, V> cache) {
 
-    return new FutureExoCache<K, V, ServiceContext<V>>(new CacheLoader<K, V>(), cache);
+    return new FutureExoCache<K, V, ServiceContext<V>>(new CacheLoader<K, V>(), cache, statistics);
 
   }
 
@@ -18,8 +18,14 @@
 package org.exoplatform.social.core.storage.cache;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 
 import org.exoplatform.services.cache.ExoCache;
@@ -43,9 +49,12 @@ import org.exoplatform.social.core.storage.cache.model.key.ActivityType;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityKey;
 import org.exoplatform.social.core.storage.cache.model.key.ListActivitiesKey;
 import org.exoplatform.social.core.storage.cache.selector.ActivityOwnerCacheSelector;
+import org.exoplatform.social.core.storage.cache.selector.ActivityStreamCacheSelector;
+import org.exoplatform.social.core.storage.cache.selector.ActivityStreamHeadSelector;
 import org.exoplatform.social.core.storage.cache.selector.ScopeCacheSelector;
 import org.exoplatform.social.core.storage.impl.ActivityBuilderWhere;
 import org.exoplatform.social.core.storage.impl.ActivityStorageImpl;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
 
 /**
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
@@ -66,11 +75,80 @@ public class CachedActivityStorage implements ActivityStorage {
 
   private final ActivityStorageImpl storage;
 
+  private boolean mustInjectStreams = true;
+
   public void clearCache() {
 
     try {
-      exoActivitiesCache.select(new ScopeCacheSelector<ListActivitiesKey, ListActivitiesData>());
-      exoActivitiesCountCache.select(new ScopeCacheSelector<ActivityCountKey, IntegerData>());
+      exoActivitiesCache.select(
+          new ScopeCacheSelector<ListActivitiesKey, ListActivitiesData>(CacheType.ACTIVITIES.getStatistics()));
+      exoActivitiesCountCache.select(
+          new ScopeCacheSelector<ActivityCountKey, IntegerData>(CacheType.ACTIVITIES_COUNT.getStatistics()));
+    }
+    catch (Exception e) {
+      LOG.error(e);
+    }
+
+  }
+
+  /**
+   * Clears the activity lists and counts which depend on the given streams or activities,
+   * the entries of the other streams are kept.
+   *
+   * @param ownerIds the owners of the changed streams, may be null
+   * @param activityIds the changed activities, may be null
+   * @since 4.1.0
+   */
+  public void clearStreamCache(Collection<String> ownerIds, Collection<String> activityIds) {
+
+    if ((ownerIds == null || ownerIds.isEmpty()) && (activityIds == null || activityIds.isEmpty())) {
+      return;
+    }
+
+    try {
+      exoActivitiesCache.select(new ActivityStreamCacheSelector<ListActivitiesKey, ListActivitiesData>(
+          ownerIds, activityIds, CacheType.ACTIVITIES.getStatistics()));
+      exoActivitiesCountCache.select(new ActivityStreamCacheSelector<ActivityCountKey, IntegerData>(
+          ownerIds, activityIds, CacheType.ACTIVITIES_COUNT.getStatistics()));
+    }
+    catch (Exception e) {
+      LOG.error(e);
+    }
+
+  }
+
+  /**
+   * Puts a new activity on the head of the cached streams which received it: the first page of each stream
+   * gets the activity and its count is incremented, the other lists and counts of the owners are cleared.
+   *
+   * @param activityId the new activity
+   * @param lastUpdated the last updated time of the new activity
+   * @param streams the owners and the types of the streams which received the activity
+   * @since 4.1.0
+   */
+  public void prependStreamCache(String activityId, long lastUpdated, Map<String, Set<ActivityRefType>> streams) {
+
+    if (streams == null || streams.isEmpty()) {
+      return;
+    }
+
+    Map<String, Set<ActivityType>> types = new HashMap<String, Set<ActivityType>>();
+    for (Map.Entry<String, Set<ActivityRefType>> e : streams.entrySet()) {
+      Set<ActivityType> ownerTypes = EnumSet.noneOf(ActivityType.class);
+      for (ActivityRefType refType : e.getValue()) {
+        ActivityType type = activityTypeOf(refType);
+        if (type != null) {
+          ownerTypes.add(type);
+        }
+      }
+      types.put(e.getKey(), ownerTypes);
+    }
+
+    try {
+      exoActivitiesCache.select(new ActivityStreamHeadSelector<ListActivitiesKey, ListActivitiesData>(
+          activityId, lastUpdated, types, exoActivityCache, CacheType.ACTIVITIES.getStatistics()));
+      exoActivitiesCountCache.select(new ActivityStreamHeadSelector<ActivityCountKey, IntegerData>(
+          activityId, lastUpdated, types, exoActivityCache, CacheType.ACTIVITIES_COUNT.getStatistics()));
     }
     catch (Exception e) {
       LOG.error(e);
@@ -78,6 +156,23 @@ public class CachedActivityStorage implements ActivityStorage {
 
   }
 
+  private static ActivityType activityTypeOf(ActivityRefType refType) {
+    switch (refType) {
+      case FEED:
+        return ActivityType.FEED;
+      case CONNECTION:
+        return ActivityType.CONNECTION;
+      case MY_SPACES:
+        return ActivityType.SPACES;
+      case SPACE_STREAM:
+        return ActivityType.SPACE;
+      case MY_ACTIVITIES:
+        return ActivityType.USER;
+      default:
+        return null;
+    }
+  }
+
   void clearOwnerCache(String ownerId) {
 
     try {
@@ -87,7 +182,7 @@ public class CachedActivityStorage implements ActivityStorage {
       LOG.error(e);
     }
 
-    clearCache();
+    clearStreamCache(Collections.singleton(ownerId), null);
 
   }
 
@@ -99,8 +194,8 @@ public class CachedActivityStorage implements ActivityStorage {
    */
   public void clearActivityCached(String activityId) {
     ActivityKey key = new ActivityKey(activityId);
-    exoActivityCache.remove(key);
-    clearCache();
+    activityCache.remove(key);
+    clearStreamCache(null, Collections.singleton(activityId));
   }
   
   /**
@@ -111,12 +206,11 @@ public class CachedActivityStorage implements ActivityStorage {
    */
   private List<ExoSocialActivity> buildActivities(ListActivitiesData data) {
 
-    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
+    List<String> ids = new ArrayList<String>(data.getIds().size());
     for (ActivityKey k : data.getIds()) {
-      ExoSocialActivity a = getActivity(k.getId());
-      activities.add(a);
+      ids.add(k.getId());
     }
-    return activities;
+    return getActivities(ids);
 
   }
 
@@ -150,9 +244,9 @@ public class CachedActivityStorage implements ActivityStorage {
     this.exoActivitiesCache = cacheService.getActivitiesCache();
 
     //
-    this.activityCache = CacheType.ACTIVITY.createFutureCache(exoActivityCache);
-    this.activitiesCountCache = CacheType.ACTIVITIES_COUNT.createFutureCache(exoActivitiesCountCache);
-    this.activitiesCache = CacheType.ACTIVITIES.createFutureCache(exoActivitiesCache);
+    this.activityCache = cacheService.createFutureCache(CacheType.ACTIVITY, exoActivityCache);
+    this.activitiesCountCache = cacheService.createFutureCache(CacheType.ACTIVITIES_COUNT, exoActivitiesCountCache);
+    this.activitiesCache = cacheService.createFutureCache(CacheType.ACTIVITIES, exoActivitiesCache);
 
   }
 
@@ -188,6 +282,46 @@ public class CachedActivityStorage implements ActivityStorage {
 
   }
   
+  /**
+   * {@inheritDoc}
+   */
+  public List<ExoSocialActivity> getActivities(final List<String> activityIds) throws ActivityStorageException {
+
+    //
+    Map<String, ExoSocialActivity> found = new HashMap<String, ExoSocialActivity>();
+    List<String> missing = new ArrayList<String>();
+    for (String activityId : activityIds) {
+      ActivityData data = exoActivityCache.get(new ActivityKey(activityId));
+      if (data != null) {
+        activityCache.getStatistics().hit();
+        found.put(activityId, data.build());
+      }
+      else if (!missing.contains(activityId)) {
+        activityCache.getStatistics().miss();
+        missing.add(activityId);
+      }
+    }
+
+    //the misses are loaded in one call
+    if (!missing.isEmpty()) {
+      for (ExoSocialActivity a : storage.getActivities(missing)) {
+        exoActivityCache.put(new ActivityKey(a.getId()), new ActivityData(a));
+        found.put(a.getId(), a);
+      }
+    }
+
+    //
+    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>(activityIds.size());
+    for (String activityId : activityIds) {
+      ExoSocialActivity a = found.get(activityId);
+      if (a != null) {
+        activities.add(a);
+      }
+    }
+    return activities;
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -233,7 +367,9 @@ public class CachedActivityStorage implements ActivityStorage {
     ActivityKey activityKey = new ActivityKey(activity.getId());
     exoActivityCache.remove(activityKey);
     exoActivityCache.put(activityKey, new ActivityData(getActivity(activity.getId())));
-    clearCache();
+
+    //the other streams are cleared when their references are updated
+    clearStreamCache(Collections.singleton(comment.getUserId()), Collections.singleton(activity.getId()));
   }
 
   /**
@@ -242,12 +378,17 @@ public class CachedActivityStorage implements ActivityStorage {
   public ExoSocialActivity saveActivity(final Identity owner, final ExoSocialActivity activity) throws ActivityStorageException {
 
     //
+    boolean isNew = activity.getId() == null;
     ExoSocialActivity a = storage.saveActivity(owner, activity);
 
     //
     ActivityKey key = new ActivityKey(a.getId());
     exoActivityCache.put(key, new ActivityData(getActivity(a.getId())));
-    clearCache();
+
+    //a new activity is put on the cached streams when the references are created
+    if (!isNew || !mustInjectStreams) {
+      clearStreamCache(Arrays.asList(owner.getId(), a.getUserId()), Collections.singleton(a.getId()));
+    }
 
     //
     return a;
@@ -272,8 +413,14 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityKey key = new ActivityKey(activityId);
-    exoActivityCache.remove(key);
-    clearCache();
+    activityCache.remove(key);
+
+    List<String> ownerIds = new ArrayList<String>();
+    if (a != null) {
+      ownerIds.add(a.getStreamId());
+      ownerIds.add(a.getUserId());
+    }
+    clearStreamCache(ownerIds, Collections.singleton(activityId));
 
   }
 
@@ -951,11 +1098,6 @@ public class CachedActivityStorage implements ActivityStorage {
     storage.updateActivity(existingActivity);
     
     //
-    ActivityKey key = new ActivityKey(existingActivity.getId());
-    exoActivityCache.remove(key);
-    
-    //
-    clearCache();
     clearActivityCached(existingActivity.getId());
   }
 
@@ -1800,6 +1942,7 @@ public class CachedActivityStorage implements ActivityStorage {
 
   @Override
   public void setInjectStreams(boolean mustInject) {
+    this.mustInjectStreams = mustInject;
     storage.setInjectStreams(mustInject);
     
   }
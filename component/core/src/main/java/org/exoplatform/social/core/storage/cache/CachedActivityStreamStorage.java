@@ -17,8 +17,11 @@
 package org.exoplatform.social.core.storage.cache;
 
 import java.util.List;
+import java.util.Map;
 
 import org.exoplatform.social.common.service.ProcessContext;
+import org.exoplatform.social.core.activity.model.ActivityStreamPage;
+import org.exoplatform.social.core.activity.model.ActivityStreamState;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.storage.api.ActivityStreamStorage;
@@ -90,16 +93,46 @@ public class CachedActivityStreamStorage implements ActivityStreamStorage {
     return storage.getFeed(owner, offset, limit);
   }
 
+  @Override
+  public ActivityStreamPage getFeed(Identity owner, String cursor, int limit) {
+    return storage.getFeed(owner, cursor, limit);
+  }
+
   @Override
   public int getNumberOfFeed(Identity owner) {
     return storage.getNumberOfFeed(owner);
   }
 
+  @Override
+  public int getNumberOfUpdated(Identity owner, ActivityRefType type, long sinceTime) {
+    return storage.getNumberOfUpdated(owner, type, sinceTime);
+  }
+
+  @Override
+  public int getNumberOfUpdated(Identity owner, Map<ActivityRefType, Long> sinceTimes, int limit) {
+    return storage.getNumberOfUpdated(owner, sinceTimes, limit);
+  }
+
+  @Override
+  public ActivityStreamState getState(Identity owner, ActivityRefType type) {
+    return storage.getState(owner, type);
+  }
+
+  @Override
+  public void touch(String activityId) {
+    storage.touch(activityId);
+  }
+
   @Override
   public List<ExoSocialActivity> getConnections(Identity owner, int offset, int limit) {
     return storage.getConnections(owner, offset, limit);
   }
 
+  @Override
+  public ActivityStreamPage getConnections(Identity owner, String cursor, int limit) {
+    return storage.getConnections(owner, cursor, limit);
+  }
+
   @Override
   public int getNumberOfConnections(Identity owner) {
     return storage.getNumberOfConnections(owner);
@@ -110,6 +143,11 @@ public class CachedActivityStreamStorage implements ActivityStreamStorage {
     return storage.getMySpaces(owner, offset, limit);
   }
 
+  @Override
+  public ActivityStreamPage getMySpaces(Identity owner, String cursor, int limit) {
+    return storage.getMySpaces(owner, cursor, limit);
+  }
+
   @Override
   public int getNumberOfMySpaces(Identity owner) {
     return storage.getNumberOfMySpaces(owner);
@@ -120,6 +158,11 @@ public class CachedActivityStreamStorage implements ActivityStreamStorage {
     return storage.getSpaceStream(owner, offset, limit);
   }
 
+  @Override
+  public ActivityStreamPage getSpaceStream(Identity owner, String cursor, int limit) {
+    return storage.getSpaceStream(owner, cursor, limit);
+  }
+
   @Override
   public int getNumberOfSpaceStream(Identity owner) {
     return storage.getNumberOfSpaceStream(owner);
@@ -130,6 +173,11 @@ public class CachedActivityStreamStorage implements ActivityStreamStorage {
     return storage.getMyActivities(owner, offset, limit);
   }
 
+  @Override
+  public ActivityStreamPage getMyActivities(Identity owner, String cursor, int limit) {
+    return storage.getMyActivities(owner, cursor, limit);
+  }
+
   @Override
   public int getNumberOfMyActivities(Identity owner) {
     return storage.getNumberOfMyActivities(owner);
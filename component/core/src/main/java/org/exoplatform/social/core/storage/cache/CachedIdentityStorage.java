@@ -18,7 +18,9 @@
 package org.exoplatform.social.core.storage.cache;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.log.ExoLogger;
@@ -135,11 +137,11 @@ public class CachedIdentityStorage implements IdentityStorage {
     this.exoIdentitiesCache = cacheService.getIdentitiesCache();
 
     //
-    this.identityCache = CacheType.IDENTITY.createFutureCache(exoIdentityCache);
-    this.identityIndexCache = CacheType.IDENTITY_INDEX.createFutureCache(exoIdentityIndexCache);
-    this.profileCache = CacheType.PROFILE.createFutureCache(exoProfileCache);
-    this.identitiesCountCache = CacheType.IDENTITIES_COUNT.createFutureCache(exoIdentitiesCountCache);
-    this.identitiesCache = CacheType.IDENTITIES.createFutureCache(exoIdentitiesCache);
+    this.identityCache = cacheService.createFutureCache(CacheType.IDENTITY, exoIdentityCache);
+    this.identityIndexCache = cacheService.createFutureCache(CacheType.IDENTITY_INDEX, exoIdentityIndexCache);
+    this.profileCache = cacheService.createFutureCache(CacheType.PROFILE, exoProfileCache);
+    this.identitiesCountCache = cacheService.createFutureCache(CacheType.IDENTITIES_COUNT, exoIdentitiesCountCache);
+    this.identitiesCache = cacheService.createFutureCache(CacheType.IDENTITIES, exoIdentitiesCache);
 
   }
 
@@ -154,6 +156,13 @@ public class CachedIdentityStorage implements IdentityStorage {
     //
     IdentityKey key = new IdentityKey(new Identity(identity.getId()));
     exoIdentityCache.put(key, new IdentityData(identity));
+
+    // the index may remember that the identity was missing
+    if (identity.getProviderId() != null && identity.getRemoteId() != null) {
+      IdentityCompositeKey indexKey = new IdentityCompositeKey(identity.getProviderId(), identity.getRemoteId());
+      identityIndexCache.remove(indexKey);
+      exoIdentityIndexCache.put(indexKey, key);
+    }
     clearCache();
   }
 
@@ -204,6 +213,54 @@ public class CachedIdentityStorage implements IdentityStorage {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<Identity> findIdentitiesById(final List<String> nodeIds) throws IdentityStorageException {
+
+    //
+    Map<String, Identity> found = new HashMap<String, Identity>();
+    List<String> missing = new ArrayList<String>();
+    for (String nodeId : nodeIds) {
+      IdentityKey key = new IdentityKey(new Identity(nodeId));
+      IdentityData data = exoIdentityCache.get(key);
+      ProfileData profileData = data != null ? exoProfileCache.get(key) : null;
+      if (profileData != null) {
+        identityCache.getStatistics().hit();
+        Identity identity = data.build();
+        if (identity != null) {
+          identity.setProfile(profileData.build());
+          found.put(nodeId, identity);
+        }
+      }
+      else if (!found.containsKey(nodeId) && !missing.contains(nodeId)) {
+        identityCache.getStatistics().miss();
+        missing.add(nodeId);
+      }
+    }
+
+    //the misses are loaded in one call
+    if (!missing.isEmpty()) {
+      for (Identity identity : storage.findIdentitiesById(missing)) {
+        IdentityKey key = new IdentityKey(new Identity(identity.getId()));
+        exoIdentityCache.put(key, new IdentityData(identity));
+        exoProfileCache.put(key, new ProfileData(identity.getProfile()));
+        found.put(identity.getId(), identity);
+      }
+    }
+
+    //
+    List<Identity> identities = new ArrayList<Identity>(nodeIds.size());
+    for (String nodeId : nodeIds) {
+      Identity identity = found.get(nodeId);
+      if (identity != null) {
+        identities.add(identity);
+      }
+    }
+    return identities;
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -274,6 +331,9 @@ public class CachedIdentityStorage implements IdentityStorage {
     if (data != null) {
       exoIdentityIndexCache.remove(new IdentityCompositeKey(data.getProviderId(), oldRemoteId));
     }
+    if (identity.getProviderId() != null && identity.getRemoteId() != null) {
+      identityIndexCache.remove(new IdentityCompositeKey(identity.getProviderId(), identity.getRemoteId()));
+    }
     exoProfileCache.remove(key);
     clearCache();
   }
@@ -18,10 +18,13 @@
 package org.exoplatform.social.core.storage.cache;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.services.cache.ExoCache;
@@ -29,6 +32,7 @@ import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.profile.ProfileFilter;
+import org.exoplatform.social.core.relationship.RelationshipGraph;
 import org.exoplatform.social.core.relationship.model.Relationship;
 import org.exoplatform.social.core.storage.RelationshipStorageException;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
@@ -75,6 +79,7 @@ public class CachedRelationshipStorage implements RelationshipStorage {
   private final FutureExoCache<RelationshipCountKey, IntegerData, ServiceContext<IntegerData>> relationshipsCount;
   private final FutureExoCache<ListRelationshipsKey, ListIdentitiesData, ServiceContext<ListIdentitiesData>> relationshipsCache;
   private final FutureExoCache<SuggestionKey, SuggestionsData, ServiceContext<SuggestionsData>> suggestionCache;
+  private final SuggestionStore suggestionStore;
 
   //
   private final ExoCache<IdentityKey, IdentityData> exoIdentityCache;
@@ -83,10 +88,31 @@ public class CachedRelationshipStorage implements RelationshipStorage {
   private final RelationshipStorageImpl storage;
   private final IdentityStorage identityStorage;
   private CachedActivityStorage cachedActivityStorage;
+  private RelationshipGraph relationshipGraph;
 
   //
   private static final RelationshipKey RELATIONSHIP_NOT_FOUND = new RelationshipKey(null);
 
+  //
+  private final SuggestionStore.Loader suggestionLoader = new SuggestionStore.Loader() {
+    public SuggestionsData load(String identityId, int limit) {
+      // one more suggestion is asked to tell whether the list is truncated
+      Map<Identity, Integer> got = storage.getSuggestions(new Identity(identityId), 0, limit + 1);
+      Map<String, Integer> data = new LinkedHashMap<String, Integer>();
+      for (Entry<Identity, Integer> item : got.entrySet()) {
+        if (data.size() == limit) {
+          break;
+        }
+        data.put(item.getKey().getId(), item.getValue());
+      }
+      return new SuggestionsData(data, System.currentTimeMillis(), got.size() > limit, false, 0);
+    }
+
+    public void refreshed(String identityId) {
+      clearSuggestionsFor(identityId);
+    }
+  };
+
   void clearCacheFor(Relationship r) {
 
     List<String> identities = new ArrayList<String>();
@@ -109,6 +135,79 @@ public class CachedRelationshipStorage implements RelationshipStorage {
 
   }
   
+  void clearSuggestionsFor(String... identities) {
+
+    try {
+      exoSuggestionCache.select(new SuggestionCacheSelector(identities));
+    }
+    catch (Exception e) {
+      LOG.error(e);
+    }
+
+  }
+
+  /**
+   * Patches the precomputed suggestions with a relationship change: the number of common connections of
+   * the connections of each identity changes for the other one and its connections.
+   *
+   * @param r the relationship
+   * @param connected true when the identities were connected, false when they were disconnected
+   */
+  private void updateSuggestionsFor(Relationship r, boolean connected) {
+
+    String id1 = r.getSender().getId();
+    String id2 = r.getReceiver().getId();
+    Set<String> changed = new HashSet<String>(Arrays.asList(id1, id2));
+
+    //
+    RelationshipGraph graph = getRelationshipGraph();
+    if (graph == null || !graph.isLoaded()) {
+      suggestionStore.clear();
+      exoSuggestionCache.clearCache();
+      return;
+    }
+
+    //
+    List<String> connections1 = graph.getConnections(id1);
+    List<String> connections2 = graph.getConnections(id2);
+    connections1.removeAll(changed);
+    connections2.removeAll(changed);
+    // the common connections are neither suggested to the identities nor the identities to them
+    Set<String> common = new HashSet<String>(connections1);
+    common.retainAll(connections2);
+    int delta = connected ? 1 : -1;
+
+    if (connected) {
+      suggestionStore.exclude(id1, id2);
+      suggestionStore.exclude(id2, id1);
+    }
+    else {
+      // the identities may be suggested to each other again
+      suggestionStore.invalidate(id1);
+      suggestionStore.invalidate(id2);
+    }
+    for (String id : connections2) {
+      if (common.contains(id)) {
+        continue;
+      }
+      suggestionStore.patch(id1, id, delta);
+      suggestionStore.patch(id, id1, delta);
+    }
+    for (String id : connections1) {
+      if (common.contains(id)) {
+        continue;
+      }
+      suggestionStore.patch(id2, id, delta);
+      suggestionStore.patch(id, id2, delta);
+    }
+
+    //
+    changed.addAll(connections1);
+    changed.addAll(connections2);
+    clearSuggestionsFor(changed.toArray(new String[changed.size()]));
+
+  }
+
   /**
    * Build the identity list from the caches Ids.
    *
@@ -184,6 +283,14 @@ public class CachedRelationshipStorage implements RelationshipStorage {
     return cachedActivityStorage;
   }
 
+  private RelationshipGraph getRelationshipGraph() {
+    if (relationshipGraph == null) {
+      relationshipGraph = (RelationshipGraph)
+          PortalContainer.getInstance().getComponentInstanceOfType(RelationshipGraph.class);
+    }
+    return relationshipGraph;
+  }
+
   public CachedRelationshipStorage(final RelationshipStorageImpl storage, final IdentityStorage identityStorage,
                                    final SocialStorageCacheService cacheService) {
 
@@ -200,11 +307,12 @@ public class CachedRelationshipStorage implements RelationshipStorage {
     this.exoSuggestionCache = cacheService.getSuggestionCache();
 
     //
-    this.relationshipCache = CacheType.RELATIONSHIP.createFutureCache(exoRelationshipCache);
-    this.relationshipCacheIdentity = CacheType.RELATIONSHIP_FROM_IDENTITY.createFutureCache(exoRelationshipByIdentityCache);
-    this.relationshipsCount = CacheType.RELATIONSHIPS_COUNT.createFutureCache(exoRelationshipCountCache);
-    this.relationshipsCache = CacheType.RELATIONSHIPS.createFutureCache(exoRelationshipsCache);
-    this.suggestionCache = CacheType.SUGGESTIONS.createFutureCache(exoSuggestionCache);
+    this.relationshipCache = cacheService.createFutureCache(CacheType.RELATIONSHIP, exoRelationshipCache);
+    this.relationshipCacheIdentity = cacheService.createFutureCache(CacheType.RELATIONSHIP_FROM_IDENTITY, exoRelationshipByIdentityCache);
+    this.relationshipsCount = cacheService.createFutureCache(CacheType.RELATIONSHIPS_COUNT, exoRelationshipCountCache);
+    this.relationshipsCache = cacheService.createFutureCache(CacheType.RELATIONSHIPS, exoRelationshipsCache);
+    this.suggestionCache = cacheService.createFutureCache(CacheType.SUGGESTIONS, exoSuggestionCache);
+    this.suggestionStore = cacheService.getSuggestionStore();
 
     //
     this.exoIdentityCache = cacheService.getIdentityCache();
@@ -216,6 +324,9 @@ public class CachedRelationshipStorage implements RelationshipStorage {
    */
   public Relationship saveRelationship(final Relationship relationship) throws RelationshipStorageException {
 
+    // the pending relationships are counted as connections by the suggestions
+    boolean created = relationship.getId() == null;
+
     Relationship r = storage.saveRelationship(relationship);
 
     RelationshipIdentityKey identityKey1 = new RelationshipIdentityKey(r.getSender().getId(), r.getReceiver().getId());
@@ -226,7 +337,10 @@ public class CachedRelationshipStorage implements RelationshipStorage {
     exoRelationshipByIdentityCache.put(identityKey1, key);
     exoRelationshipByIdentityCache.put(identityKey2, key);
     clearCacheFor(relationship);
-    getCachedActivityStorage().clearCache();
+    if (created) {
+      updateSuggestionsFor(r, true);
+    }
+    getCachedActivityStorage().clearStreamCache(Arrays.asList(r.getSender().getId(), r.getReceiver().getId()), null);
 
     return r;
 
@@ -253,7 +367,11 @@ public class CachedRelationshipStorage implements RelationshipStorage {
     
     //
     clearCacheFor(relationship);
-    getCachedActivityStorage().clearCache();
+    if (relationship.getSender() != null && relationship.getReceiver() != null) {
+      updateSuggestionsFor(relationship, false);
+      getCachedActivityStorage().clearStreamCache(
+          Arrays.asList(relationship.getSender().getId(), relationship.getReceiver().getId()), null);
+    }
     
   }
 
@@ -690,6 +808,10 @@ public class CachedRelationshipStorage implements RelationshipStorage {
     SuggestionsData keys = suggestionCache.get(
         new ServiceContext<SuggestionsData>() {
           public SuggestionsData execute() {
+            SuggestionsData data = suggestionStore.get(identity.getId(), suggestionLoader);
+            if (!data.hasMore() || (long) offset + limit < data.getMap().size()) {
+              return slice(data, offset, limit);
+            }
             Map<Identity, Integer> got = storage.getSuggestions(identity, offset, limit);
             return buildIdMap(got);
           }
@@ -699,5 +821,35 @@ public class CachedRelationshipStorage implements RelationshipStorage {
     //
     return buildSuggestions(keys);
   }
+
+  /**
+   * Computes the suggestions of an identity in background, for them to be ready when displayed.
+   *
+   * @param identity the identity
+   * @since 4.1.0
+   */
+  public void precomputeSuggestions(final Identity identity) {
+    suggestionStore.precompute(identity.getId(), suggestionLoader);
+  }
+
+  /**
+   * Reads a page of the precomputed suggestions, as the storage does: from the offset to the offset plus the limit.
+   */
+  private SuggestionsData slice(SuggestionsData data, int offset, int limit) {
+
+    Map<String, Integer> page = new LinkedHashMap<String, Integer>();
+    int i = 0;
+    for (Entry<String, Integer> item : data.getMap().entrySet()) {
+      if (i > (long) offset + limit) {
+        break;
+      }
+      if (i >= offset) {
+        page.put(item.getKey(), item.getValue());
+      }
+      i++;
+    }
+    return new SuggestionsData(page);
+
+  }
   
 }
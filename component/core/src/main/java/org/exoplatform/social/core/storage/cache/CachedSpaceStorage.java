@@ -27,6 +27,7 @@ import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.space.SpaceFilter;
 import org.exoplatform.social.core.space.SpaceUtils;
 import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.core.space.model.SpaceMembership;
 import org.exoplatform.social.core.storage.SpaceStorageException;
 import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
 import org.exoplatform.social.core.storage.cache.model.data.ListIdentitiesData;
@@ -46,7 +47,9 @@ import org.exoplatform.social.core.storage.cache.model.key.SpaceKey;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceRefKey;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
@@ -70,6 +73,8 @@ public class CachedSpaceStorage implements SpaceStorage {
   private final FutureExoCache<SpaceFilterKey, IntegerData, ServiceContext<IntegerData>> spacesCountCache;
   private final FutureExoCache<ListSpacesKey, ListSpacesData, ServiceContext<ListSpacesData>> spacesCache;
 
+  private final SpaceMembershipIndex spaceMembershipIndex;
+
   private final SpaceStorageImpl storage;
   private CachedActivityStorage cachedActivityStorage;
   private CachedIdentityStorage cachedIdentityStorage;
@@ -183,12 +188,13 @@ public class CachedSpaceStorage implements SpaceStorage {
     this.exoSpacesCountCache = cacheService.getSpacesCountCache();
     this.exoSpacesCache = cacheService.getSpacesCache();
     this.exoIdentitiesCache = cacheService.getIdentitiesCache();
+    this.spaceMembershipIndex = cacheService.getSpaceMembershipIndex();
 
-    this.spaceCache = CacheType.SPACE.createFutureCache(exoSpaceCache);
-    this.spaceSimpleCache = CacheType.SPACE_SIMPLE.createFutureCache(exoSpaceSimpleCache);
-    this.spaceRefCache = CacheType.SPACE_REF.createFutureCache(exoRefSpaceCache);
-    this.spacesCountCache = CacheType.SPACES_COUNT.createFutureCache(exoSpacesCountCache);
-    this.spacesCache = CacheType.SPACES.createFutureCache(exoSpacesCache);
+    this.spaceCache = cacheService.createFutureCache(CacheType.SPACE, exoSpaceCache);
+    this.spaceSimpleCache = cacheService.createFutureCache(CacheType.SPACE_SIMPLE, exoSpaceSimpleCache);
+    this.spaceRefCache = cacheService.createFutureCache(CacheType.SPACE_REF, exoRefSpaceCache);
+    this.spacesCountCache = cacheService.createFutureCache(CacheType.SPACES_COUNT, exoSpacesCountCache);
+    this.spacesCache = cacheService.createFutureCache(CacheType.SPACES, exoSpacesCache);
 
   }
 
@@ -262,9 +268,18 @@ public class CachedSpaceStorage implements SpaceStorage {
    */
   public void saveSpace(final Space space, final boolean isNew) throws SpaceStorageException {
 
+    //the lists are read before the save, only the users who got or lost the access are patched in the index
+    SpaceMembership previous = null;
+    if (!isNew) {
+      Space saved = storage.getSpaceById(space.getId());
+      previous = saved != null ? saved.getMembership() : null;
+    }
+
     //
     storage.saveSpace(space, isNew);
 
+    //
+    spaceMembershipIndex.update(space.getId(), previous, space.getMembership());
     
     //
     exoSpaceSimpleCache.remove(new SpaceKey(space.getId()));
@@ -335,6 +350,7 @@ public class CachedSpaceStorage implements SpaceStorage {
     //
     Space space = storage.getSpaceById(id);
     storage.deleteSpace(id);
+    spaceMembershipIndex.remove(id, space != null ? space.getMembership() : null);
 
     //
     SpaceData removed = exoSpaceCache.remove(new SpaceKey(id));
@@ -880,7 +896,32 @@ public class CachedSpaceStorage implements SpaceStorage {
    * {@inheritDoc}
    */
   public List<Space> getAccessibleSpaces(final String userId) throws SpaceStorageException {
-    return storage.getAccessibleSpaces(userId);
+
+    //
+    Set<String> ids = spaceMembershipIndex.getSpaceIds(userId);
+    if (ids == null) {
+      long version = spaceMembershipIndex.getVersion();
+      List<Space> spaces = storage.getAccessibleSpaces(userId);
+      List<String> got = new ArrayList<String>(spaces.size());
+      for (Space space : spaces) {
+        exoSpaceCache.put(new SpaceKey(space.getId()), new SpaceData(space));
+        got.add(space.getId());
+      }
+      spaceMembershipIndex.put(userId, got, version);
+      return spaces;
+    }
+
+    // the spaces are built from the cache, in the order of the storage
+    List<Space> spaces = new ArrayList<Space>(ids.size());
+    for (String id : ids) {
+      Space space = getSpaceById(id);
+      if (space != null) {
+        spaces.add(space);
+      }
+    }
+    Collections.sort(spaces, SpaceStorageImpl.NAME_ORDER);
+    return spaces;
+
   }
   
   /**
@@ -20,11 +20,17 @@
 package org.exoplatform.social.core.storage.cache;
 
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.jcr.InvalidItemStateException;
 
@@ -48,6 +54,11 @@ import org.gatein.common.logging.LoggerFactory;
  * <p>The {@link Loader} interface provides a source to retrieve objects to put in the cache. The goal to maintain
  * this interface is to decouple the cache from the object source.</p>
  *
+ * <p>A thread waiting for the load of another thread gives up after the load timeout and loads the value by
+ * itself. A key the loader found nothing for can be remembered for the negative time to live, so that lookups
+ * of missing resources don't hit the source each time. When a refresh executor is set, a hit on an entry
+ * reported as expiring by {@link #isExpiring(Object)} reloads the entry in the background.</p>
+ *
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
  * @version $Revision$
  * @param <K> the key type parameter
@@ -57,19 +68,39 @@ import org.gatein.common.logging.LoggerFactory;
 public abstract class FutureCache<K, V, C>
 {
 
+   /** Above this size the expired negative entries are purged. */
+   private static final int MAX_NEGATIVE_ENTRIES = 10000;
+
    /** . */
    private final Loader<K, V, C> loader;
 
    /** . */
    private final ConcurrentMap<K, FutureTask<V>> futureEntries;
 
+   /** The keys reloaded in the background. */
+   private final ConcurrentMap<K, Boolean> refreshEntries;
+
+   /** The expiration times of the keys the loader found nothing for. */
+   private final ConcurrentMap<K, Long> negativeEntries;
+
    /** . */
    private final Logger log = LoggerFactory.getLogger(FutureCache.class);
 
+   /** The ms a thread waits for the load of another thread, 0 waits until the load is done. */
+   private volatile long loadTimeout;
+
+   /** The ms a missing resource is remembered, 0 disables the negative caching. */
+   private volatile long negativeTtl;
+
+   /** Runs the refresh-ahead loads, null disables them. */
+   private volatile Executor refreshExecutor;
+
    public FutureCache(Loader<K, V, C> loader)
    {
       this.loader = loader;
       this.futureEntries = new ConcurrentHashMap<K, FutureTask<V>>();
+      this.negativeEntries = new ConcurrentHashMap<K, Long>();
+      this.refreshEntries = new ConcurrentHashMap<K, Boolean>();
    }
 
    /**
@@ -89,6 +120,95 @@ public abstract class FutureCache<K, V, C>
     */
    protected abstract void put(K key, V value);
 
+   /**
+    * Puts a value reloaded in the background, only when the cached entry is still the one the reload was started
+    * for: an entry put or removed meanwhile is newer than the reloaded value. This method is intended for internal
+    * use by the future cache only.
+    *
+    * @param key the key
+    * @param expected the cached value when the reload started
+    * @param value the reloaded value
+    * @return true if the value was put
+    */
+   protected boolean replace(K key, V expected, V value)
+   {
+      if (get(key) != expected)
+      {
+         return false;
+      }
+      put(key, value);
+      return true;
+   }
+
+   /**
+    * Tells whether a cached entry should be reloaded ahead of its expiration. This method is intended for internal
+    * use by the future cache only.
+    *
+    * @param key the key of a cached entry
+    * @return true if the entry is close to expire
+    */
+   protected boolean isExpiring(K key)
+   {
+      return false;
+   }
+
+   /**
+    * Called when a value could not be loaded in time or a negative entry was served.
+    *
+    * @param key the key
+    * @param timeout true for a load timeout, false for a negative hit
+    */
+   protected void onDegraded(K key, boolean timeout)
+   {
+   }
+
+   public long getLoadTimeout()
+   {
+      return loadTimeout;
+   }
+
+   public void setLoadTimeout(long loadTimeout)
+   {
+      this.loadTimeout = Math.max(0, loadTimeout);
+   }
+
+   public long getNegativeTtl()
+   {
+      return negativeTtl;
+   }
+
+   public void setNegativeTtl(long negativeTtl)
+   {
+      this.negativeTtl = Math.max(0, negativeTtl);
+      if (this.negativeTtl == 0)
+      {
+         negativeEntries.clear();
+      }
+   }
+
+   public void setRefreshExecutor(Executor refreshExecutor)
+   {
+      this.refreshExecutor = refreshExecutor;
+   }
+
+   /**
+    * Forgets that the loader found nothing for the key, to be called when the resource is created or removed.
+    *
+    * @param key the key
+    */
+   protected void forget(K key)
+   {
+      negativeEntries.remove(key);
+   }
+
+   /**
+    * Forgets all the missing resources.
+    */
+   protected void forgetAll()
+   {
+      negativeEntries.clear();
+   }
+
    /**
     * Perform a cache lookup for the specified key within the specified context.
     * When the value cannot be loaded (because it does not exist or it failed or anything else that
@@ -103,87 +223,224 @@ public abstract class FutureCache<K, V, C>
       // First we try a simple cache get
       V value = get(key);
 
-      // If it does not succeed then we go through a process that will avoid to load
-      // the same resource concurrently
-      if (value == null)
+      if (value != null)
       {
-         // Create our future
-         FutureTask<V> future = new FutureTask<V>(new Callable<V>()
+         if (refreshExecutor != null && isExpiring(key))
          {
-            public V call() throws Exception
-            {
-               // Retrieve the value from the loader
-               V value = loader.retrieve(context, key);
+            refresh(context, key, value);
+         }
+         return value;
+      }
 
-               //
-               if (value != null)
-               {
-                  // Cache it, it is made available to other threads (unless someone removes it)
-                  put(key, value);
+      // The resource was missing a moment ago
+      if (isNegative(key))
+      {
+         onDegraded(key, false);
+         return null;
+      }
 
-                  // Return value
-                  return value;
-               }
-               else
-               {
-                  return null;
-               }
-            }
-         });
+      // If it does not succeed then we go through a process that will avoid to load
+      // the same resource concurrently, a future is only created when nobody loads it yet
+      FutureTask<V> future = futureEntries.get(key);
 
-         // This boolean means we inserted in the local
-         boolean inserted = true;
+      // This boolean means we inserted in the local
+      boolean inserted = false;
 
-         //
-         try
+      //
+      try
+      {
+         if (future == null)
          {
-            FutureTask<V> phantom = futureEntries.putIfAbsent(key, future);
+            FutureTask<V> created = newTask(context, key);
+            future = futureEntries.putIfAbsent(key, created);
 
             // Use the value that could have been inserted by another thread
-            if (phantom != null)
-            {
-               future = phantom;
-               inserted = false;
-            }
-            else
+            if (future == null)
             {
+               future = created;
+               inserted = true;
                future.run();
             }
-
-            // Returns the value
-            value = future.get();
          }
-         catch (ExecutionException e)
+
+         // Returns the value
+         value = inserted ? future.get() : await(context, key, future);
+      }
+      catch (ExecutionException e)
+      {
+         if (e.getCause() != null)
          {
-            if (e.getCause() != null)
-            {
-              if (e.getCause() instanceof InvalidItemStateException) {
-                log.warn(e.getMessage());
-                return null;
-              } else {
-                throw new UndeclaredThrowableException(e.getCause());
-              }
-            }
-            else
-            {
-               log.error("Computing of resource " + key + " threw an exception", e.getCause());
-            }
+           if (e.getCause() instanceof InvalidItemStateException) {
+             log.warn(e.getMessage());
+             return null;
+           } else {
+             throw new UndeclaredThrowableException(e.getCause());
+           }
          }
-         catch (Exception e)
+         else
          {
-            log.error("Retrieval of resource " + key + " threw an exception", e);
+            log.error("Computing of resource " + key + " threw an exception", e.getCause());
          }
-         finally
+      }
+      catch (Exception e)
+      {
+         log.error("Retrieval of resource " + key + " threw an exception", e);
+      }
+      finally
+      {
+         // Clean up the per key map but only if our insertion succeeded and with our future
+         if (inserted)
          {
-            // Clean up the per key map but only if our insertion succeeded and with our future
-            if (inserted)
-            {
-               futureEntries.remove(key, future);
-            }
+            futureEntries.remove(key, future);
          }
       }
 
       //
       return value;
    }
+
+   private FutureTask<V> newTask(final C context, final K key)
+   {
+      return new FutureTask<V>(new Callable<V>()
+      {
+         public V call() throws Exception
+         {
+            return load(context, key);
+         }
+      });
+   }
+
+   private V load(C context, K key) throws Exception
+   {
+      // Retrieve the value from the loader
+      V value = loader.retrieve(context, key);
+
+      //
+      if (value != null)
+      {
+         // Cache it, it is made available to other threads (unless someone removes it)
+         negativeEntries.remove(key);
+         put(key, value);
+      }
+      else if (negativeTtl > 0)
+      {
+         remember(key);
+      }
+      return value;
+   }
+
+   /**
+    * Waits for the load of another thread, the value is loaded by the current thread when the load
+    * takes more than the load timeout.
+    */
+   private V await(C context, K key, FutureTask<V> future) throws Exception
+   {
+      long timeout = loadTimeout;
+      if (timeout == 0)
+      {
+         return future.get();
+      }
+
+      try
+      {
+         return future.get(timeout, TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException e)
+      {
+         onDegraded(key, true);
+         log.warn("Loading of resource " + key + " takes more than " + timeout + "ms, loading it again");
+         try
+         {
+            return load(context, key);
+         }
+         catch (Exception cause)
+         {
+            throw new ExecutionException(cause);
+         }
+      }
+   }
+
+   /**
+    * Reloads a cached entry in the background, once at a time per key. The misses don't wait for the reload, and
+    * the reloaded value is dropped when the entry was put or removed meanwhile.
+    */
+   private void refresh(final C context, final K key, final V expected)
+   {
+      Executor executor = refreshExecutor;
+      if (executor == null || refreshEntries.putIfAbsent(key, Boolean.TRUE) != null)
+      {
+         return;
+      }
+
+      try
+      {
+         executor.execute(new Runnable()
+         {
+            public void run()
+            {
+               try
+               {
+                  V value = loader.retrieve(context, key);
+                  if (value != null)
+                  {
+                     replace(key, expected, value);
+                  }
+               }
+               catch (Exception e)
+               {
+                  log.warn("Refresh of resource " + key + " threw an exception", e);
+               }
+               finally
+               {
+                  refreshEntries.remove(key);
+               }
+            }
+         });
+      }
+      catch (RejectedExecutionException e)
+      {
+         // The refresh is best effort, the entry will be loaded on its next miss
+         refreshEntries.remove(key);
+      }
+   }
+
+   private boolean isNegative(K key)
+   {
+      if (negativeTtl == 0)
+      {
+         return false;
+      }
+
+      Long expiration = negativeEntries.get(key);
+      if (expiration == null)
+      {
+         return false;
+      }
+      if (expiration < System.currentTimeMillis())
+      {
+         negativeEntries.remove(key, expiration);
+         return false;
+      }
+      return true;
+   }
+
+   private void remember(K key)
+   {
+      long now = System.currentTimeMillis();
+      if (negativeEntries.size() >= MAX_NEGATIVE_ENTRIES)
+      {
+         for (Iterator<Map.Entry<K, Long>> it = negativeEntries.entrySet().iterator(); it.hasNext();)
+         {
+            if (it.next().getValue() < now)
+            {
+               it.remove();
+            }
+         }
+         if (negativeEntries.size() >= MAX_NEGATIVE_ENTRIES)
+         {
+            return;
+         }
+      }
+      negativeEntries.put(key, now + negativeTtl);
+   }
 }
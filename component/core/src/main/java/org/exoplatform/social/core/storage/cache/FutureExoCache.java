@@ -23,6 +23,10 @@ import org.exoplatform.commons.cache.future.Loader;
 import org.exoplatform.services.cache.ExoCache;
 
 import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
@@ -34,33 +38,183 @@ public class FutureExoCache<K extends Serializable, V, C> extends FutureCache<K,
    /** . */
    private final ExoCache<K, V> cache;
 
+   /** . */
+   private final CacheStatistics statistics;
+
+   /** The load times of the entries put by the loader, used by the refresh-ahead. */
+   private final ConcurrentMap<K, Long> loadTimes;
+
+   /** The percentage of the live time after which a hit reloads the entry, 0 disables the refresh-ahead. */
+   private volatile int refreshAhead;
+
+   /** Orders the background reloads with the removals, see {@link #replace}. */
+   private final Object refreshLock = new Object();
+
    public FutureExoCache(Loader<K, V, C> loader, ExoCache<K, V> cache)
+   {
+      this(loader, cache, new CacheStatistics());
+   }
+
+   public FutureExoCache(Loader<K, V, C> loader, ExoCache<K, V> cache, CacheStatistics statistics)
    {
       super(loader);
 
       //
       this.cache = cache;
+      this.statistics = statistics;
+      this.loadTimes = new ConcurrentHashMap<K, Long>();
+   }
+
+   public CacheStatistics getStatistics()
+   {
+      return statistics;
+   }
+
+   public int getRefreshAhead()
+   {
+      return refreshAhead;
+   }
+
+   /**
+    * @param refreshAhead the percentage of the live time of the cache after which a hit reloads the entry
+    *                     in the background, 0 disables the refresh-ahead
+    */
+   public void setRefreshAhead(int refreshAhead)
+   {
+      this.refreshAhead = Math.max(0, Math.min(100, refreshAhead));
+      if (this.refreshAhead == 0)
+      {
+         loadTimes.clear();
+      }
    }
 
    public void clear()
    {
-      cache.clearCache();
+      synchronized (refreshLock)
+      {
+         cache.clearCache();
+      }
+      loadTimes.clear();
+      forgetAll();
    }
 
    public void remove(K key)
    {
-      cache.remove(key);
+      loadTimes.remove(key);
+      forget(key);
+      V removed;
+      synchronized (refreshLock)
+      {
+         removed = cache.remove(key);
+      }
+      if (removed != null)
+      {
+         statistics.evicted();
+      }
    }
 
    @Override
    protected V get(K key)
    {
-      return cache.get(key);
+      V value = cache.get(key);
+      if (value != null)
+      {
+         statistics.hit();
+      }
+      else
+      {
+         statistics.miss();
+      }
+      return value;
    }
 
    @Override
    protected void put(K key, V entry)
    {
       cache.put(key, entry);
+      if (refreshAhead > 0)
+      {
+         track(key);
+      }
+   }
+
+   /**
+    * The cached entry is the version of the key: a reload started before a put of another value or a removal
+    * is dropped. The check and the put are made under the lock of the removals.
+    */
+   @Override
+   protected boolean replace(K key, V expected, V value)
+   {
+      synchronized (refreshLock)
+      {
+         if (cache.get(key) != expected)
+         {
+            return false;
+         }
+         put(key, value);
+         return true;
+      }
+   }
+
+   @Override
+   protected boolean isExpiring(K key)
+   {
+      long liveTime = cache.getLiveTime();
+      Long loaded = loadTimes.get(key);
+      if (refreshAhead == 0 || liveTime <= 0 || loaded == null)
+      {
+         return false;
+      }
+
+      // The live time of the exo caches is given in seconds
+      if (System.currentTimeMillis() - loaded < liveTime * 10L * refreshAhead)
+      {
+         return false;
+      }
+
+      // The entry is refreshed once, the reload tracks it again
+      if (loadTimes.remove(key, loaded))
+      {
+         statistics.refreshed();
+         return true;
+      }
+      return false;
+   }
+
+   @Override
+   protected void onDegraded(K key, boolean timeout)
+   {
+      if (timeout)
+      {
+         statistics.timedOut();
+      }
+      else
+      {
+         statistics.negativeHit();
+      }
+   }
+
+   private void track(K key)
+   {
+      long now = System.currentTimeMillis();
+
+      // The entries evicted by the cache itself are not notified, the old load times are dropped from time to time
+      int maxSize = cache.getMaxSize();
+      if (maxSize > 0 && loadTimes.size() >= maxSize)
+      {
+         long expired = now - cache.getLiveTime() * 1000L;
+         for (Iterator<Map.Entry<K, Long>> it = loadTimes.entrySet().iterator(); it.hasNext();)
+         {
+            if (it.next().getValue() < expired)
+            {
+               it.remove();
+            }
+         }
+         if (loadTimes.size() >= maxSize)
+         {
+            loadTimes.clear();
+         }
+      }
+      loadTimes.put(key, now);
    }
 }
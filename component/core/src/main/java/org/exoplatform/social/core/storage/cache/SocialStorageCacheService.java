@@ -17,8 +17,25 @@
 
 package org.exoplatform.social.core.storage.cache;
 
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
 import org.exoplatform.services.cache.CacheService;
 import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.social.common.service.thread.SocialThreadFactory;
+import org.exoplatform.social.core.storage.cache.loader.ServiceContext;
 import org.exoplatform.social.core.storage.cache.model.data.ActivityData;
 import org.exoplatform.social.core.storage.cache.model.data.IdentityData;
 import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
@@ -32,6 +49,7 @@ import org.exoplatform.social.core.storage.cache.model.data.SpaceSimpleData;
 import org.exoplatform.social.core.storage.cache.model.data.SuggestionsData;
 import org.exoplatform.social.core.storage.cache.model.key.ActivityCountKey;
 import org.exoplatform.social.core.storage.cache.model.key.ActivityKey;
+import org.exoplatform.social.core.storage.cache.model.key.CacheKey;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityCompositeKey;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityFilterKey;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityKey;
@@ -46,12 +64,50 @@ import org.exoplatform.social.core.storage.cache.model.key.SpaceFilterKey;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceKey;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceRefKey;
 import org.exoplatform.social.core.storage.cache.model.key.SuggestionKey;
+import org.picocontainer.Startable;
 
 /**
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
  * @version $Revision$
  */
-public class SocialStorageCacheService {
+@Managed
+@NameTemplate({@Property(key = "service", value = "social"), @Property(key = "view", value = "cache")})
+@ManagedDescription("Social storage caches")
+public class SocialStorageCacheService implements Startable {
+
+  private static final String LOAD_TIMEOUT = "load-timeout";
+  private static final String NEGATIVE_TTL = "negative-ttl";
+  private static final String NEGATIVE_CACHES = "negative-caches";
+  private static final String REFRESH_AHEAD = "refresh-ahead";
+  private static final String REFRESH_AHEAD_CACHES = "refresh-ahead-caches";
+  private static final String SUGGESTION_TTL = "suggestion-ttl";
+  private static final String SUGGESTION_LIST_SIZE = "suggestion-list-size";
+  private static final String SUGGESTION_STORE_SIZE = "suggestion-store-size";
+  private static final String SPACE_MEMBERSHIP_INDEX_SIZE = "space-membership-index-size";
+
+  private static final long DEFAULT_LOAD_TIMEOUT = 10000L;
+  private static final long DEFAULT_NEGATIVE_TTL = 2000L;
+  // the writers of these caches put the created entries, a negative entry can't hide a new resource
+  private static final String DEFAULT_NEGATIVE_CACHES = CacheType.IDENTITY_INDEX.getName();
+  private static final int DEFAULT_REFRESH_AHEAD = 80;
+  // a refresh replaces an entry its writers may rely on, it is enabled per cache only
+  private static final String DEFAULT_REFRESH_AHEAD_CACHES = "";
+
+  private static final long DEFAULT_SUGGESTION_TTL = 600000L;
+  private static final int DEFAULT_SUGGESTION_LIST_SIZE = 100;
+  private static final int DEFAULT_SUGGESTION_STORE_SIZE = 10000;
+  private static final int DEFAULT_SPACE_MEMBERSHIP_INDEX_SIZE = 10000;
+
+  private static final int REFRESH_QUEUE_SIZE = 1000;
+
+  private final long loadTimeout;
+  private final long negativeTtl;
+  private final Set<String> negativeCaches;
+  private final int refreshAhead;
+  private final Set<String> refreshAheadCaches;
+
+  // runs the refresh-ahead loads and the suggestion computations, best effort: the task is dropped when the queue is full
+  private final ThreadPoolExecutor executor;
 
   // IdentityStorage
   private final ExoCache<IdentityKey, IdentityData> identityCache;
@@ -68,6 +124,7 @@ public class SocialStorageCacheService {
   
   // Suggestion
   private final ExoCache<SuggestionKey, SuggestionsData> suggestionCache;
+  private final SuggestionStore suggestionStore;
 
   // ActivityStorage
   private final ExoCache<ActivityKey, ActivityData> activityCache;
@@ -82,8 +139,25 @@ public class SocialStorageCacheService {
   
   private final ExoCache<SpaceKey, SpaceSimpleData> spaceSimpleCache;
 
+  private final SpaceMembershipIndex spaceMembershipIndex;
+
   public SocialStorageCacheService(CacheService cacheService) {
-    
+    this(null, cacheService);
+  }
+
+  public SocialStorageCacheService(InitParams params, CacheService cacheService) {
+
+    this.loadTimeout = longValue(params, LOAD_TIMEOUT, DEFAULT_LOAD_TIMEOUT);
+    this.negativeTtl = longValue(params, NEGATIVE_TTL, DEFAULT_NEGATIVE_TTL);
+    this.negativeCaches = setValue(params, NEGATIVE_CACHES, DEFAULT_NEGATIVE_CACHES);
+    this.refreshAhead = (int) longValue(params, REFRESH_AHEAD, DEFAULT_REFRESH_AHEAD);
+    this.refreshAheadCaches = setValue(params, REFRESH_AHEAD_CACHES, DEFAULT_REFRESH_AHEAD_CACHES);
+
+    this.executor = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(REFRESH_QUEUE_SIZE),
+        new SocialThreadFactory(null, "SocialCacheRefresh", true, Thread.MIN_PRIORITY));
+    this.executor.allowCoreThreadTimeOut(true);
+
     this.identityCache = CacheType.IDENTITY.getFromService(cacheService);
     this.identityIndexCache = CacheType.IDENTITY_INDEX.getFromService(cacheService);
     this.profileCache = CacheType.PROFILE.getFromService(cacheService);
@@ -96,6 +170,7 @@ public class SocialStorageCacheService {
     this.relationshipsCache = CacheType.RELATIONSHIPS.getFromService(cacheService);
     
     this.suggestionCache = CacheType.SUGGESTIONS.getFromService(cacheService);
+    this.suggestionStore = createSuggestionStore(params, executor);
 
     this.activityCache = CacheType.ACTIVITY.getFromService(cacheService);
     this.activitiesCountCache = CacheType.ACTIVITIES_COUNT.getFromService(cacheService);
@@ -107,9 +182,66 @@ public class SocialStorageCacheService {
     this.spacesCache = CacheType.SPACES.getFromService(cacheService);
     
     this.spaceSimpleCache = CacheType.SPACE_SIMPLE.getFromService(cacheService);
+    this.spaceMembershipIndex = new SpaceMembershipIndex(
+        (int) longValue(params, SPACE_MEMBERSHIP_INDEX_SIZE, DEFAULT_SPACE_MEMBERSHIP_INDEX_SIZE));
+
+  }
+
+  /**
+   * Creates the future cache of the given type, with the loading behavior configured for it.
+   *
+   * @param type the cache type
+   * @param cache the exo cache
+   * @return the future cache
+   */
+  public <K extends CacheKey, V extends Serializable> FutureExoCache<K, V, ServiceContext<V>> createFutureCache(
+      CacheType type, ExoCache<K, V> cache) {
+
+    FutureExoCache<K, V, ServiceContext<V>> futureCache = type.createFutureCache(cache);
+    futureCache.setLoadTimeout(loadTimeout);
+    if (negativeCaches.contains(type.getName())) {
+      futureCache.setNegativeTtl(negativeTtl);
+    }
+    if (refreshAhead > 0 && refreshAheadCaches.contains(type.getName())) {
+      futureCache.setRefreshAhead(refreshAhead);
+      futureCache.setRefreshExecutor(executor);
+    }
+    return futureCache;
 
   }
 
+  private static SuggestionStore createSuggestionStore(InitParams params, ThreadPoolExecutor executor) {
+
+    long ttl = longValue(params, SUGGESTION_TTL, DEFAULT_SUGGESTION_TTL);
+    int listSize = (int) longValue(params, SUGGESTION_LIST_SIZE, DEFAULT_SUGGESTION_LIST_SIZE);
+    int storeSize = (int) longValue(params, SUGGESTION_STORE_SIZE, DEFAULT_SUGGESTION_STORE_SIZE);
+
+    // the stale suggestions are served while they are computed
+    return new SuggestionStore(storeSize, listSize, ttl, executor);
+
+  }
+
+  private static long longValue(InitParams params, String name, long defaultValue) {
+    try {
+      ValueParam param = params.getValueParam(name);
+      return Long.valueOf(param.getValue());
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+
+  private static Set<String> setValue(InitParams params, String name, String defaultValue) {
+    String value;
+    try {
+      value = params.getValueParam(name).getValue();
+    } catch (Exception e) {
+      value = defaultValue;
+    }
+    Set<String> values = new HashSet<String>(Arrays.asList(value.trim().split("\\s*,\\s*")));
+    values.remove("");
+    return values;
+  }
+
   public ExoCache<IdentityKey, IdentityData> getIdentityCache() {
     return identityCache;
   }
@@ -138,6 +270,10 @@ public class SocialStorageCacheService {
     return suggestionCache;
   }
   
+  public SuggestionStore getSuggestionStore() {
+    return suggestionStore;
+  }
+
   public ExoCache<RelationshipIdentityKey, RelationshipKey> getRelationshipCacheByIdentity() {
     return relationshipCacheByIdentity;
   }
@@ -170,6 +306,10 @@ public class SocialStorageCacheService {
     return spaceSimpleCache;
   }
 
+  public SpaceMembershipIndex getSpaceMembershipIndex() {
+    return spaceMembershipIndex;
+  }
+
   public ExoCache<SpaceRefKey, SpaceKey> getSpaceRefCache() {
     return spaceRefCache;
   }
@@ -181,4 +321,43 @@ public class SocialStorageCacheService {
   public ExoCache<ListSpacesKey, ListSpacesData> getSpacesCache() {
     return spacesCache;
   }
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  @Managed
+  @ManagedDescription("The hit, miss and eviction counters of the given cache")
+  public String getStatistics(@ManagedDescription("The cache name, ActivitiesCache for instance")
+                              @ManagedName("name") String name) {
+    for (CacheType type : CacheType.values()) {
+      if (type.getName().equals(name)) {
+        return type.getStatistics().toString();
+      }
+    }
+    return null;
+  }
+
+  @Managed
+  @ManagedDescription("The hit, miss and eviction counters of all the caches")
+  public String getAllStatistics() {
+    StringBuilder sb = new StringBuilder();
+    for (CacheType type : CacheType.values()) {
+      sb.append(type.getName()).append(": ").append(type.getStatistics()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Managed
+  @ManagedDescription("Resets the counters of all the caches")
+  public void resetStatistics() {
+    for (CacheType type : CacheType.values()) {
+      type.getStatistics().reset();
+    }
+  }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.exoplatform.social.core.space.model.SpaceMembership;
+
+/**
+ * The spaces each user can access, as a member or a manager: the reverse of the member lists of the spaces.
+ *
+ * The spaces of a user are read from the storage on their first use, then patched when the lists of a space
+ * are saved: only the users who got or lost the access to the space are patched. The spaces read while a space was saved are dropped, they may miss the change. The least recently
+ * used users are evicted.
+ *
+ * @since 4.1.0
+ */
+public class SpaceMembershipIndex {
+
+  private final Map<String, Set<String>> spaceIds;
+
+  private long version;
+
+  /**
+   * @param maxUsers the number of users whose spaces are kept
+   */
+  public SpaceMembershipIndex(final int maxUsers) {
+    this.spaceIds = new LinkedHashMap<String, Set<String>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+        return size() > maxUsers;
+      }
+    };
+  }
+
+  /**
+   * @return the version to give to {@link #put(String, Collection, long)}, read before the spaces
+   */
+  public synchronized long getVersion() {
+    return version;
+  }
+
+  /**
+   * @param userId the user
+   * @return the ids of the spaces the user can access, null when they are not known
+   */
+  public synchronized Set<String> getSpaceIds(String userId) {
+    return spaceIds.get(userId);
+  }
+
+  /**
+   * Stores the spaces of a user, unless a space was saved since they were read.
+   *
+   * @param userId the user
+   * @param ids the ids of the spaces the user can access
+   * @param version the version read before the spaces
+   */
+  public synchronized void put(String userId, Collection<String> ids, long version) {
+    if (version == this.version) {
+      spaceIds.put(userId, Collections.unmodifiableSet(new LinkedHashSet<String>(ids)));
+    }
+  }
+
+  /**
+   * Patches the spaces of the known users who got or lost the access once the lists of a space are saved.
+   *
+   * @param spaceId the space
+   * @param previous the lists of the space before it was saved, null for a new space
+   * @param membership the saved lists of the space
+   */
+  public void update(String spaceId, SpaceMembership previous, SpaceMembership membership) {
+    //the changed users are found before the index is held
+    Set<String> granted = membership.getManagersAndMembers();
+    Set<String> revoked = previous != null ? previous.getManagersAndMembers() : new HashSet<String>();
+    Set<String> kept = new HashSet<String>(granted);
+    kept.retainAll(revoked);
+    granted.removeAll(kept);
+    revoked.removeAll(kept);
+
+    synchronized (this) {
+      ++version;
+      for (String userId : granted) {
+        patch(userId, spaceId, true);
+      }
+      for (String userId : revoked) {
+        patch(userId, spaceId, false);
+      }
+    }
+  }
+
+  /**
+   * Removes a deleted space from the spaces of the known users.
+   *
+   * @param spaceId the space
+   * @param previous the lists of the space before it was deleted, null when they are not known
+   */
+  public void remove(String spaceId, SpaceMembership previous) {
+    update(spaceId, previous, new SpaceMembership(null, null, null, null));
+  }
+
+  private void patch(String userId, String spaceId, boolean accessible) {
+    Set<String> known = spaceIds.get(userId);
+    if (known == null || accessible == known.contains(spaceId)) {
+      return;
+    }
+    Set<String> ids = new LinkedHashSet<String>(known);
+    if (accessible) {
+      ids.add(spaceId);
+    }
+    else {
+      ids.remove(spaceId);
+    }
+    spaceIds.put(userId, Collections.unmodifiableSet(ids));
+  }
+
+  /**
+   * Forgets the spaces of all the users.
+   */
+  public synchronized void clear() {
+    ++version;
+    spaceIds.clear();
+  }
+
+  /**
+   * @return the number of users whose spaces are known
+   */
+  public synchronized int getSize() {
+    return spaceIds.size();
+  }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.storage.cache.model.data.SuggestionsData;
+
+/**
+ * The precomputed suggestions of the recently active identities.
+ *
+ * The suggestions are served stale while they are revalidated: an expired entry is returned and a refresh
+ * is scheduled in background. The entries are patched when a relationship changes, an entry which can't be
+ * patched exactly is marked as stale and is loaded again by the next reader, as a missing one.
+ *
+ * Each change of an entry gives it a new version. The loaded suggestions are only stored when the entry
+ * kept the version it had when the load started, a change made during the load wins over the load.
+ *
+ * @since 4.1.0
+ */
+public class SuggestionStore {
+
+  /** Logger */
+  private static final Log LOG = ExoLogger.getLogger(SuggestionStore.class);
+
+  /**
+   * Computes the suggestions of an identity.
+   */
+  public interface Loader {
+
+    /**
+     * @param identityId the identity
+     * @param limit the number of suggestions to compute
+     * @return the suggestions, at most the limit, telling whether there are more
+     */
+    SuggestionsData load(String identityId, int limit);
+
+    /**
+     * Called once refreshed suggestions were stored.
+     *
+     * @param identityId the identity
+     */
+    void refreshed(String identityId);
+
+  }
+
+  private static final Comparator<Map.Entry<String, Integer>> BY_SCORE = new Comparator<Map.Entry<String, Integer>>() {
+    public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
+      return o2.getValue().compareTo(o1.getValue());
+    }
+  };
+
+  private final Map<String, SuggestionsData> suggestions;
+
+  private final Set<String> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final AtomicLong versions = new AtomicLong();
+
+  private final int size;
+
+  private final long ttl;
+
+  private final Executor executor;
+
+  /**
+   * @param maxIdentities the number of identities whose suggestions are kept, the least recently used are evicted
+   * @param size the number of suggestions computed for each identity
+   * @param ttl the time to live of the suggestions in milliseconds
+   * @param executor runs the refreshes
+   */
+  public SuggestionStore(final int maxIdentities, final int size, final long ttl, final Executor executor) {
+    this.suggestions = Collections.synchronizedMap(new LinkedHashMap<String, SuggestionsData>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, SuggestionsData> eldest) {
+        return size() > maxIdentities;
+      }
+    });
+    this.size = size;
+    this.ttl = ttl;
+    this.executor = executor;
+  }
+
+  /**
+   * @return the number of suggestions computed for each identity
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Gets the suggestions of an identity, a missing or stale entry is loaded, an expired one is refreshed in background.
+   *
+   * @param identityId the identity
+   * @param loader computes the suggestions
+   * @return the suggestions
+   */
+  public SuggestionsData get(String identityId, Loader loader) {
+    SuggestionsData data = entry(identityId);
+    if (data.isStale()) {
+      // the loaded suggestions are served even when a change made during the load prevents storing them
+      SuggestionsData loaded = loader.load(identityId, size);
+      SuggestionsData stored = store(identityId, data.getVersion(), loaded);
+      return stored != null ? stored : loaded;
+    }
+    else if (data.isExpired(ttl)) {
+      refresh(identityId, loader);
+    }
+    return data;
+  }
+
+  /**
+   * Computes in background the suggestions of an identity when they are missing or expired.
+   *
+   * @param identityId the identity
+   * @param loader computes the suggestions
+   */
+  public void precompute(String identityId, Loader loader) {
+    SuggestionsData data = suggestions.get(identityId);
+    if (data == null || data.isExpired(ttl)) {
+      refresh(identityId, loader);
+    }
+  }
+
+  /**
+   * Schedules the refresh of the suggestions of an identity, a refresh already scheduled is shared.
+   *
+   * @param identityId the identity
+   * @param loader computes the suggestions
+   */
+  public void refresh(final String identityId, final Loader loader) {
+    if (!refreshing.add(identityId)) {
+      return;
+    }
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            long version = entry(identityId).getVersion();
+            if (store(identityId, version, loader.load(identityId, size)) != null) {
+              loader.refreshed(identityId);
+            }
+          }
+          catch (Exception e) {
+            LOG.warn("Failed to refresh the suggestions of " + identityId, e);
+          }
+          finally {
+            refreshing.remove(identityId);
+          }
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      // the stale suggestions are still served, the refresh will be tried again
+      refreshing.remove(identityId);
+    }
+  }
+
+  /**
+   * Removes a suggestion, the identities being connected or invited.
+   *
+   * @param identityId the owner of the suggestions
+   * @param suggestedId the suggested identity
+   */
+  public synchronized void exclude(String identityId, String suggestedId) {
+    SuggestionsData data = suggestions.get(identityId);
+    if (data == null) {
+      return;
+    }
+    Map<String, Integer> map = data.getMap();
+    if (map.containsKey(suggestedId)) {
+      map = new LinkedHashMap<String, Integer>(map);
+      map.remove(suggestedId);
+    }
+    update(identityId, data, map, data.isStale());
+  }
+
+  /**
+   * Changes the number of common connections of a suggestion. An unknown suggestion can't be patched,
+   * the suggestions are marked as stale.
+   *
+   * @param identityId the owner of the suggestions
+   * @param suggestedId the suggested identity
+   * @param delta the change of the number of common connections
+   */
+  public synchronized void patch(String identityId, String suggestedId, int delta) {
+    SuggestionsData data = suggestions.get(identityId);
+    if (data == null) {
+      return;
+    }
+
+    Integer score = data.getMap().get(suggestedId);
+    if (score == null) {
+      // the previous number of the identity is not known when the suggestions were truncated or filtered
+      update(identityId, data, data.getMap(), data.isStale() || delta > 0);
+      return;
+    }
+
+    // the identities without common connections are suggested too
+    Map<String, Integer> map = new LinkedHashMap<String, Integer>(data.getMap());
+    map.put(suggestedId, Math.max(score + delta, 0));
+
+    // the sort is stable, the ties keep their order
+    List<Map.Entry<String, Integer>> entries = new ArrayList<Map.Entry<String, Integer>>(map.entrySet());
+    Collections.sort(entries, BY_SCORE);
+    map = new LinkedHashMap<String, Integer>();
+    for (Map.Entry<String, Integer> entry : entries) {
+      map.put(entry.getKey(), entry.getValue());
+    }
+
+    // a lower number may let an identity of the truncated part come in
+    update(identityId, data, map, data.isStale() || (delta < 0 && data.hasMore()));
+  }
+
+  /**
+   * Marks the suggestions of an identity as stale, they will be loaded again on the next read.
+   *
+   * @param identityId the owner of the suggestions
+   */
+  public synchronized void invalidate(String identityId) {
+    SuggestionsData data = suggestions.get(identityId);
+    if (data != null) {
+      update(identityId, data, data.getMap(), true);
+    }
+  }
+
+  /**
+   * @param identityId the identity
+   * @return true when the up to date suggestions of the identity are stored
+   */
+  public boolean contains(String identityId) {
+    SuggestionsData data = suggestions.get(identityId);
+    return data != null && !data.isStale();
+  }
+
+  /**
+   * Gets the entry of an identity, a stale one is stored when it is missing for the changes made while
+   * the suggestions are loaded to be seen.
+   */
+  private synchronized SuggestionsData entry(String identityId) {
+    SuggestionsData data = suggestions.get(identityId);
+    if (data == null) {
+      data = new SuggestionsData(Collections.<String, Integer>emptyMap(), 0, true, true, versions.incrementAndGet());
+      suggestions.put(identityId, data);
+    }
+    return data;
+  }
+
+  /**
+   * Stores loaded suggestions when the entry still has the given version.
+   *
+   * @return the stored suggestions, null when they weren't stored
+   */
+  private synchronized SuggestionsData store(String identityId, long version, SuggestionsData loaded) {
+    SuggestionsData data = suggestions.get(identityId);
+    if (data == null || data.getVersion() != version) {
+      return null;
+    }
+    data = new SuggestionsData(loaded.getMap(), loaded.getCreatedTime(), loaded.hasMore(), false, versions.incrementAndGet());
+    suggestions.put(identityId, data);
+    return data;
+  }
+
+  private void update(String identityId, SuggestionsData data, Map<String, Integer> map, boolean stale) {
+    suggestions.put(identityId, new SuggestionsData(map, data.getCreatedTime(), data.hasMore(), stale,
+                                                    versions.incrementAndGet()));
+  }
+
+  /**
+   * Removes all the suggestions.
+   */
+  public void clear() {
+    suggestions.clear();
+  }
+
+}
@@ -153,4 +153,8 @@ public class ActivityData implements CacheData<ExoSocialActivity> {
     return userId;
   }
 
+  public Long getLastUpdated() {
+    return lastUpdated;
+  }
+
 }
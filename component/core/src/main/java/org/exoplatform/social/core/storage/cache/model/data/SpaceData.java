@@ -18,6 +18,7 @@
 package org.exoplatform.social.core.storage.cache.model.data;
 
 import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.core.space.model.SpaceMembership;
 
 /**
  * Immutable space data.
@@ -46,6 +47,8 @@ public class SpaceData implements CacheData<Space> {
   private final String[] managers;
   private final String[] pendingUser;
   private final String[] invitedUser;
+  // shared by the built spaces, it is not replicated
+  private transient SpaceMembership membership;
 
   public SpaceData(final Space space) {
 
@@ -93,6 +96,7 @@ public class SpaceData implements CacheData<Space> {
     space.setPendingUsers(pendingUser);
     space.setInvitedUsers(invitedUser);
     space.setCreatedTime(createdTime);
+    space.setMembership(getMembership());
 
     return space;
 
@@ -161,4 +165,11 @@ public class SpaceData implements CacheData<Space> {
   public String[] getInvitedUser() {
     return invitedUser;
   }
+
+  public SpaceMembership getMembership() {
+    if (membership == null) {
+      membership = new SpaceMembership(managers, members, pendingUser, invitedUser);
+    }
+    return membership;
+  }
 }
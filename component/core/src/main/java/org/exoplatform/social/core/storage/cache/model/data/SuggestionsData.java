@@ -23,12 +23,60 @@ public class SuggestionsData implements Serializable {
   
   private final Map<String, Integer> map;
 
+  private final long createdTime;
+
+  private final boolean hasMore;
+
+  private final boolean stale;
+
+  private final long version;
+
   public SuggestionsData(Map<String, Integer> map) {
+    this(map, System.currentTimeMillis(), false, false, 0);
+  }
+
+  /**
+   * @param map the suggested identity ids mapped to their number of common connections, the best first
+   * @param createdTime the time the suggestions were computed
+   * @param hasMore true when there are more suggestions than the ones of the map
+   * @param stale true when the suggestions are known to be outdated
+   * @param version the version of the suggestions, changed by each update of the stored ones
+   * @since 4.1.0
+   */
+  public SuggestionsData(Map<String, Integer> map, long createdTime, boolean hasMore, boolean stale, long version) {
     this.map = map;
+    this.createdTime = createdTime;
+    this.hasMore = hasMore;
+    this.stale = stale;
+    this.version = version;
   }
   
   public Map<String, Integer> getMap() {
     return this.map;
   }
 
+  public long getCreatedTime() {
+    return createdTime;
+  }
+
+  public boolean hasMore() {
+    return hasMore;
+  }
+
+  public boolean isStale() {
+    return stale;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * @param ttl the time to live of the suggestions in milliseconds, 0 or less for no expiration
+   * @return true when the suggestions are stale or older than the time to live
+   */
+  public boolean isExpired(long ttl) {
+    return stale || (ttl > 0 && System.currentTimeMillis() - createdTime > ttl);
+  }
+
 }
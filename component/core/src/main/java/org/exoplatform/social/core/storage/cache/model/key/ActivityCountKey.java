@@ -88,6 +88,38 @@ public class ActivityCountKey extends ScopeCacheKey {
     return activityKey;
   }
 
+  /**
+   * Gets the owner of the stream counted by this key.
+   *
+   * @return the owner identity id or null if the key is not bound to a stream
+   */
+  public String getOwnerId() {
+    return key != null ? key.getId() : null;
+  }
+
+  /**
+   * Gets the activity this key depends on, the commented activity or the base activity of the range.
+   *
+   * @return the activity id or null
+   */
+  public String getActivityId() {
+    return activityKey != null ? activityKey.getId() : baseId;
+  }
+
+  public ActivityType getType() {
+    return type;
+  }
+
+  /**
+   * Tells if this key stands for the whole stream of its owner, not for a range or a filtered view.
+   *
+   * @return true if the key only has an owner and a type
+   */
+  public boolean isWholeStream() {
+    return key != null && viewerKey == null && activityKey == null && baseId == null && time == null
+        && activityTypes == null;
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o) {
@@ -45,6 +45,7 @@ public class IdentityFilterKey extends ScopeCacheKey {
   private final List<String> onlineRemoteIds;
   private final String all;
   private final Sorting sorting;
+  private final String viewerId;
   
   /**
    * Constructor for case using remoteId as key.
@@ -71,6 +72,7 @@ public class IdentityFilterKey extends ScopeCacheKey {
     this.onlineRemoteIds = Collections.unmodifiableList(filter.getOnlineRemoteIds());
     this.all = filter.getAll();
     this.sorting = filter.getSorting();
+    this.viewerId = filter.getViewerIdentity() != null ? filter.getViewerIdentity().getId() : null;
     
   }
   
@@ -93,6 +95,7 @@ public class IdentityFilterKey extends ScopeCacheKey {
     this.onlineRemoteIds = Collections.unmodifiableList(filter.getOnlineRemoteIds());
     this.all = filter.getAll();
     this.sorting = filter.getSorting();
+    this.viewerId = filter.getViewerIdentity() != null ? filter.getViewerIdentity().getId() : null;
 
   }
 
@@ -143,6 +146,7 @@ public class IdentityFilterKey extends ScopeCacheKey {
     if (remoteId != null ? !remoteId.equals(that.remoteId) : that.remoteId != null) return false;
     if (skills != null ? !skills.equals(that.skills) : that.skills != null) return false;
     if (sorting != null ? !sorting.equals(that.sorting) : that.sorting != null) return false;
+    if (viewerId != null ? !viewerId.equals(that.viewerId) : that.viewerId != null) return false;
 
     return true;
   }
@@ -161,6 +165,7 @@ public class IdentityFilterKey extends ScopeCacheKey {
     result = 31 * result + (onlineRemoteIds != null ? onlineRemoteIds.hashCode() : 0);
     result = 31 * result + (all != null ? all.hashCode() : 0);
     result = 31 * result + (sorting != null ? sorting.hashCode() : 0);
+    result = 31 * result + (viewerId != null ? viewerId.hashCode() : 0);
     return result;
   }
 
@@ -17,6 +17,10 @@
 
 package org.exoplatform.social.core.storage.cache.model.key;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.exoplatform.social.core.storage.cache.model.data.ListIdentitiesData;
 
 /**
@@ -47,6 +51,34 @@ public class ListActivitiesKey extends ListCacheKey {
     return key;
   }
 
+  /**
+   * Gets the owners of the streams listed by this key.
+   *
+   * @return the owner identity ids
+   */
+  public List<String> getOwnerIds() {
+    if (key != null) {
+      String ownerId = key.getOwnerId();
+      return ownerId != null ? Collections.singletonList(ownerId) : Collections.<String>emptyList();
+    }
+
+    List<String> ownerIds = new ArrayList<String>();
+    if (identities != null) {
+      for (IdentityKey identityKey : identities.getIds()) {
+        ownerIds.add(identityKey.getId());
+      }
+    }
+    return ownerIds;
+  }
+
+  /**
+   * @return the activity this key depends on or null
+   * @see ActivityCountKey#getActivityId()
+   */
+  public String getActivityId() {
+    return key != null ? key.getActivityId() : null;
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o) {
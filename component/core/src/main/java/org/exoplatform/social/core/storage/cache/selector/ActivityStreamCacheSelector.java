@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache.selector;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.social.core.storage.cache.CacheStatistics;
+import org.exoplatform.social.core.storage.cache.model.data.ListActivitiesData;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityCountKey;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityKey;
+import org.exoplatform.social.core.storage.cache.model.key.ListActivitiesKey;
+import org.exoplatform.social.core.storage.cache.model.key.ScopeCacheKey;
+
+/**
+ * Selects the activity lists and counts which depend on the given streams or activities:
+ * the key is owned by one of the stream owners, the key is bound to one of the activities
+ * or the cached list contains one of the activities.
+ *
+ * @since 4.1.0
+ */
+public class ActivityStreamCacheSelector<T extends ScopeCacheKey, U> extends ScopeCacheSelector<T, U> {
+
+  private final Collection<String> ownerIds;
+
+  private final Collection<String> activityIds;
+
+  /**
+   * @param ownerIds the owners of the changed streams, may be null
+   * @param activityIds the changed activities, may be null
+   * @param statistics counts the evicted entries, may be null
+   */
+  public ActivityStreamCacheSelector(final Collection<String> ownerIds,
+                                     final Collection<String> activityIds,
+                                     final CacheStatistics statistics) {
+    super(statistics);
+    this.ownerIds = ownerIds != null ? ownerIds : Collections.<String>emptySet();
+    this.activityIds = activityIds != null ? activityIds : Collections.<String>emptySet();
+  }
+
+  @Override
+  public boolean select(final T key, final ObjectCacheInfo<? extends U> ocinfo) {
+
+    if (!super.select(key, ocinfo)) {
+      return false;
+    }
+
+    if (key instanceof ActivityCountKey) {
+      ActivityCountKey countKey = (ActivityCountKey) key;
+      return contains(ownerIds, countKey.getOwnerId()) || contains(activityIds, countKey.getActivityId());
+    }
+
+    if (key instanceof ListActivitiesKey) {
+      ListActivitiesKey listKey = (ListActivitiesKey) key;
+      if (contains(activityIds, listKey.getActivityId())) {
+        return true;
+      }
+      for (String ownerId : listKey.getOwnerIds()) {
+        if (ownerIds.contains(ownerId)) {
+          return true;
+        }
+      }
+      return containsActivity(ocinfo.get());
+    }
+
+    return false;
+
+  }
+
+  private boolean containsActivity(Object data) {
+
+    if (activityIds.isEmpty() || !(data instanceof ListActivitiesData)) {
+      return false;
+    }
+
+    for (ActivityKey activityKey : ((ListActivitiesData) data).getIds()) {
+      if (activityIds.contains(activityKey.getId())) {
+        return true;
+      }
+    }
+    return false;
+
+  }
+
+  private static boolean contains(Collection<String> ids, String id) {
+    return id != null && ids.contains(id);
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache.selector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.social.core.storage.cache.CacheStatistics;
+import org.exoplatform.social.core.storage.cache.model.data.ActivityData;
+import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
+import org.exoplatform.social.core.storage.cache.model.data.ListActivitiesData;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityCountKey;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityKey;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityType;
+import org.exoplatform.social.core.storage.cache.model.key.ListActivitiesKey;
+import org.exoplatform.social.core.storage.cache.model.key.ScopeCacheKey;
+
+/**
+ * Puts a new activity on the head of the cached streams which received it.
+ *
+ * The first page of a stream gets the activity id, shifted and truncated to the page limit, and the
+ * count of the stream is incremented. The ranges and filtered views of the owners are removed. When
+ * the first page can't be updated safely, the new activity being older than the cached head for
+ * instance, the page is removed.
+ *
+ * @since 4.1.0
+ */
+public class ActivityStreamHeadSelector<T extends ScopeCacheKey, U> extends ScopeCacheSelector<T, U> {
+
+  private final ActivityKey activityKey;
+
+  private final long lastUpdated;
+
+  private final Map<String, Set<ActivityType>> streams;
+
+  private final ExoCache<ActivityKey, ActivityData> activityCache;
+
+  /**
+   * @param activityId the new activity
+   * @param lastUpdated the last updated time of the new activity
+   * @param streams the owners and the types of the streams which received the activity
+   * @param activityCache the activity cache, gives the time of the cached heads
+   * @param statistics counts the evicted entries, may be null
+   */
+  public ActivityStreamHeadSelector(final String activityId,
+                                    final long lastUpdated,
+                                    final Map<String, Set<ActivityType>> streams,
+                                    final ExoCache<ActivityKey, ActivityData> activityCache,
+                                    final CacheStatistics statistics) {
+    super(statistics);
+    this.activityKey = new ActivityKey(activityId);
+    this.lastUpdated = lastUpdated;
+    this.streams = streams;
+    this.activityCache = activityCache;
+  }
+
+  @Override
+  public boolean select(final T key, final ObjectCacheInfo<? extends U> ocinfo) {
+
+    if (!super.select(key, ocinfo)) {
+      return false;
+    }
+
+    if (key instanceof ActivityCountKey) {
+      return streams.containsKey(((ActivityCountKey) key).getOwnerId());
+    }
+
+    if (key instanceof ListActivitiesKey) {
+      for (String ownerId : ((ListActivitiesKey) key).getOwnerIds()) {
+        if (streams.containsKey(ownerId)) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void onSelect(final ExoCache<? extends T, ? extends U> exoCache, final T key, final ObjectCacheInfo<? extends U> ocinfo) throws Exception {
+
+    ActivityCountKey countKey = key instanceof ListActivitiesKey ? ((ListActivitiesKey) key).getKey() : (ActivityCountKey) key;
+
+    //the streams which didn't receive the activity are kept
+    if (countKey != null && countKey.isWholeStream() && !receives(countKey)) {
+      return;
+    }
+
+    Object updated = null;
+    if (countKey != null && countKey.isWholeStream()) {
+      if (key instanceof ListActivitiesKey) {
+        updated = prepend((ListActivitiesKey) key, ocinfo.get());
+      }
+      else if (ocinfo.get() instanceof IntegerData) {
+        updated = new IntegerData(((IntegerData) ocinfo.get()).build() + 1);
+      }
+    }
+
+    if (updated != null) {
+      ((ExoCache<T, Object>) exoCache).put(key, updated);
+    }
+    else {
+      super.onSelect(exoCache, key, ocinfo);
+    }
+
+  }
+
+  private boolean receives(ActivityCountKey countKey) {
+    Set<ActivityType> types = streams.get(countKey.getOwnerId());
+    return types != null && types.contains(countKey.getType());
+  }
+
+  private ListActivitiesData prepend(ListActivitiesKey key, Object data) {
+
+    if (key.getOffset() != 0 || key.getLimit() <= 0 || !(data instanceof ListActivitiesData)) {
+      return null;
+    }
+
+    List<ActivityKey> ids = ((ListActivitiesData) data).getIds();
+    if (ids.contains(activityKey)) {
+      return (ListActivitiesData) data;
+    }
+
+    //the new activity must be newer than the current head
+    if (!ids.isEmpty()) {
+      ActivityData head = activityCache.get(ids.get(0));
+      if (head == null || head.getLastUpdated() == null || head.getLastUpdated() > lastUpdated) {
+        return null;
+      }
+    }
+
+    List<ActivityKey> prepended = new ArrayList<ActivityKey>(ids.size() + 1);
+    prepended.add(activityKey);
+    prepended.addAll(ids);
+    while (prepended.size() > key.getLimit()) {
+      prepended.remove(prepended.size() - 1);
+    }
+    return new ListActivitiesData(prepended);
+
+  }
+
+}
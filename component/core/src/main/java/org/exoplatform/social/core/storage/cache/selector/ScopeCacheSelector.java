@@ -20,6 +20,7 @@ package org.exoplatform.social.core.storage.cache.selector;
 import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.social.core.storage.cache.CacheStatistics;
 import org.exoplatform.social.core.storage.cache.model.key.ScopeCacheKey;
 
 /**
@@ -27,13 +28,28 @@ import org.exoplatform.social.core.storage.cache.model.key.ScopeCacheKey;
  * @version $Revision$
  */
 public class ScopeCacheSelector<T extends ScopeCacheKey, U> implements CachedObjectSelector<T, U> {
+
+  private final CacheStatistics statistics;
+
+  public ScopeCacheSelector() {
+    this(null);
+  }
+
+  /**
+   * @param statistics counts the evicted entries, may be null
+   */
+  public ScopeCacheSelector(final CacheStatistics statistics) {
+    this.statistics = statistics;
+  }
   
   public boolean select(final T key, final ObjectCacheInfo<? extends U> ocinfo) {
     return ScopeCacheKey.getCurrentRepositoryName().equals(key.getScope());
   }
 
   public void onSelect(final ExoCache<? extends T, ? extends U> exoCache, final T key, final ObjectCacheInfo<? extends U> ocinfo) throws Exception {
-    exoCache.remove(key);
+    if (exoCache.remove(key) != null && statistics != null) {
+      statistics.evicted();
+    }
   }
 
 }
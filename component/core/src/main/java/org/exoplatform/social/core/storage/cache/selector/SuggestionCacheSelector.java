@@ -53,7 +53,7 @@ public class SuggestionCacheSelector extends ScopeCacheSelector<ScopeCacheKey, O
       }
     }
 
-    return true;
+    return false;
 
   }
   
@@ -23,13 +23,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,7 +51,7 @@ import org.exoplatform.container.PortalContainer;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.core.ActivityProcessor;
-import org.exoplatform.social.core.activity.filter.ActivityCounter;
+import org.exoplatform.social.core.BaseActivityProcessorPlugin;
 import org.exoplatform.social.core.activity.filter.ActivityFilter;
 import org.exoplatform.social.core.activity.filter.ActivityIterator;
 import org.exoplatform.social.core.activity.filter.ActivityUpdateFilter;
@@ -83,8 +85,10 @@ import org.exoplatform.social.core.storage.api.IdentityStorage;
 import org.exoplatform.social.core.storage.api.RelationshipStorage;
 import org.exoplatform.social.core.storage.api.SpaceStorage;
 import org.exoplatform.social.core.storage.exception.NodeNotFoundException;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
 import org.exoplatform.social.core.storage.query.WhereExpression;
 import org.exoplatform.social.core.storage.streams.StreamInvocationHelper;
+import org.exoplatform.social.core.storage.streams.StripedLock;
 
 /**
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
@@ -96,6 +100,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   private static final Log LOG = ExoLogger.getLogger(ActivityStorageImpl.class);
   private static final Pattern MENTION_PATTERN = Pattern.compile("@([^\\s]+)|@([^\\s]+)$");
   public static final Pattern USER_NAME_VALIDATOR_REGEX = Pattern.compile("^[\\p{L}][\\p{L}._\\-\\d]+$");
+  private static final int PROCESSED_ACTIVITIES_SIZE = 2000;
   private ActivityStorage activityStorage;
 
   private final SortedSet<ActivityProcessor> activityProcessors;
@@ -106,6 +111,10 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   private final ActivityStreamStorage streamStorage;
   //sets value to tell this storage to inject Streams or not
   private boolean mustInjectStreams = true;
+  //the activities processed by the processors of the write phase
+  private final ProcessedActivityCache processedActivities = new ProcessedActivityCache(PROCESSED_ACTIVITIES_SIZE);
+  //the locks of the comment ids on this node, keyed by the activity path
+  private final StripedLock commentLocks = new StripedLock(256);
 
   public ActivityStorageImpl(
       final RelationshipStorage relationshipStorage,
@@ -159,6 +168,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     activityEntity.setPostedTime(activityMillis);
     activityEntity.setLastUpdated(activityMillis);
     activityEntity.setPosterIdentity(posterIdentityEntity);
+    activityEntity.setCommentIds(new String[]{});
     
 
     // Fill activity model
@@ -284,13 +294,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     activity.setPosterId(activityEntity.getPosterIdentity().getId());
 
     //
-    List<String> computeCommentid = new ArrayList<String>();
-    for (ActivityEntity commentEntity : activityEntity.getComments()) {
-      computeCommentid.add(commentEntity.getId());
-    }
-
-    //
-    activity.setReplyToId(computeCommentid.toArray(new String[]{}));
+    activity.setReplyToId(activityEntity.isComment() ? new String[]{} : getCommentIds(activityEntity));
     String[] likes = activityEntity.getLikes();
     if (likes != null) {
       activity.setLikeIdentityIds(activityEntity.getLikes());
@@ -327,10 +331,46 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     
 
     //
-    fillStream(activityEntity, activity);
+    fillStreamFromEntity(activityEntity, activity);
     
   }
 
+  /**
+   * Gets the comment ids of an activity, read from its comments when they are not kept by the activity.
+   */
+  private String[] getCommentIds(ActivityEntity activityEntity) {
+    String[] commentIds = activityEntity.getCommentIds();
+    if (commentIds != null) {
+      return commentIds;
+    }
+    List<String> computeCommentid = new ArrayList<String>();
+    for (ActivityEntity commentEntity : activityEntity.getComments()) {
+      computeCommentid.add(commentEntity.getId());
+    }
+    return computeCommentid.toArray(new String[]{});
+  }
+
+  /**
+   * Adds or removes a comment id of an activity. The ids are read, changed and saved under the lock of the
+   * activity, so that two comments saved or deleted at once on this node don't lose each other's id.
+   */
+  private void updateCommentIds(ActivityEntity activityEntity, String commentId, boolean add) {
+    Lock lock = commentLocks.get(activityEntity.getPath());
+    lock.lock();
+    try {
+      List<String> commentIdList = new ArrayList<String>(Arrays.asList(getCommentIds(activityEntity)));
+      //the ids read from the comments already have the new one
+      commentIdList.remove(commentId);
+      if (add) {
+        commentIdList.add(commentId);
+      }
+      activityEntity.setCommentIds(commentIdList.toArray(new String[]{}));
+      getSession().save();
+    } finally {
+      lock.unlock();
+    }
+  }
+
   private void fillStream(ActivityEntity activityEntity, ExoSocialActivity activity) {
 
     //
@@ -351,20 +391,46 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
       identityEntity = activityEntity.getIdentity();
     }
     //
-    stream.setId(identityEntity.getId());
-    stream.setPrettyId(identityEntity.getRemoteId());
-    stream.setType(identityEntity.getProviderId());
+    fillStream(stream, identityEntity.getId(), identityEntity.getRemoteId(), identityEntity.getProviderId(), activity);
+
+  }
+
+  /**
+   * Fills the stream of a loaded activity from the cached identity of its stream owner, without changing the
+   * activity entity.
+   */
+  private void fillStreamFromEntity(ActivityEntity activityEntity, ExoSocialActivity activity) {
+
+    //
+    ActivityStream stream = new ActivityStreamImpl();
+    IdentityEntity identityEntity = activityEntity.getIdentity();
+    Identity streamOwnerIdentity = identityStorage.findIdentityById(identityEntity.getId());
+    if (streamOwnerIdentity != null) {
+      fillStream(stream, streamOwnerIdentity.getId(), streamOwnerIdentity.getRemoteId(),
+                 streamOwnerIdentity.getProviderId(), activity);
+    } else {
+      fillStream(stream, identityEntity.getId(), identityEntity.getRemoteId(), identityEntity.getProviderId(), activity);
+    }
+
+  }
+
+  private void fillStream(ActivityStream stream, String id, String remoteId, String providerId,
+                          ExoSocialActivity activity) {
+
+    //
+    stream.setId(id);
+    stream.setPrettyId(remoteId);
+    stream.setType(providerId);
     
-    //Identity identity = identityStorage.findIdentityById(identityEntity.getId());
-    if (identityEntity != null && SpaceIdentityProvider.NAME.equals(identityEntity.getProviderId())) {
-      Space space = spaceStorage.getSpaceByPrettyName(identityEntity.getRemoteId());
+    if (SpaceIdentityProvider.NAME.equals(providerId)) {
+      Space space = spaceStorage.getSpaceByPrettyName(remoteId);
       //work-around for SOC-2366 when rename space's display name.
       if (space != null) {
         String groupId = space.getGroupId().split("/")[2];
-        stream.setPermaLink(LinkProvider.getActivityUriForSpace(identityEntity.getRemoteId(), groupId));
+        stream.setPermaLink(LinkProvider.getActivityUriForSpace(remoteId, groupId));
       }
     } else {
-      stream.setPermaLink(LinkProvider.getActivityUri(identityEntity.getProviderId(), identityEntity.getRemoteId()));
+      stream.setPermaLink(LinkProvider.getActivityUri(providerId, remoteId));
     }
     //
     activity.setActivityStream(stream);
@@ -426,13 +492,31 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   }
 
   private void processActivity(ExoSocialActivity existingActivity) {
-    Iterator<ActivityProcessor> it = activityProcessors.iterator();
-    while (it.hasNext()) {
-      try {
-        it.next().processActivity(existingActivity);
-      } catch (Exception e) {
-        LOG.warn("activity processing failed " + e.getMessage());
+    // the first processors of the write phase are applied once for a content
+    List<ActivityProcessor> processors = new ArrayList<ActivityProcessor>(activityProcessors);
+    int writeCount = 0;
+    while (writeCount < processors.size() && processors.get(writeCount) instanceof BaseActivityProcessorPlugin
+        && ((BaseActivityProcessorPlugin) processors.get(writeCount)).getPhase() == BaseActivityProcessorPlugin.Phase.WRITE) {
+      writeCount++;
+    }
+    List<ActivityProcessor> writeProcessors = processors.subList(0, writeCount);
+    if (writeCount > 0 && !processedActivities.apply(existingActivity, writeProcessors)) {
+      ProcessedActivityCache.Content source = new ProcessedActivityCache.Content(existingActivity);
+      for (ActivityProcessor processor : writeProcessors) {
+        processActivity(processor, existingActivity);
       }
+      processedActivities.put(existingActivity, source, writeProcessors);
+    }
+    for (ActivityProcessor processor : processors.subList(writeCount, processors.size())) {
+      processActivity(processor, existingActivity);
+    }
+  }
+
+  private void processActivity(ActivityProcessor processor, ExoSocialActivity existingActivity) {
+    try {
+      processor.processActivity(existingActivity);
+    } catch (Exception e) {
+      LOG.warn("activity processing failed " + e.getMessage());
     }
   }
 
@@ -456,17 +540,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     try {
 
       //
-      ActivityEntity activityEntity = _findById(ActivityEntity.class, activityId);
-      ExoSocialActivity activity = new ExoSocialActivityImpl();
-
-      //
-      activity.setId(activityEntity.getId());
-      fillActivityFromEntity(activityEntity, activity);
-
-      processActivity(activity);
-
-      //
-      return activity;
+      return loadActivity(_findById(ActivityEntity.class, activityId));
 
     }
     catch (NodeNotFoundException e) {
@@ -475,6 +549,39 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     }
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<ExoSocialActivity> getActivities(List<String> activityIds) throws ActivityStorageException {
+
+    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>(activityIds.size());
+    for (String activityId : activityIds) {
+      try {
+        activities.add(loadActivity(_findById(ActivityEntity.class, activityId)));
+      }
+      catch (NodeNotFoundException e) {
+        LOG.debug("Activity " + activityId + " doesn't exist anymore");
+      }
+    }
+    return activities;
+
+  }
+
+  private ExoSocialActivity loadActivity(ActivityEntity activityEntity) {
+
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+
+    //
+    activity.setId(activityEntity.getId());
+    fillActivityFromEntity(activityEntity, activity);
+
+    processActivity(activity);
+
+    //
+    return activity;
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -563,6 +670,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
       hidable.setHidden(comment.isHidden());
       
       comment.setId(commentEntity.getId());
+      updateCommentIds(activityEntity, commentEntity.getId(), true);
 
       Map<String, String> params = comment.getTemplateParams();
       if (params != null) {
@@ -736,6 +844,9 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
           StreamInvocationHelper.deleteComment(parentActivity, mentioners.toArray(new String[0]), commenters.toArray(new String[0]));
         }
         
+        //
+        updateCommentIds(activityEntityOfComment, activityEntity.getId(), false);
+        
       } else {
         List<String> mentioners = new ArrayList<String>();
         activityEntity.setMentioners(processMentions(activityEntity.getMentioners(), activityEntity.getTitle(), mentioners, false));
@@ -750,6 +861,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
       //
       _removeById(ActivityEntity.class, activityId);
+      processedActivities.remove(activityId);
 
       //
       if (dayEntity != null) { // False when activity is a comment
@@ -826,13 +938,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
     QueryResult<ActivityEntity> results = getActivitiesOfIdentitiesQuery(connectionList, type).objects(offset, limit);
 
-    List<ExoSocialActivity> activities =  new ArrayList<ExoSocialActivity>();
-
-    while(results.hasNext()) {
-      activities.add(getStorage().getActivity(results.next().getId()));
-    }
-
-    return activities;
+    return getActivitiesFromQueryResults(results);
   }
 
   /**
@@ -1012,20 +1118,8 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
   @Override
   public int getNumberOfNewerOnActivityFeed(Identity ownerIdentity, Long sinceTime) {
-    //
-    List<Identity> identities = new ArrayList<Identity>();
-
-    identities.addAll(relationshipStorage.getConnections(ownerIdentity));
-    identities.addAll(getSpacesId(ownerIdentity));
-    identities.add(ownerIdentity);
-
-    //
-    ActivityFilter filter = ActivityFilter.newer();
-    filter.with(ActivityFilter.ACTIVITY_UPDATED_POINT_FIELD).value(TimestampType.NEWER.from(sinceTime));
-
-    //
-    return getActivitiesOfIdentitiesQuery(ActivityBuilderWhere.simple().mentioner(ownerIdentity).owners(identities), filter).objects().size();
-
+    //the feed stream counters give the number without querying the activities
+    return streamStorage.getNumberOfUpdated(ownerIdentity, ActivityRefType.FEED, sinceTime);
   }
   
   @Override
@@ -1653,13 +1747,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
     QueryResult<ActivityEntity> results = getActivitiesOfIdentitiesQuery(where, filter).objects(offset, limit);
 
-    List<ExoSocialActivity> activities =  new ArrayList<ExoSocialActivity>();
-
-    while(results.hasNext()) {
-      activities.add(getStorage().getActivity(results.next().getId()));
-    }
-
-    return activities;
+    return getActivitiesFromQueryResults(results);
   }
   
   /**
@@ -1921,38 +2009,26 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   @Override
   public int getNumberOfMultiUpdated(Identity owner, Map<String, Long> sinceTimes) {
     //
-    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
-    List<String> activityIds = new ArrayList<String>();
+    Map<ActivityRefType, Long> streamSinceTimes = new HashMap<ActivityRefType, Long>();
     
     if ( sinceTimes.get("CONNECTIONS") != null ) {
-      List<ExoSocialActivity> connectionsActivities =  getNewerActivitiesOfConnections(owner, sinceTimes.get("CONNECTIONS"), 100);
-      activities.addAll(connectionsActivities);
-      for ( ExoSocialActivity connectionsActivity : connectionsActivities ) {
-        activityIds.add(connectionsActivity.getId());
-      }
+      streamSinceTimes.put(ActivityRefType.CONNECTION, sinceTimes.get("CONNECTIONS"));
     }
     
     if ( sinceTimes.get("MY_SPACE") != null ) {
-      List<ExoSocialActivity> mySpaceActivities = getNewerUserSpacesActivities(owner, sinceTimes.get("MY_SPACE"), 100);  
-      for ( ExoSocialActivity mySpaceActivity : mySpaceActivities ) {
-        if ( !activityIds.contains(mySpaceActivity.getId()) ) {
-          activities.add(mySpaceActivity);
-          activityIds.add(mySpaceActivity.getId());
-        }
-      }
+      streamSinceTimes.put(ActivityRefType.MY_SPACES, sinceTimes.get("MY_SPACE"));
     }
     
     if ( sinceTimes.get("MY_ACTIVITIES") != null ) {
-      List<ExoSocialActivity> myActivities = getNewerUserActivities(owner, sinceTimes.get("MY_ACTIVITIES"), 100);
-      for ( ExoSocialActivity myActivity : myActivities ) {
-        if ( !activityIds.contains(myActivity.getId()) ) {
-          activities.add(myActivity);
-          activityIds.add(myActivity.getId());
-        }
-      }
+      streamSinceTimes.put(ActivityRefType.MY_ACTIVITIES, sinceTimes.get("MY_ACTIVITIES"));
     }
     
-    return activities.size();
+    if ( streamSinceTimes.isEmpty() ) {
+      return 0;
+    }
+    
+    //the refs of the streams are counted, the activities are not loaded
+    return streamStorage.getNumberOfUpdated(owner, streamSinceTimes, 100);
   }
   
   //
@@ -2035,13 +2111,13 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   }
   
   private List<ExoSocialActivity> getActivitiesFromQueryResults(QueryResult<ActivityEntity> results) {
-    List<ExoSocialActivity> activities =  new LinkedList<ExoSocialActivity>();
+    List<String> activityIds = new ArrayList<String>();
 
     while(results.hasNext()) {
-      activities.add(getStorage().getActivity(results.next().getId()));
+      activityIds.add(results.next().getId());
     }
 
-    return activities;
+    return getStorage().getActivities(activityIds);
   }
   //
   
@@ -2115,18 +2191,6 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   @Override
   public int getNumberOfUpdatedOnActivityFeed(Identity owner, ActivityUpdateFilter filter) {
     
-    //
-    List<Identity> identities = new ArrayList<Identity>();
-    
-    List<Identity> relationships = relationshipStorage.getConnections(owner);
-
-    identities.addAll(relationships);
-    identities.addAll(getSpacesId(owner));
-    //identities.add(owner);
-    
-    if ( identities.size() == 0 ) {
-      return 0;
-    }
     //
     String[] excludedSpaceActivities = getNumberOfViewedOfActivities(owner, filter.spaceActivitiesType());
     filter.addExcludedActivities(excludedSpaceActivities);
@@ -2146,16 +2210,11 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     //
     long compareTime = filter.activityFeedType().toSinceTime();
     
-    //
-    JCRFilterLiteral jcrfilter = ActivityFilter.ACTIVITY_NEW_UPDATED_FILTER;
-    jcrfilter.with(ActivityFilter.ACTIVITY_UPDATED_POINT_FIELD).value(TimestampType.NEWER.from(compareTime));
-
-    //
-    Query<ActivityEntity> query = getActivitiesOfIdentitiesQuery(ActivityBuilderWhere.updated().owners(identities).mentioner(owner)
-                                                                 .posters(relationships).excludedActivities(filter.excludedActivities()), jcrfilter);
-    
-    //calculate here
-    int gotNumber = counter(query);
+    //the feed stream counters give the updated activities, the owner's own ones and the viewed ones are removed from them
+    int gotNumber = streamStorage.getNumberOfUpdated(owner, ActivityRefType.FEED, compareTime);
+    gotNumber -= streamStorage.getNumberOfUpdated(owner, ActivityRefType.MY_ACTIVITIES, compareTime);
+    gotNumber -= numberOfUpdated(owner, filter.excludedActivities(), compareTime);
+    gotNumber = Math.max(gotNumber, 0);
     
     if (filter.isRefreshTab() && gotNumber == filter.activityFeedType().lastNumberOfUpdated()) {
       gotNumber = 0;
@@ -2164,6 +2223,39 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     return gotNumber;
   }
   
+  /**
+   * Counts the given activities updated after the given time, only the activity nodes are read.
+   * The owner's own activities are already removed with the owner's stream counters, they are not counted.
+   * 
+   * @param owner
+   * @param activityIds
+   * @param sinceTime
+   * @return
+   */
+  private int numberOfUpdated(Identity owner, String[] activityIds, long sinceTime) {
+    if (activityIds == null) {
+      return 0;
+    }
+    
+    Set<String> counted = new HashSet<String>();
+    for (String activityId : activityIds) {
+      if (!counted.add(activityId)) {
+        continue;
+      }
+      try {
+        ActivityEntity entity = _findById(ActivityEntity.class, activityId);
+        Long lastUpdated = entity.getLastUpdated();
+        if (lastUpdated == null || lastUpdated <= sinceTime || owner.getId().equals(entity.getPosterIdentity().getId())) {
+          counted.remove(activityId);
+        }
+      } catch (NodeNotFoundException e) {
+        counted.remove(activityId);
+      }
+    }
+    
+    return counted.size();
+  }
+  
   /**
    * Counter of activies what is updated
    * @param query
@@ -2174,9 +2266,9 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     QueryResult<ActivityEntity> results = query.objects();
     
     ActivityEntity entity = null;
-    ActivityCounter counter = new ActivityCounter();
+    Set<String> counter = new HashSet<String>();
     
-    //
+    //the ids are enough to count, the activities are not loaded
     while (results.hasNext()) {
       entity = results.next();
 
@@ -2185,7 +2277,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
         entity = entity.getParentActivity();
       }
 
-      counter.add(getStorage().getActivity(entity.getId()));
+      counter.add(entity.getId());
 
     }
     
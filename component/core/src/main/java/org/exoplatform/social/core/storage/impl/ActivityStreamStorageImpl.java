@@ -18,17 +18,23 @@ package org.exoplatform.social.core.storage.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
 
 import javax.jcr.InvalidItemStateException;
 import javax.jcr.ItemExistsException;
 import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.chromattic.api.ChromatticException;
@@ -40,8 +46,11 @@ import org.exoplatform.container.PortalContainer;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.common.service.ProcessContext;
+import org.exoplatform.social.common.service.impl.SocialServiceContextImpl;
 import org.exoplatform.social.common.service.utils.ObjectHelper;
 import org.exoplatform.social.core.activity.filter.ActivityFilter;
+import org.exoplatform.social.core.activity.model.ActivityStreamPage;
+import org.exoplatform.social.core.activity.model.ActivityStreamState;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.chromattic.entity.ActivityEntity;
 import org.exoplatform.social.core.chromattic.entity.ActivityRef;
@@ -50,6 +59,7 @@ import org.exoplatform.social.core.chromattic.entity.HidableEntity;
 import org.exoplatform.social.core.chromattic.entity.IdentityEntity;
 import org.exoplatform.social.core.chromattic.entity.StreamsEntity;
 import org.exoplatform.social.core.chromattic.filter.JCRFilterLiteral;
+import org.exoplatform.social.core.chromattic.utils.ActivityRefCursor;
 import org.exoplatform.social.core.chromattic.utils.ActivityRefIterator;
 import org.exoplatform.social.core.chromattic.utils.ActivityRefList;
 import org.exoplatform.social.core.identity.model.Identity;
@@ -61,10 +71,14 @@ import org.exoplatform.social.core.storage.api.ActivityStorage;
 import org.exoplatform.social.core.storage.api.ActivityStreamStorage;
 import org.exoplatform.social.core.storage.api.RelationshipStorage;
 import org.exoplatform.social.core.storage.api.SpaceStorage;
+import org.exoplatform.social.core.storage.cache.CachedActivityStorage;
 import org.exoplatform.social.core.storage.exception.NodeNotFoundException;
 import org.exoplatform.social.core.storage.query.JCRProperties;
 import org.exoplatform.social.core.storage.query.WhereExpression;
+import org.exoplatform.social.core.storage.streams.ActivityStreamNotifier;
+import org.exoplatform.social.core.storage.streams.StreamFanOutPipeline;
 import org.exoplatform.social.core.storage.streams.StreamProcessContext;
+import org.exoplatform.social.core.storage.streams.StripedLock;
 
 public class ActivityStreamStorageImpl extends AbstractStorage implements ActivityStreamStorage {
   
@@ -89,9 +103,48 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
    */
   private ActivityStorage activityStorage;
   
+  /**
+   * The stream fan-out pipeline
+   */
+  private StreamFanOutPipeline fanOutPipeline;
+  
+  /**
+   * The notifier of the readers waiting for new activities
+   */
+  private ActivityStreamNotifier streamNotifier;
+  
   /** Logger */
   private static final Log LOG = ExoLogger.getLogger(ActivityStreamStorageImpl.class);
   
+  /**
+   * The locks of the streams on this node, keyed by the path of the identity's stream
+   */
+  private final StripedLock streamLocks = new StripedLock(256);
+  
+  /**
+   * The attempts to create an activity reference when the YearMonthDay path is concurrently created
+   */
+  private static final int MAX_REF_ATTEMPTS = 3;
+  
+  /**
+   * The number of stream versions on this node, the streams sharing one change their version together
+   */
+  private static final int STREAM_VERSIONS = 4096;
+  
+  /**
+   * The versions of the streams on this node, keyed by the path of the identity's stream. They are counted from the
+   * start of the node, a version given by another node or before a restart doesn't match.
+   */
+  private final AtomicLongArray streamVersions = new AtomicLongArray(STREAM_VERSIONS);
+  
+  private final long versionsStart = System.currentTimeMillis();
+  
+  /**
+   * The streams changed by the current thread, their cached lists are updated
+   * at the end of the write by {@link #clearChangedStreams()}
+   */
+  private static final ThreadLocal<StreamChanges> CHANGED_STREAMS = new ThreadLocal<StreamChanges>();
+  
   public ActivityStreamStorageImpl(IdentityStorageImpl identityStorage) {
     this.identityStorage = identityStorage;
   }
@@ -119,6 +172,22 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     
     return this.relationshipStorage;
   }
+  
+  private StreamFanOutPipeline getFanOutPipeline() {
+    if (fanOutPipeline == null) {
+      fanOutPipeline = (StreamFanOutPipeline) PortalContainer.getInstance().getComponentInstanceOfType(StreamFanOutPipeline.class);
+    }
+    
+    return this.fanOutPipeline;
+  }
+  
+  private ActivityStreamNotifier getStreamNotifier() {
+    if (streamNotifier == null) {
+      streamNotifier = (ActivityStreamNotifier) PortalContainer.getInstance().getComponentInstanceOfType(ActivityStreamNotifier.class);
+    }
+    
+    return this.streamNotifier;
+  }
 
   @Override
   public void save(ProcessContext ctx) {
@@ -128,6 +197,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       Identity owner = streamCtx.getIdentity();
       //
       ActivityEntity activityEntity = _findById(ActivityEntity.class, streamCtx.getActivity().getId());     
+      newActivity(activityEntity);
       if (OrganizationIdentityProvider.NAME.equals(owner.getProviderId())) {
         user(owner, activityEntity);
         //mention case
@@ -141,6 +211,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     } catch (NodeNotFoundException e) {
       ctx.setException(e);
       LOG.warn("Failed to add Activity Relations references.", e);
+    } finally {
+      clearChangedStreams();
     }
   }
   
@@ -152,6 +224,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       Identity owner = streamCtx.getIdentity();
       //
       ActivityEntity activityEntity = _findById(ActivityEntity.class, streamCtx.getActivity().getId());     
+      newActivity(activityEntity);
       if (OrganizationIdentityProvider.NAME.equals(owner.getProviderId())) {
         createOwnerRefs(owner, activityEntity);
         if (! owner.getId().equals(activityEntity.getPosterIdentity().getId())) {
@@ -171,6 +244,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     } catch (NodeNotFoundException e) {
       ctx.setException(e);
       LOG.warn("Failed to add Activity references.", e);
+    } finally {
+      clearChangedStreams();
     }
   }
   
@@ -178,7 +253,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     //
     List<Identity> got = getRelationshipStorage().getConnections(owner);
     if (got.size() > 0) {
-      createConnectionsRefs(got, activityEntity);
+      fanOut(got, activityEntity, true, ActivityRefType.FEED, ActivityRefType.CONNECTION);
     }
   }
   
@@ -224,7 +299,82 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     if (space == null) return;
     //Don't create ActivityRef on space stream for given SpaceIdentity
     List<Identity> identities = getMemberIdentities(space);
-    createSpaceMembersRefs(identities, activityEntity);
+    fanOut(identities, activityEntity, false, ActivityRefType.FEED, ActivityRefType.MY_SPACES);
+  }
+  
+  /**
+   * Creates the references of the activity on the recipients' streams.
+   * 
+   * In asynchronous mode the recipients are dispatched on the {@link StreamFanOutPipeline} lanes
+   * by batches, each batch runs in its own session and its references are saved at once. Otherwise the references
+   * are created in the current session.
+   * 
+   * @param recipients the owners of the streams
+   * @param activityEntity the activity
+   * @param mustCheck checks the activity is not already on the recipient's streams
+   * @param types the streams to update
+   * @throws NodeNotFoundException
+   */
+  private void fanOut(List<Identity> recipients, ActivityEntity activityEntity, boolean mustCheck, ActivityRefType... types) throws NodeNotFoundException {
+    StreamFanOutPipeline pipeline = getFanOutPipeline();
+    if (pipeline == null || !SocialServiceContextImpl.getInstance().isAsync()) {
+      for (ActivityRefType type : types) {
+        manageRefList(new UpdateContext(recipients, null), activityEntity, type, mustCheck);
+      }
+      return;
+    }
+    
+    //
+    List<List<Identity>> lanes = new ArrayList<List<Identity>>(pipeline.getLanes());
+    for (int i = 0; i < pipeline.getLanes(); i++) {
+      lanes.add(new ArrayList<Identity>());
+    }
+    for (Identity recipient : recipients) {
+      lanes.get(pipeline.laneOf(recipient.getId())).add(recipient);
+    }
+    
+    //
+    int batchSize = pipeline.getBatchSize();
+    for (int lane = 0; lane < lanes.size(); lane++) {
+      List<Identity> laneRecipients = lanes.get(lane);
+      for (int from = 0; from < laneRecipients.size(); from += batchSize) {
+        List<Identity> batch = new ArrayList<Identity>(laneRecipients.subList(from, Math.min(from + batchSize, laneRecipients.size())));
+        pipeline.submit(lane, new FanOutBatch(activityEntity.getId(), batch, mustCheck, types));
+      }
+    }
+  }
+  
+  /**
+   * A batch of recipients to fan out the activity to, run by a {@link StreamFanOutPipeline} lane.
+   */
+  private class FanOutBatch implements Runnable {
+    
+    private final String activityId;
+    private final List<Identity> recipients;
+    private final boolean mustCheck;
+    private final ActivityRefType[] types;
+    
+    public FanOutBatch(String activityId, List<Identity> recipients, boolean mustCheck, ActivityRefType[] types) {
+      this.activityId = activityId;
+      this.recipients = recipients;
+      this.mustCheck = mustCheck;
+      this.types = types;
+    }
+    
+    @Override
+    public void run() {
+      boolean created = startSynchronization();
+      try {
+        ActivityEntity activityEntity = _findById(ActivityEntity.class, activityId);
+        newActivity(activityEntity);
+        addBatch(recipients, activityEntity, mustCheck, types);
+      } catch (NodeNotFoundException e) {
+        LOG.warn("Failed to fan out the activity " + activityId + " to " + recipients.size() + " streams.", e);
+      } finally {
+        clearChangedStreams();
+        stopSynchronization(created);
+      }
+    }
   }
 
   private List<Identity> getMemberIdentities(Space space) {
@@ -254,11 +404,14 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       
       for(ActivityRefListEntity list : refList) {
         list.remove(activityEntity.getLastUpdated());
+        streamChanged(list);
       }
       
       
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to delete Activities references.", e);
+    } finally {
+      clearChangedStreams();
     }
   }
   
@@ -273,6 +426,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to make Activity References for like case.");
+    } finally {
+      clearChangedStreams();
     }
     
   }
@@ -295,6 +450,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to delete Activity References for unlike case.");
+    } finally {
+      clearChangedStreams();
     }
   }
   
@@ -309,16 +466,12 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
   
   @Override
   public void updateCommenter(ProcessContext ctx) {
-    final ReentrantLock lock = new ReentrantLock();
-    
     try {
       StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
       ExoSocialActivity activity = streamCtx.getActivity();
       Identity commenter = streamCtx.getIdentity();
       IdentityEntity identityEntity = identityStorage._findIdentityEntity(commenter.getProviderId(), commenter.getRemoteId());
       ActivityEntity activityEntity = _findById(ActivityEntity.class, activity.getId());
-      //
-      lock.lock();
       
       QueryResult<ActivityRef> got = getActivityRefs(identityEntity, activityEntity);
       ActivityRef activityRef = null;
@@ -326,6 +479,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
         activityRef = got.next();
         activityRef.setName("" + activity.getUpdated().getTime());
         activityRef.setLastUpdated(activity.getUpdated().getTime());
+        streamChanged(identityEntity.getId());
       }
       
       long oldUpdated = streamCtx.getOldLastUpdated();  
@@ -357,7 +511,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
         LOG.debug(ex.getMessage(), ex);
       }
     } finally {
-      lock.unlock();
+      clearChangedStreams();
     }
   }
 
@@ -380,32 +534,27 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
   
   @Override
   public void update(ProcessContext ctx) {
-    final ReentrantLock lock = new ReentrantLock();
-    ThreadLocal<Set<String>> idLocal = new ThreadLocal<Set<String>>();
     try {
       
       StreamProcessContext streamCtx = ObjectHelper.cast(StreamProcessContext.class, ctx);
       ExoSocialActivity activity = streamCtx.getActivity();
       ActivityEntity activityEntity = _findById(ActivityEntity.class, activity.getId());
       
-      lock.lock(); // block until condition holds
-      
       Collection<ActivityRef> references = activityEntity.getActivityRefs();
-      Set<String> ids = new ConcurrentSkipListSet<String>();
+      Set<String> ids = new LinkedHashSet<String>();
 
       for (ActivityRef ref : references) {
         ids.add(ref.getId());
       }
       
-      idLocal.set(ids);
-      
-      Set<String> idList = idLocal.get(); 
-      if (idList.size() > 0) {
-        for (String id : idList) {
-          ActivityRef old = _findById(ActivityRef.class, id);
-          LOG.debug("ActivityRef will be deleted: " + old.toString());
-          ActivityRefListEntity refList = old.getDay().getMonth().getYear().getList();
-          //
+      for (String id : ids) {
+        ActivityRef old = _findById(ActivityRef.class, id);
+        LOG.debug("ActivityRef will be deleted: " + old.toString());
+        ActivityRefListEntity refList = old.getDay().getMonth().getYear().getList();
+        //
+        Lock lock = streamLocks.get(refList.getPath());
+        lock.lock();
+        try {
           if (refList.isOnlyUpdate(old, activity.getUpdated().getTime())) {
             old.setName("" + activity.getUpdated().getTime());
             old.setLastUpdated(activity.getUpdated().getTime());
@@ -414,9 +563,12 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
             newRef.setLastUpdated(activity.getUpdated().getTime());
             newRef.setActivityEntity(activityEntity);
             getSession().remove(old);
+            persistStream();
           }
-
+        } finally {
+          lock.unlock();
         }
+        streamChanged(refList);
       }
 
       // mentioners
@@ -439,10 +591,11 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
         LOG.warn("Probably was updated activity reference by another session", ex);
         LOG.debug(ex.getMessage(), ex);
       }
-      
+      //the failed changes would fail the save below again
+      discardStream();
     } finally {
         getSession().save();
-        lock.unlock();
+        clearChangedStreams();
     }
   }
   
@@ -470,13 +623,16 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
         } else {
           ref.getDay().desc();
         }
+        streamChanged(ref.getDay().getMonth().getYear().getList());
       }
       
     } catch (Exception e) {
       LOG.warn("Failed to update Activity references when change the visibility of activity.", e);
       //turnOffLock to get increase perf
       //turnOnUpdateLock = false;
-    } 
+    } finally {
+      clearChangedStreams();
+    }
   }
 
   /**
@@ -522,6 +678,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       removeCommenter(streamCtx.getCommenters(), activityEntity);
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to delete Activity references for mentioner and commenter.");
+    } finally {
+      clearChangedStreams();
     }
   }
   
@@ -534,6 +692,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to addSpaceMember Activity references.");
+    } finally {
+      clearChangedStreams();
     }
     
   }
@@ -545,6 +705,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       removeSpaceMemberRefs(streamCtx.getIdentity(), streamCtx.getSpaceIdentity());
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to removeSpaceMember Activity references.");
+    } finally {
+      clearChangedStreams();
     }
     
   }
@@ -556,17 +718,125 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     return getActivitiesNotQuery(ActivityRefType.FEED, owner, offset, limit);
   }
 
+  @Override
+  public ActivityStreamPage getFeed(Identity owner, String cursor, int limit) {
+    return getActivitiesAfter(ActivityRefType.FEED, owner, cursor, limit);
+  }
+
   @Override
   public int getNumberOfFeed(Identity owner) {
     return getNumberOfActivities(ActivityRefType.FEED, owner);
   }
 
+  @Override
+  public int getNumberOfUpdated(Identity owner, ActivityRefType type, long sinceTime) {
+    try {
+      IdentityEntity identityEntity = identityStorage._findIdentityEntity(owner.getProviderId(), owner.getRemoteId());
+      ActivityRefListEntity refList = type.refsOf(identityEntity);
+      
+      if (refList == null) return 0;
+      
+      return refList.getNumberOfNewer(sinceTime);
+    } catch (NodeNotFoundException e) {
+      LOG.warn("Failed to getNumberOfUpdated()");
+    }
+    
+    return 0;
+  }
+
+  @Override
+  public int getNumberOfUpdated(Identity owner, Map<ActivityRefType, Long> sinceTimes, int limit) {
+    if (sinceTimes.size() == 1) {
+      Map.Entry<ActivityRefType, Long> e = sinceTimes.entrySet().iterator().next();
+      return Math.min(getNumberOfUpdated(owner, e.getKey(), e.getValue()), limit);
+    }
+    
+    //the same activity has the same ref name, the last updated time, on all the streams
+    Set<String> names = new HashSet<String>();
+    try {
+      IdentityEntity identityEntity = identityStorage._findIdentityEntity(owner.getProviderId(), owner.getRemoteId());
+      for (Map.Entry<ActivityRefType, Long> e : sinceTimes.entrySet()) {
+        ActivityRefListEntity refList = e.getKey().refsOf(identityEntity);
+        if (refList == null) {
+          continue;
+        }
+        
+        //the refs are read from the newest one, without the activities
+        Iterator<ActivityRef> it = new ActivityRefList(refList).iterator();
+        int number = 0;
+        while (number < limit && it.hasNext()) {
+          String name = it.next().getName();
+          if (Long.parseLong(name) <= e.getValue()) {
+            break;
+          }
+          names.add(name);
+          ++number;
+        }
+      }
+    } catch (NodeNotFoundException e) {
+      LOG.warn("Failed to getNumberOfUpdated()");
+    }
+    
+    return names.size();
+  }
+
+  @Override
+  public ActivityStreamState getState(Identity owner, ActivityRefType type) {
+    try {
+      IdentityEntity identityEntity = identityStorage._findIdentityEntity(owner.getProviderId(), owner.getRemoteId());
+      ActivityRefListEntity refList = type.refsOf(identityEntity);
+      
+      if (refList == null) return new ActivityStreamState(0, 0);
+      
+      //the newest ref is the first one, only the refs of its day are read
+      Iterator<ActivityRef> it = new ActivityRefList(refList).iterator();
+      long lastUpdated = it.hasNext() ? Long.parseLong(it.next().getName()) : 0;
+      return new ActivityStreamState(lastUpdated, refList.getNumber(), getVersion(refList.getPath()));
+    } catch (NodeNotFoundException e) {
+      LOG.warn("Failed to getState()");
+    }
+    
+    return new ActivityStreamState(0, 0);
+  }
+  
+  /**
+   * The versions are local to the node, like the stream notifications: in a cluster, a stream read on a node
+   * gets a new version when the activity is touched on this node, or when another node moves its references.
+   */
+  @Override
+  public void touch(String activityId) {
+    try {
+      ActivityEntity activityEntity = _findById(ActivityEntity.class, activityId);
+      for (ActivityRef ref : activityEntity.getActivityRefs()) {
+        streamVersions.incrementAndGet(versionIndex(ref.getDay().getMonth().getYear().getList().getPath()));
+      }
+    } catch (NodeNotFoundException e) {
+      LOG.debug("No activity found to touch its streams: " + activityId, e);
+    }
+  }
+  
+  private long getVersion(String streamPath) {
+    return versionsStart + streamVersions.get(versionIndex(streamPath));
+  }
+  
+  private static int versionIndex(String streamPath) {
+    int hash = streamPath.hashCode();
+    hash ^= (hash >>> 20) ^ (hash >>> 12);
+    hash ^= (hash >>> 7) ^ (hash >>> 4);
+    return hash & (STREAM_VERSIONS - 1);
+  }
+
   @Override
   public List<ExoSocialActivity> getConnections(Identity owner, int offset, int limit) {
     
     return getActivitiesNotQuery(ActivityRefType.CONNECTION, owner, offset, limit);
   }
 
+  @Override
+  public ActivityStreamPage getConnections(Identity owner, String cursor, int limit) {
+    return getActivitiesAfter(ActivityRefType.CONNECTION, owner, cursor, limit);
+  }
+
   @Override
   public int getNumberOfConnections(Identity owner) {
     return getNumberOfActivities(ActivityRefType.CONNECTION, owner);
@@ -577,6 +847,11 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     return getActivitiesNotQuery(ActivityRefType.MY_SPACES, owner, offset, limit);
   }
 
+  @Override
+  public ActivityStreamPage getMySpaces(Identity owner, String cursor, int limit) {
+    return getActivitiesAfter(ActivityRefType.MY_SPACES, owner, cursor, limit);
+  }
+
   @Override
   public int getNumberOfMySpaces(Identity owner) {
     return getNumberOfActivities(ActivityRefType.MY_SPACES, owner);
@@ -587,6 +862,11 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     return getActivities(ActivityRefType.SPACE_STREAM, owner, offset, limit);
   }
 
+  @Override
+  public ActivityStreamPage getSpaceStream(Identity owner, String cursor, int limit) {
+    return getActivitiesAfter(ActivityRefType.SPACE_STREAM, owner, cursor, limit);
+  }
+
   @Override
   public int getNumberOfSpaceStream(Identity owner) {
     return getNumberOfActivities(ActivityRefType.SPACE_STREAM, owner);
@@ -597,6 +877,11 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     return getActivitiesNotQuery(ActivityRefType.MY_ACTIVITIES, owner, offset, limit);
   }
 
+  @Override
+  public ActivityStreamPage getMyActivities(Identity owner, String cursor, int limit) {
+    return getActivitiesAfter(ActivityRefType.MY_ACTIVITIES, owner, cursor, limit);
+  }
+
   @Override
   public int getNumberOfMyActivities(Identity owner) {
     return getNumberOfActivities(ActivityRefType.MY_ACTIVITIES, owner);
@@ -640,6 +925,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to add Activity references when create relationship.");
+    } finally {
+      clearChangedStreams();
     }
   }
   
@@ -667,6 +954,8 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       }
     } catch (NodeNotFoundException e) {
       LOG.warn("Failed to delete Activity references when delete relationship.");
+    } finally {
+      clearChangedStreams();
     }
   }
   
@@ -804,6 +1093,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       
       Iterator<ActivityRef> it = getActivityRefs(identityEntity, type, offset, limit);
 
+      List<String> activityIds = new ArrayList<String>();
       while (it.hasNext()) {
         ActivityRef current = it.next();
 
@@ -814,12 +1104,16 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
         }
         
         //
-        ExoSocialActivity a = getStorage().getActivity(current.getActivityEntity().getId());
+        activityIds.add(current.getActivityEntity().getId());
+
+      }
+
+      //the activities of the page are loaded in one call
+      for (ExoSocialActivity a : getStorage().getActivities(activityIds)) {
         if (a.isHidden() == true) {
           continue;
         }
         got.add(a);
-
       }
       
     } catch (NodeNotFoundException e) {
@@ -837,30 +1131,65 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
       ActivityRefListEntity refList = type.refsOf(identityEntity);
       ActivityRefList list = new ActivityRefList(refList);
 
-      int nb = 0;
       ActivityRefIterator it = list.iterator();
       _skip(it, offset);
-      while (it.hasNext()) {
+      readActivities(it, limit, got);
+    } catch (NodeNotFoundException e) {
+      LOG.warn("Failed to activities!");
+    }
+    return got;
+  }
+
+  private ActivityStreamPage getActivitiesAfter(ActivityRefType type, Identity owner, String cursor, int limit) {
+    List<ExoSocialActivity> got = new LinkedList<ExoSocialActivity>();
+    String nextCursor = null;
+    try {
+      IdentityEntity identityEntity = identityStorage._findIdentityEntity(owner.getProviderId(), owner.getRemoteId());
+      
+      ActivityRefListEntity refList = type.refsOf(identityEntity);
+      ActivityRefList list = new ActivityRefList(refList);
+
+      //seeks the day of the cursor instead of skipping the newer refs one by one
+      ActivityRefIterator it = cursor == null ? list.iterator() : list.iterator(ActivityRefCursor.parse(cursor));
+      ActivityRefCursor last = readActivities(it, limit, got);
+      if (last != null && it.hasNext()) {
+        nextCursor = last.toString();
+      }
+    } catch (NodeNotFoundException e) {
+      LOG.warn("Failed to activities!");
+    }
+    return new ActivityStreamPage(got, nextCursor);
+  }
+
+  /**
+   * Reads the activities of the refs following the iterator position until the limit is reached.
+   *
+   * @return the position of the last read ref, null if no ref was read
+   */
+  private ActivityRefCursor readActivities(Iterator<ActivityRef> it, int limit, List<ExoSocialActivity> got) {
+    ActivityRefCursor last = null;
+    //the refs are read by pages of the missing size, each page being loaded in one call
+    while (got.size() < limit && it.hasNext()) {
+      List<String> activityIds = new ArrayList<String>(limit - got.size());
+      while (activityIds.size() < limit - got.size() && it.hasNext()) {
         ActivityRef current = it.next();
+        last = ActivityRefCursor.of(current);
         // take care in the case, current.getActivityEntity() = null the same
         // SpaceRef, need to remove it out
         if (current.getActivityEntity() == null) {
           current.getDay().getActivityRefs().remove(current.getName());
           continue;
         }
-        ExoSocialActivity activity = getStorage().getActivity(current.getActivityEntity().getId());
+        activityIds.add(current.getActivityEntity().getId());
+      }
+      for (ExoSocialActivity activity : getStorage().getActivities(activityIds)) {
         if (activity.isHidden() == true) {
           continue;
         }
         got.add(activity);
-        if (++nb == limit) {
-          break;
-        }
       }
-    } catch (NodeNotFoundException e) {
-      LOG.warn("Failed to activities!");
     }
-    return got;
+    return last;
   }
   
   
@@ -978,11 +1307,6 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     manageRefList(new UpdateContext(null, owner), activityEntity, ActivityRefType.MY_ACTIVITIES);
   }
   
-  private void createConnectionsRefs(List<Identity> identities, ActivityEntity activityEntity) throws NodeNotFoundException {
-    manageRefList(new UpdateContext(identities, null), activityEntity, ActivityRefType.FEED, true);
-    manageRefList(new UpdateContext(identities, null), activityEntity, ActivityRefType.CONNECTION, true);
-  }
-  
   private void createConnectionsRefs(Identity identity, ActivityEntity activityEntity) throws NodeNotFoundException {
     manageRefList(new UpdateContext(identity, null), activityEntity, ActivityRefType.FEED, true);
     manageRefList(new UpdateContext(identity, null), activityEntity, ActivityRefType.CONNECTION, true);
@@ -993,12 +1317,6 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     manageRefList(new UpdateContext(null, identity), activityEntity, ActivityRefType.CONNECTION);
   }
 
-  private void createSpaceMembersRefs(List<Identity> identities, ActivityEntity activityEntity) throws NodeNotFoundException {
-    manageRefList(new UpdateContext(identities, null), activityEntity, ActivityRefType.FEED);
-    manageRefList(new UpdateContext(identities, null), activityEntity, ActivityRefType.MY_SPACES);
-    //manageRefList(new UpdateContext(identities, null), activityEntity, ActivityRefType.SPACE_STREAM);
-  }
-  
   private void ownerSpaceMembersRefs(Identity identity, ActivityEntity activityEntity) throws NodeNotFoundException {
     manageRefList(new UpdateContext(identity, null), activityEntity, ActivityRefType.MY_ACTIVITIES);
   }
@@ -1037,7 +1355,6 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
   
   private void manageRefList(UpdateContext context, ActivityEntity activityEntity, ActivityRefType type, boolean mustCheck) throws NodeNotFoundException {
 
-    AtomicBoolean newYearMonthday = new AtomicBoolean(false);
     if (context.getAdded() != null) {
       for (Identity identity : context.getAdded()) {
         IdentityEntity identityEntity = identityStorage._findIdentityEntity(identity.getProviderId(), identity.getRemoteId());
@@ -1050,59 +1367,19 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
         
         
         ActivityRefListEntity listRef = type.refsOf(identityEntity);
-        //keep number
-        Integer oldNumberOfStream = listRef.getNumber();
         
-        newYearMonthday.set(false);
-        ActivityRef ref = null;
-        
-        //Take care the YearMonthDay path don't throw ADD_PROPERTY exception.
-        
-        final ReentrantLock lock = new ReentrantLock();
+        //serializes the writers of the same stream on this node, see addRef()
+        Lock lock = streamLocks.get(listRef.getPath());
+        lock.lock();
         try {
-          lock.lock();
-          newYearMonthday.set(false);
-          ref = listRef.getOrCreated(activityEntity, newYearMonthday);
-          if (newYearMonthday.get()) {
-            StorageUtils.persist();
-          }
+          boolean added = addRef(identityEntity, activityEntity, type);
+          streamChanged(identityEntity.getId(), activityEntity, type, added);
         } catch (ChromatticException ex) {
-          Throwable throwable = ex.getCause();
-          if (throwable instanceof ItemExistsException
-              || throwable instanceof InvalidItemStateException
-              || throwable instanceof PathNotFoundException) {
-            LOG.warn("Probably YearMonthDay path was created by another session");
-            LOG.debug(ex.getMessage(), ex);
-          } else {
-            LOG.warn("Probably YearMonthDay path was created by another session", ex);
-            LOG.debug(ex.getMessage(), ex);
-          }
-          return;
+          //gives up this stream only, the other ones must get their reference
+          LOG.warn(String.format("Failed to add the activity %s on the %s stream of %s", activityEntity.getId(), type, identity.getRemoteId()), ex);
         } finally {
           lock.unlock();
         }
-        
-        //LOG.info("manageRefList()::BEFORE");
-        //printDebug(listRef, activityEntity.getLastUpdated());
-        if (ref.getName() == null) {
-          ref.setName(activityEntity.getName());
-        }
-
-        if (ref.getLastUpdated() == null) {
-          ref.setLastUpdated(activityEntity.getLastUpdated());
-        }
-
-        ref.setActivityEntity(activityEntity);
-        
-        Integer newNumberOfStream = listRef.getNumber();
-        //If activity is hidden, we must decrease the number of activity references
-        HidableEntity hidableActivity = _getMixin(activityEntity, HidableEntity.class, true);
-        if (hidableActivity.getHidden() && (newNumberOfStream > oldNumberOfStream)) {
-          ref.getDay().desc();
-        }
-
-        //LOG.info("manageRefList()::AFTER");
-        //printDebug(listRef, activityEntity.getLastUpdated());
       }
     }
     
@@ -1113,6 +1390,7 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
           
         ActivityRefListEntity listRef = type.refsOf(identityEntity);
         listRef.remove(activityEntity);
+        streamChanged(identityEntity.getId());
       }
     }
   }
@@ -1122,7 +1400,6 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
                           ActivityRefType type,
                           boolean mustCheck) throws NodeNotFoundException {
 
-    AtomicBoolean newYearMonthday = new AtomicBoolean(false);
     //
     if (mustCheck) {
       // to avoid add back activity to given stream what has already existing
@@ -1132,14 +1409,126 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
 
     ActivityRefListEntity listRef = type.refsOf(identityEntity);
 
-    newYearMonthday.set(false);
-    ActivityRef ref = listRef.getOrCreated(activityEntity, newYearMonthday);
-
-    // Take care the YearMonthDay path don't throw ADD_PROPERTY exception.
-    if (newYearMonthday.get()) {
-      StorageUtils.persist();
+    Lock lock = streamLocks.get(listRef.getPath());
+    lock.lock();
+    try {
+      addRef(identityEntity, activityEntity, type);
+      streamChanged(identityEntity.getId());
+    } finally {
+      lock.unlock();
     }
-
+  }
+  
+  /**
+   * Writes the references of the activity on the streams of a fan-out batch and saves them at once. The locks of
+   * all the streams are held from the writes to the save, as in {@link #addRef}; they are taken in the stripe order,
+   * so two batches sharing streams can't deadlock. When the save fails, the whole batch is discarded, and written
+   * again when another session created a YearMonthDay path concurrently. If the batch still can't be saved, the
+   * references are added stream by stream: a failing stream doesn't keep the other ones from their reference.
+   */
+  private void addBatch(List<Identity> recipients, ActivityEntity activityEntity, boolean mustCheck, ActivityRefType[] types) throws NodeNotFoundException {
+    List<Identity> targets = new ArrayList<Identity>(recipients.size());
+    List<IdentityEntity> identityEntities = new ArrayList<IdentityEntity>(recipients.size());
+    List<String> paths = new ArrayList<String>(recipients.size() * types.length);
+    for (Identity recipient : recipients) {
+      IdentityEntity identityEntity = identityStorage._findIdentityEntity(recipient.getProviderId(), recipient.getRemoteId());
+      
+      //to avoid add back activity to given stream what has already existing
+      if (mustCheck && isExistingActivityRef(identityEntity, activityEntity)) continue;
+      
+      targets.add(recipient);
+      identityEntities.add(identityEntity);
+      for (ActivityRefType type : types) {
+        paths.add(type.refsOf(identityEntity).getPath());
+      }
+    }
+    if (targets.isEmpty()) {
+      return;
+    }
+    
+    List<Lock> locks = streamLocks.getAll(paths);
+    for (Lock lock : locks) {
+      lock.lock();
+    }
+    try {
+      for (int attempt = 1; attempt <= MAX_REF_ATTEMPTS; attempt++) {
+        try {
+          boolean[] added = new boolean[identityEntities.size() * types.length];
+          for (int i = 0; i < identityEntities.size(); i++) {
+            for (int j = 0; j < types.length; j++) {
+              added[i * types.length + j] = writeRef(identityEntities.get(i), activityEntity, types[j]);
+            }
+          }
+          persistStream();
+          
+          for (int i = 0; i < identityEntities.size(); i++) {
+            for (int j = 0; j < types.length; j++) {
+              streamChanged(identityEntities.get(i).getId(), activityEntity, types[j], added[i * types.length + j]);
+            }
+          }
+          return;
+        } catch (ChromatticException ex) {
+          discardStream();
+          if (!isConcurrentWrite(ex)) {
+            LOG.warn(String.format("Failed to save the activity %s on %s streams at once", activityEntity.getId(), targets.size()), ex);
+            break;
+          }
+          LOG.debug("YearMonthDay path was created by another session, retry " + attempt, ex);
+        }
+      }
+    } finally {
+      for (Lock lock : locks) {
+        lock.unlock();
+      }
+    }
+    
+    for (ActivityRefType type : types) {
+      manageRefList(new UpdateContext(targets, null), activityEntity, type);
+    }
+  }
+  
+  /**
+   * Writes and saves the reference of the activity on the given stream. The caller must hold the stream lock:
+   * the numbers of the list, the years, the months and the days are read and incremented under the lock, saving
+   * them under the lock too keeps two sessions from overwriting each other's increments.
+   * 
+   * The lock is local to this node: the writers of the same stream on two cluster nodes are not serialized.
+   * When the YearMonthDay path was created concurrently by another session, the save fails, the reference is
+   * discarded and written again on the refreshed stream. The pending changes of the session are saved first,
+   * so that the reference is the only change discarded.
+   * 
+   * @return true if the stream got a new visible reference
+   * @throws ChromatticException if the last attempt fails, the reference is then discarded
+   */
+  private boolean addRef(IdentityEntity identityEntity, ActivityEntity activityEntity, ActivityRefType type) {
+    persistStream();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        boolean added = writeRef(identityEntity, activityEntity, type);
+        persistStream();
+        return added;
+      } catch (ChromatticException ex) {
+        discardStream();
+        if (!isConcurrentWrite(ex) || attempt >= MAX_REF_ATTEMPTS) {
+          throw ex;
+        }
+        LOG.debug("YearMonthDay path was created by another session, retry " + attempt, ex);
+      }
+    }
+  }
+  
+  /**
+   * Writes the reference of the activity on the given stream, without saving it.
+   * 
+   * @return true if the stream got a new visible reference
+   */
+  private boolean writeRef(IdentityEntity identityEntity, ActivityEntity activityEntity, ActivityRefType type) {
+    ActivityRefListEntity listRef = type.refsOf(identityEntity);
+    //keep number
+    Integer oldNumberOfStream = listRef.getNumber();
+    
+    ActivityRef ref = listRef.getOrCreated(activityEntity, new AtomicBoolean(false));
+    
     if (ref.getName() == null) {
       ref.setName(activityEntity.getName());
     }
@@ -1149,6 +1538,141 @@ public class ActivityStreamStorageImpl extends AbstractStorage implements Activi
     }
 
     ref.setActivityEntity(activityEntity);
+    
+    Integer newNumberOfStream = type.refsOf(identityEntity).getNumber();
+    //If activity is hidden, we must decrease the number of activity references
+    HidableEntity hidableActivity = _getMixin(activityEntity, HidableEntity.class, true);
+    if (hidableActivity.getHidden() && (newNumberOfStream > oldNumberOfStream)) {
+      ref.getDay().desc();
+    }
+    return !hidableActivity.getHidden() && newNumberOfStream > oldNumberOfStream;
+  }
+  
+  /**
+   * Saves the session. Unlike {@link StorageUtils#persist()}, the failures are thrown: a conflict with
+   * another session must reach the retry of the caller.
+   */
+  private void persistStream() {
+    getSession().save();
+  }
+  
+  /**
+   * Discards the pending changes of the session after a failed save, they would make every following save of
+   * the session fail. The nodes created concurrently by the other sessions are seen by the next reads.
+   */
+  private void discardStream() {
+    try {
+      getSession().getJCRSession().refresh(false);
+    } catch (RepositoryException e) {
+      LOG.warn("Failed to discard the pending changes of the stream session", e);
+    }
+  }
+  
+  private static boolean isConcurrentWrite(ChromatticException ex) {
+    Throwable throwable = ex.getCause();
+    return throwable instanceof ItemExistsException || throwable instanceof InvalidItemStateException;
+  }
+  
+  /**
+   * The streams changed by a write. The streams which got a new activity on their head keep their cached
+   * lists, the new activity is put on them. The cached lists of the other changed streams are cleared.
+   * The readers waiting on the streams which got a new reference are notified.
+   */
+  private static class StreamChanges {
+    private String newActivityId;
+    private long newLastUpdated;
+    private final Map<String, Set<ActivityRefType>> heads = new HashMap<String, Set<ActivityRefType>>();
+    private final Set<String> owners = new HashSet<String>();
+    private final Map<String, Set<ActivityRefType>> newRefs = new HashMap<String, Set<ActivityRefType>>();
+  }
+  
+  private StreamChanges changes() {
+    StreamChanges changes = CHANGED_STREAMS.get();
+    if (changes == null) {
+      changes = new StreamChanges();
+      CHANGED_STREAMS.set(changes);
+    }
+    return changes;
+  }
+  
+  /**
+   * Marks the activity as the new one of the current write, its references are put on the head of the streams.
+   */
+  private void newActivity(ActivityEntity activityEntity) {
+    StreamChanges changes = changes();
+    changes.newActivityId = activityEntity.getId();
+    changes.newLastUpdated = activityEntity.getLastUpdated() != null ? activityEntity.getLastUpdated() : 0;
+  }
+  
+  /**
+   * Records the stream owner to clear its cached lists at the end of the write.
+   */
+  private void streamChanged(String ownerId) {
+    changes().owners.add(ownerId);
+  }
+  
+  private void streamChanged(String ownerId, ActivityEntity activityEntity, ActivityRefType type, boolean added) {
+    StreamChanges changes = changes();
+    if (added) {
+      Set<ActivityRefType> types = changes.newRefs.get(ownerId);
+      if (types == null) {
+        types = EnumSet.noneOf(ActivityRefType.class);
+        changes.newRefs.put(ownerId, types);
+      }
+      types.add(type);
+    }
+    if (added && activityEntity.getId().equals(changes.newActivityId)) {
+      Set<ActivityRefType> types = changes.heads.get(ownerId);
+      if (types == null) {
+        types = new HashSet<ActivityRefType>();
+        changes.heads.put(ownerId, types);
+      }
+      types.add(type);
+    } else {
+      changes.owners.add(ownerId);
+    }
+  }
+  
+  private void streamChanged(ActivityRefListEntity refList) {
+    //the stream is stored under the identity node: <identity>/soc:streams/<stream>
+    String path = refList.getPath();
+    int index = path.lastIndexOf('/');
+    index = index > 0 ? path.lastIndexOf('/', index - 1) : -1;
+    if (index <= 0) {
+      return;
+    }
+    
+    try {
+      streamChanged(_findByPath(IdentityEntity.class, path.substring(0, index)).getId());
+    } catch (NodeNotFoundException e) {
+      LOG.debug("No owner found for the stream " + path, e);
+    }
+  }
+  
+  /**
+   * Updates the cached lists of the streams changed by the current thread and notifies the readers waiting on
+   * the streams which got a new reference.
+   */
+  private void clearChangedStreams() {
+    StreamChanges changes = CHANGED_STREAMS.get();
+    if (changes == null) {
+      return;
+    }
+    CHANGED_STREAMS.remove();
+    
+    ActivityStorage storage = getStorage();
+    if (storage instanceof CachedActivityStorage) {
+      CachedActivityStorage cachedStorage = (CachedActivityStorage) storage;
+      cachedStorage.prependStreamCache(changes.newActivityId, changes.newLastUpdated, changes.heads);
+      cachedStorage.clearStreamCache(changes.owners, null);
+    }
+    
+    ActivityStreamNotifier notifier = getStreamNotifier();
+    if (notifier != null) {
+      for (Map.Entry<String, Set<ActivityRefType>> entry : changes.newRefs.entrySet()) {
+        notifier.streamsChanged(entry.getKey(), entry.getValue());
+      }
+    }
   }
   /**
   private void printDebug(ActivityRefListEntity list, long oldUpdated) {
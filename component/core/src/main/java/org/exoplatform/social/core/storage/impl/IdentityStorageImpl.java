@@ -25,6 +25,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
@@ -53,6 +56,7 @@ import org.exoplatform.social.core.chromattic.entity.RelationshipEntity;
 import org.exoplatform.social.core.chromattic.entity.RelationshipListEntity;
 import org.exoplatform.social.core.chromattic.entity.SpaceRef;
 import org.exoplatform.social.core.identity.IdentityResult;
+import org.exoplatform.social.core.identity.MentionIndex;
 import org.exoplatform.social.core.identity.SpaceMemberFilterListAccess.Type;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.model.Profile;
@@ -61,6 +65,7 @@ import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvide
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.model.AvatarAttachment;
 import org.exoplatform.social.core.profile.ProfileFilter;
+import org.exoplatform.social.core.relationship.RelationshipGraph;
 import org.exoplatform.social.core.relationship.model.Relationship;
 import org.exoplatform.social.core.search.Sorting;
 import org.exoplatform.social.core.service.LinkProvider;
@@ -90,6 +95,8 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
   private RelationshipStorage relationshipStorage;
   private SpaceStorage spaceStorage;
   private OrganizationService organizationService;
+  private MentionIndex mentionIndex;
+  private RelationshipGraph relationshipGraph;
   
 
   static enum PropNs {
@@ -386,6 +393,11 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     //
     getSession().save();
 
+    //
+    if (mentionIndex != null) {
+      mentionIndex.remove(identity.getId());
+    }
+
     //
     LOG.debug(String.format(
         "Identity %s:%s (%s) deleted",
@@ -648,6 +660,9 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     
     getSession().save();
 
+    //
+    updateMentionIndex(profileEntity);
+
     //
     LOG.debug(String.format(
         "Profile '%s' for %s:%s (%s) saved",
@@ -894,6 +909,25 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     }
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<Identity> findIdentitiesById(final List<String> nodeIds) throws IdentityStorageException {
+
+    List<Identity> identities = new ArrayList<Identity>(nodeIds.size());
+    for (String nodeId : nodeIds) {
+      Identity identity = findIdentityById(nodeId);
+      if (identity == null) {
+        LOG.debug("Identity " + nodeId + " doesn't exist");
+        continue;
+      }
+      identity.setProfile(loadProfile(identity.getProfile()));
+      identities.add(identity);
+    }
+    return identities;
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -1043,6 +1077,10 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
       offset = 0;
     }
 
+    if (isIndexedMention(providerId, profileFilter)) {
+      return getIndexedIdentitiesForMentions(profileFilter, offset, limit);
+    }
+
     String inputName = profileFilter.getName().replace(StorageUtils.ASTERISK_STR, StorageUtils.PERCENT_STR);
     StorageUtils.processUsernameSearchPattern(inputName);
     List<Identity> excludedIdentityList = profileFilter.getExcludedIdentityList();
@@ -1096,6 +1134,153 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
   }
   
 
+  /**
+   * A mention typed by a user is looked up in the index when the filter only has a name:
+   * the wildcards and the other criteria are still queried from JCR.
+   */
+  private boolean isIndexedMention(String providerId, ProfileFilter profileFilter) {
+    String name = profileFilter.getName();
+    return OrganizationIdentityProvider.NAME.equals(providerId)
+        && profileFilter.getViewerIdentity() != null
+        && name != null && name.trim().length() > 0
+        && name.indexOf(StorageUtils.ASTERISK_STR) < 0 && name.indexOf(StorageUtils.PERCENT_STR) < 0
+        && isEmpty(profileFilter.getPosition()) && isEmpty(profileFilter.getSkills())
+        && isEmpty(profileFilter.getCompany()) && isEmpty(profileFilter.getAll())
+        && profileFilter.getFirstCharacterOfName() == '\u0000';
+  }
+
+  private boolean isEmpty(String value) {
+    return value == null || value.length() == 0;
+  }
+
+  private List<Identity> getIndexedIdentitiesForMentions(ProfileFilter profileFilter, long offset, long limit) {
+
+    //the connections of the viewer come first, they are known when the graph is loaded
+    List<String> connectionIds = null;
+    RelationshipGraph graph = getRelationshipGraph();
+    if (graph != null && graph.isLoaded()) {
+      connectionIds = graph.getConnections(profileFilter.getViewerIdentity().getId());
+    }
+
+    //
+    List<String> excludedIds = new ArrayList<String>();
+    for (Identity excluded : profileFilter.getExcludedIdentityList()) {
+      excludedIds.add(excluded.getId());
+    }
+
+    //
+    List<String> ids = getMentionIndex().search(profileFilter.getName(), connectionIds, excludedIds,
+                                                (int) Math.min(Integer.MAX_VALUE, offset),
+                                                (int) Math.min(Integer.MAX_VALUE, limit));
+    //the hits are resolved with their profiles in one call, from the identity and profile caches when they are set
+    return getStorage().findIdentitiesById(ids);
+  }
+
+  /**
+   * Gets the index of the user names, it is loaded on the first call.
+   *
+   * @return the index
+   */
+  private MentionIndex getMentionIndex() {
+
+    if (this.mentionIndex == null) {
+      PortalContainer container = PortalContainer.getInstance();
+      this.mentionIndex = (MentionIndex) container.getComponentInstanceOfType(MentionIndex.class);
+    }
+
+    synchronized (mentionIndex) {
+      if (!mentionIndex.isLoaded()) {
+        //the profiles saved while the names are read are replayed by the index
+        mentionIndex.startLoading();
+        mentionIndex.load(getUserNames());
+      }
+    }
+
+    return this.mentionIndex;
+  }
+
+  private RelationshipGraph getRelationshipGraph() {
+    if (this.relationshipGraph == null) {
+      PortalContainer container = PortalContainer.getInstance();
+      this.relationshipGraph = (RelationshipGraph) container.getComponentInstanceOfType(RelationshipGraph.class);
+    }
+    return this.relationshipGraph;
+  }
+
+  /**
+   * Reads the names of the users which are not deleted, the entities are not loaded.
+   *
+   * @return the identity id, user name, full name, first name and last name of each user
+   */
+  private List<String[]> getUserNames() {
+    List<String[]> names = new ArrayList<String[]>();
+
+    try {
+      String path = getProviderRoot().getProviders().get(OrganizationIdentityProvider.NAME).getPath();
+      StringBuffer sb = new StringBuffer().append("SELECT * FROM ").append(JCRProperties.PROFILE_NODE_TYPE);
+      sb.append(" WHERE jcr:path LIKE '").append(path).append(StorageUtils.SLASH_STR).append(StorageUtils.PERCENT_STR).append("'");
+
+      NodeIterator it = nodes(sb.toString());
+
+      while (it.hasNext()) {
+        Node node = (Node) it.next();
+        if ("true".equals(firstValue(node, PropNs.VOID.nameOf(Profile.DELETED)))) {
+          continue;
+        }
+        Node identityNode = node.getParent();
+        names.add(new String[] {identityNode.getUUID(),
+                                identityNode.getProperty("soc:remoteId").getString(),
+                                firstValue(node, PropNs.VOID.nameOf(Profile.FULL_NAME)),
+                                firstValue(node, PropNs.VOID.nameOf(Profile.FIRST_NAME)),
+                                firstValue(node, PropNs.VOID.nameOf(Profile.LAST_NAME))});
+      }
+    } catch (Exception e) {
+      throw new IdentityStorageException(IdentityStorageException.Type.FAIL_TO_GET_IDENTITY_BY_PROFILE_FILTER,
+                                         e.getMessage(), e);
+    }
+
+    return names;
+  }
+
+  private String firstValue(Node node, String name) throws RepositoryException {
+    if (!node.hasProperty(name)) {
+      return null;
+    }
+    Property property = node.getProperty(name);
+    if (!property.getDefinition().isMultiple()) {
+      return property.getString();
+    }
+    return property.getValues().length > 0 ? property.getValues()[0].getString() : null;
+  }
+
+  /**
+   * Updates the names of a user in the index once its profile is saved, the deleted users are removed.
+   * Nothing is done until the index is loaded, the names are read at this time.
+   */
+  private void updateMentionIndex(ProfileEntity profileEntity) {
+    if (mentionIndex == null) {
+      return;
+    }
+    IdentityEntity identityEntity = profileEntity.getIdentity();
+    if (!OrganizationIdentityProvider.NAME.equals(identityEntity.getProviderId())) {
+      return;
+    }
+    if ("true".equals(firstValue(profileEntity, Profile.DELETED))) {
+      mentionIndex.remove(identityEntity.getId());
+    }
+    else {
+      mentionIndex.put(identityEntity.getId(), identityEntity.getRemoteId(),
+                       firstValue(profileEntity, Profile.FULL_NAME),
+                       firstValue(profileEntity, Profile.FIRST_NAME),
+                       firstValue(profileEntity, Profile.LAST_NAME));
+    }
+  }
+
+  private String firstValue(ProfileEntity profileEntity, String key) {
+    List<String> values = profileEntity.getProperty(PropNs.VOID.nameOf(key));
+    return values != null && values.size() > 0 ? values.get(0) : null;
+  }
+
   /**
    * {@inheritDoc}
    */
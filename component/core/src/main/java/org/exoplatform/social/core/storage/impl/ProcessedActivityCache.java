@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.exoplatform.social.core.ActivityProcessor;
+import org.exoplatform.social.core.BaseActivityProcessorPlugin;
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+
+/**
+ * The content of the activities processed by the processors of the
+ * {@link BaseActivityProcessorPlugin.Phase#WRITE} phase, kept by activity id with the content it was processed from.
+ * An activity loaded again with the same content, after a comment or a like for instance, takes the processed content
+ * without being processed again. The least recently used activities are removed beyond the maximum size.
+ *
+ * @since 4.1.0
+ */
+final class ProcessedActivityCache {
+
+  private final Map<String, Entry> entries;
+
+  /**
+   * @param maxSize the maximum number of activities kept
+   */
+  ProcessedActivityCache(final int maxSize) {
+    this.entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxSize;
+      }
+    });
+  }
+
+  /**
+   * Replaces the content of an activity by the one processed from the same content by the same processors.
+   *
+   * @param activity the loaded activity
+   * @param processors the processors of the write phase
+   * @return false when the content of the activity was not processed by these processors
+   */
+  boolean apply(ExoSocialActivity activity, List<ActivityProcessor> processors) {
+    Entry entry = entries.get(activity.getId());
+    if (entry == null || !entry.processors.equals(processors) || !entry.source.equals(new Content(activity))) {
+      return false;
+    }
+    entry.processed.copyTo(activity);
+    return true;
+  }
+
+  /**
+   * Keeps the content of a processed activity.
+   *
+   * @param activity the processed activity
+   * @param source the content the activity was processed from
+   * @param processors the processors of the write phase
+   */
+  void put(ExoSocialActivity activity, Content source, List<ActivityProcessor> processors) {
+    entries.put(activity.getId(), new Entry(source, new Content(activity), new ArrayList<ActivityProcessor>(processors)));
+  }
+
+  void remove(String activityId) {
+    entries.remove(activityId);
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * The content of an activity changed by the processors of the write phase.
+   */
+  static final class Content {
+
+    private final String title;
+
+    private final String body;
+
+    private final Map<String, String> templateParams;
+
+    Content(ExoSocialActivity activity) {
+      this.title = activity.getTitle();
+      this.body = activity.getBody();
+      this.templateParams = activity.getTemplateParams() == null ? null
+          : new HashMap<String, String>(activity.getTemplateParams());
+    }
+
+    private void copyTo(ExoSocialActivity activity) {
+      activity.setTitle(title);
+      activity.setBody(body);
+      Map<String, String> params = activity.getTemplateParams();
+      if (templateParams == null || params == null || !params.keySet().equals(templateParams.keySet())) {
+        activity.setTemplateParams(templateParams == null ? null : new LinkedHashMap<String, String>(templateParams));
+      } else {
+        // the order of the template params is kept by the loaded activity
+        params.putAll(templateParams);
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Content)) {
+        return false;
+      }
+      Content that = (Content) o;
+      return (title == null ? that.title == null : title.equals(that.title))
+          && (body == null ? that.body == null : body.equals(that.body))
+          && (templateParams == null ? that.templateParams == null : templateParams.equals(that.templateParams));
+    }
+
+    @Override
+    public int hashCode() {
+      int result = title != null ? title.hashCode() : 0;
+      result = 31 * result + (body != null ? body.hashCode() : 0);
+      result = 31 * result + (templateParams != null ? templateParams.hashCode() : 0);
+      return result;
+    }
+  }
+
+  private static final class Entry {
+
+    private final Content source;
+
+    private final Content processed;
+
+    private final List<ActivityProcessor> processors;
+
+    private Entry(Content source, Content processed, List<ActivityProcessor> processors) {
+      this.source = source;
+      this.processed = processed;
+      this.processors = processors;
+    }
+  }
+
+}
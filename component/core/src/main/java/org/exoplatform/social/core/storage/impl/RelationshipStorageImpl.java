@@ -20,19 +20,17 @@ package org.exoplatform.social.core.storage.impl;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
+import java.util.Set;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.chromattic.api.query.Ordering;
 import org.chromattic.api.query.QueryBuilder;
 import org.chromattic.api.query.QueryResult;
@@ -48,6 +46,7 @@ import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.profile.ProfileFilter;
+import org.exoplatform.social.core.relationship.RelationshipGraph;
 import org.exoplatform.social.core.relationship.model.Relationship;
 import org.exoplatform.social.core.storage.RelationshipStorageException;
 import org.exoplatform.social.core.storage.api.ActivityStorage;
@@ -60,7 +59,6 @@ import org.exoplatform.social.core.storage.exception.NodeNotFoundException;
 import org.exoplatform.social.core.storage.query.JCRProperties;
 import org.exoplatform.social.core.storage.query.WhereExpression;
 import org.exoplatform.social.core.storage.streams.StreamInvocationHelper;
-import org.exoplatform.social.core.storage.thread.SocialExecutorService;
 
 /**
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
@@ -74,8 +72,7 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
   private final IdentityStorage identityStorage;
   private RelationshipStorage relationshipStorage;
   private CachedActivityStorage cachedActivityStorage;
-  private Object lock = new Object();
-  private SocialExecutorService<String[]> executorService = new SocialExecutorService<String[]>(10);
+  private RelationshipGraph relationshipGraph;
   private CachedActivityStreamStorage streamStorage;
 
   public RelationshipStorageImpl(IdentityStorage identityStorage) {
@@ -591,6 +588,9 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
           new String[] { Relationship.class.getSimpleName() });
     }
 
+    //the requests aren't broadcast, the graph is updated here for the pending relationships too
+    getRelationshipGraphComponent().connect(relationship.getSender().getId(), relationship.getReceiver().getId());
+
     return relationship;
   }
 
@@ -615,7 +615,10 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
       //getCachedActivityStreamStorage().deleteConnect(relationship.getSender(), relationship.getReceiver());
       StreamInvocationHelper.deleteConnect(relationship.getSender(), relationship.getReceiver());
       
-      getCachedActivityStorage().clearCache();
+      getRelationshipGraphComponent().disconnect(relationship.getSender().getId(), relationship.getReceiver().getId());
+      
+      getCachedActivityStorage().clearStreamCache(
+          Arrays.asList(relationship.getSender().getId(), relationship.getReceiver().getId()), null);
       
       
 
@@ -1042,11 +1045,8 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
 
   }
   
-  private String[] getRelationships(String id) {
-    ThreadLocal<String[]> identityIdsLocal = new ThreadLocal<String[]>();
-
-    String[] relationshipIds = new String[0];
-    identityIdsLocal.set(relationshipIds);
+  private List<String> getRelationships(String id) {
+    List<String> relationshipIds = new ArrayList<String>();
 
     try {
 
@@ -1057,157 +1057,145 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
         .append(" LIKE '")
         .append(identityEntity.getPath() + StorageUtils.SLASH_STR + StorageUtils.PERCENT_STR)
         .append("'");
-      //
-      sb.append(" ORDER BY ").append(RelationshipEntity.createdTime.getName()).append(" DESC ");
-
-      synchronized (lock) {
 
-        NodeIterator it = nodes(sb.toString());
+      NodeIterator it = nodes(sb.toString());
 
-        while (it.hasNext()) {
-          Node node = (Node) it.next();
+      while (it.hasNext()) {
+        Node node = (Node) it.next();
 
-          RelationshipEntity currentRelationshipEntity = _findById(RelationshipEntity.class,
-                                                                   node.getUUID());
+        RelationshipEntity currentRelationshipEntity = _findById(RelationshipEntity.class,
+                                                                 node.getUUID());
 
-          IdentityEntity gotIdentityEntity;
-          if (currentRelationshipEntity.isReceiver()) {
-            gotIdentityEntity = currentRelationshipEntity.getFrom();
-          } else {
-            gotIdentityEntity = currentRelationshipEntity.getTo();
-          }
-          identityIdsLocal.set((String[]) ArrayUtils.add(identityIdsLocal.get(),
-                                                         gotIdentityEntity.getId()));
+        IdentityEntity gotIdentityEntity;
+        if (currentRelationshipEntity.isReceiver()) {
+          gotIdentityEntity = currentRelationshipEntity.getFrom();
+        } else {
+          gotIdentityEntity = currentRelationshipEntity.getTo();
         }
-
+        relationshipIds.add(gotIdentityEntity.getId());
       }
     } catch (Exception e) {
       throw new RelationshipStorageException(RelationshipStorageException.Type.FAILED_TO_GET_RELATIONSHIP,
                                              e.getMessage());
     }
 
-    return identityIdsLocal.get();
+    return relationshipIds;
   }
   
-  private String[] getSuggestion(List<String> relationshipIds) {
-    String[] suggestions = new String[0];
+  private RelationshipGraph getRelationshipGraphComponent() {
     
-    try {
-      int startIndex = 0;
-      int toIndex = 100;
-      //
-      List<String> excludeIdentities = StorageUtils.subList(relationshipIds, startIndex, toIndex); 
-      while (excludeIdentities.size() > 0) {
-        
-        StringBuffer sb = new StringBuffer().append("SELECT * FROM soc:identitydefinition WHERE ");
-        sb.append(JCRProperties.path.getName()).append(" LIKE '").append(getProviderRoot().getProviders().get(OrganizationIdentityProvider.NAME).getPath() + StorageUtils.SLASH_STR + StorageUtils.PERCENT_STR).append("'");
-        
-        for(String id : excludeIdentities) {
-          sb.append(" AND NOT ").append(JCRProperties.id.getName()).append(" = '").append(id).append("'");
-        }
-        
-        NodeIterator nodeIter = nodes(sb.toString()); 
-        while(nodeIter.hasNext()) {
-          Node node = (Node)nodeIter.next();
-          String id = node.getUUID();
-          //String remoteId = node.getProperty(IdentityEntity.remoteId.getName()).getString();
-          if (relationshipIds.contains(id) == false
-              && ArrayUtils.contains(suggestions, id) == false) {
-            suggestions = (String[]) ArrayUtils.add(suggestions, id);
-          }
-        }
-        
-        //
-        startIndex = toIndex;
-        toIndex += 100;
-        
-        excludeIdentities = StorageUtils.subList(relationshipIds, startIndex, toIndex); 
-      }//end filter identities
-      
-    } catch (Exception e) {
-      throw new RelationshipStorageException(RelationshipStorageException.Type.FAILED_TO_GET_RELATIONSHIP,
-                                             e.getMessage());
+    if (this.relationshipGraph == null) {
+      PortalContainer container = PortalContainer.getInstance();
+      this.relationshipGraph = (RelationshipGraph) container.getComponentInstanceOfType(RelationshipGraph.class);
     }
     
-    return suggestions;
+    return this.relationshipGraph;
   }
+  
   /**
-   * Gets Suggestion list with relationship for each identity.
-   * @param suggestions
-   * @return
+   * Gets the graph of the relationships, it is loaded on the first call and reloaded once its reload period is over.
+   * 
+   * @return the graph
    */
-  private Map<String, String[]> getSuggestionRelationships(final String[] suggestions) {
-    for (final String id : suggestions) {
-      //
-      Callable<String[]> task = new  Callable<String[]>() {
-        @Override
-        public String[] call() throws Exception {
-          return getRelationships(id);
-        }
-      };
-      executorService.submit(task, id);
+  private RelationshipGraph getRelationshipGraph() {
+    
+    RelationshipGraph graph = getRelationshipGraphComponent();
+    
+    //the other callers keep reading the loaded graph while it is reloaded
+    if (graph.startReloading()) {
+      try {
+        graph.load(getAllRelationships());
+      } catch (RuntimeException e) {
+        graph.cancelLoading();
+        LOG.warn("Failed to reload the relationship graph: " + e.getMessage());
+      }
+      return graph;
     }
     
-    //Wait multiple threads finish work and push relationships to map
-    Map<String, String[]> suggestRelationships = new HashMap<String, String[]>();
-    copyFutureToMap(suggestRelationships, executorService.getFutureCollections());
+    synchronized (graph) {
+      if (!graph.isLoaded()) {
+        //the changes made while the relationships are read are replayed by the graph
+        graph.startLoading();
+        graph.load(getAllRelationships());
+      }
+    }
     
-    return suggestRelationships;
+    return graph;
   }
+  
   /**
-   * Gets result from future task
-   * @param map
-   * @param futures
+   * Reads the identity ids of all the relationships, pending ones included, the entities are not loaded.
+   * 
+   * @return the pairs of connected identity ids
    */
-  private void copyFutureToMap(Map<String, String[]> map, Map<String, Future<String[]>> futures) {
+  private List<String[]> getAllRelationships() {
+    List<String[]> connections = new ArrayList<String[]>();
+    
     try {
-      for (Entry<String, Future<String[]>> future : futures.entrySet()) {
-        map.put(future.getKey(), future.getValue().get());
+      StringBuffer sb = new StringBuffer().append("SELECT * FROM soc:relationshipdefinition");
+
+      NodeIterator it = nodes(sb.toString());
+
+      while (it.hasNext()) {
+        Node node = (Node) it.next();
+        connections.add(new String[] {node.getProperty("soc:from").getString(), node.getProperty("soc:to").getString()});
       }
     } catch (Exception e) {
-      LOG.warn("Failed to get result from Future." + e);
-    }
-  }
-  /**
-   * Calculate and statistic suggestion.
-   * 
-   * @param relationshipIds
-   * @param suggestRelationships
-   * @return
-   */
-  private Map<String, Integer> statisticSuggesstion(List<String> relationshipIds, Map<String, String[]> suggestRelationships) {
-    //Calculate the common users of current Identity with each suggestion.
-    Map<String, Integer> suggestionIdMap = new HashMap<String, Integer>();
-    for (Entry<String, String[]> friendOfIdentity : suggestRelationships.entrySet()) {
-      //
-      String identityId = friendOfIdentity.getKey();
-      suggestionIdMap.put(identityId, StorageUtils.getCommonItemNumber(relationshipIds, Arrays.asList(friendOfIdentity.getValue())));
+      throw new RelationshipStorageException(RelationshipStorageException.Type.FAILED_TO_GET_RELATIONSHIP,
+                                             e.getMessage());
     }
     
-    return suggestionIdMap;
+    return connections;
   }
   
   /**
    * {@inheritDoc}
    */
   public Map<Identity, Integer> getSuggestions(Identity identity, int offset, int limit) throws RelationshipStorageException {
-    //get identities who have relationship
-    List<String> relationshipIds = new ArrayList<String>(); 
-    relationshipIds.add(identity.getId());
-    relationshipIds.addAll(Arrays.asList(getRelationships(identity.getId())));
+    //the friends of friends are scored by the graph, the best ones first, the pending relationships are not suggested either
+    RelationshipGraph graph = getRelationshipGraph();
+    int top = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit + 1);
+    Map<String, Integer> suggestionIdMap = graph.getSuggestions(identity.getId(), null, top);
     
-    //store all identities who is not relationship with provided identity
-    String[] suggestions = getSuggestion(relationshipIds);
-
-    //Find relationships of the identities are filtered
-    //Wait multiple threads finish work and push relationships to map
-    Map<String, String[]> suggestRelationships = getSuggestionRelationships(suggestions);
-
-    //statistic suggestion
-    Map<String, Integer> suggestionIdMap = statisticSuggesstion(relationshipIds, suggestRelationships);
+    //the identities without common connections come next
+    if (suggestionIdMap.size() < top) {
+      addUnrankedSuggestions(identity.getId(), graph.getConnections(identity.getId()), suggestionIdMap, top);
+    }
     //
     if (offset > suggestionIdMap.size()) return Collections.emptyMap();
-    return buildSuggestions(StorageUtils.sortMapByValue(suggestionIdMap, false), offset, limit);
+    return buildSuggestions(suggestionIdMap, offset, limit);
+  }
+  
+  /**
+   * Adds the user identities which have no common connection with the given identity to the suggestions,
+   * until the given number of suggestions is reached.
+   * 
+   * @param identityId the identity
+   * @param relationshipIds the identities related to the identity
+   * @param suggestionIdMap the suggestions
+   * @param top the number of suggestions
+   */
+  private void addUnrankedSuggestions(String identityId, List<String> relationshipIds,
+                                      Map<String, Integer> suggestionIdMap, int top) {
+    Set<String> excludedIds = new HashSet<String>(relationshipIds);
+    excludedIds.add(identityId);
+    
+    try {
+      StringBuffer sb = new StringBuffer().append("SELECT * FROM soc:identitydefinition WHERE ");
+      sb.append(JCRProperties.path.getName()).append(" LIKE '").append(getProviderRoot().getProviders().get(OrganizationIdentityProvider.NAME).getPath() + StorageUtils.SLASH_STR + StorageUtils.PERCENT_STR).append("'");
+      
+      NodeIterator nodeIter = nodes(sb.toString());
+      while (nodeIter.hasNext() && suggestionIdMap.size() < top) {
+        Node node = (Node) nodeIter.next();
+        String id = node.getUUID();
+        if (!excludedIds.contains(id) && !suggestionIdMap.containsKey(id)) {
+          suggestionIdMap.put(id, 0);
+        }
+      }
+    } catch (Exception e) {
+      throw new RelationshipStorageException(RelationshipStorageException.Type.FAILED_TO_GET_RELATIONSHIP,
+                                             e.getMessage());
+    }
   }
   
   private Map<Identity, Integer> buildSuggestions(Map<String, Integer> mapIds,
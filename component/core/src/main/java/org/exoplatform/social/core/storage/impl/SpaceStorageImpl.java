@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -81,6 +82,17 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
   /** Logger */
   private static final Log LOG = ExoLogger.getLogger(SpaceStorageImpl.class);
 
+  /**
+   * The order of the spaces sorted by title: by the name of their entity, which is written from their pretty name.
+   */
+  public static final Comparator<Space> NAME_ORDER = new Comparator<Space>() {
+    public int compare(Space o1, Space o2) {
+      String name1 = o1.getPrettyName() != null ? o1.getPrettyName() : "";
+      String name2 = o2.getPrettyName() != null ? o2.getPrettyName() : "";
+      return name1.compareTo(name2);
+    }
+  };
+
   /**
    * The identity storage
    */
@@ -209,10 +221,19 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
     entity.setPriority(space.getPriority());
     entity.setGroupId(space.getGroupId());
     entity.setURL(space.getUrl());
-    entity.setMembersId(space.getMembers());
-    entity.setManagerMembersId(space.getManagers());
-    entity.setPendingMembersId(space.getPendingUsers());
-    entity.setInvitedMembersId(space.getInvitedUsers());
+    // a multi-valued property is written as a whole, the unchanged lists are not written again
+    if (!sameUsers(entity.getMembersId(), space.getMembers())) {
+      entity.setMembersId(space.getMembers());
+    }
+    if (!sameUsers(entity.getManagerMembersId(), space.getManagers())) {
+      entity.setManagerMembersId(space.getManagers());
+    }
+    if (!sameUsers(entity.getPendingMembersId(), space.getPendingUsers())) {
+      entity.setPendingMembersId(space.getPendingUsers());
+    }
+    if (!sameUsers(entity.getInvitedMembersId(), space.getInvitedUsers())) {
+      entity.setInvitedMembersId(space.getInvitedUsers());
+    }
     entity.setAvatarLastUpdated(space.getAvatarLastUpdated());
     entity.setCreatedTime(space.getCreatedTime() != 0 ? space.getCreatedTime() : System.currentTimeMillis());
   }
@@ -335,11 +356,24 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
       return l1;
     }
 
-    List<String> l = new ArrayList(Arrays.asList(l1));
-    l.removeAll(Arrays.asList(l2));
+    Set<String> s2 = new HashSet<String>(Arrays.asList(l2));
+    List<String> l = new ArrayList<String>(l1.length);
+    for (String user : l1) {
+      if (!s2.contains(user)) {
+        l.add(user);
+      }
+    }
     return l.toArray(new String[]{});
   }
 
+  private boolean sameUsers(String[] l1, String[] l2) {
+    if (l1 == null || l1.length == 0) {
+      return l2 == null || l2.length == 0;
+    }
+    //the order is kept by the property, a reordered list is written
+    return Arrays.equals(l1, l2);
+  }
+
   private void createRefs(SpaceEntity spaceEntity, Space space) throws NodeNotFoundException {
 
     String[] removedMembers = sub(spaceEntity.getMembersId(), space.getMembers());
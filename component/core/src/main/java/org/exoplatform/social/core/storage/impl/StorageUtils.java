@@ -352,6 +352,21 @@ public class StorageUtils {
     return true;
   }
   
+  /**
+   * Refreshes the JCR session to see the changes persisted by the other sessions,
+   * the pending changes of the current session are kept.
+   * @return
+   */
+  public static boolean refresh() {
+    try {
+      ChromatticSession chromatticSession = AbstractStorage.lifecycleLookup().getSession();
+      chromatticSession.getJCRSession().refresh(true);
+    } catch (Exception e) {
+      return false;
+    }
+    return true;
+  }
+
   /**
    * Make the decision to persist JCR Storage or not
    * @return
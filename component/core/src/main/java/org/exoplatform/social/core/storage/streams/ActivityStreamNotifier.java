@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+
+/**
+ * Wakes up the readers waiting for new activities on their streams.
+ *
+ * A reader registers a {@link Waiter} on the streams of an identity and waits on it, or gives it a {@link Listener}
+ * when it waits asynchronously. The stream storage tells the notifier which streams got new references at the end of
+ * each write, the fan-out included. The number of waiters is bounded: no waiter is given once the maximum is reached.
+ * A reader given a listener holds no thread while it waits, only its connection, so the maximum can be of thousands
+ * of waiters; the readers blocking a request thread on {@code await} must stay far fewer than the container threads.
+ * <p>
+ * The notifications are local to the node: in a cluster, a reader is only notified of the writes done on the node
+ * it waits on, it sees the other ones when it reads the streams again, at its next request.
+ *
+ * @since 4.1.0
+ */
+@Managed
+@NameTemplate({@Property(key = "service", value = "social"), @Property(key = "view", value = "streamnotifier")})
+@ManagedDescription("Activity stream notifier")
+public class ActivityStreamNotifier {
+
+  private static final String MAX_WAITERS = "max-waiters";
+
+  private static final int DEFAULT_MAX_WAITERS = 5000;
+
+  private final int maxWaiters;
+
+  /** The waiters by identity id, the sets are changed while holding the map. */
+  private final Map<String, Set<Waiter>> waiters = new HashMap<String, Set<Waiter>>();
+
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  private final AtomicLong notified = new AtomicLong();
+
+  private final AtomicLong rejected = new AtomicLong();
+
+  public ActivityStreamNotifier(InitParams params) {
+    this(intValue(params, MAX_WAITERS, DEFAULT_MAX_WAITERS));
+  }
+
+  public ActivityStreamNotifier() {
+    this(DEFAULT_MAX_WAITERS);
+  }
+
+  public ActivityStreamNotifier(int maxWaiters) {
+    if (maxWaiters < 1) {
+      throw new IllegalArgumentException("MaxWaiters must be >= 1, was " + maxWaiters);
+    }
+    this.maxWaiters = maxWaiters;
+  }
+
+  /**
+   * Registers a waiter on the given streams of an identity. It is notified of the references added from now on,
+   * the caller must then check the current state of the streams before waiting, and release the waiter at the end.
+   *
+   * @param ownerId the identity id of the streams owner
+   * @param types the streams
+   * @return the waiter, null when the maximum number of waiters is reached
+   */
+  public Waiter register(String ownerId, Set<ActivityRefType> types) {
+    if (waiting.incrementAndGet() > maxWaiters) {
+      waiting.decrementAndGet();
+      rejected.incrementAndGet();
+      return null;
+    }
+    Waiter waiter = new Waiter(ownerId, types);
+    synchronized (waiters) {
+      Set<Waiter> ownerWaiters = waiters.get(ownerId);
+      if (ownerWaiters == null) {
+        ownerWaiters = new CopyOnWriteArraySet<Waiter>();
+        waiters.put(ownerId, ownerWaiters);
+      }
+      ownerWaiters.add(waiter);
+    }
+    return waiter;
+  }
+
+  /**
+   * Releases a waiter given by {@link #register(String, Set)}.
+   *
+   * @param waiter the waiter
+   */
+  public void release(Waiter waiter) {
+    synchronized (waiters) {
+      Set<Waiter> ownerWaiters = waiters.get(waiter.ownerId);
+      if (ownerWaiters == null || !ownerWaiters.remove(waiter)) {
+        return;
+      }
+      if (ownerWaiters.isEmpty()) {
+        waiters.remove(waiter.ownerId);
+      }
+    }
+    waiting.decrementAndGet();
+  }
+
+  /**
+   * Notifies the waiters of an identity that some of its streams got new references.
+   *
+   * @param ownerId the identity id of the streams owner
+   * @param types the streams which got new references
+   */
+  public void streamsChanged(String ownerId, Set<ActivityRefType> types) {
+    Set<Waiter> ownerWaiters;
+    synchronized (waiters) {
+      ownerWaiters = waiters.get(ownerId);
+    }
+    if (ownerWaiters == null) {
+      return;
+    }
+    for (Waiter waiter : ownerWaiters) {
+      if (waiter.changed(types)) {
+        notified.incrementAndGet();
+      }
+    }
+  }
+
+  @Managed
+  @ManagedName("MaxWaiters")
+  @ManagedDescription("The maximum number of readers waiting for new activities")
+  public int getMaxWaiters() {
+    return maxWaiters;
+  }
+
+  @Managed
+  @ManagedName("WaiterCount")
+  @ManagedDescription("The number of readers waiting for new activities")
+  public int getWaiterCount() {
+    return waiting.get();
+  }
+
+  @Managed
+  @ManagedName("NotifiedCount")
+  @ManagedDescription("The number of readers woken up by new activities")
+  public long getNotifiedCount() {
+    return notified.get();
+  }
+
+  @Managed
+  @ManagedName("RejectedCount")
+  @ManagedDescription("The number of readers refused because the maximum number of waiters was reached")
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  private static int intValue(InitParams params, String name, int defaultValue) {
+    try {
+      ValueParam param = params.getValueParam(name);
+      return Integer.valueOf(param.getValue());
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Gets notified when the streams of a waiter get new references, instead of waiting for them.
+   */
+  public interface Listener {
+
+    /**
+     * Called once, on the thread of the write which added the references, it must not block.
+     *
+     * @param changed the streams which got new references
+     */
+    void streamsChanged(Set<ActivityRefType> changed);
+  }
+
+  /**
+   * A reader waiting for new references on some streams of an identity.
+   */
+  public static class Waiter {
+
+    private final String ownerId;
+
+    private final Set<ActivityRefType> types;
+
+    private final Set<ActivityRefType> changed = EnumSet.noneOf(ActivityRefType.class);
+
+    private Listener listener;
+
+    Waiter(String ownerId, Set<ActivityRefType> types) {
+      this.ownerId = ownerId;
+      this.types = EnumSet.copyOf(types);
+    }
+
+    /**
+     * Waits until one of the streams gets a new reference, or the timeout elapses.
+     *
+     * @param timeout the maximum time to wait in ms
+     * @return the streams which got new references, empty when the timeout elapsed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    synchronized Set<ActivityRefType> await(long timeout) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + timeout;
+      while (changed.isEmpty()) {
+        long left = deadline - System.currentTimeMillis();
+        if (left <= 0) {
+          break;
+        }
+        wait(left);
+      }
+      return EnumSet.copyOf(changed);
+    }
+
+    /**
+     * Notifies a listener of the new references instead of waiting for them, at once when some streams already got
+     * new references.
+     *
+     * @param listener the listener, notified once
+     */
+    public void listen(Listener listener) {
+      Set<ActivityRefType> changedTypes;
+      synchronized (this) {
+        this.listener = listener;
+        if (changed.isEmpty()) {
+          return;
+        }
+        changedTypes = EnumSet.copyOf(changed);
+      }
+      listener.streamsChanged(changedTypes);
+    }
+
+    boolean changed(Set<ActivityRefType> changedTypes) {
+      Listener changedListener;
+      synchronized (this) {
+        boolean wasEmpty = changed.isEmpty();
+        for (ActivityRefType type : changedTypes) {
+          if (types.contains(type)) {
+            changed.add(type);
+          }
+        }
+        if (!wasEmpty || changed.isEmpty()) {
+          return false;
+        }
+        notifyAll();
+        changedListener = listener;
+        changedTypes = EnumSet.copyOf(changed);
+      }
+      // the listener is called out of the lock, it is called once as the first change only gets here
+      if (changedListener != null) {
+        changedListener.streamsChanged(changedTypes);
+      }
+      return true;
+    }
+  }
+
+}
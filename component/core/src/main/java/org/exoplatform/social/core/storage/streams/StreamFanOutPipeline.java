@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.common.service.thread.SocialThreadFactory;
+import org.picocontainer.Startable;
+
+/**
+ * Runs the activity stream fan-out (one ActivityRef per recipient) out of the poster's request.
+ *
+ * The work is split in lanes, each lane is a single thread with a bounded queue. A recipient
+ * stream is always bound to the same lane so that the references of a given stream are written
+ * in the order they were submitted. When a lane queue stays full for the offer timeout, the submitter
+ * runs the task on a new thread and waits for its end: the poster is slowed down by its own fan-out
+ * but never blocked for good, and the task gets its own session, apart from the poster's unsaved
+ * changes. Such a task may overtake the ones queued on its lane, which is harmless as the references
+ * are ordered by the activity time, not by their writing order.
+ *
+ * @since 4.1.0
+ */
+@Managed
+@NameTemplate({@Property(key = "service", value = "social"), @Property(key = "view", value = "streamfanout")})
+@ManagedDescription("Activity stream fan-out pipeline")
+public class StreamFanOutPipeline implements Startable {
+
+  /** Logger */
+  private static final Log LOG = ExoLogger.getLogger(StreamFanOutPipeline.class);
+
+  private static final String LANES = "lanes";
+  private static final String QUEUE_SIZE = "queue-size";
+  private static final String BATCH_SIZE = "batch-size";
+  private static final String OFFER_TIMEOUT = "offer-timeout";
+
+  private static final int DEFAULT_LANES = 4;
+  private static final int DEFAULT_QUEUE_SIZE = 1000;
+  private static final int DEFAULT_BATCH_SIZE = 50;
+  private static final long DEFAULT_OFFER_TIMEOUT = 500L;
+
+  private final int batchSize;
+  private final long offerTimeout;
+  private final ThreadPoolExecutor[] lanes;
+  private final SocialThreadFactory submitterThreads;
+
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong throttled = new AtomicLong();
+  private final AtomicLong totalLatency = new AtomicLong();
+  private final AtomicLong maxLatency = new AtomicLong();
+
+  public StreamFanOutPipeline(InitParams params) {
+    this(intValue(params, LANES, DEFAULT_LANES),
+         intValue(params, QUEUE_SIZE, DEFAULT_QUEUE_SIZE),
+         intValue(params, BATCH_SIZE, DEFAULT_BATCH_SIZE),
+         longValue(params, OFFER_TIMEOUT, DEFAULT_OFFER_TIMEOUT));
+  }
+
+  public StreamFanOutPipeline() {
+    this(DEFAULT_LANES, DEFAULT_QUEUE_SIZE, DEFAULT_BATCH_SIZE, DEFAULT_OFFER_TIMEOUT);
+  }
+
+  public StreamFanOutPipeline(int lanes, int queueSize, int batchSize, long offerTimeout) {
+    if (lanes < 1) {
+      throw new IllegalArgumentException("Lanes must be >= 1, was " + lanes);
+    }
+    if (queueSize < 1) {
+      throw new IllegalArgumentException("QueueSize must be >= 1, was " + queueSize);
+    }
+
+    this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    this.offerTimeout = offerTimeout;
+    this.lanes = new ThreadPoolExecutor[lanes];
+    for (int i = 0; i < lanes; i++) {
+      ThreadPoolExecutor lane = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                                                       new LinkedBlockingQueue<Runnable>(queueSize));
+      lane.setThreadFactory(new SocialThreadFactory(null, "SocialStreamFanOut-" + i, true, Thread.NORM_PRIORITY));
+      lane.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+      this.lanes[i] = lane;
+    }
+    this.submitterThreads = new SocialThreadFactory(null, "SocialStreamFanOutSubmitter", true, Thread.NORM_PRIORITY);
+  }
+
+  /**
+   * Gets the lane which the given stream key is bound to.
+   *
+   * @param streamKey the key of the stream, usually the owner identity id
+   * @return the lane index
+   */
+  public int laneOf(String streamKey) {
+    int hash = streamKey == null ? 0 : streamKey.hashCode();
+    //spread the hash to avoid clustering on the low bits
+    hash ^= (hash >>> 16);
+    return (hash & 0x7fffffff) % lanes.length;
+  }
+
+  /**
+   * Submits the task on the given lane. Runs it for the caller when the lane queue stays full.
+   *
+   * @param lane the lane index given by {@link #laneOf(String)}
+   * @param task the fan-out task
+   */
+  public void submit(int lane, final Runnable task) {
+    final long submittedAt = System.currentTimeMillis();
+    Runnable timed = new Runnable() {
+      public void run() {
+        try {
+          task.run();
+          completed.incrementAndGet();
+        } catch (RuntimeException e) {
+          failed.incrementAndGet();
+          LOG.warn("Failed to run the stream fan-out task.", e);
+        } finally {
+          record(System.currentTimeMillis() - submittedAt);
+        }
+      }
+    };
+
+    ThreadPoolExecutor executor = lanes[lane];
+    submitted.incrementAndGet();
+    try {
+      executor.execute(timed);
+    } catch (RejectedExecutionException e) {
+      if (executor.isShutdown()) {
+        //pipeline is stopping, keeps the fan-out for the caller
+        runForSubmitter(timed);
+        return;
+      }
+      enqueue(executor.getQueue(), timed);
+    }
+  }
+
+  private void enqueue(BlockingQueue<Runnable> queue, Runnable task) {
+    try {
+      if (queue.offer(task, offerTimeout, TimeUnit.MILLISECONDS)) {
+        return;
+      }
+      throttled.incrementAndGet();
+      LOG.warn("Stream fan-out lane is saturated, running the task for the submitter.");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    runForSubmitter(task);
+  }
+
+  /**
+   * Runs the task on a new thread and waits for its end. The task opens its own session: run on the
+   * submitter, it would share the session of the poster and save or discard its pending changes.
+   */
+  private void runForSubmitter(Runnable task) {
+    Thread thread = submitterThreads.newThread(task);
+    thread.start();
+    boolean interrupted = false;
+    while (thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void record(long latency) {
+    totalLatency.addAndGet(latency);
+    long max = maxLatency.get();
+    while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+      max = maxLatency.get();
+    }
+  }
+
+  public int getLanes() {
+    return lanes.length;
+  }
+
+  @Managed
+  @ManagedName("BatchSize")
+  @ManagedDescription("The number of recipients whose references are written and saved at once")
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  @Managed
+  @ManagedName("QueueDepth")
+  @ManagedDescription("The number of fan-out tasks waiting in all lanes")
+  public int getQueueDepth() {
+    int depth = 0;
+    for (ThreadPoolExecutor lane : lanes) {
+      depth += lane.getQueue().size();
+    }
+    return depth;
+  }
+
+  public int getQueueDepth(int lane) {
+    return lanes[lane].getQueue().size();
+  }
+
+  @Managed
+  @ManagedName("SubmittedCount")
+  @ManagedDescription("The number of submitted fan-out tasks")
+  public long getSubmittedCount() {
+    return submitted.get();
+  }
+
+  @Managed
+  @ManagedName("CompletedCount")
+  @ManagedDescription("The number of completed fan-out tasks")
+  public long getCompletedCount() {
+    return completed.get();
+  }
+
+  @Managed
+  @ManagedName("FailedCount")
+  @ManagedDescription("The number of failed fan-out tasks")
+  public long getFailedCount() {
+    return failed.get();
+  }
+
+  @Managed
+  @ManagedName("ThrottledCount")
+  @ManagedDescription("The number of tasks run for the submitter because their lane was saturated")
+  public long getThrottledCount() {
+    return throttled.get();
+  }
+
+  @Managed
+  @ManagedName("AverageLatency")
+  @ManagedDescription("The average time in ms between the submission and the end of a fan-out task")
+  public long getAverageLatency() {
+    long done = completed.get() + failed.get();
+    return done == 0 ? 0 : totalLatency.get() / done;
+  }
+
+  @Managed
+  @ManagedName("MaxLatency")
+  @ManagedDescription("The maximum time in ms between the submission and the end of a fan-out task")
+  public long getMaxLatency() {
+    return maxLatency.get();
+  }
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void stop() {
+    for (ThreadPoolExecutor lane : lanes) {
+      lane.shutdown();
+    }
+
+    try {
+      for (ThreadPoolExecutor lane : lanes) {
+        if (!lane.awaitTermination(5, TimeUnit.SECONDS)) {
+          LOG.warn("Stream fan-out lane did not terminate, " + lane.getQueue().size() + " tasks are dropped.");
+          lane.shutdownNow();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static int intValue(InitParams params, String name, int defaultValue) {
+    try {
+      ValueParam param = params.getValueParam(name);
+      return Integer.valueOf(param.getValue());
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+
+  private static long longValue(InitParams params, String name, long defaultValue) {
+    try {
+      ValueParam param = params.getValueParam(name);
+      return Long.valueOf(param.getValue());
+    } catch (Exception e) {
+      return defaultValue;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared by keys. Two equal keys always get the same lock,
+ * different keys get the same lock only when they collide on the same stripe.
+ *
+ * @since 4.1.0
+ */
+public class StripedLock {
+
+  private final ReentrantLock[] locks;
+  private final int mask;
+
+  /**
+   * @param stripes the number of locks, rounded up to the next power of two
+   */
+  public StripedLock(int stripes) {
+    if (stripes < 1) {
+      throw new IllegalArgumentException("Stripes must be >= 1, was " + stripes);
+    }
+
+    int size = 1;
+    while (size < stripes) {
+      size <<= 1;
+    }
+
+    this.locks = new ReentrantLock[size];
+    for (int i = 0; i < size; i++) {
+      locks[i] = new ReentrantLock();
+    }
+    this.mask = size - 1;
+  }
+
+  /**
+   * Gets the lock of the given key.
+   *
+   * @param key the key, may be null
+   * @return the lock
+   */
+  public Lock get(String key) {
+    return locks[indexOf(key)];
+  }
+
+  /**
+   * Gets the locks of the given keys, each lock once. The locks are ordered by stripe: two threads
+   * locking them in this order can't deadlock, whatever the order of their keys.
+   *
+   * @param keys the keys, may contain null
+   * @return the distinct locks of the keys, in the stripe order
+   */
+  public List<Lock> getAll(Collection<String> keys) {
+    TreeSet<Integer> indexes = new TreeSet<Integer>();
+    for (String key : keys) {
+      indexes.add(indexOf(key));
+    }
+
+    List<Lock> got = new ArrayList<Lock>(indexes.size());
+    for (Integer index : indexes) {
+      got.add(locks[index]);
+    }
+    return got;
+  }
+
+  private int indexOf(String key) {
+    int hash = key == null ? 0 : key.hashCode();
+    hash ^= (hash >>> 20) ^ (hash >>> 12);
+    hash ^= (hash >>> 7) ^ (hash >>> 4);
+    return hash & mask;
+  }
+
+  public int size() {
+    return locks.length;
+  }
+}
@@ -17,11 +17,15 @@
 package org.exoplatform.social.core.storage.synchronization;
 
 import java.util.List;
+import java.util.Map;
 
 import org.exoplatform.social.common.service.ProcessContext;
+import org.exoplatform.social.core.activity.model.ActivityStreamPage;
+import org.exoplatform.social.core.activity.model.ActivityStreamState;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
 import org.exoplatform.social.core.storage.impl.IdentityStorageImpl;
 
 public class SynchronizedActivityStreamStorage extends ActivityStreamStorageImpl {
@@ -137,5 +141,104 @@ public class SynchronizedActivityStreamStorage extends ActivityStreamStorageImpl
     }
   }
   
+  @Override
+  public ActivityStreamPage getFeed(Identity owner, String cursor, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getFeed(owner, cursor, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public int getNumberOfUpdated(Identity owner, ActivityRefType type, long sinceTime) {
+    boolean created = startSynchronization();
+    try {
+      return super.getNumberOfUpdated(owner, type, sinceTime);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public int getNumberOfUpdated(Identity owner, Map<ActivityRefType, Long> sinceTimes, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getNumberOfUpdated(owner, sinceTimes, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public ActivityStreamState getState(Identity owner, ActivityRefType type) {
+    boolean created = startSynchronization();
+    try {
+      return super.getState(owner, type);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public void touch(String activityId) {
+    boolean created = startSynchronization();
+    try {
+      super.touch(activityId);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public ActivityStreamPage getConnections(Identity owner, String cursor, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getConnections(owner, cursor, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public ActivityStreamPage getMyActivities(Identity owner, String cursor, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getMyActivities(owner, cursor, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public ActivityStreamPage getMySpaces(Identity owner, String cursor, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getMySpaces(owner, cursor, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
+  @Override
+  public ActivityStreamPage getSpaceStream(Identity owner, String cursor, int limit) {
+    boolean created = startSynchronization();
+    try {
+      return super.getSpaceStream(owner, cursor, limit);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+  }
+  
 
 }
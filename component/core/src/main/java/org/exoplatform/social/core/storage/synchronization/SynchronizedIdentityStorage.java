@@ -82,6 +82,22 @@ public class SynchronizedIdentityStorage extends IdentityStorageImpl {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Identity> findIdentitiesById(final List<String> nodeIds) throws IdentityStorageException {
+
+    boolean created = startSynchronization();
+    try {
+      return super.findIdentitiesById(nodeIds);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.identity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class MentionIndexTest extends TestCase {
+
+  private MentionIndex index;
+
+  @Override
+  protected void setUp() throws Exception {
+    index = new MentionIndex();
+    List<String[]> entries = new ArrayList<String[]>();
+    entries.add(new String[] {"1", "john", "John Anthony", "John", "Anthony"});
+    entries.add(new String[] {"2", "mary", "Mary Kelly", "Mary", "Kelly"});
+    entries.add(new String[] {"3", "demo", "Jack Miller", "Jack", "Miller"});
+    entries.add(new String[] {"4", "ghost", "Élodie Joly", "Élodie", "Joly"});
+    index.startLoading();
+    index.load(entries);
+  }
+
+  public void testSearch() throws Exception {
+    assertTrue(index.isLoaded());
+    assertEquals(4, index.getNumberOfIdentities());
+    assertEquals(Arrays.asList("4", "3", "1"), index.search("j", null, null, 0, 10));
+    assertEquals(Arrays.asList("1"), index.search("jo an", null, null, 0, 10));
+    assertEquals(Arrays.asList("1"), index.search("An", null, null, 0, 10));
+    assertEquals(Arrays.asList("4"), index.search("elo", null, null, 0, 10));
+    assertEquals(Arrays.asList("3"), index.search("demo", null, null, 0, 10));
+    assertTrue(index.search("ohn", null, null, 0, 10).isEmpty());
+    assertTrue(index.search("  ", null, null, 0, 10).isEmpty());
+  }
+
+  public void testRankAndPaging() throws Exception {
+    assertEquals(Arrays.asList("1", "4", "3"), index.search("j", Arrays.asList("1"), null, 0, 10));
+    assertEquals(Arrays.asList("4", "3"), index.search("j", null, Arrays.asList("1"), 0, 10));
+    assertEquals(Arrays.asList("4"), index.search("j", null, null, 0, 1));
+    assertEquals(Arrays.asList("3", "1"), index.search("j", null, null, 1, 2));
+    assertTrue(index.search("j", null, null, 3, 2).isEmpty());
+  }
+
+  public void testPutAndRemove() throws Exception {
+    index.put("2", "mary", "Mary Jones", "Mary", "Jones");
+    assertEquals(Arrays.asList("4", "3", "1", "2"), index.search("j", null, null, 0, 10));
+    assertTrue(index.search("kelly", null, null, 0, 10).isEmpty());
+
+    index.put("5", "paul", "Paul Jackson", "Paul", "Jackson");
+    assertEquals(Arrays.asList("3", "5"), index.search("jack", null, null, 0, 10));
+
+    index.remove("3");
+    assertEquals(Arrays.asList("5"), index.search("jack", null, null, 0, 10));
+    assertEquals(4, index.getNumberOfIdentities());
+  }
+
+  public void testChangesWhileLoading() throws Exception {
+    MentionIndex loading = new MentionIndex();
+    loading.put("1", "john", "John Anthony", "John", "Anthony");
+    loading.startLoading();
+    loading.put("2", "mary", "Mary Jones", "Mary", "Jones");
+    loading.remove("3");
+    List<String[]> entries = new ArrayList<String[]>();
+    entries.add(new String[] {"2", "mary", "Mary Kelly", "Mary", "Kelly"});
+    entries.add(new String[] {"3", "demo", "Jack Miller", "Jack", "Miller"});
+    loading.load(entries);
+
+    // the changes before the loading are read from the storage, the ones during the loading are replayed
+    assertEquals(Arrays.asList("2"), loading.search("j", null, null, 0, 10));
+    assertEquals(1, loading.getNumberOfIdentities());
+  }
+
+  public void testCompaction() throws Exception {
+    for (int i = 0; i < 3000; ++i) {
+      index.put("user" + i, "user" + i, "User " + i, "User", String.valueOf(i));
+    }
+    assertEquals(3004, index.getNumberOfIdentities());
+    assertEquals(Arrays.asList("user1", "user10"), index.search("user 1", null, null, 0, 2));
+
+    for (int i = 0; i < 3000; ++i) {
+      index.remove("user" + i);
+    }
+    assertEquals(4, index.getNumberOfIdentities());
+    assertEquals(Arrays.asList("4", "3", "1"), index.search("j", null, null, 0, 10));
+  }
+
+}
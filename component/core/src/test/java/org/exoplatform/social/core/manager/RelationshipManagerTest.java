@@ -1444,4 +1444,38 @@ public class RelationshipManagerTest extends AbstractCoreTest {
     tearDownRelationshipList.add(ghostToJohnRelationship);
     tearDownRelationshipList.add(paulToDemoRelationship);
   }
+
+  public void testGetSuggestionsWithoutCommonConnections() throws Exception {
+    // the identities without common connections are suggested too
+    Map<Identity, Integer> suggestions = relationshipManager.getSuggestions(ghostIdentity, 0, 10);
+    assertFalse(suggestions.isEmpty());
+    for (Entry<Identity, Integer> suggestion : suggestions.entrySet()) {
+      assertFalse(ghostIdentity.getRemoteId().equals(suggestion.getKey().getRemoteId()));
+      assertEquals(0, suggestion.getValue().intValue());
+    }
+
+    // they come after the ranked ones, the invited identities aren't suggested
+    Relationship maryToGhostRelationship = relationshipManager.inviteToConnect(ghostIdentity, maryIdentity);
+    relationshipManager.inviteToConnect(paulIdentity, maryIdentity);
+    relationshipManager.confirm(maryIdentity, paulIdentity);
+    suggestions = relationshipManager.getSuggestions(ghostIdentity, 0, 10);
+    Object[] objs = suggestions.entrySet().toArray();
+    Entry<Identity, Integer> first = (Entry<Identity, Integer>) objs[0];
+    assertEquals(paulIdentity.getRemoteId(), first.getKey().getRemoteId());
+    assertEquals(1, first.getValue().intValue());
+    for (int i = 1; i < objs.length; i++) {
+      Entry<Identity, Integer> next = (Entry<Identity, Integer>) objs[i];
+      assertFalse(maryIdentity.getRemoteId().equals(next.getKey().getRemoteId()));
+      assertEquals(0, next.getValue().intValue());
+    }
+
+    // the removed relationships aren't counted anymore
+    relationshipManager.delete(relationshipManager.get(maryIdentity, paulIdentity));
+    suggestions = relationshipManager.getSuggestions(ghostIdentity, 0, 10);
+    for (Entry<Identity, Integer> suggestion : suggestions.entrySet()) {
+      assertEquals(0, suggestion.getValue().intValue());
+    }
+
+    tearDownRelationshipList.add(maryToGhostRelationship);
+  }
 }
@@ -143,6 +143,29 @@ public class I18NActivityProcessorTest extends TestCase {
     assertEquals("At 02:00 PM on Feb 6, 2012, we detected 10 spaceships on the planet Mars (EN).", newActivity.getTitle());
 
   }
+
+  public void testLocalizedTitles() throws Exception {
+    Map<String, String> activityKeyTypeMapping = new LinkedHashMap<String, String>();
+    activityKeyTypeMapping.put("spaceships_detected", "FakeResourceBundle.time_day_number_detected_spaceships_on_planet");
+    initActivityResourceBundlePlugin(activityKeyTypeMapping);
+    i18NActivityProcessor.addActivityResourceBundlePlugin(activityResourceBundlePlugin);
+    Locale enLocale = new Locale("en");
+
+    String[] planets = {"Mars", "Venus", "Mars"};
+    for (String planet : planets) {
+      Map<String, String> templateParams = new LinkedHashMap<String, String>();
+      templateParams.put("planet", planet);
+      templateParams.put("number", "10");
+      templateParams.put("time", "02:00 PM");
+      templateParams.put("date", "Feb 6, 2012");
+      ExoSocialActivity activity = createActivity("spaceships_detected", "title");
+      activity.setTemplateParams(templateParams);
+
+      ExoSocialActivity newActivity = i18NActivityProcessor.process(activity, enLocale);
+      assertEquals("At 02:00 PM on Feb 6, 2012, we detected 10 spaceships on the planet " + planet + " (EN).",
+                   newActivity.getTitle());
+    }
+  }
   
   public void testCompoundMessagesWithMultiKeys() throws Exception {
     Map<String, String> activityKeyTypeMapping = new LinkedHashMap<String, String>();
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.relationship;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class RelationshipGraphTest extends TestCase {
+
+  private RelationshipGraph graph;
+
+  @Override
+  protected void setUp() throws Exception {
+    graph = new RelationshipGraph();
+    List<String[]> connections = new ArrayList<String[]>();
+    connections.add(new String[] {"ghost", "mary"});
+    connections.add(new String[] {"mary", "ghost"});
+    connections.add(new String[] {"ghost", "john"});
+    connections.add(new String[] {"demo", "mary"});
+    connections.add(new String[] {"demo", "john"});
+    connections.add(new String[] {"paul", "mary"});
+    graph.startLoading();
+    graph.load(connections);
+  }
+
+  public void testLoad() throws Exception {
+    assertTrue(graph.isLoaded());
+    assertEquals(5, graph.getNumberOfIdentities());
+    assertEquals(Arrays.asList("mary", "john"), graph.getConnections("ghost"));
+    assertEquals(Arrays.asList("ghost", "demo", "paul"), graph.getConnections("mary"));
+    assertTrue(graph.getConnections("root").isEmpty());
+  }
+
+  public void testGetSuggestions() throws Exception {
+    Map<String, Integer> suggestions = graph.getSuggestions("ghost", null, 10);
+    assertEquals(2, suggestions.size());
+    Iterator<Map.Entry<String, Integer>> it = suggestions.entrySet().iterator();
+    Map.Entry<String, Integer> first = it.next();
+    assertEquals("demo", first.getKey());
+    assertEquals(2, first.getValue().intValue());
+    Map.Entry<String, Integer> second = it.next();
+    assertEquals("paul", second.getKey());
+    assertEquals(1, second.getValue().intValue());
+
+    //
+    assertEquals(Collections.singleton("demo"), graph.getSuggestions("ghost", null, 1).keySet());
+    assertEquals(Collections.singleton("paul"), graph.getSuggestions("ghost", Arrays.asList("demo"), 10).keySet());
+    assertTrue(graph.getSuggestions("root", null, 10).isEmpty());
+    assertTrue(graph.getSuggestions("ghost", null, 0).isEmpty());
+  }
+
+  public void testConnectAndDisconnect() throws Exception {
+    graph.connect("paul", "john");
+    assertEquals(2, graph.getSuggestions("ghost", null, 10).get("paul").intValue());
+
+    graph.connect("ghost", "demo");
+    assertFalse(graph.getSuggestions("ghost", null, 10).containsKey("demo"));
+
+    graph.disconnect("demo", "ghost");
+    graph.disconnect("paul", "mary");
+    Map<String, Integer> suggestions = graph.getSuggestions("ghost", null, 10);
+    assertEquals(2, suggestions.get("demo").intValue());
+    assertEquals(1, suggestions.get("paul").intValue());
+
+    // the connections are idempotent
+    graph.disconnect("paul", "mary");
+    graph.connect("paul", "john");
+    assertEquals(1, graph.getSuggestions("ghost", null, 10).get("paul").intValue());
+  }
+
+  public void testChangesWhileLoading() throws Exception {
+    RelationshipGraph loading = new RelationshipGraph();
+    loading.connect("root", "john");
+    loading.startLoading();
+    loading.connect("ghost", "demo");
+    loading.disconnect("ghost", "mary");
+    List<String[]> connections = new ArrayList<String[]>();
+    connections.add(new String[] {"ghost", "mary"});
+    loading.load(connections);
+
+    // the changes before the loading are read from the storage, the ones during the loading are replayed
+    assertTrue(loading.getConnections("root").isEmpty());
+    assertEquals(Arrays.asList("demo"), loading.getConnections("ghost"));
+  }
+
+  public void testReload() throws Exception {
+    RelationshipGraph reloaded = new RelationshipGraph(1L);
+    List<String[]> connections = new ArrayList<String[]>();
+    connections.add(new String[] {"ghost", "mary"});
+    reloaded.startLoading();
+    reloaded.load(connections);
+    Thread.sleep(5);
+
+    // a single caller reloads the graph, the loaded one is still read meanwhile
+    assertTrue(reloaded.startReloading());
+    assertFalse(reloaded.startReloading());
+    reloaded.connect("ghost", "demo");
+    assertEquals(Arrays.asList("mary", "demo"), reloaded.getConnections("ghost"));
+
+    // the relationships changed on another node are read, the changes made during the reload are replayed
+    connections.add(new String[] {"ghost", "john"});
+    reloaded.load(connections);
+    assertEquals(Arrays.asList("mary", "john", "demo"), reloaded.getConnections("ghost"));
+
+    // the graph is never reloaded without a reload period
+    RelationshipGraph kept = new RelationshipGraph(0L);
+    kept.startLoading();
+    kept.load(connections);
+    assertFalse(kept.startReloading());
+  }
+
+  public void testCompaction() throws Exception {
+    for (int i = 0; i < 3000; ++i) {
+      graph.connect("ghost", "user" + i);
+      graph.connect("user" + i, "demo");
+    }
+    assertEquals(3002, graph.getConnections("ghost").size());
+    Map<String, Integer> suggestions = graph.getSuggestions("ghost", null, 10);
+    assertEquals(3002, suggestions.get("demo").intValue());
+    assertEquals(1, suggestions.get("paul").intValue());
+
+    for (int i = 0; i < 3000; ++i) {
+      graph.disconnect("user" + i, "ghost");
+    }
+    assertEquals(Arrays.asList("mary", "john"), graph.getConnections("ghost"));
+    assertEquals(2, graph.getSuggestions("ghost", null, 10).get("demo").intValue());
+  }
+
+}
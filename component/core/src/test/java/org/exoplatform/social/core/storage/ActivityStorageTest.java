@@ -17,10 +17,15 @@
 package org.exoplatform.social.core.storage;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
 
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
@@ -225,6 +230,52 @@ public class ActivityStorageTest extends AbstractCoreTest {
 
   }
 
+  /**
+   * Two comments saved at once on the same activity both keep their id.
+   */
+  public void testSaveConcurrentComments() throws Exception {
+    final ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("blah blah");
+    activityStorage.saveActivity(rootIdentity, activity);
+    tearDownActivityList.add(activity);
+    end();
+    begin();
+
+    final Identity[] commenters = new Identity[] {rootIdentity, johnIdentity};
+    final CyclicBarrier barrier = new CyclicBarrier(commenters.length);
+    final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (final Identity commenter : commenters) {
+      Thread thread = new Thread() {
+        public void run() {
+          RequestLifeCycle.begin(PortalContainer.getInstance());
+          try {
+            ExoSocialActivity commented = activityStorage.getActivity(activity.getId());
+            ExoSocialActivity comment = new ExoSocialActivityImpl();
+            comment.setTitle("comment of " + commenter.getRemoteId());
+            comment.setUserId(commenter.getId());
+            barrier.await();
+            activityStorage.saveComment(commented, comment);
+          } catch (Throwable e) {
+            errors.add(e);
+          } finally {
+            RequestLifeCycle.end();
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(errors.toString(), errors.isEmpty());
+
+    end();
+    begin();
+    assertEquals(2, activityStorage.getActivity(activity.getId()).getReplyToId().length);
+  }
+
   /**
    * Test {@link org.exoplatform.social.core.storage.ActivityStorage#deleteComment(String, String)}
    */
@@ -249,6 +300,38 @@ public class ActivityStorageTest extends AbstractCoreTest {
     tearDownActivityList.add(activity);
   }
 
+  /**
+   * Test the comment ids of the activities returned by {@link ActivityStorage#getActivity(String)}
+   */
+  @MaxQueryNumber(450)
+  public void testGetActivityCommentIds() throws ActivityStorageException {
+
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("blah blah");
+    activityStorage.saveActivity(rootIdentity, activity);
+    tearDownActivityList.add(activity);
+
+    assertEquals(0, activityStorage.getActivity(activity.getId()).getReplyToId().length);
+
+    List<String> commentIds = new ArrayList<String>();
+    for (int i = 0; i < 2; i++) {
+      ExoSocialActivity comment = new ExoSocialActivityImpl();
+      comment.setTitle("comment " + i);
+      comment.setUserId(rootIdentity.getId());
+      activityStorage.saveComment(activity, comment);
+      commentIds.add(comment.getId());
+    }
+
+    ExoSocialActivity gotActivity = activityStorage.getActivity(activity.getId());
+    assertEquals(commentIds, Arrays.asList(gotActivity.getReplyToId()));
+    assertEquals(rootIdentity.getRemoteId(), gotActivity.getStreamOwner());
+    assertEquals(0, activityStorage.getActivity(commentIds.get(1)).getReplyToId().length);
+
+    activityStorage.deleteComment(activity.getId(), commentIds.get(0));
+    gotActivity = activityStorage.getActivity(activity.getId());
+    assertEquals(commentIds.subList(1, 2), Arrays.asList(gotActivity.getReplyToId()));
+  }
+
   /**
    * Test {@link org.exoplatform.social.core.storage.ActivityStorage#getActivity(String)}
    */
@@ -17,10 +17,18 @@
 package org.exoplatform.social.core.storage;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
 
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.activity.model.ActivityStreamPage;
+import org.exoplatform.social.core.activity.model.ActivityStreamState;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.application.RelationshipPublisher;
@@ -38,6 +46,10 @@ import org.exoplatform.social.core.space.spi.SpaceService;
 import org.exoplatform.social.core.storage.api.ActivityStorage;
 import org.exoplatform.social.core.storage.api.ActivityStreamStorage;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+import org.exoplatform.social.core.storage.impl.IdentityStorageImpl;
+import org.exoplatform.social.core.storage.synchronization.SynchronizedActivityStreamStorage;
 import org.exoplatform.social.core.test.AbstractCoreTest;
 
 
@@ -133,6 +145,59 @@ public class ActivityStreamStorageTest extends AbstractCoreTest {
     assertEquals(1, streamStorage.getNumberOfMyActivities(maryIdentity));
 
   }
+  
+  /**
+   * Two nodes, each one with its own stream locks, add references on the same new day of a stream at once:
+   * the second save conflicts with the first one and is retried.
+   */
+  public void testConcurrentRefCreation() throws Exception {
+    final List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
+    for (int i = 0; i < 2; i++) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("activity " + i);
+      activityStorage.saveActivity(rootIdentity, activity);
+      activities.add(activity);
+    }
+    tearDownActivityList.addAll(activities);
+    assertEquals(0, streamStorage.getNumberOfFeed(demoIdentity));
+    end();
+    begin();
+
+    IdentityStorageImpl identityStorageImpl = (IdentityStorageImpl) getContainer().getComponentInstanceOfType(IdentityStorageImpl.class);
+    final ActivityStreamStorage[] nodes = new ActivityStreamStorage[] {
+        (ActivityStreamStorage) getContainer().getComponentInstanceOfType(ActivityStreamStorageImpl.class),
+        new SynchronizedActivityStreamStorage(identityStorageImpl)};
+    final CyclicBarrier barrier = new CyclicBarrier(nodes.length);
+    final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < nodes.length; i++) {
+      final int node = i;
+      Thread thread = new Thread() {
+        public void run() {
+          RequestLifeCycle.begin(PortalContainer.getInstance());
+          try {
+            barrier.await();
+            nodes[node].like(demoIdentity, activities.get(node));
+          } catch (Throwable e) {
+            errors.add(e);
+          } finally {
+            RequestLifeCycle.end();
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(errors.toString(), errors.isEmpty());
+
+    end();
+    begin();
+    assertEquals(2, streamStorage.getNumberOfFeed(demoIdentity));
+    assertEquals(2, streamStorage.getNumberOfMyActivities(demoIdentity));
+  }
   /*
   public void testUnlike() throws ActivityStorageException {
     final String activityTitle = "activity Title";
@@ -367,6 +432,133 @@ public class ActivityStreamStorageTest extends AbstractCoreTest {
     assertEquals(0, got.size());
   }
   
+  public void testGetFeedWithCursor() throws ActivityStorageException {
+    long day = 24 * 60 * 60 * 1000L;
+    long now = System.currentTimeMillis();
+    long[] times = new long[] {now, now - 1000, now - day, now - day - 1000, now - 40 * day};
+    for (long time : times) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("activity title " + time);
+      activity.setPostedTime(time);
+      activityStorage.saveActivity(rootIdentity, activity);
+      tearDownActivityList.add(activity);
+    }
+
+    //
+    ActivityStreamPage page = streamStorage.getFeed(rootIdentity, null, 2);
+    assertEquals(2, page.getActivities().size());
+    assertEquals(tearDownActivityList.get(0).getId(), page.getActivities().get(0).getId());
+    assertEquals(tearDownActivityList.get(1).getId(), page.getActivities().get(1).getId());
+    assertTrue(page.hasNext());
+
+    // the next page starts on the previous day, as the offset page does
+    page = streamStorage.getFeed(rootIdentity, page.getNextCursor(), 2);
+    List<ExoSocialActivity> got = streamStorage.getFeed(rootIdentity, 2, 2);
+    assertEquals(2, page.getActivities().size());
+    assertEquals(got.get(0).getId(), page.getActivities().get(0).getId());
+    assertEquals(got.get(1).getId(), page.getActivities().get(1).getId());
+    assertEquals(tearDownActivityList.get(2).getId(), page.getActivities().get(0).getId());
+    assertTrue(page.hasNext());
+
+    //
+    page = streamStorage.getFeed(rootIdentity, page.getNextCursor(), 2);
+    assertEquals(1, page.getActivities().size());
+    assertEquals(tearDownActivityList.get(4).getId(), page.getActivities().get(0).getId());
+    assertFalse(page.hasNext());
+
+    //
+    try {
+      streamStorage.getFeed(rootIdentity, "malformed", 2);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testGetNumberOfUpdated() throws ActivityStorageException {
+    long day = 24 * 60 * 60 * 1000L;
+    long now = System.currentTimeMillis();
+    long[] times = new long[] {now, now - 1000, now - day, now - 40 * day, now - 400 * day};
+    for (long time : times) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("activity title " + time);
+      activity.setPostedTime(time);
+      activityStorage.saveActivity(rootIdentity, activity);
+      tearDownActivityList.add(activity);
+    }
+
+    // the counters of the newer years, months and days are summed, the refs of the day are compared
+    assertEquals(0, streamStorage.getNumberOfUpdated(rootIdentity, ActivityRefType.FEED, now));
+    assertEquals(1, streamStorage.getNumberOfUpdated(rootIdentity, ActivityRefType.FEED, now - 1000));
+    assertEquals(2, streamStorage.getNumberOfUpdated(rootIdentity, ActivityRefType.FEED, now - 2000));
+    assertEquals(3, streamStorage.getNumberOfUpdated(rootIdentity, ActivityRefType.FEED, now - 2 * day));
+    assertEquals(4, streamStorage.getNumberOfUpdated(rootIdentity, ActivityRefType.FEED, now - 100 * day));
+    assertEquals(5, streamStorage.getNumberOfUpdated(rootIdentity, ActivityRefType.FEED, now - 500 * day));
+
+    // an activity of several streams is counted once
+    Map<ActivityRefType, Long> sinceTimes = new HashMap<ActivityRefType, Long>();
+    sinceTimes.put(ActivityRefType.FEED, now - 2 * day);
+    sinceTimes.put(ActivityRefType.MY_ACTIVITIES, now - 100 * day);
+    assertEquals(4, streamStorage.getNumberOfUpdated(rootIdentity, sinceTimes, 100));
+    assertEquals(2, streamStorage.getNumberOfUpdated(rootIdentity, sinceTimes, 2));
+  }
+
+  public void testGetState() throws ActivityStorageException {
+    ActivityStreamState state = streamStorage.getState(rootIdentity, ActivityRefType.FEED);
+    assertEquals(0, state.getLastUpdated());
+    assertEquals(0, state.getSize());
+
+    long day = 24 * 60 * 60 * 1000L;
+    long now = System.currentTimeMillis();
+    long[] times = new long[] {now - day, now - 40 * day};
+    for (long time : times) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("activity title " + time);
+      activity.setPostedTime(time);
+      activityStorage.saveActivity(rootIdentity, activity);
+      tearDownActivityList.add(activity);
+    }
+
+    // the state is read from the newest ref and the counter of the stream
+    state = streamStorage.getState(rootIdentity, ActivityRefType.FEED);
+    assertEquals(now - day, state.getLastUpdated());
+    assertEquals(2, state.getSize());
+    assertEquals(state, streamStorage.getState(rootIdentity, ActivityRefType.FEED));
+    ActivityStreamState myActivities = streamStorage.getState(rootIdentity, ActivityRefType.MY_ACTIVITIES);
+    assertEquals(state.getLastUpdated(), myActivities.getLastUpdated());
+    assertEquals(state.getSize(), myActivities.getSize());
+
+    // a new activity changes the state
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("activity title " + now);
+    activity.setPostedTime(now);
+    activityStorage.saveActivity(rootIdentity, activity);
+    tearDownActivityList.add(activity);
+
+    state = streamStorage.getState(rootIdentity, ActivityRefType.FEED);
+    assertEquals(now, state.getLastUpdated());
+    assertEquals(3, state.getSize());
+  }
+
+  public void testTouch() throws ActivityStorageException {
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("activity title");
+    activityStorage.saveActivity(rootIdentity, activity);
+    tearDownActivityList.add(activity);
+
+    ActivityStreamState feed = streamStorage.getState(rootIdentity, ActivityRefType.FEED);
+    ActivityStreamState myActivities = streamStorage.getState(rootIdentity, ActivityRefType.MY_ACTIVITIES);
+
+    // a touched activity keeps its references, only the version of its streams changes
+    streamStorage.touch(activity.getId());
+    ActivityStreamState state = streamStorage.getState(rootIdentity, ActivityRefType.FEED);
+    assertEquals(feed.getLastUpdated(), state.getLastUpdated());
+    assertEquals(feed.getSize(), state.getSize());
+    assertTrue(state.getVersion() > feed.getVersion());
+    assertFalse(feed.equals(state));
+    assertTrue(streamStorage.getState(rootIdentity, ActivityRefType.MY_ACTIVITIES).getVersion() > myActivities.getVersion());
+  }
+
   public void testConnectionsExistActivities() throws ActivityStorageException {
     
     RelationshipPublisher relationshipPublisher = (RelationshipPublisher) getContainer().getComponentInstanceOfType(RelationshipPublisher.class);
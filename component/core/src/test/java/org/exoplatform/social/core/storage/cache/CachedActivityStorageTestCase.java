@@ -29,6 +29,7 @@ import org.exoplatform.social.core.test.MaxQueryNumber;
 import org.exoplatform.social.core.test.QueryNumberTest;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -114,9 +115,117 @@ public class CachedActivityStorageTestCase extends AbstractCoreTest {
     activity2.setUserId(identity.getId());
     activityStorage.saveActivity(identity, activity2);
 
+    // the new activity is put on the cached feed
+    assertEquals(2, cacheService.getActivityCache().getCacheSize());
+    assertEquals(1, cacheService.getActivitiesCache().getCacheSize());
+
+    long misses = CacheType.ACTIVITIES.getStatistics().getMisses();
+    List<ExoSocialActivity> feed = activityStorage.getActivityFeed(identity, 0, 20);
+    assertEquals(misses, CacheType.ACTIVITIES.getStatistics().getMisses());
+    assertEquals(2, feed.size());
+    assertEquals(activity2.getId(), feed.get(0).getId());
+    assertEquals(activity.getId(), feed.get(1).getId());
+
+  }
+
+  @MaxQueryNumber(300)
+  public void testSaveActivityOnFullPage() throws Exception {
+
+    //
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("hello");
+    activity.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity);
+
+    //
+    assertEquals(1, activityStorage.getActivityFeed(identity, 0, 1).size());
+    assertEquals(1, activityStorage.getNumberOfActivitesOnActivityFeed(identity));
+
+    //
+    ExoSocialActivity activity2 = new ExoSocialActivityImpl();
+    activity2.setTitle("hello 2");
+    activity2.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity2);
+
+    // the page keeps its limit and the count is incremented in place
+    long misses = CacheType.ACTIVITIES_COUNT.getStatistics().getMisses();
+    List<ExoSocialActivity> feed = activityStorage.getActivityFeed(identity, 0, 1);
+    assertEquals(1, feed.size());
+    assertEquals(activity2.getId(), feed.get(0).getId());
+    assertEquals(2, activityStorage.getNumberOfActivitesOnActivityFeed(identity));
+    assertEquals(misses, CacheType.ACTIVITIES_COUNT.getStatistics().getMisses());
+
+  }
+
+  @MaxQueryNumber(300)
+  public void testSaveActivityKeepsOtherStreams() throws Exception {
+
     //
+    activityStorage.getActivityFeed(identity2, 0, 20);
+    assertEquals(1, cacheService.getActivitiesCache().getCacheSize());
+
+    CacheStatistics statistics = CacheType.ACTIVITIES.getStatistics();
+    long hits = statistics.getHits();
+    long evictions = statistics.getEvictions();
+
+    //
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("hello");
+    activity.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity);
+
+    // demo is not connected to mary, its feed is still cached
+    assertEquals(1, cacheService.getActivitiesCache().getCacheSize());
+    assertEquals(evictions, statistics.getEvictions());
+    activityStorage.getActivityFeed(identity2, 0, 20);
+    assertEquals(hits + 1, statistics.getHits());
+
+    //
+    activityStorage.getActivityFeed(identity, 0, 20);
+    assertEquals(2, cacheService.getActivitiesCache().getCacheSize());
+
+    //
+    ExoSocialActivity activity2 = new ExoSocialActivityImpl();
+    activity2.setTitle("hello 2");
+    activity2.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity2);
+
+    // the feed of mary is updated in place
+    assertEquals(2, cacheService.getActivitiesCache().getCacheSize());
+    assertEquals(evictions, statistics.getEvictions());
+
+  }
+
+  @MaxQueryNumber(200)
+  public void testGetActivities() throws Exception {
+
+    //
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("hello");
+    activity.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity);
+    ExoSocialActivity activity2 = new ExoSocialActivityImpl();
+    activity2.setTitle("hello 2");
+    activity2.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity2);
+
+    //
+    cacheService.getActivityCache().clearCache();
+    activityStorage.getActivity(activity.getId());
+    assertEquals(1, cacheService.getActivityCache().getCacheSize());
+
+    //
+    long hits = CacheType.ACTIVITY.getStatistics().getHits();
+    long misses = CacheType.ACTIVITY.getStatistics().getMisses();
+    List<ExoSocialActivity> got = activityStorage.getActivities(Arrays.asList(activity2.getId(), "unknown", activity.getId()));
+
+    // the hit comes from the cache, the misses are loaded together
+    assertEquals(2, got.size());
+    assertEquals(activity2.getId(), got.get(0).getId());
+    assertEquals(activity.getId(), got.get(1).getId());
+    assertEquals(hits + 1, CacheType.ACTIVITY.getStatistics().getHits());
+    assertEquals(misses + 2, CacheType.ACTIVITY.getStatistics().getMisses());
     assertEquals(2, cacheService.getActivityCache().getCacheSize());
-    assertEquals(0, cacheService.getActivitiesCache().getCacheSize());
 
   }
 
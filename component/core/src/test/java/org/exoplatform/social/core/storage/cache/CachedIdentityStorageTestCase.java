@@ -248,6 +248,37 @@ public class CachedIdentityStorageTestCase extends AbstractCoreTest {
 
   }
 
+  @MaxQueryNumber(120)
+  public void testFindIdentitiesById() throws Exception {
+
+    Identity i = new Identity(OrganizationIdentityProvider.NAME, "id");
+    identityStorage.saveIdentity(i);
+    tearDownIdentityList.add(i.getId());
+    Identity i2 = new Identity(OrganizationIdentityProvider.NAME, "id2");
+    identityStorage.saveIdentity(i2);
+    tearDownIdentityList.add(i2.getId());
+
+    cacheService.getIdentityCache().clearCache();
+    cacheService.getProfileCache().clearCache();
+    List<String> ids = new ArrayList<String>();
+    ids.add(i2.getId());
+    ids.add("unknown");
+    ids.add(i.getId());
+    List<Identity> identities = identityStorage.findIdentitiesById(ids);
+    assertEquals(2, identities.size());
+    assertEquals(i2.getId(), identities.get(0).getId());
+    assertEquals(i.getId(), identities.get(1).getId());
+    assertNotNull(identities.get(0).getProfile());
+    assertEquals(2, cacheService.getIdentityCache().getCacheSize());
+    assertEquals(2, cacheService.getProfileCache().getCacheSize());
+
+    //the identities are now found in the cache
+    identities = identityStorage.findIdentitiesById(ids);
+    assertEquals(2, identities.size());
+    assertEquals("id", identities.get(1).getRemoteId());
+
+  }
+
   @MaxQueryNumber(60)
   public void testGetIdentitiesByFirstCharacterOfNameCount() throws Exception {
 
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.core.space.model.SpaceMembership;
+
+public class SpaceMembershipIndexTest extends TestCase {
+
+  public void testMembership() throws Exception {
+    Space space = new Space();
+    space.setManagers(new String[] {"root"});
+    space.setMembers(new String[] {"root", "john"});
+    space.setPendingUsers(new String[] {"mary"});
+
+    SpaceMembership membership = space.getMembership();
+    assertTrue(membership.isManager("root"));
+    assertTrue(membership.isMember("john"));
+    assertFalse(membership.isManager("john"));
+    assertTrue(membership.isPendingUser("mary"));
+    assertFalse(membership.isInvitedUser("mary"));
+    assertSame(membership, space.getMembership());
+
+    // a replaced list builds a new view
+    space.setInvitedUsers(new String[] {"demo"});
+    assertNotSame(membership, space.getMembership());
+    assertTrue(space.getMembership().isInvitedUser("demo"));
+
+    // a view of other lists is not used
+    space.setMembership(new SpaceMembership(null, null, null, null));
+    assertTrue(space.getMembership().isMember("john"));
+  }
+
+  public void testUpdate() throws Exception {
+    SpaceMembershipIndex index = new SpaceMembershipIndex(2);
+    index.put("john", Arrays.asList("space1"), index.getVersion());
+    index.put("mary", new ArrayList<String>(), index.getVersion());
+    assertNull(index.getSpaceIds("root"));
+
+    SpaceMembership space2 = new SpaceMembership(new String[] {"mary"}, new String[] {"john"}, null, null);
+    index.update("space2", null, space2);
+    assertEquals(Arrays.asList("space1", "space2"), new ArrayList<String>(index.getSpaceIds("john")));
+    assertEquals(Arrays.asList("space2"), new ArrayList<String>(index.getSpaceIds("mary")));
+
+    index.update("space1", new SpaceMembership(null, new String[] {"john"}, null, null),
+                 new SpaceMembership(null, new String[] {"mary"}, null, null));
+    assertEquals(Arrays.asList("space2"), new ArrayList<String>(index.getSpaceIds("john")));
+
+    index.remove("space2", space2);
+    assertTrue(index.getSpaceIds("john").isEmpty());
+    assertEquals(Arrays.asList("space1"), new ArrayList<String>(index.getSpaceIds("mary")));
+
+    // the least recently used user is evicted
+    index.put("root", Arrays.asList("space1"), index.getVersion());
+    assertEquals(2, index.getSize());
+  }
+
+  public void testUpdateChangedUsers() throws Exception {
+    SpaceMembershipIndex index = new SpaceMembershipIndex(10);
+    index.put("john", Arrays.asList("space1"), index.getVersion());
+    index.put("mary", new ArrayList<String>(), index.getVersion());
+
+    // only the users who got or lost the access are patched, the others are trusted
+    index.update("space1", new SpaceMembership(new String[] {"root"}, new String[] {"demo"}, null, null),
+                 new SpaceMembership(new String[] {"demo"}, new String[] {"root", "mary"}, null, null));
+    assertEquals(Arrays.asList("space1"), new ArrayList<String>(index.getSpaceIds("john")));
+    assertEquals(Arrays.asList("space1"), new ArrayList<String>(index.getSpaceIds("mary")));
+  }
+
+  public void testConcurrentSave() throws Exception {
+    SpaceMembershipIndex index = new SpaceMembershipIndex(10);
+    long version = index.getVersion();
+    // a space is saved while the spaces of john are read
+    index.update("space1", null, new SpaceMembership(null, new String[] {"john"}, null, null));
+    index.put("john", new ArrayList<String>(), version);
+    assertNull(index.getSpaceIds("john"));
+  }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.storage.cache.model.data.SuggestionsData;
+
+public class SuggestionStoreTest extends TestCase {
+
+  private List<Runnable> scheduled;
+
+  private SuggestionStore store;
+
+  private CountingLoader loader;
+
+  @Override
+  protected void setUp() throws Exception {
+    scheduled = new ArrayList<Runnable>();
+    store = new SuggestionStore(2, 3, 60000L, new Executor() {
+      public void execute(Runnable command) {
+        scheduled.add(command);
+      }
+    });
+    loader = new CountingLoader();
+  }
+
+  public void testGet() throws Exception {
+    SuggestionsData data = store.get("ghost", loader);
+    assertEquals(Arrays.asList("demo", "paul", "mary"), new ArrayList<String>(data.getMap().keySet()));
+    assertTrue(data.hasMore());
+    assertSame(data, store.get("ghost", loader));
+    assertEquals(1, loader.loads);
+
+    // the least recently used identity is evicted
+    store.get("john", loader);
+    store.get("ghost", loader);
+    store.get("root", loader);
+    assertTrue(store.contains("ghost"));
+    assertFalse(store.contains("john"));
+  }
+
+  public void testRefresh() throws Exception {
+    store.precompute("ghost", loader);
+    store.precompute("ghost", loader);
+    assertFalse(store.contains("ghost"));
+    assertEquals(1, scheduled.size());
+
+    scheduled.get(0).run();
+    assertTrue(store.contains("ghost"));
+    assertEquals(Arrays.asList("ghost"), loader.refreshed);
+
+    // an expired entry is served while it is refreshed
+    SuggestionStore expiring = new SuggestionStore(10, 3, 1L, new Executor() {
+      public void execute(Runnable command) {
+        scheduled.add(command);
+      }
+    });
+    SuggestionsData data = expiring.get("ghost", loader);
+    Thread.sleep(10);
+    assertSame(data, expiring.get("ghost", loader));
+    assertEquals(2, scheduled.size());
+  }
+
+  public void testPatch() throws Exception {
+    store.get("ghost", loader);
+
+    store.patch("ghost", "mary", 3);
+    Map<String, Integer> map = store.get("ghost", loader).getMap();
+    assertEquals(Arrays.asList("mary", "demo", "paul"), new ArrayList<String>(map.keySet()));
+    assertEquals(4, map.get("mary").intValue());
+    assertFalse(store.get("ghost", loader).isStale());
+
+    store.exclude("ghost", "demo");
+    assertEquals(Arrays.asList("mary", "paul"), new ArrayList<String>(store.get("ghost", loader).getMap().keySet()));
+    assertEquals(1, loader.loads);
+
+    // an unknown suggestion may come in the truncated list
+    store.patch("ghost", "john", 1);
+    assertEquals(Arrays.asList("demo", "paul", "mary"),
+                 new ArrayList<String>(store.get("ghost", loader).getMap().keySet()));
+    assertEquals(2, loader.loads);
+
+    // a lower suggestion may let one of the truncated list come in
+    store.patch("ghost", "mary", -1);
+    assertEquals(Arrays.asList("demo", "paul", "mary"),
+                 new ArrayList<String>(store.get("ghost", loader).getMap().keySet()));
+    assertEquals(3, loader.loads);
+  }
+
+  public void testChangeDuringRefresh() throws Exception {
+    SuggestionStore expiring = new SuggestionStore(10, 3, 1L, new Executor() {
+      public void execute(Runnable command) {
+        scheduled.add(command);
+      }
+    });
+    expiring.get("ghost", loader);
+    Thread.sleep(10);
+    expiring.get("ghost", loader);
+    assertEquals(1, scheduled.size());
+
+    // the patch made while the suggestions are loaded wins over the loaded ones
+    loader.during = new Patch(expiring, "ghost", "mary", 3);
+    scheduled.get(0).run();
+    assertTrue(loader.refreshed.isEmpty());
+    Map<String, Integer> map = expiring.get("ghost", loader).getMap();
+    assertEquals(4, map.get("mary").intValue());
+
+    // a change made while missing suggestions are loaded prevents storing them
+    loader.during = new Patch(store, "ghost", "demo", -1);
+    SuggestionsData data = store.get("ghost", loader);
+    assertEquals(3, data.getMap().size());
+    assertFalse(store.contains("ghost"));
+    loader.during = null;
+    store.get("ghost", loader);
+    assertTrue(store.contains("ghost"));
+  }
+
+  public void testPatchWithoutCommonConnections() throws Exception {
+    loader.hasMore = false;
+    store.get("ghost", loader);
+
+    // the identities without common connections stay suggested
+    store.patch("ghost", "mary", -1);
+    store.patch("ghost", "mary", -1);
+    Map<String, Integer> map = store.get("ghost", loader).getMap();
+    assertEquals(0, map.get("mary").intValue());
+  }
+
+  private static class Patch implements Runnable {
+
+    private final SuggestionStore store;
+
+    private final String identityId;
+
+    private final String suggestedId;
+
+    private final int delta;
+
+    Patch(SuggestionStore store, String identityId, String suggestedId, int delta) {
+      this.store = store;
+      this.identityId = identityId;
+      this.suggestedId = suggestedId;
+      this.delta = delta;
+    }
+
+    public void run() {
+      store.patch(identityId, suggestedId, delta);
+    }
+
+  }
+
+  private static class CountingLoader implements SuggestionStore.Loader {
+
+    private int loads;
+
+    private List<String> refreshed = new ArrayList<String>();
+
+    private Runnable during;
+
+    private boolean hasMore = true;
+
+    public SuggestionsData load(String identityId, int limit) {
+      ++loads;
+      if (during != null) {
+        during.run();
+      }
+      Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+      map.put("demo", 3);
+      map.put("paul", 2);
+      map.put("mary", 1);
+      return new SuggestionsData(map, System.currentTimeMillis(), hasMore, false, 0);
+    }
+
+    public void refreshed(String identityId) {
+      refreshed.add(identityId);
+    }
+
+  }
+
+}
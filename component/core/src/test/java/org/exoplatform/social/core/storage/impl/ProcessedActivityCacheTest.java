@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.ActivityProcessor;
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
+
+public class ProcessedActivityCacheTest extends TestCase {
+
+  private final ActivityProcessor upperCase = new FakeProcessor();
+
+  public void testApply() throws Exception {
+    ProcessedActivityCache cache = new ProcessedActivityCache(10);
+    List<ActivityProcessor> processors = Collections.singletonList(upperCase);
+
+    ExoSocialActivity activity = createActivity("1", "title", "body");
+    assertFalse(cache.apply(activity, processors));
+    process(cache, activity, processors);
+    assertEquals("TITLE", activity.getTitle());
+
+    ExoSocialActivity loaded = createActivity("1", "title", "body");
+    assertTrue(cache.apply(loaded, processors));
+    assertEquals("TITLE", loaded.getTitle());
+    assertEquals("BODY", loaded.getBody());
+    assertEquals("VALUE", loaded.getTemplateParams().get("key"));
+  }
+
+  public void testChangedContentOrProcessors() throws Exception {
+    ProcessedActivityCache cache = new ProcessedActivityCache(10);
+    List<ActivityProcessor> processors = Collections.singletonList(upperCase);
+    process(cache, createActivity("1", "title", "body"), processors);
+
+    ExoSocialActivity updated = createActivity("1", "new title", "body");
+    assertFalse(cache.apply(updated, processors));
+    assertEquals("new title", updated.getTitle());
+
+    ExoSocialActivity otherParams = createActivity("1", "title", "body");
+    otherParams.getTemplateParams().put("other", "value");
+    assertFalse(cache.apply(otherParams, processors));
+
+    List<ActivityProcessor> moreProcessors = Arrays.asList(upperCase, new FakeProcessor());
+    assertFalse(cache.apply(createActivity("1", "title", "body"), moreProcessors));
+    assertFalse(cache.apply(createActivity("2", "title", "body"), processors));
+  }
+
+  public void testRemoveAndMaxSize() throws Exception {
+    ProcessedActivityCache cache = new ProcessedActivityCache(3);
+    List<ActivityProcessor> processors = Collections.singletonList(upperCase);
+    for (int i = 0; i < 5; i++) {
+      process(cache, createActivity(String.valueOf(i), "title", "body"), processors);
+    }
+    assertEquals(3, cache.size());
+    assertFalse(cache.apply(createActivity("0", "title", "body"), processors));
+    assertTrue(cache.apply(createActivity("4", "title", "body"), processors));
+
+    cache.remove("4");
+    assertEquals(2, cache.size());
+    assertFalse(cache.apply(createActivity("4", "title", "body"), processors));
+  }
+
+  private static void process(ProcessedActivityCache cache, ExoSocialActivity activity,
+                              List<ActivityProcessor> processors) {
+    ProcessedActivityCache.Content source = new ProcessedActivityCache.Content(activity);
+    for (ActivityProcessor processor : processors) {
+      processor.processActivity(activity);
+    }
+    cache.put(activity, source, processors);
+  }
+
+  private static ExoSocialActivity createActivity(String id, String title, String body) {
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setId(id);
+    activity.setTitle(title);
+    activity.setBody(body);
+    Map<String, String> templateParams = new LinkedHashMap<String, String>();
+    templateParams.put("key", "value");
+    activity.setTemplateParams(templateParams);
+    return activity;
+  }
+
+  private static class FakeProcessor implements ActivityProcessor {
+
+    public void processActivity(ExoSocialActivity activity) {
+      activity.setTitle(activity.getTitle().toUpperCase());
+      activity.setBody(activity.getBody().toUpperCase());
+      for (Map.Entry<String, String> entry : activity.getTemplateParams().entrySet()) {
+        entry.setValue(entry.getValue().toUpperCase());
+      }
+    }
+
+    public int getPriority() {
+      return 0;
+    }
+  }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+
+public class ActivityStreamNotifierTest extends TestCase {
+
+  public void testNotifiedOnItsStreams() throws Exception {
+    final ActivityStreamNotifier notifier = new ActivityStreamNotifier(10);
+    final ActivityStreamNotifier.Waiter waiter = notifier.register("john",
+                                                                   EnumSet.of(ActivityRefType.FEED,
+                                                                              ActivityRefType.MY_SPACES));
+    final AtomicReference<Set<ActivityRefType>> changed = new AtomicReference<Set<ActivityRefType>>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    Thread reader = new Thread() {
+      public void run() {
+        try {
+          changed.set(waiter.await(5000));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        latch.countDown();
+      }
+    };
+    reader.start();
+
+    //other owners and other streams don't wake the reader up
+    notifier.streamsChanged("mary", EnumSet.of(ActivityRefType.FEED));
+    notifier.streamsChanged("john", EnumSet.of(ActivityRefType.MY_ACTIVITIES));
+    assertFalse(latch.await(200, TimeUnit.MILLISECONDS));
+
+    notifier.streamsChanged("john", EnumSet.of(ActivityRefType.FEED, ActivityRefType.CONNECTION));
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(EnumSet.of(ActivityRefType.FEED), changed.get());
+    assertEquals(1, notifier.getNotifiedCount());
+
+    notifier.release(waiter);
+    assertEquals(0, notifier.getWaiterCount());
+  }
+
+  public void testNotifiedBeforeWaiting() throws Exception {
+    ActivityStreamNotifier notifier = new ActivityStreamNotifier(10);
+    ActivityStreamNotifier.Waiter waiter = notifier.register("john", EnumSet.of(ActivityRefType.CONNECTION));
+    notifier.streamsChanged("john", EnumSet.of(ActivityRefType.CONNECTION));
+    assertEquals(EnumSet.of(ActivityRefType.CONNECTION), waiter.await(0));
+    notifier.release(waiter);
+  }
+
+  public void testListener() throws Exception {
+    ActivityStreamNotifier notifier = new ActivityStreamNotifier(10);
+    final List<Set<ActivityRefType>> notified = new ArrayList<Set<ActivityRefType>>();
+    ActivityStreamNotifier.Listener listener = new ActivityStreamNotifier.Listener() {
+      public void streamsChanged(Set<ActivityRefType> changed) {
+        notified.add(changed);
+      }
+    };
+
+    ActivityStreamNotifier.Waiter waiter = notifier.register("john", EnumSet.of(ActivityRefType.FEED));
+    waiter.listen(listener);
+    assertTrue(notified.isEmpty());
+    notifier.streamsChanged("john", EnumSet.of(ActivityRefType.FEED));
+    notifier.streamsChanged("john", EnumSet.of(ActivityRefType.FEED));
+    assertEquals(1, notified.size());
+    assertEquals(EnumSet.of(ActivityRefType.FEED), notified.get(0));
+    notifier.release(waiter);
+
+    //a listener given after the change is notified at once
+    waiter = notifier.register("john", EnumSet.of(ActivityRefType.CONNECTION));
+    notifier.streamsChanged("john", EnumSet.of(ActivityRefType.CONNECTION));
+    waiter.listen(listener);
+    assertEquals(2, notified.size());
+    assertEquals(EnumSet.of(ActivityRefType.CONNECTION), notified.get(1));
+    notifier.release(waiter);
+  }
+
+  public void testTimeout() throws Exception {
+    ActivityStreamNotifier notifier = new ActivityStreamNotifier(10);
+    ActivityStreamNotifier.Waiter waiter = notifier.register("john", EnumSet.of(ActivityRefType.FEED));
+    long start = System.currentTimeMillis();
+    assertTrue(waiter.await(100).isEmpty());
+    assertTrue(System.currentTimeMillis() - start >= 100);
+    notifier.release(waiter);
+  }
+
+  public void testMaxWaiters() throws Exception {
+    ActivityStreamNotifier notifier = new ActivityStreamNotifier(2);
+    ActivityStreamNotifier.Waiter first = notifier.register("john", EnumSet.of(ActivityRefType.FEED));
+    ActivityStreamNotifier.Waiter second = notifier.register("john", EnumSet.of(ActivityRefType.FEED));
+    assertNull(notifier.register("mary", EnumSet.of(ActivityRefType.FEED)));
+    assertEquals(1, notifier.getRejectedCount());
+
+    notifier.release(first);
+    //released twice, counted once
+    notifier.release(first);
+    ActivityStreamNotifier.Waiter third = notifier.register("mary", EnumSet.of(ActivityRefType.FEED));
+    assertNotNull(third);
+    assertEquals(2, notifier.getWaiterCount());
+
+    notifier.release(second);
+    notifier.release(third);
+    assertEquals(0, notifier.getWaiterCount());
+  }
+
+}
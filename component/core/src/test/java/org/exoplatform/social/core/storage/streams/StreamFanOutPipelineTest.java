@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class StreamFanOutPipelineTest extends TestCase {
+
+  private StreamFanOutPipeline pipeline;
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (pipeline != null) {
+      pipeline.stop();
+    }
+    super.tearDown();
+  }
+
+  public void testLaneOfIsStable() throws Exception {
+    pipeline = new StreamFanOutPipeline(4, 10, 10, 10);
+    for (int i = 0; i < 100; i++) {
+      String key = "identity" + i;
+      int lane = pipeline.laneOf(key);
+      assertTrue(lane >= 0 && lane < 4);
+      assertEquals(lane, pipeline.laneOf(key));
+    }
+    assertTrue(pipeline.laneOf(null) >= 0);
+  }
+
+  public void testOrderingOnLane() throws Exception {
+    pipeline = new StreamFanOutPipeline(2, 1000, 10, 10);
+    final List<Integer> done = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch latch = new CountDownLatch(200);
+    int lane = pipeline.laneOf("john");
+    for (int i = 0; i < 200; i++) {
+      final int index = i;
+      pipeline.submit(lane, new Runnable() {
+        public void run() {
+          done.add(index);
+          latch.countDown();
+        }
+      });
+    }
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    for (int i = 0; i < 200; i++) {
+      assertEquals(Integer.valueOf(i), done.get(i));
+    }
+    assertEquals(200, pipeline.getSubmittedCount());
+  }
+
+  public void testBackpressure() throws Exception {
+    pipeline = new StreamFanOutPipeline(1, 1, 10, 10);
+    final CountDownLatch blocker = new CountDownLatch(1);
+    final CountDownLatch latch = new CountDownLatch(2);
+    Runnable task = new Runnable() {
+      public void run() {
+        try {
+          blocker.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        latch.countDown();
+      }
+    };
+
+    //first one is running, second one is queued
+    pipeline.submit(0, task);
+    pipeline.submit(0, task);
+
+    //the lane stays full, the task is run for the submitter, on its own thread
+    final Thread submitter = Thread.currentThread();
+    final AtomicReference<Thread> runner = new AtomicReference<Thread>();
+    pipeline.submit(0, new Runnable() {
+      public void run() {
+        runner.set(Thread.currentThread());
+      }
+    });
+    assertNotNull(runner.get());
+    assertNotSame(submitter, runner.get());
+    assertFalse(runner.get().isAlive());
+    assertEquals(1, pipeline.getThrottledCount());
+
+    blocker.countDown();
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+  }
+
+  public void testMetrics() throws Exception {
+    pipeline = new StreamFanOutPipeline(2, 10, 10, 10);
+    final CountDownLatch latch = new CountDownLatch(2);
+    pipeline.submit(0, new Runnable() {
+      public void run() {
+        latch.countDown();
+      }
+    });
+    pipeline.submit(1, new Runnable() {
+      public void run() {
+        latch.countDown();
+        throw new IllegalStateException("expected");
+      }
+    });
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    pipeline.stop();
+
+    assertEquals(2, pipeline.getSubmittedCount());
+    assertEquals(1, pipeline.getCompletedCount());
+    assertEquals(1, pipeline.getFailedCount());
+    assertEquals(0, pipeline.getQueueDepth());
+    assertTrue(pipeline.getMaxLatency() >= pipeline.getAverageLatency());
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.core.storage.streams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import junit.framework.TestCase;
+
+public class StripedLockTest extends TestCase {
+
+  public void testSize() throws Exception {
+    assertEquals(1, new StripedLock(1).size());
+    assertEquals(64, new StripedLock(64).size());
+    assertEquals(128, new StripedLock(65).size());
+    try {
+      new StripedLock(0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testSameKeySameLock() throws Exception {
+    StripedLock locks = new StripedLock(16);
+    assertSame(locks.get("/soc:providers/soc:organization/soc:john/soc:streams/soc:all"),
+               locks.get("/soc:providers/soc:organization/soc:john/soc:streams/soc:all"));
+    assertSame(locks.get(null), locks.get(null));
+
+    Set<Lock> used = new HashSet<Lock>();
+    for (int i = 0; i < 1000; i++) {
+      used.add(locks.get("identity" + i));
+    }
+    //the keys are spread on all the stripes
+    assertEquals(16, used.size());
+  }
+
+  public void testLocksOfKeys() throws Exception {
+    StripedLock locks = new StripedLock(16);
+    List<String> keys = new ArrayList<String>();
+    for (int i = 0; i < 100; i++) {
+      keys.add("identity" + i);
+    }
+    List<Lock> got = locks.getAll(keys);
+    //each stripe once, whatever the number of keys sharing it
+    assertEquals(16, got.size());
+    assertEquals(16, new HashSet<Lock>(got).size());
+
+    //the same order for the same stripes given in another order
+    List<String> reversed = new ArrayList<String>(keys);
+    Collections.reverse(reversed);
+    assertEquals(got, locks.getAll(reversed));
+
+    List<Lock> two = locks.getAll(Arrays.asList("mary:FEED", "mary:FEED", "john:FEED"));
+    assertTrue(two.contains(locks.get("mary:FEED")));
+    assertTrue(two.contains(locks.get("john:FEED")));
+    assertEquals(locks.get("mary:FEED") == locks.get("john:FEED") ? 1 : 2, two.size());
+  }
+
+  public void testMutualExclusion() throws Exception {
+    final StripedLock locks = new StripedLock(8);
+    final AtomicInteger inside = new AtomicInteger();
+    final AtomicInteger maxInside = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(8);
+    for (int i = 0; i < 8; i++) {
+      new Thread() {
+        public void run() {
+          for (int j = 0; j < 200; j++) {
+            Lock lock = locks.get("mary:FEED");
+            lock.lock();
+            try {
+              maxInside.set(Math.max(maxInside.get(), inside.incrementAndGet()));
+              inside.decrementAndGet();
+            } finally {
+              lock.unlock();
+            }
+          }
+          latch.countDown();
+        }
+      }.start();
+    }
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(1, maxInside.get());
+  }
+}
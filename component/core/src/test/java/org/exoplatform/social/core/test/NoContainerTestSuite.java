@@ -19,17 +19,25 @@ package org.exoplatform.social.core.test;
 import org.exoplatform.social.core.activity.filter.ActivityIteratorTest;
 import org.exoplatform.social.core.feature.ActiviyBuilderWhereTest;
 import org.exoplatform.social.core.identity.IdentityResultTest;
+import org.exoplatform.social.core.identity.MentionIndexTest;
 import org.exoplatform.social.core.identity.model.GlobalIdTest;
 import org.exoplatform.social.core.identity.model.IdentityTest;
 import org.exoplatform.social.core.image.ImageUtilsTest;
 import org.exoplatform.social.core.processor.ActivityResourceBundlePluginTest;
 import org.exoplatform.social.core.processor.I18NActivityProcessorTest;
+import org.exoplatform.social.core.relationship.RelationshipGraphTest;
 import org.exoplatform.social.core.relationship.RelationshipTest;
 import org.exoplatform.social.core.space.SpaceUtilsTest;
 import org.exoplatform.social.core.storage.StorageUtilsTest;
+import org.exoplatform.social.core.storage.cache.SpaceMembershipIndexTest;
+import org.exoplatform.social.core.storage.cache.SuggestionStoreTest;
+import org.exoplatform.social.core.storage.impl.ProcessedActivityCacheTest;
 import org.exoplatform.social.core.storage.query.ExpressionConstructorTestCase;
 import org.exoplatform.social.core.storage.query.WhereExpressionTypesafetyTestCase;
 import org.exoplatform.social.core.storage.query.WhereExpressionValuesTestCase;
+import org.exoplatform.social.core.storage.streams.ActivityStreamNotifierTest;
+import org.exoplatform.social.core.storage.streams.StreamFanOutPipelineTest;
+import org.exoplatform.social.core.storage.streams.StripedLockTest;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
@@ -44,14 +52,22 @@ import org.junit.runners.Suite.SuiteClasses;
   ActivityResourceBundlePluginTest.class,
   I18NActivityProcessorTest.class,
   RelationshipTest.class,
+  RelationshipGraphTest.class,
   SpaceUtilsTest.class,
   StorageUtilsTest.class,
+  SpaceMembershipIndexTest.class,
+  SuggestionStoreTest.class,
+  ProcessedActivityCacheTest.class,
   ExpressionConstructorTestCase.class,
   WhereExpressionTypesafetyTestCase.class,
   WhereExpressionValuesTestCase.class,
   ActiviyBuilderWhereTest.class,
   ActivityIteratorTest.class,
-  IdentityResultTest.class
+  IdentityResultTest.class,
+  MentionIndexTest.class,
+  StreamFanOutPipelineTest.class,
+  StripedLockTest.class,
+  ActivityStreamNotifierTest.class
   })
 public class NoContainerTestSuite {
   
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.common.service.thread.SocialThreadFactory;
+
+/**
+ * Gets the width and height of the images of the link previews. The images are probed in parallel by a bounded pool
+ * of threads, and only their first bytes are read: the size is taken from the PNG, GIF, JPEG and BMP headers, or
+ * from the image readers of ImageIO for the other formats. The sizes are kept by URL, the least recently used are
+ * removed beyond the maximum number of sizes. The images which could not be read are only probed again after a
+ * short delay, a network error being often transient.
+ *
+ * @since 4.1.0
+ */
+final class ImageSizeProber {
+
+  private static final Log LOG = ExoLogger.getLogger(ImageSizeProber.class);
+
+  /**
+   * The maximum number of bytes read from an image.
+   */
+  static final int MAX_HEADER_SIZE = 128 * 1024;
+
+  private static final int POOL_SIZE = 4;
+
+  private static final int QUEUE_SIZE = 100;
+
+  private static final int CONNECTION_TIMEOUT = 3000;
+
+  private static final int MAX_SIZES = 2000;
+
+  private static final long FAILURE_TTL = 60 * 1000L;
+
+  private static final ImageSizeProber INSTANCE = new ImageSizeProber(POOL_SIZE, QUEUE_SIZE, CONNECTION_TIMEOUT,
+                                                                      MAX_SIZES, FAILURE_TTL);
+
+  private final ThreadPoolExecutor executor;
+
+  private final int connectionTimeout;
+
+  private final long failureTtl;
+
+  private final Map<String, int[]> sizes;
+
+  /** The time until which the images which could not be read are not probed again, by URL. */
+  private final Map<String, Long> failures;
+
+  /**
+   * @param poolSize the number of threads probing the images
+   * @param queueSize the maximum number of images waiting for a thread, the next ones are not probed
+   * @param connectionTimeout the connect and read timeout in milliseconds
+   * @param maxSizes the maximum number of sizes kept, and of images which could not be read
+   * @param failureTtl the time in milliseconds during which an image which could not be read is not probed again
+   */
+  ImageSizeProber(int poolSize, int queueSize, int connectionTimeout, int maxSizes, long failureTtl) {
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(queueSize),
+        new SocialThreadFactory(null, "SocialLinkShareImages", true, Thread.NORM_PRIORITY));
+    this.executor.allowCoreThreadTimeOut(true);
+    this.connectionTimeout = connectionTimeout;
+    this.failureTtl = failureTtl;
+    this.sizes = newLeastRecentlyUsedMap(maxSizes);
+    this.failures = newLeastRecentlyUsedMap(maxSizes);
+  }
+
+  private static <V> Map<String, V> newLeastRecentlyUsedMap(final int maxSize) {
+    return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+        return size() > maxSize;
+      }
+    });
+  }
+
+  static ImageSizeProber getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Gets the sizes of images, waiting at most until the deadline. The images probed after the deadline are kept for
+   * the next calls.
+   *
+   * @param urls the URLs of the images
+   * @param timeout the maximum time to wait for all the images in milliseconds
+   * @return the sizes {width, height} in the order of the URLs, null for the images whose size is not known
+   */
+  List<int[]> probe(List<String> urls, long timeout) {
+    long deadline = System.currentTimeMillis() + timeout;
+    List<int[]> result = new ArrayList<int[]>(urls.size());
+    List<Future<int[]>> futures = new ArrayList<Future<int[]>>(urls.size());
+    for (final String url : urls) {
+      int[] size = sizes.get(url);
+      Future<int[]> future = null;
+      if (size == null && !hasFailed(url)) {
+        try {
+          future = executor.submit(new Callable<int[]>() {
+            public int[] call() {
+              return probe(url);
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          LOG.debug("Too many images to probe, skipping " + url);
+        }
+      }
+      result.add(size);
+      futures.add(future);
+    }
+    boolean interrupted = false;
+    for (int i = 0; i < futures.size(); i++) {
+      Future<int[]> future = futures.get(i);
+      if (future == null) {
+        continue;
+      }
+      try {
+        if (!interrupted) {
+          result.set(i, future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+        }
+      } catch (TimeoutException e) {
+        LOG.debug("Timeout when probing " + urls.get(i));
+      } catch (ExecutionException e) {
+        LOG.debug("Failed to probe " + urls.get(i), e.getCause());
+      } catch (InterruptedException e) {
+        interrupted = true;
+        Thread.currentThread().interrupt();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return true when the image could not be read a short time ago
+   */
+  private boolean hasFailed(String url) {
+    Long until = failures.get(url);
+    if (until == null) {
+      return false;
+    }
+    if (until > System.currentTimeMillis()) {
+      return true;
+    }
+    failures.remove(url);
+    return false;
+  }
+
+  private int[] probe(String url) {
+    int[] size = null;
+    try {
+      URLConnection connection = new URL(url).openConnection();
+      connection.setConnectTimeout(connectionTimeout);
+      connection.setReadTimeout(connectionTimeout);
+      connection.setRequestProperty("Range", "bytes=0-" + (MAX_HEADER_SIZE - 1));
+      try {
+        InputStream in = connection.getInputStream();
+        try {
+          size = readSize(in);
+        } finally {
+          in.close();
+        }
+      } finally {
+        // does not keep the connection, the rest of the image would be read first
+        if (connection instanceof HttpURLConnection) {
+          ((HttpURLConnection) connection).disconnect();
+        }
+      }
+    } catch (IOException e) {
+      LOG.debug("Failed to read the image " + url + ": " + e.getMessage());
+    }
+    if (size != null) {
+      sizes.put(url, size);
+    } else {
+      failures.put(url, System.currentTimeMillis() + failureTtl);
+    }
+    return size;
+  }
+
+  /**
+   * Reads the size of an image from its first {@link #MAX_HEADER_SIZE} bytes.
+   *
+   * @param in the image
+   * @return the size {width, height}, null when the format is unknown or the header is too long
+   * @throws IOException if the image cannot be read
+   */
+  static int[] readSize(InputStream in) throws IOException {
+    BufferedInputStream image = new BufferedInputStream(new LimitedInputStream(in, MAX_HEADER_SIZE), 64);
+    image.mark(MAX_HEADER_SIZE);
+    int[] size = readHeaderSize(new DataInputStream(image));
+    if (size != null) {
+      return size;
+    }
+    image.reset();
+    ImageInputStream imageInput = new MemoryCacheImageInputStream(image);
+    try {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(imageInput, true, true);
+        return new int[] {reader.getWidth(0), reader.getHeight(0)};
+      } catch (IOException e) {
+        return null;
+      } finally {
+        reader.dispose();
+      }
+    } finally {
+      imageInput.close();
+    }
+  }
+
+  private static int[] readHeaderSize(DataInputStream in) throws IOException {
+    try {
+      int first = in.readUnsignedByte();
+      int second = in.readUnsignedByte();
+      if (first == 0x89 && second == 'P') {
+        // PNG: signature, IHDR chunk length and type, width, height
+        in.skipBytes(14);
+        return new int[] {in.readInt(), in.readInt()};
+      } else if (first == 'G' && second == 'I') {
+        // GIF: signature and version, little endian logical screen width and height
+        in.skipBytes(4);
+        return new int[] {readLittleEndianShort(in), readLittleEndianShort(in)};
+      } else if (first == 'B' && second == 'M') {
+        // BMP: file header, DIB header size, little endian width and height, the height is negative when top-down
+        in.skipBytes(16);
+        return new int[] {Math.abs(readLittleEndianInt(in)), Math.abs(readLittleEndianInt(in))};
+      } else if (first == 0xFF && second == 0xD8) {
+        return readJpegSize(in);
+      }
+      return null;
+    } catch (IOException e) {
+      // the header is truncated or longer than the bytes read
+      return null;
+    }
+  }
+
+  private static int[] readJpegSize(DataInputStream in) throws IOException {
+    while (true) {
+      if (in.readUnsignedByte() != 0xFF) {
+        return null;
+      }
+      int marker = in.readUnsignedByte();
+      while (marker == 0xFF) {
+        marker = in.readUnsignedByte();
+      }
+      if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+        // no segment
+        continue;
+      }
+      if (marker == 0xD9 || marker == 0xDA) {
+        // end of image or start of scan before any frame
+        return null;
+      }
+      int length = in.readUnsignedShort();
+      if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+        // start of frame: sample precision, height, width
+        in.skipBytes(1);
+        int height = in.readUnsignedShort();
+        return new int[] {in.readUnsignedShort(), height};
+      }
+      if (length < 2 || in.skipBytes(length - 2) != length - 2) {
+        return null;
+      }
+    }
+  }
+
+  private static int readLittleEndianShort(DataInputStream in) throws IOException {
+    return in.readUnsignedByte() | (in.readUnsignedByte() << 8);
+  }
+
+  private static int readLittleEndianInt(DataInputStream in) throws IOException {
+    return readLittleEndianShort(in) | (readLittleEndianShort(in) << 16);
+  }
+
+}
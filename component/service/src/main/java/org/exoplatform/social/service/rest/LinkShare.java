@@ -16,18 +16,21 @@
  */
 package org.exoplatform.social.service.rest;
 
-import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.imageio.ImageIO;
 import javax.xml.bind.annotation.XmlRootElement;
 
 import org.apache.xerces.xni.Augmentations;
@@ -121,6 +124,15 @@ public class LinkShare extends DefaultFilter {
   //if width="55pt" => with="55" ~ width="55px" (not correct but can be accepted) 
   private static final int MIN_WIDTH = 55;
   private static final int MIN_HEIGHT = 55;
+  //maximum number of images probed in a page and time to wait for their sizes in milliseconds
+  private static final int MAX_PROBED_IMAGES = 20;
+  private static final long PROBE_TIMEOUT = 5000;
+  //connect and read timeout in milliseconds and maximum number of bytes read from a page
+  private static final int CONNECTION_TIMEOUT = 10000;
+  private static final int MAX_PAGE_SIZE = 1024 * 1024;
+  //width or height attribute in pixel
+  private static final Pattern SIZE_ATTRIBUTE_PATTERN = Pattern.compile("\\s*(\\d+)\\s*(px|pt)?\\s*",
+                                                                        Pattern.CASE_INSENSITIVE);
   //maxium description length = 250 characters
   private static final int MAX_DESCRIPTION = 500;
   //default lang
@@ -130,6 +142,9 @@ public class LinkShare extends DefaultFilter {
   private String   description;
   private String imageSrc;
   private List<String> images;
+  //images found in img tags, with their size when given by the width and height attributes
+  private List<String> imageCandidates;
+  private List<int[]> imageCandidateSizes;
   private ExoMedia mediaObject;
   //Collections of description with key as lang
   private HashMap<String, String> descriptions;
@@ -301,9 +316,11 @@ public class LinkShare extends DefaultFilter {
   /**
    * Gets information of the provided link by using remover filter,
    * using call back filter methods to get desired information.
- * @param encoding 
+   * @param connection the connection to the link
+   * @param page the beginning of the page when already read, null otherwise
+   * @param encoding 
    */
-  private void get(String encoding) throws Exception {
+  private void get(URLConnection connection, InputStream page, String encoding) throws Exception {
     //Creates element remover filter
     ElementRemover remover = new ElementRemover();
     remover.acceptElement("head", null);
@@ -327,9 +344,13 @@ public class LinkShare extends DefaultFilter {
     parser.setProperty("http://cyberneko.org/html/properties/default-encoding", "UTF-8");
     parser.setProperty("http://cyberneko.org/html/properties/filters", filter);
     parser.setDocumentHandler(this);
-    XMLInputSource source = new XMLInputSource(null, link, null);
-    source.setEncoding(encoding);
+    boolean opened = page == null;
     try {
+      if (opened) {
+        page = new LimitedInputStream(connection.getInputStream(), MAX_PAGE_SIZE);
+      }
+      XMLInputSource source = new XMLInputSource(null, link, null, page, encoding);
+      source.setEncoding(encoding);
       parser.parse(source);
     } catch (NullPointerException ne) {
       ExoLogger.getLogger(LinkShare.class)
@@ -340,6 +361,37 @@ public class LinkShare extends DefaultFilter {
       this.title = link;
     } catch (Exception e) {
       this.title = link;
+    } finally {
+      if (opened) {
+        close(null, page);
+      }
+    }
+    if (imageSrc == null) {
+      probeImages();
+    }
+  }
+
+  /**
+   * Adds to the images the images found in img tags which are large enough. The sizes not given by the attributes
+   * are probed in parallel.
+   */
+  private void probeImages() {
+    if (imageCandidates == null) {
+      return;
+    }
+    List<String> probedImages = new ArrayList<String>();
+    for (int i = 0; i < imageCandidates.size(); i++) {
+      if (imageCandidateSizes.get(i) == null) {
+        probedImages.add(imageCandidates.get(i));
+      }
+    }
+    Iterator<int[]> probedSizes = ImageSizeProber.getInstance().probe(probedImages, PROBE_TIMEOUT).iterator();
+    for (int i = 0; i < imageCandidates.size(); i++) {
+      int[] size = imageCandidateSizes.get(i) != null ? imageCandidateSizes.get(i) : probedSizes.next();
+      if (size != null && size[0] > MIN_WIDTH && size[1] > MIN_HEIGHT) {
+        if (images == null) images = new ArrayList<String>();
+        images.add(imageCandidates.get(i));
+      }
     }
   }
   
@@ -378,17 +430,42 @@ public class LinkShare extends DefaultFilter {
     
     // if there is no media object, processes link to get page metadata
     if(linkShare.mediaObject == null) {
-      String mimeType = org.exoplatform.social.service.rest.Util.getMimeTypeOfURL(link);
-      if(mimeType.toLowerCase().startsWith(IMAGE_MIME_TYPE)){
-        linkShare.images = new ArrayList<String>(0);
-        linkShare.images.add(link);
-        linkShare.description = "";
-      } else if(mimeType.toLowerCase().startsWith(HTML_MIME_TYPE)){
-        String encoding = (mimeType.contains("charset=")) ? mimeType.split("charset=")[1] : "UTF-8"; 
-        linkShare.get(encoding);
-      } else {
-        linkShare.images = new ArrayList<String>(0);
-        linkShare.description = "";
+      //the page is read once, by a connection with timeouts
+      URLConnection connection = null;
+      InputStream page = null;
+      String mimeType = "";
+      try {
+        connection = new URL(link).openConnection();
+        connection.setConnectTimeout(CONNECTION_TIMEOUT);
+        connection.setReadTimeout(CONNECTION_TIMEOUT);
+        mimeType = connection.getContentType();
+        if (mimeType == null) {
+          mimeType = URLConnection.guessContentTypeFromName(link);
+        }
+        if (mimeType == null) {
+          page = new BufferedInputStream(new LimitedInputStream(connection.getInputStream(), MAX_PAGE_SIZE));
+          mimeType = URLConnection.guessContentTypeFromStream(page);
+        }
+        if (mimeType == null) {
+          mimeType = "";
+        }
+      } catch (IOException e) {
+        mimeType = "";
+      }
+      try {
+        if(mimeType.toLowerCase().startsWith(IMAGE_MIME_TYPE)){
+          linkShare.images = new ArrayList<String>(0);
+          linkShare.images.add(link);
+          linkShare.description = "";
+        } else if(mimeType.toLowerCase().startsWith(HTML_MIME_TYPE)){
+          String encoding = (mimeType.contains("charset=")) ? mimeType.split("charset=")[1] : "UTF-8"; 
+          linkShare.get(connection, page, encoding);
+        } else {
+          linkShare.images = new ArrayList<String>(0);
+          linkShare.description = "";
+        }
+      } finally {
+        close(connection, page);
       }
       
       if ((linkShare.title == null) || (linkShare.title.trim().length() == 0)) linkShare.title = link;
@@ -424,6 +501,36 @@ public class LinkShare extends DefaultFilter {
     return linkShare;
   }
   
+  /**
+   * Gets a copy of this preview for a link to the same page, the link
+   * is kept as requested.
+   * 
+   * @param link the requested link
+   * @return the copy
+   * @since 4.1.0
+   */
+  LinkShare copy(String link) {
+    LinkShare linkShare = new LinkShare();
+    if (!(link.toLowerCase().startsWith(HTTP_PROTOCOL) || link.toLowerCase().startsWith(HTTPS_PROTOCOL))) {
+      link = HTTP_PROTOCOL + link;
+    }
+    linkShare.link = link;
+    linkShare.title = title;
+    linkShare.description = description;
+    linkShare.imageSrc = imageSrc;
+    linkShare.images = images == null ? null : new ArrayList<String>(images);
+    linkShare.mediaObject = mediaObject;
+    linkShare.mediumType = mediumType;
+    linkShare.mediaSrc = mediaSrc;
+    linkShare.mediaType = mediaType;
+    linkShare.mediaTitle = mediaTitle;
+    linkShare.mediaArtist = mediaArtist;
+    linkShare.mediaAlbum = mediaAlbum;
+    linkShare.mediaHeight = mediaHeight;
+    linkShare.mediaWidth = mediaWidth;
+    return linkShare;
+  }
+
   /**
    * filter method is called back when scanning meets start element tag
    */
@@ -554,10 +661,19 @@ public class LinkShare extends DefaultFilter {
       String src = attributes.getValue("src");
       if (src == null) return;
       
-      if (isAcceptableImg(src)) {
-        src = getAbsLink(src);
-        if (images == null) images = new ArrayList<String>();
-        images.add(src);
+      //only the images with an absolute link are probed
+      try {
+        new URL(src);
+      } catch (MalformedURLException e) {
+        return;
+      }
+      if (imageCandidates == null) {
+        imageCandidates = new ArrayList<String>();
+        imageCandidateSizes = new ArrayList<int[]>();
+      }
+      if (imageCandidates.size() < MAX_PROBED_IMAGES) {
+        imageCandidates.add(getAbsLink(src));
+        imageCandidateSizes.add(getSizeAttributes(attributes));
       }
     }
   }
@@ -574,6 +690,25 @@ public class LinkShare extends DefaultFilter {
     }
   }
   
+  /**
+   * Closes the connection to a link without reading the rest of the page.
+   *
+   * @param connection the connection, null when it could not be opened
+   * @param page the page read, null when it was not read
+   */
+  private static void close(URLConnection connection, InputStream page) {
+    if (page != null) {
+      try {
+        page.close();
+      } catch (IOException e) {
+        LOG.debug("Failed to close the link: " + e.getMessage());
+      }
+    }
+    if (connection instanceof HttpURLConnection) {
+      ((HttpURLConnection) connection).disconnect();
+    }
+  }
+
   /**
    * Gets absolute link from the provided link
    * @param base
@@ -641,17 +776,27 @@ public class LinkShare extends DefaultFilter {
     }
   }
   
-  private boolean isAcceptableImg(String src) {
-    BufferedImage img = null;
+  /**
+   * Gets the size of an image from the width and height attributes of its img tag.
+   *
+   * @param attributes the attributes of the img tag
+   * @return the size {width, height}, null when the attributes do not give it in pixel
+   */
+  private int[] getSizeAttributes(XMLAttributes attributes) {
+    String width = attributes.getValue("width");
+    String height = attributes.getValue("height");
+    if (width == null || height == null) {
+      return null;
+    }
+    Matcher widthMatcher = SIZE_ATTRIBUTE_PATTERN.matcher(width);
+    Matcher heightMatcher = SIZE_ATTRIBUTE_PATTERN.matcher(height);
+    if (!widthMatcher.matches() || !heightMatcher.matches()) {
+      return null;
+    }
     try {
-       img = ImageIO.read(new URL(src));
-       int width = img.getWidth();
-       int height = img.getHeight();
-       return (width > MIN_WIDTH && height > MIN_HEIGHT);
-    } catch (MalformedURLException e) {
-      return false;
-    } catch (IOException e) {
-      return false;
+      return new int[] {Integer.parseInt(widthMatcher.group(1)), Integer.parseInt(heightMatcher.group(1))};
+    } catch (NumberFormatException e) {
+      return null;
     }
   }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.exoplatform.social.common.service.thread.SocialThreadFactory;
+
+/**
+ * The previews of the links shared, kept by normalized link and lang for a time to live. The least recently used
+ * previews are removed beyond the maximum number of previews.
+ * <p>
+ * The pages are fetched by a bounded pool of threads, a page requested again while it is fetched is fetched once.
+ * A caller which does not wait for the end of the fetch gets the preview by a later call.
+ *
+ * @since 4.1.0
+ */
+final class LinkShareCache {
+
+  private static final int POOL_SIZE = 4;
+
+  private static final int QUEUE_SIZE = 100;
+
+  private final ThreadPoolExecutor executor;
+
+  private final long timeToLive;
+
+  private final Map<String, Entry> previews;
+
+  private final ConcurrentMap<String, FutureTask<LinkShare>> fetches =
+      new ConcurrentHashMap<String, FutureTask<LinkShare>>();
+
+  /**
+   * @param maxSize the maximum number of previews kept
+   * @param timeToLive the time to keep a preview in milliseconds
+   */
+  LinkShareCache(final int maxSize, long timeToLive) {
+    this.executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+        new SocialThreadFactory(null, "SocialLinkShare", true, Thread.NORM_PRIORITY));
+    this.executor.allowCoreThreadTimeOut(true);
+    this.timeToLive = timeToLive;
+    this.previews = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxSize;
+      }
+    });
+  }
+
+  /**
+   * Gets the preview of a link, fetched when it is not kept.
+   *
+   * @param link the link
+   * @param lang the lang of the description, null for the default one
+   * @param timeout the maximum time to wait for the preview in milliseconds
+   * @return the preview, null when the link is not valid
+   * @throws TimeoutException when the preview is still fetched after the timeout, it is kept for the next calls
+   * @throws Exception when the page cannot be fetched
+   */
+  LinkShare get(final String link, final String lang, long timeout) throws Exception {
+    final String key = getKey(link, lang);
+    if (key == null) {
+      return load(link, lang);
+    }
+    Entry entry = previews.get(key);
+    if (entry != null && entry.expirationTime > System.currentTimeMillis()) {
+      return entry.linkShare.copy(link);
+    }
+    FutureTask<LinkShare> fetch = fetches.get(key);
+    if (fetch == null) {
+      FutureTask<LinkShare> task = new FutureTask<LinkShare>(new Callable<LinkShare>() {
+        public LinkShare call() throws Exception {
+          try {
+            LinkShare linkShare = load(link, lang);
+            if (linkShare != null) {
+              previews.put(key, new Entry(linkShare, System.currentTimeMillis() + timeToLive));
+            }
+            return linkShare;
+          } finally {
+            fetches.remove(key);
+          }
+        }
+      });
+      fetch = fetches.putIfAbsent(key, task);
+      if (fetch == null) {
+        fetch = task;
+        try {
+          executor.execute(task);
+        } catch (RejectedExecutionException e) {
+          // all the threads are busy, the caller fetches the page
+          task.run();
+        }
+      }
+    }
+    try {
+      LinkShare linkShare = fetch.get(timeout, TimeUnit.MILLISECONDS);
+      return linkShare == null ? null : linkShare.copy(link);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  int size() {
+    return previews.size();
+  }
+
+  /**
+   * Fetches the preview of a link.
+   */
+  private static LinkShare load(String link, String lang) throws Exception {
+    return lang != null ? LinkShare.getInstance(link, lang) : LinkShare.getInstance(link);
+  }
+
+  /**
+   * Gets the key of a preview: the link without fragment, with the protocol and host in lower case, the default port
+   * removed and the root path added.
+   *
+   * @return the key, null when the link is not valid
+   */
+  static String getKey(String link, String lang) {
+    if (link == null || !Util.isValidURL(link)) {
+      return null;
+    }
+    link = link.trim();
+    String lowerCaseLink = link.toLowerCase();
+    if (!(lowerCaseLink.startsWith("http://") || lowerCaseLink.startsWith("https://"))) {
+      link = "http://" + link;
+    }
+    URL url;
+    try {
+      url = new URL(link);
+    } catch (MalformedURLException e) {
+      return null;
+    }
+    StringBuilder key = new StringBuilder();
+    key.append(url.getProtocol().toLowerCase()).append("://").append(url.getHost().toLowerCase());
+    if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+      key.append(':').append(url.getPort());
+    }
+    key.append(url.getFile().length() == 0 ? "/" : url.getFile());
+    return key.append(' ').append(lang).toString();
+  }
+
+  private static final class Entry {
+
+    private final LinkShare linkShare;
+
+    private final long expirationTime;
+
+    private Entry(LinkShare linkShare, long expirationTime) {
+      this.linkShare = linkShare;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+}
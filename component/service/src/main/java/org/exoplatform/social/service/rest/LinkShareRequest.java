@@ -25,6 +25,7 @@ package org.exoplatform.social.service.rest;
  */
 public class LinkShareRequest {
   private String _link, _lang;
+  private boolean _async;
   /**
    * sets link
    * @param link
@@ -53,6 +54,23 @@ public class LinkShareRequest {
   public String getLang() {
     return _lang;
   }
+  /**
+   * sets if the preview can be pending
+   * @param async
+   * @since 4.1.0
+   */
+  public void setAsync(boolean async) {
+    _async = async;
+  }
+  /**
+   * gets if the preview can be pending, the response then has the status 202
+   * until the page is fetched
+   * @return async
+   * @since 4.1.0
+   */
+  public boolean isAsync() {
+    return _async;
+  }
   /**
    * verifies if this request is valid
    * @return true or false
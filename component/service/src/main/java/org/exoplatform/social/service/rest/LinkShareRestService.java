@@ -16,6 +16,8 @@
  */
 package org.exoplatform.social.service.rest;
 
+import java.util.concurrent.TimeoutException;
+
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -25,6 +27,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
+import javax.xml.bind.annotation.XmlRootElement;
 
 import org.exoplatform.services.rest.resource.ResourceContainer;
 
@@ -35,6 +38,16 @@ import org.exoplatform.services.rest.resource.ResourceContainer;
  */
 @Path("social/linkshare")
 public class LinkShareRestService implements ResourceContainer {
+  
+  //previews kept for 10 minutes
+  private static final int MAX_PREVIEWS = 1000;
+  private static final long PREVIEW_TIME_TO_LIVE = 10 * 60 * 1000L;
+  //time to wait for a preview, before answering it is pending when the request is asynchronous
+  private static final long PREVIEW_TIMEOUT = 60 * 1000L;
+  private static final long ASYNC_PREVIEW_TIMEOUT = 1000L;
+
+  private final LinkShareCache linkShareCache = new LinkShareCache(MAX_PREVIEWS, PREVIEW_TIME_TO_LIVE);
+
   /**
    * constructor
    */
@@ -44,6 +57,10 @@ public class LinkShareRestService implements ResourceContainer {
 
   /**
    * Gets the content of the link by the parameter passed to request.
+   * The previews are kept for the next requests of the same link. When the
+   * request is asynchronous and the page is not fetched yet, the response
+   * has the status 202 and tells the preview is pending: the same request
+   * sent later gets the preview.
    * 
    * @param uriInfo The request URI information.
    * @param format The format of the returned result, for example, JSON or XML.
@@ -68,24 +85,66 @@ public class LinkShareRestService implements ResourceContainer {
       throw new WebApplicationException(Response.Status.BAD_REQUEST);
     }
     LinkShare linkShare = null;
-    linkShare = getLinkShare(linkShareRequest.getLink(), linkShareRequest.getLang());
+    try {
+      linkShare = getLinkShare(linkShareRequest.getLink(), linkShareRequest.getLang(),
+                               linkShareRequest.isAsync() ? ASYNC_PREVIEW_TIMEOUT : PREVIEW_TIMEOUT);
+    } catch (TimeoutException e) {
+      if (!linkShareRequest.isAsync()) {
+        throw new WebApplicationException(e, Response.Status.SERVICE_UNAVAILABLE);
+      }
+      return Util.getResponse(new PendingLinkShare(linkShareRequest.getLink()), uriInfo, mediaType,
+                              Response.Status.ACCEPTED);
+    }
     return Util.getResponse(linkShare, uriInfo, mediaType, Response.Status.OK);
   }
   
-  private LinkShare getLinkShare(String link, String lang) throws Exception {
+  private LinkShare getLinkShare(String link, String lang, long timeout) throws Exception {
     if (link == null || link.length() == 0) {
       throw new WebApplicationException(Response.Status.BAD_REQUEST);
     }
     LinkShare ls;
     try {
-      if (lang != null) {
-        ls = LinkShare.getInstance(link, lang);
-      } else {
-        ls = LinkShare.getInstance(link);
-      }
+      ls = linkShareCache.get(link, lang, timeout);
+    } catch (TimeoutException ex) {
+      throw ex;
     } catch(Exception ex) {
       throw new WebApplicationException(ex, Response.Status.INTERNAL_SERVER_ERROR);
     }
     return ls;
   }
+
+  /**
+   * The response to an asynchronous request whose preview is not fetched yet.
+   * 
+   * @since 4.1.0
+   */
+  @XmlRootElement
+  public static class PendingLinkShare {
+
+    private String link;
+
+    public PendingLinkShare() {
+
+    }
+
+    public PendingLinkShare(String link) {
+      this.link = link;
+    }
+
+    /**
+     * gets the requested link
+     * @return link
+     */
+    public String getLink() {
+      return link;
+    }
+
+    /**
+     * tells the preview is pending
+     * @return true
+     */
+    public boolean isPending() {
+      return true;
+    }
+  }
 }
@@ -145,11 +145,11 @@ public class PeopleRestService implements ResourceContainer{
     filter.setPosition("");
     filter.setSkills("");
     filter.setExcludedIdentityList(excludedIdentityList);
-    List<Identity> identities = Arrays.asList(getIdentityManager().getIdentitiesByProfileFilter(
-                                  OrganizationIdentityProvider.NAME, filter, false).load(0, (int)SUGGEST_LIMIT));
-
     Identity currentIdentity = getIdentityManager().getOrCreateIdentity(
                                  OrganizationIdentityProvider.NAME, currentUser, false);
+    filter.setViewerIdentity(currentIdentity);
+    List<Identity> identities = Arrays.asList(getIdentityManager().getIdentitiesByProfileFilter(
+                                  OrganizationIdentityProvider.NAME, filter, false).load(0, (int)SUGGEST_LIMIT));
 
     Space space = getSpaceService().getSpaceByUrl(spaceURL);
     if (PENDING_STATUS.equals(typeOfRelation)) {
@@ -194,6 +194,10 @@ public class PeopleRestService implements ResourceContainer{
     filter.setPosition("");
     filter.setSkills("");
     filter.setExcludedIdentityList(excludedIdentityList);
+    String userId = getUserId(null, uriInfo);
+    if (userId != null && userId.length() > 0 && !IdentityConstants.ANONIM.equals(userId)) {
+      filter.setViewerIdentity(getIdentityManager().getOrCreateIdentity(OrganizationIdentityProvider.NAME, userId, false));
+    }
     List<Identity> identities = Arrays.asList(getIdentityManager().getIdentitiesByProfileFilter(
                                   OrganizationIdentityProvider.NAME, filter, false).load(0, (int)SUGGEST_LIMIT));
     
@@ -21,6 +21,7 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
+import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TimeZone;
@@ -58,6 +59,11 @@ import org.exoplatform.social.service.rest.api.models.ProfileRestOut;
  * @since  Jan 5, 2009
  */
 public final class Util {
+
+  /**
+   * The system property disabling the streaming of the activity responses when it is false.
+   */
+  public static final String STREAMING_RESPONSES_PROPERTY = "exo.social.rest.streaming";
   
   private static final Pattern URL_PATTERN = Pattern
       .compile("^(?i)" +
@@ -108,6 +114,17 @@ public final class Util {
                    .build();
   }
   
+  /**
+   * Checks whether the activity responses are written as they go rather than built as models, the default. The
+   * streaming is disabled by setting the system property {@value #STREAMING_RESPONSES_PROPERTY} to false.
+   *
+   * @return true when the activity responses are streamed
+   * @since 4.1.0
+   */
+  public static boolean isStreamingResponses() {
+    return !"false".equalsIgnoreCase(System.getProperty(STREAMING_RESPONSES_PROPERTY));
+  }
+
   /**
    * Gets mediaType from string format.
    * Currently supports json and xml only.
@@ -352,9 +369,20 @@ public final class Util {
    * @return the time string
    */
   public static final String convertTimestampToTimeString(long timestamp) {
+   return getTimeStringFormat().format(new Date(timestamp));
+  }
+
+  /**
+   * Gets a format of the timestamps by the pattern: EEE MMM d HH:mm:ss Z yyyy, to convert several timestamps. The
+   * format is not thread safe.
+   *
+   * @return the format
+   * @since 4.1.0
+   */
+  public static DateFormat getTimeStringFormat() {
    SimpleDateFormat dateFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss Z yyyy");
    dateFormat.setTimeZone(TimeZone.getDefault());
-   return dateFormat.format(new Date(timestamp));
+   return dateFormat;
   }
 
   /**
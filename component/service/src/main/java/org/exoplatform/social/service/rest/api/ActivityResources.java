@@ -49,6 +49,7 @@ import org.exoplatform.social.service.rest.SecurityManager;
 import org.exoplatform.social.service.rest.Util;
 import org.exoplatform.social.service.rest.api.models.ActivityRestIn;
 import org.exoplatform.social.service.rest.api.models.ActivityRestOut;
+import org.exoplatform.social.service.rest.api.models.ActivityRestStreamOut;
 import org.exoplatform.social.service.rest.api.models.ActivityStreamRestOut;
 import org.exoplatform.social.service.rest.api.models.CommentRestIn;
 import org.exoplatform.social.service.rest.api.models.CommentRestOut;
@@ -160,6 +161,15 @@ public class ActivityResources implements ResourceContainer {
       throw new WebApplicationException(Response.Status.FORBIDDEN);
     }
     
+    //
+    if (Util.isStreamingResponses()) {
+      ActivityRestStreamOut streamOut = new ActivityRestStreamOut(activity, numberOfComments, numberOfLikes,
+                                                                  isPassed(showPosterIdentity),
+                                                                  isPassed(showActivityStream),
+                                                                  portalContainerName);
+      return Util.getResponse(streamOut, uriInfo, mediaType, Response.Status.OK);
+    }
+
     //
     ActivityRestOut model = new ActivityRestOut(activity, portalContainerName);
     
@@ -20,23 +20,36 @@ import org.exoplatform.container.PortalContainer;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.rest.resource.ResourceContainer;
+import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.social.common.RealtimeListAccess;
+import org.exoplatform.social.core.activity.model.ActivityStreamPage;
+import org.exoplatform.social.core.activity.model.ActivityStreamState;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.storage.ActivityStorageException;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
 import org.exoplatform.social.service.rest.RestChecker;
 import org.exoplatform.social.service.rest.SecurityManager;
 import org.exoplatform.social.service.rest.Util;
 import org.exoplatform.social.service.rest.api.models.ActivityRestListOut;
+import org.exoplatform.social.service.rest.api.models.ActivityRestListStreamOut;
+import org.exoplatform.social.service.rest.api.models.ActivityStreamUpdatesRestOut;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import static org.exoplatform.social.service.rest.RestChecker.*;
 
@@ -55,11 +68,11 @@ public class ActivityStreamResources implements ResourceContainer {
   private static final String[] SUPPORTED_FORMATS = new String[] {"json"};
   private static final int MAX_LIMIT = 100;
 
-
   /**
    * Gets activities of a defined identity based on an specific activity called baseActivity.
    *
    * @param uriInfo             The URI information.
+   * @param request             The request, a 304 status is returned when its entity tag matches the stream.
    * @param portalContainerName The portal container name.
    * @param identityId          The identity Id.
    *                            There is one special *identityId*: "me" standing for the authenticated user who makes this request.
@@ -85,6 +98,10 @@ public class ActivityStreamResources implements ResourceContainer {
    *                            number of likes is less than the provided positive number, the number of actual likes
    *                            must be returned. If the total number of likes is more than 100, it is recommended to
    *                            use *activity/\:activityId/likes.format* instead.
+   * @param cursor              Returns the page following the given cursor: each response read with a cursor has a
+   *                            *next\_cursor* field to pass for the next page, absent at the end of the stream. An empty
+   *                            *cursor* returns the first page. Unlike *max\_id*, the cost of a page doesn't depend on its
+   *                            depth in the stream. If *cursor* is defined, *since\_id* and *max\_id* are ignored.
    * @authentication
    * @request
    * GET: http://localhost:8080/rest/private/api/social/v1-alpha3/portal/activity_stream/f92cd6f0c0a80137102696ac26430766.json?limit=30&since_id=12345&number_of_likes=5
@@ -204,6 +221,7 @@ public class ActivityStreamResources implements ResourceContainer {
   @Path("{identityId}.{format}")
   @Produces(MediaType.APPLICATION_JSON)
   public Response getActivityStreamByIdentityId(@Context UriInfo uriInfo,
+                                                @Context Request request,
                                                 @PathParam("portalContainerName") String portalContainerName,
                                                 @PathParam("identityId") String identityId,
                                                 @PathParam("format") String format,
@@ -211,7 +229,8 @@ public class ActivityStreamResources implements ResourceContainer {
                                                 @QueryParam("since_id") String sinceId,
                                                 @QueryParam("max_id") String maxId,
                                                 @QueryParam("number_of_comments") int numberOfComments,
-                                                @QueryParam("number_of_likes") int numberOfLikes) {
+                                                @QueryParam("number_of_likes") int numberOfLikes,
+                                                @QueryParam("cursor") String cursor) {
     checkAuthenticatedRequest();
     PortalContainer portalContainer = checkValidPortalContainerName(portalContainerName);
     MediaType mediaType = checkSupportedFormat(format, SUPPORTED_FORMATS);
@@ -239,6 +258,24 @@ public class ActivityStreamResources implements ResourceContainer {
     boolean getOlder = false;
     //if sinceId and maxId is both passed, sinceId is chosen
     ActivityManager activityManager = Util.getActivityManager(portalContainerName);
+    ActivityStreamState state = getActivitiesState(activityManager, targetIdentity);
+    Response notModified = getNotModifiedResponse(request, uriInfo, state);
+    if (notModified != null) {
+      return notModified;
+    }
+    if (cursor != null) {
+      ActivityStreamPage page;
+      try {
+        if (SpaceIdentityProvider.NAME.equals(targetIdentity.getProviderId())) {
+          page = activityManager.getActivitiesOfSpaceWithCursor(targetIdentity, cursorOf(cursor), maxLimit);
+        } else {
+          page = activityManager.getActivitiesWithCursor(targetIdentity, cursorOf(cursor), maxLimit);
+        }
+      } catch (IllegalArgumentException e) {
+        throw new WebApplicationException(Response.Status.BAD_REQUEST);
+      }
+      return getPageResponse(page, numberOfComments, numberOfLikes, portalContainerName, uriInfo, mediaType, state);
+    }
     try {
       if (sinceId != null) {
         baseActivity = activityManager.getActivity(sinceId);
@@ -266,16 +303,15 @@ public class ActivityStreamResources implements ResourceContainer {
       activityList = rala.loadAsList(0, maxLimit);
     }
 
-    ActivityRestListOut arlo = new ActivityRestListOut(activityList, numberOfComments,
-                                                       numberOfLikes, portalContainerName);
-
-    return Util.getResponse(arlo, uriInfo, mediaType, Response.Status.OK);
+    return getListResponse(activityList, null, numberOfComments, numberOfLikes, portalContainerName, uriInfo,
+                           mediaType, state);
   }
 
   /**
    * Gets the activity stream feed of the authenticated user identity based on an specific activity called "baseActivity".
    *
    * @param uriInfo             The URI information.
+   * @param request             The request, a 304 status is returned when its entity tag matches the stream.
    * @param portalContainerName The portal container name.
    * @param format              The format of the returned result, for example, JSON, or XML.
    * @param limit               Specifies the number of activities to retrieve. It must be less than or equal to 100.
@@ -299,6 +335,10 @@ public class ActivityStreamResources implements ResourceContainer {
    *                            of likes is less than the provided positive number, the number of actual likes must be
    *                            returned. If the total number of likes is more than 100, it is recommended to use:
    *                            "*activity/\:activityId/likes.format*" instead.
+   * @param cursor              Returns the page following the given cursor: each response read with a cursor has a
+   *                            *next\_cursor* field to pass for the next page, absent at the end of the stream. An empty
+   *                            *cursor* returns the first page. Unlike *max\_id*, the cost of a page doesn't depend on its
+   *                            depth in the stream. If *cursor* is defined, *since\_id* and *max\_id* are ignored.
    * @authentication
    * @request
    * GET: http://localhost:8080/rest/private/api/social/v1-alpha3/portal/activity_stream/feed.json?limit=30&since_id=12345&number_of_comments=5&number_of_likes=5
@@ -418,13 +458,15 @@ public class ActivityStreamResources implements ResourceContainer {
   @Path("feed.{format}")
   @Produces(MediaType.APPLICATION_JSON)
   public Response getActivityFeedOfAuthenticated(@Context UriInfo uriInfo,
+                                                 @Context Request request,
                                                  @PathParam("portalContainerName") String portalContainerName,
                                                  @PathParam("format") String format,
                                                  @QueryParam("limit") int limit,
                                                  @QueryParam("since_id") String sinceId,
                                                  @QueryParam("max_id") String maxId,
                                                  @QueryParam("number_of_comments") int numberOfComments,
-                                                 @QueryParam("number_of_likes") int numberOfLikes) {
+                                                 @QueryParam("number_of_likes") int numberOfLikes,
+                                                 @QueryParam("cursor") String cursor) {
     checkAuthenticatedRequest();
     checkValidPortalContainerName(portalContainerName);
     MediaType mediaType = checkSupportedFormat(format, SUPPORTED_FORMATS);
@@ -434,6 +476,20 @@ public class ActivityStreamResources implements ResourceContainer {
     int maxLimit = limit <= 0 ? MAX_LIMIT : Math.min(limit, MAX_LIMIT);
 
     ActivityManager activityManager = Util.getActivityManager(portalContainerName);
+    ActivityStreamState state = activityManager.getActivityFeedState(sourceIdentity);
+    Response notModified = getNotModifiedResponse(request, uriInfo, state);
+    if (notModified != null) {
+      return notModified;
+    }
+    if (cursor != null) {
+      ActivityStreamPage page;
+      try {
+        page = activityManager.getActivityFeedWithCursor(sourceIdentity, cursorOf(cursor), maxLimit);
+      } catch (IllegalArgumentException e) {
+        throw new WebApplicationException(Response.Status.BAD_REQUEST);
+      }
+      return getPageResponse(page, numberOfComments, numberOfLikes, portalContainerName, uriInfo, mediaType, state);
+    }
 
     ExoSocialActivity newerActivity = null;
     ExoSocialActivity olderActivity = null;
@@ -473,15 +529,15 @@ public class ActivityStreamResources implements ResourceContainer {
     } catch (Exception e) {
       throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
     }
-    ActivityRestListOut activityRestListOut = new ActivityRestListOut(activities, numberOfComments,
-                                                       numberOfLikes, portalContainerName);
-    return Util.getResponse(activityRestListOut, uriInfo, mediaType, Response.Status.OK);
+    return getListResponse(activities, null, numberOfComments, numberOfLikes, portalContainerName, uriInfo,
+                           mediaType, state);
   }
 
   /**
    * Gets space activities of spaces based on an specific activity called "baseActivity".
    *
    * @param uriInfo             The URI information.
+   * @param request             The request, a 304 status is returned when its entity tag matches the stream.
    * @param portalContainerName The portal container name.
    * @param format              The format of the returned result, for example, JSON, or XML.
    * @param limit               Specifies the number of activities to retrieve. It must be less than or equal to 100.
@@ -505,6 +561,10 @@ public class ActivityStreamResources implements ResourceContainer {
    *                            of likes is less than the provided positive number, the number of actual likes must be
    *                            returned. If the total number of likes is more than 100, it is recommended to use
    *                            "*activity/\:activityId/likes.format*" instead.
+   * @param cursor              Returns the page following the given cursor: each response read with a cursor has a
+   *                            *next\_cursor* field to pass for the next page, absent at the end of the stream. An empty
+   *                            *cursor* returns the first page. Unlike *max\_id*, the cost of a page doesn't depend on its
+   *                            depth in the stream. If *cursor* is defined, *since\_id* and *max\_id* are ignored.
    * @authentication
    * @request
    * GET: http://localhost:8080/rest/private/api/social/v1-alpha3/portal/activity_stream/spaces.json?limit=30&since_id=12345&number_of_comments=5&number_of_likes=5
@@ -624,24 +684,40 @@ public class ActivityStreamResources implements ResourceContainer {
   @Path("spaces.{format}")
   @Produces(MediaType.APPLICATION_JSON)
   public Response getActivitySpacesOfAuthenticated(@Context UriInfo uriInfo,
+                                                   @Context Request request,
                                                    @PathParam("portalContainerName") String portalContainerName,
                                                    @PathParam("format") String format,
                                                    @QueryParam("limit") int limit,
                                                    @QueryParam("since_id") String sinceId,
                                                    @QueryParam("max_id") String maxId,
                                                    @QueryParam("number_of_comments") int numberOfComments,
-                                                   @QueryParam("number_of_likes") int numberOfLikes) {
+                                                   @QueryParam("number_of_likes") int numberOfLikes,
+                                                   @QueryParam("cursor") String cursor) {
     checkAuthenticatedRequest();
     checkValidPortalContainerName(portalContainerName);
     MediaType mediaType = checkSupportedFormat(format, SUPPORTED_FORMATS);
 
     Identity targetIdentity = Util.getAuthenticatedUserIdentity(portalContainerName);
 
-    int maxLimit = limit == 0 ? MAX_LIMIT : limit;
+    int maxLimit = limit <= 0 ? MAX_LIMIT : Math.min(limit, MAX_LIMIT);
     ExoSocialActivity baseActivity = null;
     boolean getOlder = false;
     //if sinceId and maxId is both passed, sinceId is chosen
     ActivityManager activityManager = Util.getActivityManager(portalContainerName);
+    ActivityStreamState state = activityManager.getActivitiesOfUserSpacesState(targetIdentity);
+    Response notModified = getNotModifiedResponse(request, uriInfo, state);
+    if (notModified != null) {
+      return notModified;
+    }
+    if (cursor != null) {
+      ActivityStreamPage page;
+      try {
+        page = activityManager.getActivitiesOfUserSpacesWithCursor(targetIdentity, cursorOf(cursor), maxLimit);
+      } catch (IllegalArgumentException e) {
+        throw new WebApplicationException(Response.Status.BAD_REQUEST);
+      }
+      return getPageResponse(page, numberOfComments, numberOfLikes, portalContainerName, uriInfo, mediaType, state);
+    }
     try {
       if (sinceId != null) {
         baseActivity = activityManager.getActivity(sinceId);
@@ -676,15 +752,15 @@ public class ActivityStreamResources implements ResourceContainer {
       activityList = rala.loadAsList(0, maxLimit);
     }
 
-   ActivityRestListOut arlo = new ActivityRestListOut(activityList, numberOfComments, numberOfLikes, portalContainerName);
-
-   return Util.getResponse(arlo, uriInfo, mediaType, Response.Status.OK);
+   return getListResponse(activityList, null, numberOfComments, numberOfLikes, portalContainerName, uriInfo,
+                          mediaType, state);
   }
 
   /**
    * Gets activities of connections of a specified identity based on an specific activity called "baseActivity".
    *
    * @param uriInfo             The URI information.
+   * @param request             The request, a 304 status is returned when its entity tag matches the stream.
    * @param portalContainerName The portal container name.
    * @param format              The response format type, for example: JSON, or XML.
    * @param limit               Specifies the number of activities to retrieve. It must be less than or equal to 100.
@@ -708,6 +784,10 @@ public class ActivityStreamResources implements ResourceContainer {
    *                            of likes is less than the provided positive number, the number of actual likes must be
    *                            returned. If the total number of likes is more than 100, it is recommended to use:
    *                            "*activity/\:activityId/likes.format*" instead.
+   * @param cursor              Returns the page following the given cursor: each response read with a cursor has a
+   *                            *next\_cursor* field to pass for the next page, absent at the end of the stream. An empty
+   *                            *cursor* returns the first page. Unlike *max\_id*, the cost of a page doesn't depend on its
+   *                            depth in the stream. If *cursor* is defined, *since\_id* and *max\_id* are ignored.
    * @authentication
    * @request
    * GET: http://localhost:8080/rest/private/api/social/v1-alpha3/portal/activity_stream/connections.json?limit=30&since_id=12345&number_of_comments=5&number_of_likes=5
@@ -827,13 +907,15 @@ public class ActivityStreamResources implements ResourceContainer {
   @Path("connections.{format}")
   @Produces(MediaType.APPLICATION_JSON)
   public Response getActivityConnectionsOfAuthenticated(@Context UriInfo uriInfo,
+                                                        @Context Request request,
                                                         @PathParam("portalContainerName") String portalContainerName,
                                                         @PathParam("format") String format,
                                                         @QueryParam("limit") int limit,
                                                         @QueryParam("since_id") String sinceId,
                                                         @QueryParam("max_id") String maxId,
                                                         @QueryParam("number_of_comments") int numberOfComments,
-                                                        @QueryParam("number_of_likes") int numberOfLikes) {
+                                                        @QueryParam("number_of_likes") int numberOfLikes,
+                                                        @QueryParam("cursor") String cursor) {
 
     RestChecker.checkAuthenticatedRequest();
     RestChecker.checkValidPortalContainerName(portalContainerName);
@@ -841,6 +923,22 @@ public class ActivityStreamResources implements ResourceContainer {
     MediaType mediaType = RestChecker.checkSupportedFormat(format, SUPPORTED_FORMATS);
 
     Identity targetIdentity = Util.getAuthenticatedUserIdentity(portalContainerName);
+    int maxLimit = limit <= 0 ? MAX_LIMIT : Math.min(limit, MAX_LIMIT);
+
+    ActivityStreamState state = activityManager.getActivitiesOfConnectionsState(targetIdentity);
+    Response notModified = getNotModifiedResponse(request, uriInfo, state);
+    if (notModified != null) {
+      return notModified;
+    }
+    if (cursor != null) {
+      ActivityStreamPage page;
+      try {
+        page = activityManager.getActivitiesOfConnectionsWithCursor(targetIdentity, cursorOf(cursor), maxLimit);
+      } catch (IllegalArgumentException e) {
+        throw new WebApplicationException(Response.Status.BAD_REQUEST);
+      }
+      return getPageResponse(page, numberOfComments, numberOfLikes, portalContainerName, uriInfo, mediaType, state);
+    }
 
     ExoSocialActivity baseActivity = null;
     boolean getOlder = false;
@@ -875,7 +973,6 @@ public class ActivityStreamResources implements ResourceContainer {
     realtimeListAccess = activityManager.getActivitiesOfConnectionsWithListAccess(targetIdentity);
 
     List<ExoSocialActivity> activityList;
-    int maxLimit = limit <= 0 ? MAX_LIMIT : Math.min(limit, MAX_LIMIT);
 
     if (getOlder) {
       activityList = realtimeListAccess.loadOlder(baseActivity, maxLimit);
@@ -885,16 +982,15 @@ public class ActivityStreamResources implements ResourceContainer {
       activityList = realtimeListAccess.loadAsList(0, maxLimit);
     }
 
-    ActivityRestListOut activityRestListOut = new ActivityRestListOut(activityList, numberOfComments,
-            numberOfLikes, portalContainerName);
-
-    return Util.getResponse(activityRestListOut, uriInfo, mediaType, Response.Status.OK);
+    return getListResponse(activityList, null, numberOfComments, numberOfLikes, portalContainerName, uriInfo,
+                           mediaType, state);
   }
 
   /**
    * Gets activities of a defined identity based on a specific time.
    *
    * @param uriInfo             The URI information.
+   * @param request             The request, a 304 status is returned when its entity tag matches the stream.
    * @param portalContainerName The portal container name.
    * @param identityId          The identity Id.
    *                            There is one special *identityId* called "me" standing for the authenticated user who makes this request.
@@ -1039,6 +1135,7 @@ public class ActivityStreamResources implements ResourceContainer {
   @Path("{identityId}ByTimestamp.{format}")
   @Produces(MediaType.APPLICATION_JSON)
   public Response getActivityStreamOfIdentityByTimestamp(@Context UriInfo uriInfo,
+                                                @Context Request request,
                                                 @PathParam("portalContainerName") String portalContainerName,
                                                 @PathParam("identityId") String identityId,
                                                 @PathParam("format") String format,
@@ -1072,6 +1169,11 @@ public class ActivityStreamResources implements ResourceContainer {
     int maxLimit = limit <= 0 ? MAX_LIMIT : Math.min(limit, MAX_LIMIT);
     ActivityManager activityManager = Util.getActivityManager(portalContainerName);
 
+    ActivityStreamState state = getActivitiesState(activityManager, targetIdentity);
+    Response notModified = getNotModifiedResponse(request, uriInfo, state);
+    if (notModified != null) {
+      return notModified;
+    }
     RealtimeListAccess<ExoSocialActivity> listAccess = null;
     List<ExoSocialActivity> activities = null;
     
@@ -1088,16 +1190,15 @@ public class ActivityStreamResources implements ResourceContainer {
       throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
     }
 
-    ActivityRestListOut arlo = new ActivityRestListOut(activities, numberOfComments,
-                                                       numberOfLikes, portalContainerName);
-
-    return Util.getResponse(arlo, uriInfo, mediaType, Response.Status.OK);
+    return getListResponse(activities, null, numberOfComments, numberOfLikes, portalContainerName, uriInfo,
+                           mediaType, state);
   }
   
   /**
    * Gets the activity stream feed of the authenticated user identity based on a specific time.
    *
    * @param uriInfo             The URI information.
+   * @param request             The request, a 304 status is returned when its entity tag matches the stream.
    * @param portalContainerName The portal container name.
    * @param format              The format of the returned result, for example, JSON or XML.
    * @param limit               Specifies the number of activities to retrieve. It must be less than or equal to 100.
@@ -1240,6 +1341,7 @@ public class ActivityStreamResources implements ResourceContainer {
   @Path("feedByTimestamp.{format}")
   @Produces(MediaType.APPLICATION_JSON)
   public Response getActivityFeedOfAuthenticatedByTimestamp(@Context UriInfo uriInfo,
+                                                 @Context Request request,
                                                  @PathParam("portalContainerName") String portalContainerName,
                                                  @PathParam("format") String format,
                                                  @QueryParam("limit") int limit,
@@ -1257,6 +1359,11 @@ public class ActivityStreamResources implements ResourceContainer {
     
     ActivityManager activityManager = Util.getActivityManager(portalContainerName);
 
+    ActivityStreamState state = activityManager.getActivityFeedState(sourceIdentity);
+    Response notModified = getNotModifiedResponse(request, uriInfo, state);
+    if (notModified != null) {
+      return notModified;
+    }
     RealtimeListAccess<ExoSocialActivity> listAccess = null;
     List<ExoSocialActivity> activities = null;
     
@@ -1272,15 +1379,15 @@ public class ActivityStreamResources implements ResourceContainer {
     } catch (Exception e) {
       throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
     }
-    ActivityRestListOut activityRestListOut = new ActivityRestListOut(activities, numberOfComments,
-                                                       numberOfLikes, portalContainerName);
-    return Util.getResponse(activityRestListOut, uriInfo, mediaType, Response.Status.OK);
+    return getListResponse(activities, null, numberOfComments, numberOfLikes, portalContainerName, uriInfo,
+                           mediaType, state);
   }
   
   /**
    * Gets space activities based on a specific time.
    *
    * @param uriInfo             The URI information.
+   * @param request             The request, a 304 status is returned when its entity tag matches the stream.
    * @param portalContainerName The portal container name.
    * @param format              The format of the returned result, for example, JSON or XML.
    * @param limit               Specifies the number of activities to retrieve. It must be less than or equal to 100.
@@ -1423,6 +1530,7 @@ public class ActivityStreamResources implements ResourceContainer {
   @Path("spacesByTimestamp.{format}")
   @Produces(MediaType.APPLICATION_JSON)
   public Response getActivitySpacesOfAuthenticatedByTimestamp(@Context UriInfo uriInfo,
+                                                   @Context Request request,
                                                    @PathParam("portalContainerName") String portalContainerName,
                                                    @PathParam("format") String format,
                                                    @QueryParam("limit") int limit,
@@ -1439,6 +1547,11 @@ public class ActivityStreamResources implements ResourceContainer {
     int maxLimit = limit == 0 ? MAX_LIMIT : limit;
     ActivityManager activityManager = Util.getActivityManager(portalContainerName);
 
+    ActivityStreamState state = activityManager.getActivitiesOfUserSpacesState(targetIdentity);
+    Response notModified = getNotModifiedResponse(request, uriInfo, state);
+    if (notModified != null) {
+      return notModified;
+    }
     RealtimeListAccess<ExoSocialActivity> listAccess = null;
     List<ExoSocialActivity> activities = null;
     
@@ -1455,15 +1568,15 @@ public class ActivityStreamResources implements ResourceContainer {
       throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
     }
    
-   ActivityRestListOut arlo = new ActivityRestListOut(activities, numberOfComments, numberOfLikes, portalContainerName);
-
-   return Util.getResponse(arlo, uriInfo, mediaType, Response.Status.OK);
+   return getListResponse(activities, null, numberOfComments, numberOfLikes, portalContainerName, uriInfo,
+                          mediaType, state);
   }
   
   /**
    * Gets activities of connections of a specified identity based on a specific time.
    *
    * @param uriInfo             The URI information.
+   * @param request             The request, a 304 status is returned when its entity tag matches the stream.
    * @param portalContainerName The portal container name
    * @param format              The format of the returned result, for example, JSON or XML.
    * @param limit               Specifies the number of activities to retrieve. It must be less than or equal to 100.
@@ -1606,6 +1719,7 @@ public class ActivityStreamResources implements ResourceContainer {
   @Path("connectionsByTimestamp.{format}")
   @Produces(MediaType.APPLICATION_JSON)
   public Response getActivityConnectionsOfAuthenticatedByTimestamp(@Context UriInfo uriInfo,
+                                                        @Context Request request,
                                                         @PathParam("portalContainerName") String portalContainerName,
                                                         @PathParam("format") String format,
                                                         @QueryParam("limit") int limit,
@@ -1623,6 +1737,11 @@ public class ActivityStreamResources implements ResourceContainer {
 
     int maxLimit = limit <= 0 ? MAX_LIMIT : Math.min(limit, MAX_LIMIT);
 
+    ActivityStreamState state = activityManager.getActivitiesOfConnectionsState(targetIdentity);
+    Response notModified = getNotModifiedResponse(request, uriInfo, state);
+    if (notModified != null) {
+      return notModified;
+    }
     RealtimeListAccess<ExoSocialActivity> listAccess = null;
     List<ExoSocialActivity> activities = null;
     
@@ -1639,9 +1758,154 @@ public class ActivityStreamResources implements ResourceContainer {
       throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
     }
 
-    ActivityRestListOut activityRestListOut = new ActivityRestListOut(activities, numberOfComments,
-            numberOfLikes, portalContainerName);
+    return getListResponse(activities, null, numberOfComments, numberOfLikes, portalContainerName, uriInfo,
+                           mediaType, state);
+  }
 
-    return Util.getResponse(activityRestListOut, uriInfo, mediaType, Response.Status.OK);
+  /**
+   * Checks the streams of the authenticated user for activities newer than the given time, without waiting. The
+   * clients waiting for new activities send the same request to the *activity\_stream\_updates* servlet instead,
+   * which holds it until one of the streams gets a new activity: JAX-RS 1.x has no asynchronous responses, a
+   * waiting REST request would block one of the request threads.
+   *
+   * @param uriInfo             The URI information.
+   * @param portalContainerName The portal container name.
+   * @param format              The format of the returned result, for example, JSON, or XML.
+   * @param streams             The streams to check, separated by commas: *feed*, *connections* and *spaces*.
+   *                            If it is not specified, all of them.
+   * @param sinceTime           The last updated time already read by the client.
+   * @authentication
+   * @request
+   * GET: http://localhost:8080/rest/private/api/social/v1-alpha3/portal/activity_stream/updates.json?streams=feed,spaces&since_time=1402932146000
+   * @response
+   * {
+   *   "streams":["feed"],
+   *   "lastUpdated":1402932187000
+   * }
+   * @return the response
+   * @LevelAPI Platform
+   * @anchor ActivityStreamResources.getActivityStreamUpdatesOfAuthenticated
+   */
+  @GET
+  @Path("updates.{format}")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getActivityStreamUpdatesOfAuthenticated(@Context UriInfo uriInfo,
+                                                          @PathParam("portalContainerName") String portalContainerName,
+                                                          @PathParam("format") String format,
+                                                          @QueryParam("streams") String streams,
+                                                          @QueryParam("since_time") Long sinceTime) {
+    checkAuthenticatedRequest();
+    checkValidPortalContainerName(portalContainerName);
+    MediaType mediaType = checkSupportedFormat(format, SUPPORTED_FORMATS);
+
+    Set<ActivityRefType> types;
+    try {
+      types = ActivityStreamUpdates.getStreams(streams);
+    } catch (IllegalArgumentException e) {
+      throw new WebApplicationException(Response.Status.BAD_REQUEST);
+    }
+
+    Identity sourceIdentity = Util.getAuthenticatedUserIdentity(portalContainerName);
+    ActivityManager activityManager = Util.getActivityManager(portalContainerName);
+
+    Set<ActivityRefType> changed = ActivityStreamUpdates.getNewer(activityManager, sourceIdentity, types, sinceTime);
+    return Util.getResponse(ActivityStreamUpdates.getUpdates(activityManager, sourceIdentity, types, changed,
+                                                             sinceTime),
+                            uriInfo, mediaType, Response.Status.OK);
+  }
+
+  /**
+   * An empty cursor stands for the first page.
+   */
+  private String cursorOf(String cursor) {
+    return cursor.trim().length() == 0 ? null : cursor.trim();
+  }
+
+  private Response getPageResponse(ActivityStreamPage page, int numberOfComments, int numberOfLikes,
+                                   String portalContainerName, UriInfo uriInfo, MediaType mediaType,
+                                   ActivityStreamState state) {
+    return getListResponse(page.getActivities(), page.getNextCursor(), numberOfComments, numberOfLikes,
+                           portalContainerName, uriInfo, mediaType, state);
+  }
+
+  /**
+   * Gets the response of a list of activities, written as it goes unless the streaming of the responses is disabled.
+   * The response carries the validators of the stream state it was read with.
+   */
+  private Response getListResponse(List<ExoSocialActivity> activityList, String nextCursor, int numberOfComments,
+                                   int numberOfLikes, String portalContainerName, UriInfo uriInfo,
+                                   MediaType mediaType, ActivityStreamState state) {
+    Response response;
+    if (Util.isStreamingResponses()) {
+      ActivityRestListStreamOut activityRestListOut = new ActivityRestListStreamOut(activityList, numberOfComments,
+                                                                                    numberOfLikes,
+                                                                                    portalContainerName);
+      activityRestListOut.setNextCursor(nextCursor);
+      response = Util.getResponse(activityRestListOut, uriInfo, mediaType, Response.Status.OK);
+    } else {
+      ActivityRestListOut activityRestListOut = new ActivityRestListOut(activityList, numberOfComments,
+                                                                        numberOfLikes, portalContainerName);
+      activityRestListOut.setNextCursor(nextCursor);
+      response = Util.getResponse(activityRestListOut, uriInfo, mediaType, Response.Status.OK);
+    }
+    return Response.fromResponse(response)
+                   .tag(getEntityTag(uriInfo, state))
+                   .lastModified(getLastModified(state))
+                   .cacheControl(getCacheControl())
+                   .build();
+  }
+
+  /**
+   * The activity stream of a space identity is the space stream, the one of a user is the user stream.
+   */
+  private ActivityStreamState getActivitiesState(ActivityManager activityManager, Identity identity) {
+    if (SpaceIdentityProvider.NAME.equals(identity.getProviderId())) {
+      return activityManager.getActivitiesOfSpaceState(identity);
+    }
+    return activityManager.getActivitiesState(identity);
+  }
+
+  /**
+   * Gets the not modified response when the client already has the response of the current stream state,
+   * from its If-None-Match header. If-Modified-Since alone is not enough: the likes and the edits do not change the
+   * last modified date, and the dates of the headers have no milliseconds.
+   *
+   * @return the response, null when the stream must be read
+   */
+  private Response getNotModifiedResponse(Request request, UriInfo uriInfo, ActivityStreamState state) {
+    EntityTag entityTag = getEntityTag(uriInfo, state);
+    Response.ResponseBuilder builder = request.evaluatePreconditions(entityTag);
+    if (builder == null) {
+      return null;
+    }
+    return builder.tag(entityTag).cacheControl(getCacheControl()).build();
+  }
+
+  /**
+   * The entity tag changes with the stream state, its version included, and differs between the users and the queries
+   * as the likes, the comments and the activities shown depend on them.
+   */
+  private EntityTag getEntityTag(UriInfo uriInfo, ActivityStreamState state) {
+    String userId = ConversationState.getCurrent().getIdentity().getUserId();
+    int variant = (userId + " " + uriInfo.getRequestUri()).hashCode();
+    return new EntityTag(Long.toString(state.getLastUpdated(), 36) + "-" + state.getSize() + "-"
+                             + Long.toString(state.getVersion(), 36) + "-" + Integer.toHexString(variant));
+  }
+
+  /**
+   * The dates of the HTTP headers have no milliseconds.
+   */
+  private Date getLastModified(ActivityStreamState state) {
+    return new Date(state.getLastUpdated() / 1000 * 1000);
+  }
+
+  /**
+   * The responses are private to the user and are checked again before being reused.
+   */
+  private CacheControl getCacheControl() {
+    CacheControl cacheControl = new CacheControl();
+    cacheControl.setPrivate(true);
+    cacheControl.setNoCache(true);
+    return cacheControl;
   }
 }
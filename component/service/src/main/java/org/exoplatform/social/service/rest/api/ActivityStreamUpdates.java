@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest.api;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.exoplatform.social.core.activity.model.ActivityStreamState;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.manager.ActivityManager;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+import org.exoplatform.social.service.rest.api.models.ActivityStreamUpdatesRestOut;
+
+/**
+ * The streams of the updates requests, read by {@link ActivityStreamResources} and
+ * {@link ActivityStreamUpdatesServlet}.
+ *
+ * @since 4.1.0
+ */
+final class ActivityStreamUpdates {
+
+  /**
+   * The time in seconds a reader waits for new activities by default, and at most
+   */
+  static final int DEFAULT_TIMEOUT = 30;
+  static final int MAX_TIMEOUT = 60;
+
+  /**
+   * The seconds a reader refused by the notifier should wait before coming back
+   */
+  static final int RETRY_AFTER = 10;
+
+  /**
+   * The streams a reader can wait on, by their names in the requests
+   */
+  private static final Map<String, ActivityRefType> STREAMS = new LinkedHashMap<String, ActivityRefType>();
+
+  static {
+    STREAMS.put("feed", ActivityRefType.FEED);
+    STREAMS.put("connections", ActivityRefType.CONNECTION);
+    STREAMS.put("spaces", ActivityRefType.MY_SPACES);
+  }
+
+  private ActivityStreamUpdates() {
+  }
+
+  /**
+   * Gets the streams of an updates request, all of them when none is given.
+   *
+   * @param streams the stream names separated by commas
+   * @throws IllegalArgumentException if a stream is unknown
+   */
+  static Set<ActivityRefType> getStreams(String streams) {
+    if (streams == null || streams.trim().length() == 0) {
+      return EnumSet.copyOf(STREAMS.values());
+    }
+    Set<ActivityRefType> types = EnumSet.noneOf(ActivityRefType.class);
+    for (String stream : streams.split(",")) {
+      ActivityRefType type = STREAMS.get(stream.trim());
+      if (type == null) {
+        throw new IllegalArgumentException("Unknown stream " + stream);
+      }
+      types.add(type);
+    }
+    return types;
+  }
+
+  /**
+   * Gets the streams which have activities newer than the given time.
+   *
+   * @param sinceTime the last updated time read by the client, null when it has read none
+   */
+  static Set<ActivityRefType> getNewer(ActivityManager activityManager, Identity identity,
+                                       Set<ActivityRefType> types, Long sinceTime) {
+    Set<ActivityRefType> newer = EnumSet.noneOf(ActivityRefType.class);
+    if (sinceTime != null) {
+      for (ActivityRefType type : types) {
+        if (getState(activityManager, identity, type).getLastUpdated() > sinceTime) {
+          newer.add(type);
+        }
+      }
+    }
+    return newer;
+  }
+
+  /**
+   * Gets the answer of an updates request: the changed streams and the last updated time to pass with the next one.
+   */
+  static ActivityStreamUpdatesRestOut getUpdates(ActivityManager activityManager, Identity identity,
+                                                 Set<ActivityRefType> types, Set<ActivityRefType> changed,
+                                                 Long sinceTime) {
+    List<String> changedStreams = new ArrayList<String>();
+    long lastUpdated = sinceTime != null ? sinceTime : 0;
+    for (Map.Entry<String, ActivityRefType> entry : STREAMS.entrySet()) {
+      if (!types.contains(entry.getValue())) {
+        continue;
+      }
+      if (changed.contains(entry.getValue())) {
+        changedStreams.add(entry.getKey());
+      }
+      lastUpdated = Math.max(lastUpdated, getState(activityManager, identity, entry.getValue()).getLastUpdated());
+    }
+    return new ActivityStreamUpdatesRestOut(changedStreams, lastUpdated);
+  }
+
+  static ActivityStreamState getState(ActivityManager activityManager, Identity identity, ActivityRefType type) {
+    switch (type) {
+      case CONNECTION:
+        return activityManager.getActivitiesOfConnectionsState(identity);
+      case MY_SPACES:
+        return activityManager.getActivitiesOfUserSpacesState(identity);
+      default:
+        return activityManager.getActivityFeedState(identity);
+    }
+  }
+
+}
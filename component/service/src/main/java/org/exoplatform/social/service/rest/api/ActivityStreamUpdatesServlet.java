@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest.api;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.container.web.AbstractHttpServlet;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
+import org.exoplatform.social.core.manager.ActivityManager;
+import org.exoplatform.social.core.manager.IdentityManager;
+import org.exoplatform.social.core.storage.impl.ActivityStreamStorageImpl.ActivityRefType;
+import org.exoplatform.social.core.storage.streams.ActivityStreamNotifier;
+import org.exoplatform.social.service.rest.api.models.ActivityStreamUpdatesRestOut;
+
+/**
+ * Waits for new activities on the streams of the authenticated user: the request is answered as soon as one of the
+ * streams gets a new activity, or when the timeout elapses. It takes the parameters of the
+ * *activity_stream/updates* REST service, and a *timeout* in seconds, 30 by default and at most 60. The client sends
+ * the request again with the returned *lastUpdated* as *since\_time*.
+ * <p>
+ * The REST services run on JAX-RS 1.x, which has no asynchronous responses: the waiting is done here, in an
+ * asynchronous servlet, so that a waiting request does not hold a request thread. The request is answered with a 503
+ * status and a Retry-After header when the {@link ActivityStreamNotifier} already has its maximum of waiters.
+ * <p>
+ * The waiters are only notified of the activities written on their node: in a cluster, the activities written on
+ * the other nodes are seen at the next request, or when the timeout elapses.
+ *
+ * @since 4.1.0
+ */
+public class ActivityStreamUpdatesServlet extends AbstractHttpServlet {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Log LOG = ExoLogger.getLogger(ActivityStreamUpdatesServlet.class);
+
+  @Override
+  protected void onService(ExoContainer container, HttpServletRequest req, HttpServletResponse res)
+      throws ServletException, IOException {
+    String remoteUser = req.getRemoteUser();
+    if (remoteUser == null) {
+      res.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+    Set<ActivityRefType> types;
+    Long sinceTime;
+    int timeout;
+    try {
+      types = ActivityStreamUpdates.getStreams(req.getParameter("streams"));
+      String since = req.getParameter("since_time");
+      sinceTime = since == null ? null : Long.valueOf(since);
+      String timeoutParam = req.getParameter("timeout");
+      timeout = timeoutParam == null ? ActivityStreamUpdates.DEFAULT_TIMEOUT
+                                     : Math.max(0, Math.min(Integer.parseInt(timeoutParam),
+                                                            ActivityStreamUpdates.MAX_TIMEOUT));
+    } catch (IllegalArgumentException e) {
+      res.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    ActivityStreamNotifier notifier =
+        (ActivityStreamNotifier) container.getComponentInstanceOfType(ActivityStreamNotifier.class);
+    Updates updates = null;
+    boolean waiting = false;
+    try {
+      RequestLifeCycle.begin(container);
+      try {
+        IdentityManager identityManager = (IdentityManager) container.getComponentInstanceOfType(IdentityManager.class);
+        Identity identity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, remoteUser, false);
+        updates = new Updates(container, notifier, identity, types, sinceTime);
+        if (notifier != null && timeout > 0) {
+          //registered before reading the streams, the activities added meanwhile aren't missed
+          updates.waiter = notifier.register(identity.getId(), types);
+          if (updates.waiter == null) {
+            res.setHeader("Retry-After", String.valueOf(ActivityStreamUpdates.RETRY_AFTER));
+            res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+          }
+        }
+        Set<ActivityRefType> newer = updates.getNewer();
+        if (!newer.isEmpty() || updates.waiter == null) {
+          updates.write(res, newer);
+          return;
+        }
+      } finally {
+        RequestLifeCycle.end();
+      }
+
+      AsyncContext asyncContext = req.startAsync();
+      asyncContext.setTimeout(timeout * 1000L);
+      asyncContext.addListener(updates);
+      updates.asyncContext = asyncContext;
+      updates.waiter.listen(updates);
+      waiting = true;
+    } finally {
+      //only a request waiting asynchronously keeps its waiter, any failure before must not leak it
+      if (updates != null && !waiting) {
+        updates.release();
+      }
+    }
+  }
+
+  /**
+   * An updates request waiting for new activities. It is answered once, either by the thread of the write which
+   * notifies it, or by the container when the timeout elapses.
+   */
+  private static class Updates implements ActivityStreamNotifier.Listener, AsyncListener {
+
+    private final ExoContainer container;
+
+    private final ActivityStreamNotifier notifier;
+
+    private final Identity identity;
+
+    private final Set<ActivityRefType> types;
+
+    private final Long sinceTime;
+
+    private final AtomicBoolean answered = new AtomicBoolean();
+
+    private ActivityStreamNotifier.Waiter waiter;
+
+    private AsyncContext asyncContext;
+
+    Updates(ExoContainer container, ActivityStreamNotifier notifier, Identity identity, Set<ActivityRefType> types,
+            Long sinceTime) {
+      this.container = container;
+      this.notifier = notifier;
+      this.identity = identity;
+      this.types = types;
+      this.sinceTime = sinceTime;
+    }
+
+    public void streamsChanged(final Set<ActivityRefType> changed) {
+      if (!answered.compareAndSet(false, true)) {
+        return;
+      }
+      // the write must not wait for the response, it is written on a thread of the container
+      asyncContext.start(new Runnable() {
+        public void run() {
+          answer(changed);
+        }
+      });
+    }
+
+    public void onTimeout(AsyncEvent event) throws IOException {
+      if (answered.compareAndSet(false, true)) {
+        answer(EnumSet.noneOf(ActivityRefType.class));
+      }
+    }
+
+    public void onComplete(AsyncEvent event) throws IOException {
+      release();
+    }
+
+    public void onError(AsyncEvent event) throws IOException {
+      release();
+    }
+
+    public void onStartAsync(AsyncEvent event) throws IOException {
+    }
+
+    Set<ActivityRefType> getNewer() {
+      return ActivityStreamUpdates.getNewer(getActivityManager(), identity, types, sinceTime);
+    }
+
+    void write(HttpServletResponse res, Set<ActivityRefType> changed) throws IOException {
+      ActivityStreamUpdatesRestOut updates = ActivityStreamUpdates.getUpdates(getActivityManager(), identity, types,
+                                                                              changed, sinceTime);
+      res.setContentType("application/json");
+      res.setCharacterEncoding("UTF-8");
+      updates.writeJson(res.getWriter());
+    }
+
+    void release() {
+      if (waiter != null) {
+        notifier.release(waiter);
+      }
+    }
+
+    private void answer(Set<ActivityRefType> changed) {
+      ExoContainer previous = ExoContainerContext.getCurrentContainerIfPresent();
+      ExoContainerContext.setCurrentContainer(container);
+      RequestLifeCycle.begin(container);
+      try {
+        write((HttpServletResponse) asyncContext.getResponse(), changed);
+      } catch (Exception e) {
+        LOG.warn("Could not answer the activity stream updates of " + identity.getRemoteId(), e);
+      } finally {
+        RequestLifeCycle.end();
+        ExoContainerContext.setCurrentContainer(previous);
+        asyncContext.complete();
+      }
+    }
+
+    private ActivityManager getActivityManager() {
+      return (ActivityManager) container.getComponentInstanceOfType(ActivityManager.class);
+    }
+  }
+
+}
@@ -30,15 +30,16 @@ import org.exoplatform.social.core.activity.model.ExoSocialActivity;
  */
 public class ActivityRestListOut extends HashMap<String, Object> {
 
-  private static final int MAX_LIMIT = 100;
-  private static final int MAX_NUMBER_OF_COMMENTS = 100;
-  private static final int MAX_NUMBER_OF_LIKES = 100;
+  static final int MAX_LIMIT = 100;
+  static final int MAX_NUMBER_OF_COMMENTS = 100;
+  static final int MAX_NUMBER_OF_LIKES = 100;
 
   /**
    * The enum fields as json keys
    */
   public static enum Field {
-    ACTIVITIES("activities");
+    ACTIVITIES("activities"),
+    NEXT_CURSOR("next_cursor");
 
     /**
      * field name
@@ -95,6 +96,17 @@ public class ActivityRestListOut extends HashMap<String, Object> {
   }
 
 
+  /**
+   * Sets the cursor of the next page, nothing is set at the end of the stream.
+   *
+   * @param nextCursor the next cursor
+   */
+  public void setNextCursor(String nextCursor) {
+    if (nextCursor != null) {
+      put(Field.NEXT_CURSOR.toString(), nextCursor);
+    }
+  }
+
   /**
    * Initializes default values
    */
@@ -103,7 +115,8 @@ public class ActivityRestListOut extends HashMap<String, Object> {
   }
 
   /**
-   * Initializes the stream with numberOfComments, numberOfLikes.
+   * Initializes the stream with numberOfComments, numberOfLikes. The identities of the posters, stream owners,
+   * likers and comment posters of the whole list are loaded together.
    *
    * @param activityList        the activity list
    * @param numberOfComments    the number of comments
@@ -112,17 +125,51 @@ public class ActivityRestListOut extends HashMap<String, Object> {
    */
   private void initialize(List<ExoSocialActivity> activityList, int numberOfComments,
                           int numberOfLikes, String portalContainerName) {
+    IdentityResolver resolver = new IdentityResolver(portalContainerName);
+    List<ExoSocialActivity[]> commentLists = loadComments(activityList, numberOfComments, numberOfLikes, resolver);
+
     List<ActivityRestOut> activityItems = new ArrayList<ActivityRestOut>();
-    for (ExoSocialActivity activity : activityList) {
-      ActivityRestOut activityItem = new ActivityRestOut(activity, portalContainerName);
-      activityItem.setPosterIdentity(new IdentityRestOut(activity.getUserId(), portalContainerName));
-      activityItem.setActivityStream(new ActivityStreamRestOut(activity.getActivityStream(), portalContainerName));
-      activityItem.setNumberOfComments(numberOfComments, activity, portalContainerName);
-      activityItem.setNumberOfLikes(numberOfLikes, activity, portalContainerName);
+    for (int i = 0; i < activityList.size(); i++) {
+      ExoSocialActivity activity = activityList.get(i);
+      ActivityRestOut activityItem = new ActivityRestOut(activity, resolver);
+      activityItem.setPosterIdentity(resolver.getIdentityRestOut(activity.getUserId()));
+      activityItem.setActivityStream(new ActivityStreamRestOut(activity.getActivityStream(), resolver));
+      activityItem.setComments(commentLists.get(i), resolver);
+      activityItem.setNumberOfLikes(numberOfLikes, activity, resolver);
       activityItems.add(activityItem);
 
     }
     put(Field.ACTIVITIES.toString(), activityItems);
   }
 
+  /**
+   * Loads the latest comments of the activities and the identities of their posters, stream owners, likers and
+   * comment posters, all together.
+   *
+   * @param activityList     the activity list
+   * @param numberOfComments the number of comments
+   * @param numberOfLikes    the number of likes
+   * @param resolver         the identities of the response
+   * @return the comments of each activity
+   */
+  static List<ExoSocialActivity[]> loadComments(List<ExoSocialActivity> activityList, int numberOfComments,
+                                                int numberOfLikes, IdentityResolver resolver) {
+    List<ExoSocialActivity[]> commentLists = new ArrayList<ExoSocialActivity[]>(activityList.size());
+    for (ExoSocialActivity activity : activityList) {
+      resolver.add(activity.getUserId());
+      resolver.add(activity.getStreamId());
+      for (String likeIdentityId : ActivityRestOut.getLatestLikeIdentityIds(numberOfLikes, activity)) {
+        resolver.add(likeIdentityId);
+      }
+      ExoSocialActivity[] comments = ActivityRestOut.loadComments(numberOfComments, activity,
+                                                                  resolver.getPortalContainerName());
+      for (ExoSocialActivity comment : comments) {
+        resolver.add(comment.getUserId());
+      }
+      commentLists.add(comments);
+    }
+    resolver.resolve();
+    return commentLists;
+  }
+
 }
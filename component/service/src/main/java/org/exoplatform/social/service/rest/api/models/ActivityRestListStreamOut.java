@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest.api.models;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.service.rest.Util;
+
+/**
+ * The activity list of a REST response written as JSON straight from the activities, with the same fields as
+ * {@link ActivityRestListOut}: the activities are written one by one instead of being held as maps until the
+ * response is serialized.
+ *
+ * @since 4.1.0
+ */
+public class ActivityRestListStreamOut implements StreamingOutput {
+
+  private final List<ActivityRestStreamOut> activities;
+
+  private String nextCursor;
+
+  /**
+   * Loads the activities with their number of comments and likes, their posters and streams.
+   *
+   * @param activityList        the activity list
+   * @param numberOfComments    the number of comments
+   * @param numberOfLikes       the number of likes
+   * @param portalContainerName the portal container name
+   */
+  public ActivityRestListStreamOut(List<ExoSocialActivity> activityList, int numberOfComments,
+                                   int numberOfLikes, String portalContainerName) {
+    this.activities = new ArrayList<ActivityRestStreamOut>();
+    if (activityList == null || activityList.size() == 0) {
+      return;
+    } else if (activityList.size() > ActivityRestListOut.MAX_LIMIT) {
+      activityList = activityList.subList(0, ActivityRestListOut.MAX_LIMIT - 1);
+    }
+    numberOfComments = numberOfComments >= 0 ? numberOfComments : 0;
+    numberOfComments = Math.min(numberOfComments, ActivityRestListOut.MAX_NUMBER_OF_COMMENTS);
+    numberOfLikes = numberOfLikes >= 0 ? numberOfLikes : 0;
+    numberOfLikes = Math.min(numberOfLikes, ActivityRestListOut.MAX_NUMBER_OF_LIKES);
+
+    IdentityResolver resolver = new IdentityResolver(portalContainerName);
+    List<ExoSocialActivity[]> commentLists = ActivityRestListOut.loadComments(activityList, numberOfComments,
+                                                                              numberOfLikes, resolver);
+    String baseUrl = Util.getBaseUrl();
+    for (int i = 0; i < activityList.size(); i++) {
+      ExoSocialActivity activity = activityList.get(i);
+      ActivityRestStreamOut activityItem = new ActivityRestStreamOut(activity, resolver, baseUrl);
+      activityItem.load(commentLists.get(i), ActivityRestOut.getLatestLikeIdentityIds(numberOfLikes, activity),
+                        true, true);
+      activities.add(activityItem);
+    }
+  }
+
+  /**
+   * Constructor with the activities already loaded.
+   *
+   * @param activities the activities
+   */
+  ActivityRestListStreamOut(List<ActivityRestStreamOut> activities) {
+    this.activities = activities;
+  }
+
+  /**
+   * Sets the cursor of the next page, nothing is written at the end of the stream.
+   *
+   * @param nextCursor the next cursor
+   */
+  public void setNextCursor(String nextCursor) {
+    this.nextCursor = nextCursor;
+  }
+
+  public void write(OutputStream output) throws IOException, WebApplicationException {
+    JsonStreamWriter out = new JsonStreamWriter(new BufferedWriter(new OutputStreamWriter(output, "UTF-8")));
+    write(out);
+    out.flush();
+  }
+
+  void write(JsonStreamWriter out) throws IOException {
+    DateFormat dateFormat = Util.getTimeStringFormat();
+    out.beginObject();
+    out.name(ActivityRestListOut.Field.ACTIVITIES.toString()).beginArray();
+    for (ActivityRestStreamOut activity : activities) {
+      activity.write(out, dateFormat);
+    }
+    out.endArray();
+    if (nextCursor != null) {
+      out.name(ActivityRestListOut.Field.NEXT_CURSOR.toString()).value(nextCursor);
+    }
+    out.endObject();
+  }
+
+}
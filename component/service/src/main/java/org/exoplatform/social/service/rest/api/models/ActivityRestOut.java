@@ -17,6 +17,7 @@
 package org.exoplatform.social.service.rest.api.models;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,7 +26,6 @@ import org.exoplatform.social.common.RealtimeListAccess;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.manager.ActivityManager;
-import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.service.rest.Util;
 
 
@@ -145,6 +145,17 @@ public class ActivityRestOut extends HashMap<String, Object>{
 
 
   public ActivityRestOut(final ExoSocialActivity activity, String portalContainerName) {
+    this(activity, new IdentityResolver(portalContainerName));
+  }
+
+  /**
+   * Constructor with the identities of the response, the stream owner and the authenticated user are taken from them.
+   *
+   * @param activity the activity
+   * @param resolver the identities of the response
+   * @since 4.1.0
+   */
+  ActivityRestOut(final ExoSocialActivity activity, IdentityResolver resolver) {
     initialize();
     this.setId(activity.getId());
     this.setTitle(activity.getTitle());
@@ -164,17 +175,21 @@ public class ActivityRestOut extends HashMap<String, Object>{
       this.setTotalNumberOfLikes(null);
     }
     
-    if(Util.isLikedByIdentity(Util.getAuthenticatedUserIdentity(portalContainerName).getId(),activity)){
+    Identity authenticatedUserIdentity = resolver.getAuthenticatedUserIdentity();
+    if(authenticatedUserIdentity != null && Util.isLikedByIdentity(authenticatedUserIdentity.getId(),activity)){
       this.setLiked(true);
     } else {
       this.setLiked(false);
     }
     
-    RealtimeListAccess<ExoSocialActivity> commentRealtimeListAccess = Util.getActivityManager(portalContainerName).
-                                                                           getCommentsWithListAccess(activity);
+    RealtimeListAccess<ExoSocialActivity> commentRealtimeListAccess =
+        Util.getActivityManager(resolver.getPortalContainerName()).getCommentsWithListAccess(activity);
     this.setTotalNumberOfComments(commentRealtimeListAccess.getSize());
     
-    Identity streamOwnerIdentity = Util.getOwnerIdentityIdFromActivity(portalContainerName, activity);
+    Identity streamOwnerIdentity = resolver.get(activity.getStreamId());
+    if(streamOwnerIdentity == null){
+      streamOwnerIdentity = Util.getOwnerIdentityIdFromActivity(resolver.getPortalContainerName(), activity);
+    }
     if(streamOwnerIdentity != null){
       this.put(Field.IDENTITY_ID.toString(),streamOwnerIdentity.getId());
     }
@@ -418,17 +433,54 @@ public class ActivityRestOut extends HashMap<String, Object>{
   * @param portalContainerName the portal container name
   */
   public void setNumberOfLikes(int numberOfLikes, ExoSocialActivity activity, String portalContainerName) {
+    setNumberOfLikes(numberOfLikes, activity, new IdentityResolver(portalContainerName));
+  }
+
+ /**
+  * Sets the number of likes to be returned, the identities are taken from the identities of the response.
+  *
+  * @param numberOfLikes the number of likes
+  * @param activity the existing activity
+  * @param resolver the identities of the response
+  */
+  void setNumberOfLikes(int numberOfLikes, ExoSocialActivity activity, IdentityResolver resolver) {
     if (numberOfLikes <= 0) {
       return;
     }
+    List<String> likeIdentityIds = getLatestLikeIdentityIds(numberOfLikes, activity);
+    for (String likeIdentityId : likeIdentityIds) {
+      resolver.add(likeIdentityId);
+    }
+    resolver.resolve();
+    List<IdentityRestOut> identityRests = new ArrayList<IdentityRestOut>(likeIdentityIds.size());
+    for (String likeIdentityId : likeIdentityIds) {
+      Identity identity = resolver.get(likeIdentityId);
+      if (identity != null) {
+        identityRests.add(new IdentityRestOut(identity));
+      }
+    }
+    setLikedByIdentities(identityRests);
+  }
+
+ /**
+  * Gets the ids of the identities who like the activity, the latest first.
+  *
+  * @param numberOfLikes the maximum number of ids
+  * @param activity the existing activity
+  * @return the ids
+  */
+  static List<String> getLatestLikeIdentityIds(int numberOfLikes, ExoSocialActivity activity) {
     String[] likeIdentityIds = activity.getLikeIdentityIds();
+    if (numberOfLikes <= 0 || likeIdentityIds == null) {
+      return new ArrayList<String>();
+    }
     numberOfLikes = Math.min(numberOfLikes, likeIdentityIds.length);
-    List<IdentityRestOut> identityRests = new ArrayList<IdentityRestOut>(numberOfLikes);
+    List<String> latestLikeIdentityIds = new ArrayList<String>(numberOfLikes);
     for (int i = 0; i < numberOfLikes; i++) {
       // got the latest at the end to the top
-      identityRests.add(new IdentityRestOut(likeIdentityIds[likeIdentityIds.length - i - 1], portalContainerName));
+      latestLikeIdentityIds.add(likeIdentityIds[likeIdentityIds.length - i - 1]);
     }
-    setLikedByIdentities(identityRests);
+    return latestLikeIdentityIds;
   }
 
  /**
@@ -439,20 +491,44 @@ public class ActivityRestOut extends HashMap<String, Object>{
   * @param portalContainerName the portal container name
   */
   public void setNumberOfComments(int numberOfComments, ExoSocialActivity activity, String portalContainerName) {
+    setComments(loadComments(numberOfComments, activity, portalContainerName), new IdentityResolver(portalContainerName));
+  }
+
+ /**
+  * Loads the first comments of an activity.
+  *
+  * @param numberOfComments the maximum number of comments
+  * @param activity the existing activity
+  * @param portalContainerName the portal container name
+  * @return the comments, none when the number of comments is not positive
+  */
+  static ExoSocialActivity[] loadComments(int numberOfComments, ExoSocialActivity activity, String portalContainerName) {
     if (numberOfComments <= 0) {
-      return;
+      return new ExoSocialActivity[0];
     }
     ActivityManager activityManager = Util.getActivityManager(portalContainerName);
-    IdentityManager identityManager = Util.getIdentityManager(portalContainerName);
     RealtimeListAccess<ExoSocialActivity> rcla = activityManager.getCommentsWithListAccess(activity);
     ExoSocialActivity[] comments = rcla.load(0, numberOfComments);
-    numberOfComments = Math.min(comments.length, numberOfComments);
-    List<CommentRestOut> commentRests = new ArrayList<CommentRestOut>(numberOfComments);
-    for (int i = 0; i < numberOfComments; i++) {
-      ExoSocialActivity currentComment = comments[i];
-      CommentRestOut commentRestOut = new CommentRestOut(comments[i], portalContainerName);
-      commentRestOut.setPosterIdentity(new IdentityRestOut(identityManager.getIdentity(currentComment.getUserId(), false)));
-      commentRests.add(commentRestOut);
+    return comments.length > numberOfComments ? Arrays.copyOf(comments, numberOfComments) : comments;
+  }
+
+ /**
+  * Sets the comments to be returned, their posters are taken from the identities of the response.
+  *
+  * @param comments the comments
+  * @param resolver the identities of the response
+  */
+  void setComments(ExoSocialActivity[] comments, IdentityResolver resolver) {
+    if (comments.length == 0) {
+      return;
+    }
+    for (ExoSocialActivity comment : comments) {
+      resolver.add(comment.getUserId());
+    }
+    resolver.resolve();
+    List<CommentRestOut> commentRests = new ArrayList<CommentRestOut>(comments.length);
+    for (ExoSocialActivity comment : comments) {
+      commentRests.add(new CommentRestOut(comment, resolver.getIdentityRestOut(comment.getUserId())));
     }
     setComments(commentRests);
   }
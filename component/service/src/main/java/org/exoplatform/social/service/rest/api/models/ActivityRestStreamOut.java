@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest.api.models;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.exoplatform.social.core.activity.model.ActivityStream;
+import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.model.Profile;
+import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
+import org.exoplatform.social.core.service.LinkProvider;
+import org.exoplatform.social.service.rest.Util;
+
+/**
+ * The activity of a REST response written as JSON straight from the activity, with the same fields as
+ * {@link ActivityRestOut}. The comments, identities and counts are loaded when it is created, in the request, only
+ * the writing is left to the response.
+ *
+ * @since 4.1.0
+ */
+public class ActivityRestStreamOut implements StreamingOutput {
+
+  private final ExoSocialActivity activity;
+
+  private final IdentityResolver resolver;
+
+  private final String baseUrl;
+
+  private boolean liked;
+
+  private int totalNumberOfComments;
+
+  private String identityId = "";
+
+  private ExoSocialActivity[] comments = new ExoSocialActivity[0];
+
+  private List<String> likedByIdentityIds = new ArrayList<String>();
+
+  private boolean posterIdentity;
+
+  private boolean activityStream;
+
+  private String activityStreamFullName;
+
+  /**
+   * Loads an activity with its latest comments and likes.
+   *
+   * @param activity            the activity
+   * @param numberOfComments    the number of comments
+   * @param numberOfLikes       the number of likes
+   * @param posterIdentity      whether the poster identity is written
+   * @param activityStream      whether the activity stream is written
+   * @param portalContainerName the portal container name
+   */
+  public ActivityRestStreamOut(ExoSocialActivity activity, int numberOfComments, int numberOfLikes,
+                               boolean posterIdentity, boolean activityStream, String portalContainerName) {
+    this(activity, new IdentityResolver(portalContainerName), Util.getBaseUrl());
+    List<String> likeIdentityIds = ActivityRestOut.getLatestLikeIdentityIds(numberOfLikes, activity);
+    ExoSocialActivity[] comments = ActivityRestOut.loadComments(numberOfComments, activity, portalContainerName);
+    if (posterIdentity) {
+      resolver.add(activity.getUserId());
+    }
+    resolver.add(activity.getStreamId());
+    for (String likeIdentityId : likeIdentityIds) {
+      resolver.add(likeIdentityId);
+    }
+    for (ExoSocialActivity comment : comments) {
+      resolver.add(comment.getUserId());
+    }
+    resolver.resolve();
+    load(comments, likeIdentityIds, posterIdentity, activityStream);
+  }
+
+  /**
+   * Constructor of an activity written without comments, likes, poster and stream until they are set.
+   *
+   * @param activity the activity
+   * @param resolver the identities of the response, the written identities must be resolved
+   * @param baseUrl  the base url of the links
+   */
+  ActivityRestStreamOut(ExoSocialActivity activity, IdentityResolver resolver, String baseUrl) {
+    this.activity = activity;
+    this.resolver = resolver;
+    this.baseUrl = baseUrl;
+  }
+
+  /**
+   * Loads the values given by the services, once the identities of the response are resolved.
+   *
+   * @param comments           the comments
+   * @param likedByIdentityIds the ids of the latest likers
+   * @param posterIdentity     whether the poster identity is written
+   * @param activityStream     whether the activity stream is written
+   */
+  void load(ExoSocialActivity[] comments, List<String> likedByIdentityIds, boolean posterIdentity,
+            boolean activityStream) {
+    Identity authenticatedUserIdentity = resolver.getAuthenticatedUserIdentity();
+    setLiked(authenticatedUserIdentity != null && Util.isLikedByIdentity(authenticatedUserIdentity.getId(), activity));
+    setTotalNumberOfComments(Util.getActivityManager(resolver.getPortalContainerName())
+                                 .getCommentsWithListAccess(activity).getSize());
+    Identity streamOwnerIdentity = resolver.get(activity.getStreamId());
+    if (streamOwnerIdentity == null) {
+      streamOwnerIdentity = Util.getOwnerIdentityIdFromActivity(resolver.getPortalContainerName(), activity);
+    }
+    if (streamOwnerIdentity != null) {
+      setIdentityId(streamOwnerIdentity.getId());
+    }
+    setComments(comments);
+    setLikedByIdentityIds(likedByIdentityIds);
+    setPosterIdentity(posterIdentity);
+    if (activityStream && activity.getActivityStream() != null) {
+      setActivityStream(ActivityStreamRestOut.getFullName(activity.getActivityStream(), resolver));
+    }
+  }
+
+  void setLiked(boolean liked) {
+    this.liked = liked;
+  }
+
+  void setTotalNumberOfComments(int totalNumberOfComments) {
+    this.totalNumberOfComments = totalNumberOfComments;
+  }
+
+  void setIdentityId(String identityId) {
+    this.identityId = identityId;
+  }
+
+  void setComments(ExoSocialActivity[] comments) {
+    this.comments = comments;
+  }
+
+  void setLikedByIdentityIds(List<String> likedByIdentityIds) {
+    this.likedByIdentityIds = likedByIdentityIds;
+  }
+
+  void setPosterIdentity(boolean posterIdentity) {
+    this.posterIdentity = posterIdentity;
+  }
+
+  /**
+   * Writes the activity stream.
+   *
+   * @param fullName the full name of the stream owner
+   */
+  void setActivityStream(String fullName) {
+    this.activityStream = true;
+    this.activityStreamFullName = fullName;
+  }
+
+  public void write(OutputStream output) throws IOException, WebApplicationException {
+    JsonStreamWriter out = new JsonStreamWriter(new BufferedWriter(new OutputStreamWriter(output, "UTF-8")));
+    write(out, Util.getTimeStringFormat());
+    out.flush();
+  }
+
+  /**
+   * Writes the activity as a JSON object.
+   *
+   * @param out        the writer
+   * @param dateFormat the format of the dates, shared by the activities of the response
+   */
+  void write(JsonStreamWriter out, DateFormat dateFormat) throws IOException {
+    long postedTime = activity.getPostedTime() != null ? activity.getPostedTime() : 0;
+    Map<String, String> templateParams = activity.getTemplateParams();
+    String[] likeIdentityIds = activity.getLikeIdentityIds();
+
+    out.beginObject();
+    out.name(ActivityRestOut.Field.ID.toString()).value(valueOf(activity.getId()));
+    out.name(ActivityRestOut.Field.TITLE.toString()).value(valueOf(activity.getTitle()));
+    out.name(ActivityRestOut.Field.BODY.toString()).value(valueOf(activity.getBody()));
+    out.name(ActivityRestOut.Field.APPID.toString()).value(valueOf(activity.getAppId()));
+    out.name(ActivityRestOut.Field.TYPE.toString()).value(valueOf(activity.getType()));
+    out.name(ActivityRestOut.Field.POSTED_TIME.toString()).value(postedTime);
+    out.name(ActivityRestOut.Field.LAST_UPDATED.toString())
+       .value(activity.getUpdated() != null ? activity.getUpdated().getTime() : 0);
+    out.name(ActivityRestOut.Field.CREATED_AT.toString()).value(dateFormat.format(new Date(postedTime)));
+    // the priority is a float written as a double, like the models
+    out.name(ActivityRestOut.Field.PRIORITY.toString())
+       .value(activity.getPriority() != null ? activity.getPriority().doubleValue() : 0);
+    out.name(ActivityRestOut.Field.TEMPLATE_PARAMS.toString());
+    if (templateParams != null) {
+      out.value((Object) templateParams);
+    } else {
+      out.beginObject().endObject();
+    }
+    out.name(ActivityRestOut.Field.TITLE_ID.toString()).value(valueOf(activity.getTitleId()));
+    out.name(ActivityRestOut.Field.IDENTITY_ID.toString()).value(identityId);
+    out.name(ActivityRestOut.Field.LIKED.toString()).value(liked);
+    out.name(ActivityRestOut.Field.LIKED_BY_IDENTITIES.toString()).beginArray();
+    for (String likedByIdentityId : likedByIdentityIds) {
+      Identity identity = resolver.get(likedByIdentityId);
+      if (identity != null) {
+        writeIdentity(out, identity, baseUrl);
+      }
+    }
+    out.endArray();
+    out.name(ActivityRestOut.Field.TOTAL_NUMBER_OF_LIKES.toString())
+       .value(likeIdentityIds != null ? likeIdentityIds.length : 0);
+    out.name(ActivityRestOut.Field.POSTER_IDENTITY.toString());
+    if (posterIdentity) {
+      writeIdentity(out, resolver.get(activity.getUserId()), baseUrl);
+    } else {
+      out.beginObject().endObject();
+    }
+    out.name(ActivityRestOut.Field.COMMENTS.toString()).beginArray();
+    for (ExoSocialActivity comment : comments) {
+      writeComment(out, comment, dateFormat);
+    }
+    out.endArray();
+    out.name(ActivityRestOut.Field.TOTAL_NUMBER_OF_COMMENTS.toString()).value(totalNumberOfComments);
+    out.name(ActivityRestOut.Field.ACTIVITY_STREAM.toString());
+    if (activityStream) {
+      writeActivityStream(out, activity.getActivityStream());
+    } else {
+      out.beginObject().endObject();
+    }
+    out.endObject();
+  }
+
+  /**
+   * Writes a comment like {@link CommentRestOut}.
+   */
+  private void writeComment(JsonStreamWriter out, ExoSocialActivity comment, DateFormat dateFormat)
+      throws IOException {
+    long postedTime = comment.getPostedTime() != null ? comment.getPostedTime() : 0;
+    out.beginObject();
+    out.name(CommentRestOut.Field.ID.toString()).value(valueOf(comment.getId()));
+    out.name(CommentRestOut.Field.TEXT.toString()).value(valueOf(comment.getTitle()));
+    out.name(CommentRestOut.Field.POSTER_IDENTITY.toString());
+    writeIdentity(out, resolver.get(comment.getUserId()), baseUrl);
+    out.name(CommentRestOut.Field.POSTED_TIME.toString()).value(postedTime);
+    out.name(CommentRestOut.Field.CREATE_AT.toString()).value(dateFormat.format(new Date(postedTime)));
+    out.endObject();
+  }
+
+  /**
+   * Writes an activity stream like {@link ActivityStreamRestOut}.
+   */
+  private void writeActivityStream(JsonStreamWriter out, ActivityStream stream) throws IOException {
+    out.beginObject();
+    out.name(ActivityStreamRestOut.Field.TYPE.toString())
+       .value(stream.getType() != null ? stream.getType().toString() : "");
+    out.name(ActivityStreamRestOut.Field.PRETTY_ID.toString()).value(valueOf(stream.getPrettyId()));
+    out.name(ActivityStreamRestOut.Field.FULL_NAME.toString()).value(valueOf(activityStreamFullName));
+    out.name(ActivityStreamRestOut.Field.FAVICON_URL.toString())
+       .value(stream.getFaviconUrl() != null ? baseUrl + stream.getFaviconUrl() : "");
+    out.name(ActivityStreamRestOut.Field.TITLE.toString()).value(valueOf(stream.getTitle()));
+    out.name(ActivityStreamRestOut.Field.PERMA_LINK.toString())
+       .value(stream.getPermaLink() != null ? baseUrl + stream.getPermaLink() : "");
+    out.endObject();
+  }
+
+  /**
+   * Writes an identity like {@link IdentityRestOut}, with an absolute avatar url.
+   *
+   * @param out      the writer
+   * @param identity the identity, the fields are empty when it is null
+   * @param baseUrl  the base url of the avatar
+   */
+  static void writeIdentity(JsonStreamWriter out, Identity identity, String baseUrl) throws IOException {
+    out.beginObject();
+    if (identity == null) {
+      out.name(IdentityRestOut.Field.ID.toString()).value("");
+      out.name(IdentityRestOut.Field.PROVIDER_ID.toString()).value("");
+      out.name(IdentityRestOut.Field.REMOTE_ID.toString()).value("");
+      out.name(IdentityRestOut.Field.PROFILE.toString()).beginObject();
+      out.name(ProfileRestOut.Field.FULL_NAME.toString()).value("");
+      out.name(ProfileRestOut.Field.AVATAR_URL.toString()).value("");
+      out.endObject();
+      out.endObject();
+      return;
+    }
+    Profile profile = identity.getProfile();
+    String avatarUrl = profile != null ? profile.getAvatarUrl() : null;
+    if (avatarUrl == null || avatarUrl.trim().length() == 0) {
+      avatarUrl = baseUrl + (SpaceIdentityProvider.NAME.equals(identity.getProviderId())
+          ? LinkProvider.SPACE_DEFAULT_AVATAR_URL : LinkProvider.PROFILE_DEFAULT_AVATAR_URL);
+    } else if (!avatarUrl.startsWith("http://") && !avatarUrl.startsWith("https://")) {
+      avatarUrl = baseUrl + avatarUrl;
+    }
+    out.name(IdentityRestOut.Field.ID.toString()).value(valueOf(identity.getId()));
+    out.name(IdentityRestOut.Field.PROVIDER_ID.toString()).value(valueOf(identity.getProviderId()));
+    out.name(IdentityRestOut.Field.REMOTE_ID.toString()).value(valueOf(identity.getRemoteId()));
+    out.name(IdentityRestOut.Field.PROFILE.toString()).beginObject();
+    out.name(ProfileRestOut.Field.FULL_NAME.toString()).value(profile != null ? valueOf(profile.getFullName()) : "");
+    out.name(ProfileRestOut.Field.AVATAR_URL.toString()).value(avatarUrl);
+    out.endObject();
+    out.endObject();
+  }
+
+  /**
+   * @return the string, empty when it is null like the models
+   */
+  private static String valueOf(String s) {
+    return s != null ? s : "";
+  }
+
+}
@@ -23,7 +23,6 @@ import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.space.model.Space;
-import org.exoplatform.social.core.space.spi.SpaceService;
 import org.exoplatform.social.service.rest.Util;
 
 
@@ -84,6 +83,18 @@ public class ActivityStreamRestOut extends HashMap<String, Object> {
    * @param activityStream the activity stream instance.
    */
   public ActivityStreamRestOut(final ActivityStream activityStream, String portalContainerName) {
+    this(activityStream, new IdentityResolver(portalContainerName));
+  }
+
+  /**
+   * Constructor to construct object from {@link ActivityStream} instance, the stream owner is taken from the
+   * identities of the response.
+   *
+   * @param activityStream the activity stream instance
+   * @param resolver the identities of the response
+   * @since 4.1.0
+   */
+  ActivityStreamRestOut(final ActivityStream activityStream, IdentityResolver resolver) {
     initialize();
     this.setType(activityStream.getType().toString());
     this.setPrettyId(activityStream.getPrettyId());
@@ -91,23 +102,38 @@ public class ActivityStreamRestOut extends HashMap<String, Object> {
     this.setTitle(activityStream.getTitle());
     this.setPermaLink(activityStream.getPermaLink()); //TODO make sure absolute link
     
+    this.setFullName(getFullName(activityStream, resolver));
+  }
+
+  /**
+   * Gets the full name of the owner of a stream, the display name of a space or the full name of a user.
+   *
+   * @param activityStream the activity stream
+   * @param resolver the identities of the response
+   * @return the full name, null when it is not found
+   * @since 4.1.0
+   */
+  static String getFullName(ActivityStream activityStream, IdentityResolver resolver) {
     if(activityStream.getType() != null){
       ActivityStream.Type activityStreamType =  activityStream.getType();
       if(activityStreamType.equals(ActivityStream.Type.SPACE)){
-        SpaceService spaceService = Util.getSpaceService(portalContainerName);
-        Space space = spaceService.getSpaceByPrettyName(activityStream.getPrettyId());
+        Space space = resolver.getSpaceByPrettyName(activityStream.getPrettyId());
         if(space != null && space.getDisplayName() != null){
-          this.setFullName(space.getDisplayName());
+          return space.getDisplayName();
         }
       } else if(activityStreamType.equals(ActivityStream.Type.USER)) {
-        IdentityManager identityManager = Util.getIdentityManager(portalContainerName);
-        Identity identity = identityManager.getOrCreateIdentity(
-                                OrganizationIdentityProvider.NAME, activityStream.getPrettyId(), true);  
+        Identity identity = resolver.get(activityStream.getId());
+        if (identity == null) {
+          IdentityManager identityManager = Util.getIdentityManager(resolver.getPortalContainerName());
+          identity = identityManager.getOrCreateIdentity(
+                                  OrganizationIdentityProvider.NAME, activityStream.getPrettyId(), true);
+        }
         if(identity != null && identity.getProfile() != null && identity.getProfile().getFullName() != null){
-          this.setFullName(identity.getProfile().getFullName());
+          return identity.getProfile().getFullName();
         }
       }
     }
+    return null;
   }
 
   /**
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest.api.models;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The activity streams which got new activities, answered to a reader waiting for them.
+ *
+ * @since 4.1.0
+ */
+public class ActivityStreamUpdatesRestOut extends HashMap<String, Object> {
+
+  /**
+   * The enum fields as json keys
+   */
+  public static enum Field {
+    /**
+     * The names of the streams which got new activities
+     */
+    STREAMS("streams"),
+    /**
+     * The last updated time of the newest activity of the streams, to pass as since_time to the next request
+     */
+    LAST_UPDATED("lastUpdated");
+
+    /**
+     * field name
+     */
+    private final String fieldName;
+
+    /**
+     * Private constructor.
+     *
+     * @param str the field name
+     */
+    private Field(final String str) {
+      fieldName = str;
+    }
+
+    /**
+     * Gets the string field name.
+     *
+     * @return the field name
+     */
+    @Override
+    public String toString() {
+      return fieldName;
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param streams     the names of the streams which got new activities, empty when none did
+   * @param lastUpdated the last updated time of the newest activity of the streams
+   */
+  public ActivityStreamUpdatesRestOut(List<String> streams, long lastUpdated) {
+    put(Field.STREAMS.toString(), new ArrayList<String>(streams));
+    put(Field.LAST_UPDATED.toString(), lastUpdated);
+  }
+
+  /**
+   * @return the names of the streams which got new activities
+   */
+  @SuppressWarnings("unchecked")
+  public List<String> getStreams() {
+    return (List<String>) get(Field.STREAMS.toString());
+  }
+
+  /**
+   * @return the last updated time of the newest activity of the streams
+   */
+  public long getLastUpdated() {
+    return (Long) get(Field.LAST_UPDATED.toString());
+  }
+
+  /**
+   * Writes the updates as json, for the responses written out of the REST services.
+   *
+   * @param writer the writer, not closed
+   * @throws IOException if the writer fails
+   */
+  public void writeJson(Writer writer) throws IOException {
+    JsonStreamWriter json = new JsonStreamWriter(writer);
+    json.value(this);
+    json.flush();
+  }
+
+}
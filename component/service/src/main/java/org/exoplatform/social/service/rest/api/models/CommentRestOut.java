@@ -81,9 +81,19 @@ public class CommentRestOut extends HashMap<String, Object>{
    * @param commentActivity
    */
   public CommentRestOut(ExoSocialActivity commentActivity, String portalContainerName){
+    this(commentActivity, new IdentityRestOut(commentActivity.getUserId(), portalContainerName));
+  }
+
+  /**
+   * Construct Comments model ExoSocialActivity with the identity of its poster
+   * @param commentActivity
+   * @param posterIdentity
+   * @since 4.1.0
+   */
+  CommentRestOut(ExoSocialActivity commentActivity, IdentityRestOut posterIdentity){
     initialize();
     this.setId(commentActivity.getId());
-    this.setPosterIdentity(new IdentityRestOut(commentActivity.getUserId(),portalContainerName));
+    this.setPosterIdentity(posterIdentity);
     this.setText(commentActivity.getTitle());
     this.setPostedTime(commentActivity.getPostedTime());
     this.setCreatedAt(Util.convertTimestampToTimeString(commentActivity.getPostedTime()));  
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest.api.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.service.rest.Util;
+
+/**
+ * The identities and spaces referenced by the models of a REST response. The identity ids of a whole page are
+ * added first and loaded with their profiles in one call, then the models get them from the resolver. It is meant
+ * for one request, the identities are not refreshed.
+ *
+ * @since 4.1.0
+ */
+final class IdentityResolver {
+
+  private final String portalContainerName;
+
+  private final Set<String> pending = new LinkedHashSet<String>();
+
+  private final Map<String, Identity> identities = new HashMap<String, Identity>();
+
+  private final Map<String, Space> spaces = new HashMap<String, Space>();
+
+  private Identity authenticatedUserIdentity;
+
+  private boolean authenticatedUserResolved;
+
+  IdentityResolver(String portalContainerName) {
+    this.portalContainerName = portalContainerName;
+  }
+
+  String getPortalContainerName() {
+    return portalContainerName;
+  }
+
+  /**
+   * Adds the id of an identity to load with the next ones.
+   *
+   * @param identityId the identity id, ignored when null
+   */
+  void add(String identityId) {
+    if (identityId != null && !identities.containsKey(identityId)) {
+      pending.add(identityId);
+    }
+  }
+
+  /**
+   * Adds an identity already loaded with its profile.
+   *
+   * @param identity the identity
+   */
+  void put(Identity identity) {
+    pending.remove(identity.getId());
+    identities.put(identity.getId(), identity);
+  }
+
+  /**
+   * Loads the identities added since the last call, in one call.
+   */
+  void resolve() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    for (Identity identity : Util.getIdentityManager(portalContainerName).getIdentities(new ArrayList<String>(pending))) {
+      identities.put(identity.getId(), identity);
+    }
+    // the missing identities are not loaded again
+    for (String identityId : pending) {
+      if (!identities.containsKey(identityId)) {
+        identities.put(identityId, null);
+      }
+    }
+    pending.clear();
+  }
+
+  /**
+   * Gets an identity with its profile, loaded with the pending ones when it was not added before.
+   *
+   * @param identityId the identity id
+   * @return the identity, null when it does not exist
+   */
+  Identity get(String identityId) {
+    if (identityId == null) {
+      return null;
+    }
+    if (!identities.containsKey(identityId)) {
+      add(identityId);
+      resolve();
+    }
+    return identities.get(identityId);
+  }
+
+  /**
+   * Gets the model of an identity.
+   *
+   * @param identityId the identity id
+   * @return the model, an empty one when the identity does not exist
+   */
+  IdentityRestOut getIdentityRestOut(String identityId) {
+    Identity identity = get(identityId);
+    return identity != null ? new IdentityRestOut(identity) : new IdentityRestOut();
+  }
+
+  /**
+   * Gets the identity of the authenticated user, resolved once.
+   *
+   * @return the identity, null when the user is not authenticated
+   */
+  Identity getAuthenticatedUserIdentity() {
+    if (!authenticatedUserResolved) {
+      authenticatedUserIdentity = Util.getAuthenticatedUserIdentity(portalContainerName);
+      authenticatedUserResolved = true;
+    }
+    return authenticatedUserIdentity;
+  }
+
+  /**
+   * Gets a space by its pretty name, resolved once.
+   *
+   * @return the space, null when it does not exist
+   */
+  Space getSpaceByPrettyName(String prettyName) {
+    if (!spaces.containsKey(prettyName)) {
+      spaces.put(prettyName, Util.getSpaceService(portalContainerName).getSpaceByPrettyName(prettyName));
+    }
+    return spaces.get(prettyName);
+  }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest.api.models;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes JSON to a writer as it goes, without building the values in memory. The separators are written from the
+ * calls: a name is followed by one value, the values of an array follow each other.
+ *
+ * @since 4.1.0
+ */
+final class JsonStreamWriter {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Writer writer;
+
+  /** Whether the array or object at each depth has no value yet. */
+  private boolean[] empty = new boolean[16];
+
+  private int depth;
+
+  private boolean afterName;
+
+  JsonStreamWriter(Writer writer) {
+    this.writer = writer;
+  }
+
+  JsonStreamWriter beginObject() throws IOException {
+    return begin('{');
+  }
+
+  JsonStreamWriter endObject() throws IOException {
+    return end('}');
+  }
+
+  JsonStreamWriter beginArray() throws IOException {
+    return begin('[');
+  }
+
+  JsonStreamWriter endArray() throws IOException {
+    return end(']');
+  }
+
+  /**
+   * Writes the name of the next value of an object.
+   */
+  JsonStreamWriter name(String name) throws IOException {
+    if (depth == 0 || afterName) {
+      throw new IllegalStateException("A name must be followed by a value inside an object");
+    }
+    separator();
+    string(name);
+    writer.write(':');
+    afterName = true;
+    return this;
+  }
+
+  /**
+   * Writes a string value, null when the string is null.
+   */
+  JsonStreamWriter value(String value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    separator();
+    string(value);
+    return this;
+  }
+
+  JsonStreamWriter value(long value) throws IOException {
+    separator();
+    writer.write(Long.toString(value));
+    return this;
+  }
+
+  JsonStreamWriter value(double value) throws IOException {
+    separator();
+    writer.write(Double.toString(value));
+    return this;
+  }
+
+  JsonStreamWriter value(boolean value) throws IOException {
+    separator();
+    writer.write(value ? "true" : "false");
+    return this;
+  }
+
+  JsonStreamWriter nullValue() throws IOException {
+    separator();
+    writer.write("null");
+    return this;
+  }
+
+  /**
+   * Writes a value of any type: maps as objects, collections and arrays as arrays, numbers and booleans as they
+   * are and the other objects as strings.
+   */
+  JsonStreamWriter value(Object value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    } else if (value instanceof String) {
+      return value((String) value);
+    } else if (value instanceof Boolean) {
+      return value(((Boolean) value).booleanValue());
+    } else if (value instanceof Float || value instanceof Double) {
+      return value(((Number) value).doubleValue());
+    } else if (value instanceof Number) {
+      return value(((Number) value).longValue());
+    } else if (value instanceof Map) {
+      beginObject();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        name(String.valueOf(entry.getKey()));
+        value(entry.getValue());
+      }
+      return endObject();
+    } else if (value instanceof Collection) {
+      beginArray();
+      for (Object item : (Collection<?>) value) {
+        value(item);
+      }
+      return endArray();
+    } else if (value instanceof Object[]) {
+      beginArray();
+      for (Object item : (Object[]) value) {
+        value(item);
+      }
+      return endArray();
+    }
+    return value(value.toString());
+  }
+
+  void flush() throws IOException {
+    writer.flush();
+  }
+
+  private JsonStreamWriter begin(char c) throws IOException {
+    separator();
+    if (depth == empty.length) {
+      boolean[] larger = new boolean[depth * 2];
+      System.arraycopy(empty, 0, larger, 0, depth);
+      empty = larger;
+    }
+    empty[depth++] = true;
+    writer.write(c);
+    return this;
+  }
+
+  private JsonStreamWriter end(char c) throws IOException {
+    if (depth == 0 || afterName) {
+      throw new IllegalStateException("Nothing to end");
+    }
+    depth--;
+    writer.write(c);
+    return this;
+  }
+
+  private void separator() throws IOException {
+    if (afterName) {
+      afterName = false;
+    } else if (depth > 0) {
+      if (empty[depth - 1]) {
+        empty[depth - 1] = false;
+      } else {
+        writer.write(',');
+      }
+    }
+  }
+
+  /**
+   * Writes a quoted string, the characters which need it are escaped and the others are written by runs.
+   */
+  private void string(String s) throws IOException {
+    writer.write('"');
+    int start = 0;
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      String escape;
+      switch (c) {
+        case '"':
+          escape = "\\\"";
+          break;
+        case '\\':
+          escape = "\\\\";
+          break;
+        case '\n':
+          escape = "\\n";
+          break;
+        case '\r':
+          escape = "\\r";
+          break;
+        case '\t':
+          escape = "\\t";
+          break;
+        case '\b':
+          escape = "\\b";
+          break;
+        case '\f':
+          escape = "\\f";
+          break;
+        default:
+          // the line separators are valid in JSON but not in javascript
+          if (c >= ' ' && c != '\u2028' && c != '\u2029') {
+            continue;
+          }
+          escape = null;
+      }
+      if (i > start) {
+        writer.write(s, start, i - start);
+      }
+      if (escape != null) {
+        writer.write(escape);
+      } else {
+        writer.write("\\u");
+        writer.write(HEX[(c >> 12) & 0xF]);
+        writer.write(HEX[(c >> 8) & 0xF]);
+        writer.write(HEX[(c >> 4) & 0xF]);
+        writer.write(HEX[c & 0xF]);
+      }
+      start = i + 1;
+    }
+    if (length > start) {
+      writer.write(s, start, length - start);
+    }
+    writer.write('"');
+  }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit Test for {@link ImageSizeProber}, the images are served by a local HTTP server.
+ */
+public class ImageSizeProberTest extends TestCase {
+
+  private HttpServer server;
+
+  private String baseUrl;
+
+  private final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+
+  @Override
+  protected void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.putIfAbsent(path, new AtomicInteger());
+        requests.get(path).incrementAndGet();
+        try {
+          if (path.startsWith("/slow")) {
+            Thread.sleep(1000);
+          }
+          byte[] image = getImage(path);
+          if (image == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+          }
+          exchange.sendResponseHeaders(200, image.length);
+          OutputStream out = exchange.getResponseBody();
+          try {
+            out.write(image);
+          } catch (IOException e) {
+            // the client stopped reading
+          } finally {
+            exchange.close();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.stop(0);
+  }
+
+  public void testReadSize() throws Exception {
+    for (String format : new String[] {"png", "gif", "jpg", "bmp"}) {
+      int[] size = ImageSizeProber.readSize(new ByteArrayInputStream(createImage(format, 120, 45)));
+      assertNotNull(format, size);
+      assertEquals(format, 120, size[0]);
+      assertEquals(format, 45, size[1]);
+    }
+    assertNull(ImageSizeProber.readSize(new ByteArrayInputStream("<html></html>".getBytes("UTF-8"))));
+    byte[] png = createImage("png", 120, 45);
+    assertNull(ImageSizeProber.readSize(new ByteArrayInputStream(Arrays.copyOf(png, 10))));
+
+    // only the beginning of the images is read
+    for (String format : new String[] {"png", "jpg"}) {
+      ByteArrayInputStream image = new ByteArrayInputStream(createImage(format, 2000, 1500));
+      int length = image.available();
+      assertEquals(format, 2000, ImageSizeProber.readSize(image)[0]);
+      assertTrue(format, length - image.available() <= ImageSizeProber.MAX_HEADER_SIZE);
+    }
+  }
+
+  public void testProbe() throws Exception {
+    ImageSizeProber prober = new ImageSizeProber(2, 10, 3000, 100, 60000L);
+    List<int[]> sizes = prober.probe(Arrays.asList(baseUrl + "/large.png", baseUrl + "/small.gif",
+                                                   baseUrl + "/missing.png", "http://127.0.0.1:1/closed.png",
+                                                   baseUrl + "/photo.jpg"), 5000);
+    assertEquals(5, sizes.size());
+    assertEquals(2000, sizes.get(0)[0]);
+    assertEquals(1500, sizes.get(0)[1]);
+    assertEquals(10, sizes.get(1)[0]);
+    assertNull(sizes.get(2));
+    assertNull(sizes.get(3));
+    assertEquals(300, sizes.get(4)[0]);
+
+    // the sizes are kept by url
+    sizes = prober.probe(Arrays.asList(baseUrl + "/large.png", baseUrl + "/missing.png"), 5000);
+    assertEquals(2000, sizes.get(0)[0]);
+    assertNull(sizes.get(1));
+    assertEquals(1, requests.get("/large.png").get());
+    assertEquals(1, requests.get("/missing.png").get());
+  }
+
+  public void testFailureTtl() throws Exception {
+    ImageSizeProber prober = new ImageSizeProber(2, 10, 3000, 100, 200L);
+    assertNull(prober.probe(Arrays.asList(baseUrl + "/missing.png"), 5000).get(0));
+    assertNull(prober.probe(Arrays.asList(baseUrl + "/missing.png"), 5000).get(0));
+    assertEquals(1, requests.get("/missing.png").get());
+
+    // the images which could not be read are probed again after a while
+    Thread.sleep(300);
+    assertNull(prober.probe(Arrays.asList(baseUrl + "/missing.png"), 5000).get(0));
+    assertEquals(2, requests.get("/missing.png").get());
+  }
+
+  public void testTimeout() throws Exception {
+    ImageSizeProber prober = new ImageSizeProber(2, 10, 3000, 100, 60000L);
+    long start = System.currentTimeMillis();
+    List<int[]> sizes = prober.probe(Arrays.asList(baseUrl + "/slow.png", baseUrl + "/small.gif"), 300);
+    assertTrue(System.currentTimeMillis() - start < 900);
+    assertNull(sizes.get(0));
+    assertEquals(10, sizes.get(1)[0]);
+
+    // the image probed after the deadline is kept
+    Thread.sleep(1500);
+    sizes = prober.probe(Arrays.asList(baseUrl + "/slow.png"), 300);
+    assertEquals(80, sizes.get(0)[0]);
+    assertEquals(1, requests.get("/slow.png").get());
+  }
+
+  private static byte[] getImage(String path) throws IOException {
+    if (path.endsWith("large.png")) {
+      return createImage("png", 2000, 1500);
+    } else if (path.endsWith("small.gif")) {
+      return createImage("gif", 10, 10);
+    } else if (path.endsWith("photo.jpg")) {
+      return createImage("jpg", 300, 200);
+    } else if (path.endsWith("slow.png")) {
+      return createImage("png", 80, 80);
+    }
+    return null;
+  }
+
+  private static byte[] createImage(String format, int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    // noise so that the large images are not compressed too much
+    for (int x = 0; x < width; x++) {
+      for (int y = 0; y < height; y++) {
+        image.setRGB(x, y, (int) ((x * 7919L + y * 104729L) * 2654435761L));
+      }
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, format, out);
+    return out.toByteArray();
+  }
+
+}
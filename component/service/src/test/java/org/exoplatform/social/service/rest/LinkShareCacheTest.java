@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit Test for {@link LinkShareCache}, the pages are served by a local HTTP server.
+ */
+public class LinkShareCacheTest extends TestCase {
+
+  private HttpServer server;
+
+  private String baseUrl;
+
+  private final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+
+  @Override
+  protected void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.putIfAbsent(path, new AtomicInteger());
+        requests.get(path).incrementAndGet();
+        try {
+          if (path.startsWith("/slow")) {
+            Thread.sleep(500);
+          }
+          StringBuilder page = new StringBuilder("<html><head><title>Title of ").append(path).append("</title></head>");
+          page.append("<body><p>Description of ").append(path).append("</p>");
+          if (path.startsWith("/large")) {
+            for (int i = 0; i < 200000; i++) {
+              page.append("<p>paragraph</p>");
+            }
+          }
+          byte[] content = page.append("</body></html>").toString().getBytes("UTF-8");
+          exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+          exchange.sendResponseHeaders(200, content.length);
+          OutputStream out = exchange.getResponseBody();
+          try {
+            out.write(content);
+          } catch (IOException e) {
+            // the client stopped reading
+          } finally {
+            exchange.close();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.stop(0);
+  }
+
+  public void testGetKey() throws Exception {
+    assertEquals("http://www.exoplatform.com/ en", LinkShareCache.getKey("www.exoplatform.com", "en"));
+    assertEquals("http://www.exoplatform.com/ en", LinkShareCache.getKey("HTTP://WWW.eXoplatform.com:80#top", "en"));
+    assertEquals("https://www.exoplatform.com:8443/a/B?c=D fr",
+                 LinkShareCache.getKey("https://www.exoplatform.com:8443/a/B?c=D", "fr"));
+    assertFalse(LinkShareCache.getKey("http://www.exoplatform.com/", "en")
+                              .equals(LinkShareCache.getKey("http://www.exoplatform.com/", "fr")));
+    assertNull(LinkShareCache.getKey("not a link", "en"));
+    assertNull(LinkShareCache.getKey(null, "en"));
+  }
+
+  public void testKeptPreviews() throws Exception {
+    LinkShareCache cache = new LinkShareCache(10, 60000);
+    LinkShare linkShare = cache.get(baseUrl + "/page", "en", 5000);
+    assertEquals("Title of /page", linkShare.getTitle());
+    int fetched = requests.get("/page").get();
+
+    String otherLink = baseUrl.toUpperCase() + "/page#top";
+    linkShare = cache.get(otherLink, "en", 5000);
+    assertEquals("Title of /page", linkShare.getTitle());
+    assertEquals(otherLink, linkShare.getLink());
+    assertEquals(fetched, requests.get("/page").get());
+    assertEquals(1, cache.size());
+  }
+
+  public void testTimeToLiveAndMaxSize() throws Exception {
+    LinkShareCache cache = new LinkShareCache(2, 200);
+    cache.get(baseUrl + "/page", "en", 5000);
+    int fetched = requests.get("/page").get();
+    Thread.sleep(400);
+    cache.get(baseUrl + "/page", "en", 5000);
+    assertEquals(2 * fetched, requests.get("/page").get());
+
+    cache.get(baseUrl + "/page1", "en", 5000);
+    cache.get(baseUrl + "/page2", "en", 5000);
+    assertEquals(2, cache.size());
+  }
+
+  public void testCoalescedFetches() throws Exception {
+    new LinkShareCache(10, 60000).get(baseUrl + "/slow0", "en", 5000);
+    int fetched = requests.get("/slow0").get();
+
+    final LinkShareCache cache = new LinkShareCache(10, 60000);
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<String> titles = new ArrayList<String>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 5; i++) {
+      Thread thread = new Thread() {
+        public void run() {
+          try {
+            start.await();
+            String title = cache.get(baseUrl + "/slow1", "en", 5000).getTitle();
+            synchronized (titles) {
+              titles.add(title);
+            }
+          } catch (Exception e) {
+            // the title is missing
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(5, titles.size());
+    for (String title : titles) {
+      assertEquals("Title of /slow1", title);
+    }
+    assertEquals(fetched, requests.get("/slow1").get());
+  }
+
+  public void testPendingPreview() throws Exception {
+    LinkShareCache cache = new LinkShareCache(10, 60000);
+    try {
+      cache.get(baseUrl + "/slow", "en", 50);
+      fail();
+    } catch (TimeoutException e) {
+      // the preview is pending
+    }
+    Thread.sleep(1500);
+    int fetched = requests.get("/slow").get();
+    assertEquals("Title of /slow", cache.get(baseUrl + "/slow", "en", 50).getTitle());
+    assertEquals(fetched, requests.get("/slow").get());
+  }
+
+  public void testLargePage() throws Exception {
+    LinkShareCache cache = new LinkShareCache(10, 60000);
+    LinkShare linkShare = cache.get(baseUrl + "/large", "en", 10000);
+    assertEquals("Title of /large", linkShare.getTitle());
+    assertEquals("Description of /large", linkShare.getDescription());
+  }
+
+}
@@ -33,6 +33,7 @@ import org.exoplatform.social.core.space.spi.SpaceService;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.exoplatform.services.rest.impl.ContainerResponse;
 import org.exoplatform.services.rest.impl.MultivaluedMapImpl;
@@ -43,8 +44,10 @@ import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvide
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.manager.IdentityManager;
+import org.exoplatform.social.service.rest.Util;
 import org.exoplatform.social.service.rest.api.ActivityResources;
 import org.exoplatform.social.service.rest.api.models.ActivityRestOut;
+import org.exoplatform.social.service.rest.api.models.ActivityRestStreamOut;
 import org.exoplatform.social.service.rest.api.models.IdentityRestOut;
 import org.exoplatform.social.service.test.AbstractResourceTest;
 import org.json.JSONWriter;
@@ -100,6 +103,8 @@ public class ActivityResourcesTest extends AbstractResourceTest {
     tearDownRelationshipList = new ArrayList<Relationship>();
     tearDownSpaceList = new ArrayList<Space>();
 
+    // the entities are checked as models, the streamed JSON is compared with them in testStreamingResponse
+    System.setProperty(Util.STREAMING_RESPONSES_PROPERTY, "false");
     addResource(ActivityResources.class, null);
   }
 
@@ -129,6 +134,7 @@ public class ActivityResourcesTest extends AbstractResourceTest {
       identityManager.deleteIdentity(identity);
     }
     removeResource(ActivityResources.class);
+    System.clearProperty(Util.STREAMING_RESPONSES_PROPERTY);
 
     super.tearDown();
   }
@@ -442,6 +448,33 @@ public class ActivityResourcesTest extends AbstractResourceTest {
   }
   
   
+  /**
+   * Tests that the streamed activity has the same JSON as the model.
+   */
+  public void testStreamingResponse() throws Exception {
+    createActivities(demoIdentity, demoIdentity, 1);
+    ExoSocialActivity demoActivity = activityManager.getActivitiesWithListAccess(demoIdentity).load(0, 1)[0];
+    activityManager.saveLike(demoActivity, demoIdentity);
+    activityManager.saveLike(demoActivity, maryIdentity);
+    createComment(demoActivity, demoIdentity, 3);
+    connectIdentities(demoIdentity, johnIdentity, true);
+
+    String resourceUrl = RESOURCE_URL + "/" + demoActivity.getId() + ".json";
+    // the poster identity of the model has no profile loaded, the streamed one has
+    String[] queries = {"", "?number_of_comments=2&activity_stream=1&number_of_likes=1"};
+    startSessionAs("john");
+    for (String query : queries) {
+      System.setProperty(Util.STREAMING_RESPONSES_PROPERTY, "false");
+      ContainerResponse modelResponse = service("GET", resourceUrl + query, "", null, null);
+      assertEquals(200, modelResponse.getStatus());
+      System.setProperty(Util.STREAMING_RESPONSES_PROPERTY, "true");
+      ContainerResponse streamingResponse = service("GET", resourceUrl + query, "", null, null);
+      assertEquals(200, streamingResponse.getStatus());
+      assertTrue(streamingResponse.getEntity() instanceof ActivityRestStreamOut);
+      assertStreamingOutputEqualsEntity(modelResponse.getEntity(), (StreamingOutput) streamingResponse.getEntity());
+    }
+  }
+
   /**
    * Tests
    * {@link ActivityResources#getActivityById(javax.ws.rs.core.UriInfo, String, String, String, String, String, String)}
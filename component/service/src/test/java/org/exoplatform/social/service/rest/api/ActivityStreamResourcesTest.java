@@ -18,6 +18,7 @@ package org.exoplatform.social.service.rest.api;
 
 import org.exoplatform.commons.utils.ListAccess;
 import org.exoplatform.services.rest.impl.ContainerResponse;
+import org.exoplatform.services.rest.impl.MultivaluedMapImpl;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.identity.model.Identity;
@@ -31,11 +32,17 @@ import org.exoplatform.social.core.space.SpaceException;
 import org.exoplatform.social.core.space.impl.DefaultSpaceApplicationHandler;
 import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.space.spi.SpaceService;
+import org.exoplatform.social.service.rest.Util;
 import org.exoplatform.social.service.rest.api.models.ActivityRestListOut;
+import org.exoplatform.social.service.rest.api.models.ActivityRestListStreamOut;
+import org.exoplatform.social.service.rest.api.models.ActivityStreamUpdatesRestOut;
 import org.exoplatform.social.service.test.AbstractResourceTest;
 
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import java.util.ArrayList;
 import java.util.List;
@@ -90,6 +97,8 @@ public class ActivityStreamResourcesTest extends AbstractResourceTest {
     tearDownSpaceList = new ArrayList<Space>();
     tearDownRelationshipList = new ArrayList<Relationship>();
 
+    // the entities are checked as models, the streamed JSON is compared with them in testStreamingResponse
+    System.setProperty(Util.STREAMING_RESPONSES_PROPERTY, "false");
     addResource(ActivityStreamResources.class, null);
   }
 
@@ -116,6 +125,7 @@ public class ActivityStreamResourcesTest extends AbstractResourceTest {
       identityManager.deleteIdentity(identity);
     }
     removeResource(ActivityStreamResources.class);
+    System.clearProperty(Util.STREAMING_RESPONSES_PROPERTY);
 
     super.tearDown();
   }
@@ -145,6 +155,130 @@ public class ActivityStreamResourcesTest extends AbstractResourceTest {
 
   }
 
+  /**
+   * Tests that the streamed activity stream has the same JSON as the models.
+   *
+   * @throws Exception
+   */
+  public void testStreamingResponse() throws Exception {
+    createActivities(demoIdentity, demoIdentity, 3);
+    connectIdentities(demoIdentity, johnIdentity, true);
+    createActivities(johnIdentity, demoIdentity, 2);
+    List<ExoSocialActivity> demoActivities = activityManager.getActivitiesWithListAccess(demoIdentity).loadAsList(0, 20);
+    createComment(demoActivities.get(0), johnIdentity, 3);
+    activityManager.saveLike(demoActivities.get(1), johnIdentity);
+    activityManager.saveLike(demoActivities.get(1), demoIdentity);
+
+    startSessionAs("john");
+    String resourceUrl = RESOURCE_URL + demoIdentity.getId() + ".json?number_of_comments=2&number_of_likes=5";
+    ContainerResponse modelResponse = service("GET", resourceUrl, "", null, null);
+    assertEquals(200, modelResponse.getStatus());
+    System.setProperty(Util.STREAMING_RESPONSES_PROPERTY, "true");
+    ContainerResponse streamingResponse = service("GET", resourceUrl, "", null, null);
+    assertEquals(200, streamingResponse.getStatus());
+    assertTrue(streamingResponse.getContentType().toString().startsWith(MediaType.APPLICATION_JSON_TYPE.toString()));
+    assertTrue(streamingResponse.getEntity() instanceof ActivityRestListStreamOut);
+    assertStreamingOutputEqualsEntity(modelResponse.getEntity(), (StreamingOutput) streamingResponse.getEntity());
+  }
+
+  /**
+   * Tests that the feed is answered with a 304 status while it is not changed, and with the activities again once
+   * an activity is posted.
+   *
+   * @throws Exception
+   */
+  public void testConditionalGetActivityFeed() throws Exception {
+    createActivities(demoIdentity, demoIdentity, 2);
+
+    startSessionAs("demo");
+    String resourceUrl = RESOURCE_URL + "feed.json";
+    ContainerResponse response = service("GET", resourceUrl, "", null, null);
+    assertEquals(200, response.getStatus());
+    Object entityTag = response.getHttpHeaders().getFirst(HttpHeaders.ETAG);
+    assertNotNull(entityTag);
+    assertNotNull(response.getHttpHeaders().getFirst(HttpHeaders.LAST_MODIFIED));
+
+    MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+    headers.putSingle(HttpHeaders.IF_NONE_MATCH, entityTag.toString());
+    response = service("GET", resourceUrl, "", headers, null);
+    assertEquals(304, response.getStatus());
+    assertNull(response.getEntity());
+
+    // another query has another entity tag
+    response = service("GET", resourceUrl + "?number_of_comments=1", "", headers, null);
+    assertEquals(200, response.getStatus());
+
+    // a new activity changes the entity tag
+    createActivities(demoIdentity, demoIdentity, 1);
+    response = service("GET", resourceUrl, "", headers, null);
+    assertEquals(200, response.getStatus());
+    assertFalse(entityTag.toString().equals(response.getHttpHeaders().getFirst(HttpHeaders.ETAG).toString()));
+    compareActivities(activityManager.getActivityFeedWithListAccess(demoIdentity).loadAsList(0, 10),
+                      (ActivityRestListOut) response.getEntity());
+  }
+
+  /**
+   * Tests that a like changes the entity tag of the feed, and that If-Modified-Since alone never gets a 304 status.
+   *
+   * @throws Exception
+   */
+  public void testConditionalGetActivityFeedAfterLike() throws Exception {
+    createActivities(demoIdentity, demoIdentity, 2);
+
+    startSessionAs("demo");
+    String resourceUrl = RESOURCE_URL + "feed.json";
+    ContainerResponse response = service("GET", resourceUrl, "", null, null);
+    assertEquals(200, response.getStatus());
+    Object entityTag = response.getHttpHeaders().getFirst(HttpHeaders.ETAG);
+
+    MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+    headers.putSingle(HttpHeaders.IF_MODIFIED_SINCE,
+                      response.getHttpHeaders().getFirst(HttpHeaders.LAST_MODIFIED).toString());
+    response = service("GET", resourceUrl, "", headers, null);
+    assertEquals(200, response.getStatus());
+
+    // a like does not change the stream, but it changes the entity tag
+    List<ExoSocialActivity> demoActivities = activityManager.getActivityFeedWithListAccess(demoIdentity).loadAsList(0, 10);
+    activityManager.saveLike(demoActivities.get(0), johnIdentity);
+    headers = new MultivaluedMapImpl();
+    headers.putSingle(HttpHeaders.IF_NONE_MATCH, entityTag.toString());
+    response = service("GET", resourceUrl, "", headers, null);
+    assertEquals(200, response.getStatus());
+    assertFalse(entityTag.toString().equals(response.getHttpHeaders().getFirst(HttpHeaders.ETAG).toString()));
+    compareActivities(activityManager.getActivityFeedWithListAccess(demoIdentity).loadAsList(0, 10),
+                      (ActivityRestListOut) response.getEntity());
+  }
+
+  public void testGetActivityStreamUpdates() throws Exception {
+    createActivities(demoIdentity, demoIdentity, 2);
+
+    startSessionAs("demo");
+    String resourceUrl = RESOURCE_URL + "updates.json";
+    // the feed has newer activities
+    ContainerResponse response = service("GET", resourceUrl + "?since_time=0", "", null, null);
+    assertEquals(200, response.getStatus());
+    ActivityStreamUpdatesRestOut updates = (ActivityStreamUpdatesRestOut) response.getEntity();
+    assertEquals(1, updates.getStreams().size());
+    assertEquals("feed", updates.getStreams().get(0));
+    long lastUpdated = updates.getLastUpdated();
+    assertEquals(activityManager.getActivityFeedState(demoIdentity).getLastUpdated(), lastUpdated);
+
+    // nothing newer
+    response = service("GET", resourceUrl + "?streams=feed,spaces&since_time=" + lastUpdated, "", null, null);
+    assertEquals(200, response.getStatus());
+    updates = (ActivityStreamUpdatesRestOut) response.getEntity();
+    assertEquals(0, updates.getStreams().size());
+    assertEquals(lastUpdated, updates.getLastUpdated());
+
+    // the spaces stream has no activity
+    response = service("GET", resourceUrl + "?streams=spaces&since_time=0", "", null, null);
+    assertEquals(200, response.getStatus());
+    assertEquals(0, ((ActivityStreamUpdatesRestOut) response.getEntity()).getStreams().size());
+
+    response = service("GET", resourceUrl + "?streams=feed,unknown", "", null, null);
+    assertEquals(400, response.getStatus());
+  }
+
   /**
    * Tests default get activity stream without any optional query parameters.
    * - Test with a user identity
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2003-2014 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.exoplatform.social.service.rest.api.models;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit Test for {@link JsonStreamWriter}.
+ */
+public class JsonStreamWriterTest extends TestCase {
+
+  private StringWriter writer;
+
+  private JsonStreamWriter out;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    writer = new StringWriter();
+    out = new JsonStreamWriter(writer);
+  }
+
+  public void testSeparators() throws Exception {
+    out.beginObject();
+    out.name("id").value("1");
+    out.name("empty").beginArray().endArray();
+    out.name("items").beginArray();
+    out.beginObject().name("a").value(1L).endObject();
+    out.beginObject().endObject();
+    out.value(true).nullValue();
+    out.endArray();
+    out.name("priority").value(0.5f);
+    out.endObject();
+    out.flush();
+    assertEquals("{\"id\":\"1\",\"empty\":[],\"items\":[{\"a\":1},{},true,null],\"priority\":0.5}", writer.toString());
+  }
+
+  public void testEscape() throws Exception {
+    out.beginArray();
+    out.value("say \"hi\"\\ <b>\u00e9</b>");
+    out.value("line\nbreak\ttab\r\u0001\u2028");
+    out.value((String) null);
+    out.endArray();
+    out.flush();
+    assertEquals("[\"say \\\"hi\\\"\\\\ <b>\u00e9</b>\",\"line\\nbreak\\ttab\\r\\u0001\\u2028\",null]", writer.toString());
+  }
+
+  public void testObjectValues() throws Exception {
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    map.put("count", 3);
+    map.put("names", new String[] {"a", "b"});
+    List<Object> list = new ArrayList<Object>();
+    list.add(1.5d);
+    list.add(Boolean.FALSE);
+    map.put("list", list);
+    map.put("none", null);
+    out.value((Object) map);
+    out.flush();
+    assertEquals("{\"count\":3,\"names\":[\"a\",\"b\"],\"list\":[1.5,false],\"none\":null}", writer.toString());
+  }
+
+  public void testDeepNesting() throws Exception {
+    for (int i = 0; i < 40; i++) {
+      out.beginArray();
+      out.value(i);
+    }
+    for (int i = 0; i < 40; i++) {
+      out.endArray();
+    }
+    out.flush();
+    StringBuilder expected = new StringBuilder("[0");
+    for (int i = 1; i < 40; i++) {
+      expected.append(",[").append(i);
+    }
+    for (int i = 0; i < 40; i++) {
+      expected.append(']');
+    }
+    assertEquals(expected.toString(), writer.toString());
+  }
+
+  public void testInvalidCalls() throws Exception {
+    try {
+      out.name("outside");
+      fail("A name must be inside an object");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    out.beginObject().name("a");
+    try {
+      out.endObject();
+      fail("A name must be followed by a value");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+}
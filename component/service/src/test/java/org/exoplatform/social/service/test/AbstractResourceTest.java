@@ -19,14 +19,17 @@
 package org.exoplatform.social.service.test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.exoplatform.services.rest.ContainerResponseWriter;
 import org.exoplatform.services.rest.impl.ContainerRequest;
@@ -142,6 +145,51 @@ public abstract class AbstractResourceTest extends AbstractServiceTest {
     assertEquals(firstJsonValue.toString(), secondJsonValue.toString());
   }
 
+  /**
+   * Asserts if the JSON written by a streaming entity is equal to the JSON of a model entity, whatever the order of
+   * the fields.
+   *
+   * @param entity the model entity
+   * @param output the streaming entity
+   */
+  public void assertStreamingOutputEqualsEntity(Object entity, StreamingOutput output) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    output.write(out);
+    JsonParserImpl jsonParser = new JsonParserImpl();
+    JsonDefaultHandler jsonDefaultHandler = new JsonDefaultHandler();
+    jsonParser.parse(new InputStreamReader(new ByteArrayInputStream(out.toByteArray()), "UTF-8"), jsonDefaultHandler);
+
+    JsonValue streamedJsonValue = jsonDefaultHandler.getJsonObject();
+    assertNotNull("streamedJsonValue must not be null", streamedJsonValue);
+    assertJsonValueEquals("", new JsonGeneratorImpl().createJsonObject(entity), streamedJsonValue);
+  }
+
+  private void assertJsonValueEquals(String path, JsonValue expected, JsonValue actual) {
+    if (expected.isObject()) {
+      assertTrue(path + " must be an object", actual.isObject());
+      for (Iterator<String> keys = expected.getKeys(); keys.hasNext();) {
+        String key = keys.next();
+        assertNotNull(path + "." + key + " is missing", actual.getElement(key));
+        assertJsonValueEquals(path + "." + key, expected.getElement(key), actual.getElement(key));
+      }
+      for (Iterator<String> keys = actual.getKeys(); keys.hasNext();) {
+        String key = keys.next();
+        assertNotNull(path + "." + key + " is not expected", expected.getElement(key));
+      }
+    } else if (expected.isArray()) {
+      assertTrue(path + " must be an array", actual.isArray());
+      Iterator<JsonValue> actualElements = actual.getElements();
+      int i = 0;
+      for (Iterator<JsonValue> elements = expected.getElements(); elements.hasNext(); i++) {
+        assertTrue(path + "[" + i + "] is missing", actualElements.hasNext());
+        assertJsonValueEquals(path + "[" + i + "]", elements.next(), actualElements.next());
+      }
+      assertFalse(path + "[" + i + "] is not expected", actualElements.hasNext());
+    } else {
+      assertEquals(path, expected.toString(), actual.toString());
+    }
+  }
+
   /**
    * Asserts if the provided xmlString is equal to an entity object's string.
    *
@@ -16,9 +16,12 @@
  */
 package org.exoplatform.social.service.test;
 
+import org.exoplatform.social.service.rest.ImageSizeProberTest;
+import org.exoplatform.social.service.rest.LinkShareCacheTest;
 import org.exoplatform.social.service.rest.api.models.ActivityRestInTest;
 import org.exoplatform.social.service.rest.api.models.ActivityStreamRestOutTest;
 import org.exoplatform.social.service.rest.api.models.CommentRestInTest;
+import org.exoplatform.social.service.rest.api.models.JsonStreamWriterTest;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
@@ -28,9 +31,12 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({
   UtilTest.class,
+  ImageSizeProberTest.class,
+  LinkShareCacheTest.class,
   ActivityRestInTest.class,
   ActivityStreamRestOutTest.class,
-  CommentRestInTest.class
+  CommentRestInTest.class,
+  JsonStreamWriterTest.class
   })
 public class NoContainerTestSuite {
   